@@ -7,10 +7,14 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
 import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -106,6 +110,17 @@ public abstract class Algorithm {
 	 */
 	private final static String OUTPUT_SUFFIX = ".outputs";
 
+	/**
+	 * Bindings of the parameters of each algorithm class, built at the first
+	 * call
+	 */
+	private final static ConcurrentHashMap<Class<?>, Binding> BINDINGS = new ConcurrentHashMap<Class<?>, Binding>();
+
+	/**
+	 * Binding of the parameters of this algorithm
+	 */
+	private Binding binding;
+
 	/***************************************************************************
 	 * 
 	 * 
@@ -138,94 +153,53 @@ public abstract class Algorithm {
 		input.clear();
 		option.clear();
 
-		// parsing
-		ArrayList<String> inputResult = parser(inputs);
-		ArrayList<String> optionResult = parser(options);
+		Binding b = getBinding();
+		Parameter[] inputResult = b.inputs;
+		Parameter[] optionResult = b.options;
 
 		// Checking if the number of given parameters is at least
 		// the number of mandatory parameters and less than the full set of
 		// parameters
-		if (inputList.size() < inputResult.size()
-				|| inputList.size() > inputResult.size() + optionResult.size())
+		if (inputList.size() < inputResult.length
+				|| inputList.size() > inputResult.length + optionResult.length)
 			throw new InvalidNumberOfParametersException(
 					"Number of parameters is incorrect : " + inputList.size()
-							+ " instead of [" + inputResult.size() + ","
-							+ (inputResult.size() + optionResult.size()) + "]");
+							+ " instead of [" + inputResult.length + ","
+							+ (inputResult.length + optionResult.length) + "]");
 
-		Class c = this.getClass();
-		Field f = null;
 		Object o;
 
 		// Mandatory input parameters
-		for (int i = 0; i < inputResult.size(); i++) {
-
+		for (int i = 0; i < inputResult.length; i++) {
 			o = inputList.get(i);
-			try {
-				f = c.getDeclaredField(inputResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Input #" + i + " " + inputResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			Class t = f.getType();
-
-			/*
-			 * Class oc = o.getClass(); if (t.isPrimitive()) t =
-			 * primitiveToObject(t);
-			 */
-
 			input.add(o);
-			try {
-				f.set(this, input.get(i));// Set the attributes of the
-				// inherited algorithm
-			} catch (IllegalArgumentException e) {
+			// Set the attributes of the inherited algorithm
+			if (!inputResult[i].set(this, o))
 				// If the type is incorrect
 				throw new InvalidTypeOfParameterException("Input type #" + i
-						+ " is not correct : " + o.getClass().getName()
-						+ " instead of " + t.getName());
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
+						+ " is not correct : "
+						+ (o == null ? "null" : o.getClass().getName())
+						+ " instead of " + inputResult[i].type.getName());
 		}
 
 		// Optional input parameters
-		int nbOptions = Math.min(inputList.size() - inputResult.size(),
-				optionResult.size());
-		int indOptions = inputResult.size();
+		int nbOptions = Math.min(inputList.size() - inputResult.length,
+				optionResult.length);
+		int indOptions = inputResult.length;
 		for (int i = 0; i < nbOptions; i++) {
 
 			o = inputList.get(i + indOptions);
+			option.add(o);
 
 			// If null option, skip it
-			if (o == null) {
-				option.add(o);
+			if (o == null)
 				continue;
-			}
 
-			try {
-				f = c.getDeclaredField(optionResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Option #" + i + " " + optionResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			Class t = f.getType();
-
-			option.add(o);
-			try {
-				f.set(this, option.get(i)); // Set the attributes of the
-				// inherited algorithm
-			} catch (IllegalArgumentException e) {
+			// Set the attributes of the inherited algorithm
+			if (!optionResult[i].set(this, o))
 				throw new InvalidTypeOfParameterException("Option type #" + i
 						+ " is not correct : " + o.getClass() + " instead of "
-						+ t);
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
+						+ optionResult[i].type);
 		}
 
 	}
@@ -238,40 +212,12 @@ public abstract class Algorithm {
 
 
 	public ArrayList getOutput() {
-
-
-
-		// parsing
-		ArrayList<String> parserResult = parser(outputs);
+		Parameter[] parserResult = getBinding().outputs;
 
 		// clear output
 		output.clear();
-
-		Class c = this.getClass();
-		Field f = null;
-		Object o = null;
-
-		for (int i = 0; i < parserResult.size(); i++) {
-
-			try {
-				f = c.getDeclaredField(parserResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				System.out.println("Output #" + i + " " + parserResult.get(i)
-						+ " does not exist in " + c);
-				e.printStackTrace();
-			}
-			try {
-				o = f.get(this);
-			} catch (IllegalArgumentException e) {
-				e.printStackTrace();
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-			output.add(o);
-
-		}
+		for (int i = 0; i < parserResult.length; i++)
+			output.add(parserResult[i].get(this));
 		return output;
 	}
 
@@ -283,20 +229,13 @@ public abstract class Algorithm {
 	 */
 	public Class[] getInputTypes() {
 
-		ArrayList<String> parserResult = parser(inputs);
+		Parameter[] parserResult = getBinding().inputs;
 
-		Class[] tab = new Class[parserResult.size()];
-		Class c = this.getClass();
+		Class[] tab = new Class[parserResult.length];
 		Field f = null;
 
-		for (int i = 0; i < parserResult.size(); i++) {
-			try {
-				f = c.getDeclaredField(parserResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				e.printStackTrace();
-			}
+		for (int i = 0; i < parserResult.length; i++) {
+			f = parserResult[i].field;
 
 			if (f.getType() == int.class) {
 				tab[i] = Integer.class;
@@ -347,20 +286,13 @@ public abstract class Algorithm {
 	 */
 	public Class[] getOptionTypes() {
 
-		ArrayList<String> parserResult = parser(options);
+		Parameter[] parserResult = getBinding().options;
 
-		Class[] tab = new Class[parserResult.size()];
-		Class c = this.getClass();
+		Class[] tab = new Class[parserResult.length];
 		Field f = null;
 
-		for (int i = 0; i < parserResult.size(); i++) {
-			try {
-				f = c.getDeclaredField(parserResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				e.printStackTrace();
-			}
+		for (int i = 0; i < parserResult.length; i++) {
+			f = parserResult[i].field;
 			if (f.getType() == int.class) {
 				tab[i] = Integer.class;
 			} else {
@@ -446,20 +378,13 @@ public abstract class Algorithm {
 	 */
 	public Class[] getOutputTypes() {
 
-		ArrayList<String> parserResult = parser(outputs);
+		Parameter[] parserResult = getBinding().outputs;
 
-		Class[] tab = new Class[parserResult.size()];
-		Class c = this.getClass();
+		Class[] tab = new Class[parserResult.length];
 		Field f = null;
 
-		for (int i = 0; i < parserResult.size(); i++) {
-			try {
-				f = c.getDeclaredField(parserResult.get(i));
-			} catch (SecurityException e) {
-				e.printStackTrace();
-			} catch (NoSuchFieldException e) {
-				e.printStackTrace();
-			}
+		for (int i = 0; i < parserResult.length; i++) {
+			f = parserResult[i].field;
 			if (f.getType() == int.class) {
 				tab[i] = Integer.class;
 			} else {
@@ -574,6 +499,188 @@ public abstract class Algorithm {
 		return list;
 	}
 
+	/**
+	 * Gets the binding of the parameters of this algorithm. The binding of a
+	 * class is built once and shared by all its instances, it is rebuilt if
+	 * the names of the parameters are changed.
+	 * 
+	 * @return the binding of the parameters
+	 */
+	private Binding getBinding() {
+		Binding b = binding;
+		if (b != null && b.matches(this))
+			return b;
+		b = BINDINGS.get(this.getClass());
+		if (b == null || !b.matches(this)) {
+			b = new Binding(this);
+			BINDINGS.put(this.getClass(), b);
+		}
+		binding = b;
+		return b;
+	}
+
+	/**
+	 * Accessors of the parameters of an algorithm class, for the names given
+	 * by inputs, options and outputs.
+	 */
+	private static final class Binding {
+
+		private final String inputNames;
+		private final String optionNames;
+		private final String outputNames;
+
+		private final Parameter[] inputs;
+		private final Parameter[] options;
+		private final Parameter[] outputs;
+
+		private Binding(Algorithm algorithm) {
+			inputNames = algorithm.inputs;
+			optionNames = algorithm.options;
+			outputNames = algorithm.outputs;
+			inputs = parameters(algorithm, inputNames, "Input");
+			options = parameters(algorithm, optionNames, "Option");
+			outputs = parameters(algorithm, outputNames, "Output");
+		}
+
+		private boolean matches(Algorithm algorithm) {
+			return inputNames.equals(algorithm.inputs)
+					&& optionNames.equals(algorithm.options)
+					&& outputNames.equals(algorithm.outputs);
+		}
+
+		private ArrayList<String> getNames(Parameter[] parameters) {
+			ArrayList<String> list = new ArrayList<String>(parameters.length);
+			for (Parameter p : parameters)
+				list.add(p.name);
+			return list;
+		}
+
+		private static Parameter[] parameters(Algorithm algorithm,
+				String names, String kind) {
+			ArrayList<String> list = algorithm.parser(names);
+			Parameter[] result = new Parameter[list.size()];
+			Class c = algorithm.getClass();
+			for (int i = 0; i < result.length; i++) {
+				try {
+					result[i] = new Parameter(c.getDeclaredField(list.get(i)));
+				} catch (NoSuchFieldException e) {
+					throw new AlgorithmException(kind + " #" + i + " "
+							+ list.get(i) + " does not exist in " + c, e);
+				}
+			}
+			return result;
+		}
+	}
+
+	/**
+	 * Setter and getter of a parameter, as method handles of type
+	 * (Algorithm,Object)void and (Algorithm)Object.
+	 */
+	private static final class Parameter {
+
+		private final String name;
+		private final Field field;
+		private final Class type;
+		private final MethodHandle setter;
+		private final MethodHandle getter;
+
+		private Parameter(Field field) {
+			this.name = field.getName();
+			this.field = field;
+			this.type = field.getType();
+			try {
+				field.setAccessible(true);
+				MethodHandles.Lookup lookup = MethodHandles.lookup();
+				this.setter = lookup.unreflectSetter(field).asType(
+						MethodType.methodType(void.class, Algorithm.class,
+								Object.class));
+				this.getter = lookup.unreflectGetter(field).asType(
+						MethodType.methodType(Object.class, Algorithm.class));
+			} catch (IllegalAccessException e) {
+				throw new AlgorithmException("Parameter " + name
+						+ " is not accessible in " + field.getDeclaringClass(), e);
+			}
+		}
+
+		/**
+		 * Sets the parameter, with the conversions allowed by Field.set: a
+		 * value of a primitive field may only be unboxed and widened.
+		 * 
+		 * @return false if the value does not fit the type of the parameter
+		 */
+		private boolean set(Algorithm algorithm, Object value) {
+			if (type.isPrimitive() ? !isWidening(value) : value != null
+					&& !type.isInstance(value))
+				return false;
+			try {
+				setter.invokeExact(algorithm, value);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new AlgorithmException("Unable to set " + name, e);
+			}
+			return true;
+		}
+
+		private Object get(Algorithm algorithm) {
+			try {
+				return (Object) getter.invokeExact(algorithm);
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Error e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new AlgorithmException("Unable to get " + name, e);
+			}
+		}
+
+		/**
+		 * Checks whether a boxed value can be unboxed and widened to the
+		 * primitive type of the parameter.
+		 */
+		private boolean isWidening(Object value) {
+			if (value == null)
+				return false;
+			if (value instanceof Boolean)
+				return type == boolean.class;
+			int from = rank(value.getClass());
+			int to = rank(type);
+			if (from == 0 || to == 0)
+				return false;
+			if (from == to)
+				return true;
+			// only char is widened to char, and char only to int and beyond
+			if (to == 3)
+				return false;
+			if (from == 3)
+				return to > 3;
+			return from < to;
+		}
+
+		/**
+		 * Rank of a numeric type in the widening order, 0 if it is not numeric.
+		 */
+		private static int rank(Class c) {
+			if (c == Byte.class || c == byte.class)
+				return 1;
+			if (c == Short.class || c == short.class)
+				return 2;
+			if (c == Character.class || c == char.class)
+				return 3;
+			if (c == Integer.class || c == int.class)
+				return 4;
+			if (c == Long.class || c == long.class)
+				return 5;
+			if (c == Float.class || c == float.class)
+				return 6;
+			if (c == Double.class || c == double.class)
+				return 7;
+			return 0;
+		}
+	}
+
 	/*
 	 * private Class primitiveToObject(Class c) { if (c==Boolean.TYPE) return
 	 * Boolean.class; else if (c==Byte.TYPE) return Byte.class; else if
@@ -604,7 +711,7 @@ public abstract class Algorithm {
 	 * @return the list containing the input names.
 	 */
 	public ArrayList<String> getInputNames() {
-		return parser(inputs);
+		return getBinding().getNames(getBinding().inputs);
 	}
 
 	/**
@@ -613,7 +720,7 @@ public abstract class Algorithm {
 	 * @return the list containing the option names.
 	 */
 	public ArrayList<String> getOptionNames() {
-		return parser(options);
+		return getBinding().getNames(getBinding().options);
 	}
 
 	/**
@@ -622,7 +729,7 @@ public abstract class Algorithm {
 	 * @return the list containing the output names.
 	 */
 	public ArrayList<String> getOutputNames() {
-		return parser(outputs);
+		return getBinding().getNames(getBinding().outputs);
 	}
 
 	/**
@@ -646,10 +753,11 @@ public abstract class Algorithm {
 		}
 		this.setInput(inputs);
 		this.launch();
-		if (this.getOutput() == null || this.getOutput().isEmpty()) {
+		ArrayList outputs = this.getOutput();
+		if (outputs.isEmpty()) {
 			return null;
 		} else {
-			return (Object) this.getOutput().get(0);
+			return (Object) outputs.get(0);
 		}
 	}
 
@@ -676,11 +784,7 @@ public abstract class Algorithm {
 		}
 		this.setInput(inputs);
 		this.launch();
-		if (this.getOutput() == null) {
-			return null;
-		} else {
-			return this.getOutput();
-		}
+		return this.getOutput();
 	}
 
 	/**
@@ -707,10 +811,11 @@ public abstract class Algorithm {
 		}
 		this.setInput(inputs);
 		this.launch();
-		if (this.getOutput() == null || x < 0 || x >= this.getOutput().size())
+		ArrayList outputs = this.getOutput();
+		if (x < 0 || x >= outputs.size())
 			throw new InvalidNumberOfParametersException("output " + x
 					+ " does not exist");
-		return this.getOutput().get(x);
+		return outputs.get(x);
 
 	}
 
@@ -3,7 +3,9 @@ package fr.unistra.pelican;
 import java.awt.Point;
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
 
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.Point4D;
 
 /** This class represents an Image of boolean values
@@ -26,6 +28,17 @@ public class BooleanImage extends Image implements Serializable
 
 	private static final long serialVersionUID = 3L;
 
+	/**
+	 * Number of single pixel modifications remembered, must be a power of 2
+	 */
+	private static final int MODIFIED_PIXELS = 256;
+
+	/**
+	 * Last single pixel modifications, each one stored as its number in the
+	 * high word and the pixel index in the low word, null until asked for
+	 */
+	private transient AtomicLongArray modifiedPixels;
+
 	
 	/**
 	 * Constructs a BooleanImage
@@ -129,6 +142,7 @@ public class BooleanImage extends Image implements Serializable
 	public void fill(boolean b)
 	{
 		Arrays.fill(pixels,b);
+		setModified();
 	}
 
 	@Override
@@ -197,6 +211,7 @@ public class BooleanImage extends Image implements Serializable
 	public void setPixels(boolean[] values)
 	{
 		pixels = (boolean[])values.clone();
+		setModified();
 	}
 
 
@@ -222,12 +237,24 @@ public class BooleanImage extends Image implements Serializable
 
 	public int getSum()
 	{
+		if (isUnmasked())
+			return (int) getStatistics().getSum();
 		int sum=0;
 		for(int i = 0; i < size(); i++)
 			if ( isPresent(i) && getPixelBoolean(i) ) sum++;
 		return sum;
 	}
 
+	@Override
+	protected ImageStatistics computeStatistics() {
+		return ImageStatistics.compute(size(), bdim, false,
+			new ImageStatistics.Kernel() {
+				public void add(ImageStatistics statistics, int from, int to) {
+					statistics.addBooleans(pixels, from, to);
+				}
+			}, 0);
+	}
+
 	/**
 	 * Extracts the positions of foreground pixels
 	 * @return the array of foreground pixels
@@ -316,24 +343,85 @@ public class BooleanImage extends Image implements Serializable
 	@Override
 	public void setPixelDouble(int loc, double value) {
 		pixels[loc] = doubleToBoolean(value);
+		setModified(loc);
 		//pixels[loc] = (value >= 0.5) ? true : false;		
 	}
 
 	@Override
 	public void setPixelInt(int loc, int value) {
 		pixels[loc] =intToBoolean(value);
+		setModified(loc);
 		//pixels[loc] = (value >= 0) ? true : false;		
 	}
 
 	@Override
 	public void setPixelByte(int loc, int value) {
 		pixels[loc] = unsignedByteToBoolean(value);
+		setModified(loc);
 		//pixels[loc] = (value >= 128) ? true : false;		
 	}
 
 	@Override
 	public void setPixelBoolean(int loc, boolean value) {
 		pixels[loc] = value;
+		setModified(loc);
+	}
+
+	/**
+	 * Tells that the pixel at the given index has been modified. Only the
+	 * images which keep their modified pixels count and remember it at once,
+	 * the others take the cheap path of the other images.
+	 * 
+	 * @param loc
+	 *            index of the modified pixel
+	 */
+	private void setModified(int loc) {
+		AtomicLongArray log = modifiedPixels;
+		if (log == null) {
+			setPixelModified();
+			return;
+		}
+		long modification = addModification();
+		log.set((int) modification & (MODIFIED_PIXELS - 1), modification << 32
+				| (loc & 0xffffffffL));
+	}
+
+	/**
+	 * Starts remembering the last pixels modified one by one, so that
+	 * getModifiedPixels can give them. It must be called before the pixels
+	 * are modified by other threads.
+	 */
+	public void keepModifiedPixels() {
+		if (modifiedPixels == null)
+			synchronized (this) {
+				if (modifiedPixels == null)
+					modifiedPixels = new AtomicLongArray(MODIFIED_PIXELS);
+			}
+	}
+
+	/**
+	 * Gets the indexes of the pixels modified one by one since the given
+	 * modification count.
+	 * 
+	 * @param since
+	 *            modification count given by getModificationCount
+	 * @return the indexes of the modified pixels, possibly repeated, or null if
+	 *         they are not all known: the modified pixels are not kept, too
+	 *         many pixels have been modified or the whole image has changed
+	 */
+	public int[] getModifiedPixels(long since) {
+		AtomicLongArray log = modifiedPixels;
+		long now = getModificationCount();
+		if (log == null || now < since || now - since > MODIFIED_PIXELS)
+			return null;
+		int[] res = new int[(int) (now - since)];
+		for (long m = since + 1; m <= now; m++) {
+			long e = log.get((int) m & (MODIFIED_PIXELS - 1));
+			if ((int) (e >>> 32) != (int) m)
+				return null;
+			res[(int) (m - since - 1)] = (int) e;
+		}
+		return res;
 	}
 
 	@Override
@@ -3,6 +3,8 @@ package fr.unistra.pelican;
 import java.io.Serializable;
 import java.util.Arrays;
 
+import fr.unistra.pelican.util.ImageStatistics;
+
 /**
  * This class represents a byte valued image with pixels values in the interval
  * [0,255] Range for an byte pixel is [0; 255]. Note that the internal storage
@@ -122,6 +124,7 @@ public class ByteImage extends Image implements Serializable {
 
 	public void fill(byte b) {
 		Arrays.fill(pixels, (byte) b);
+		setModified();
 	}
 
 	@Override
@@ -230,12 +233,7 @@ public class ByteImage extends Image implements Serializable {
 	 */
 	public long getSum()
 	{
-		long sum=0;
-		for(int i=this.size()-1;i>=0;i--)
-		{
-			sum+=this.getPixelByte(i);
-		}
-		return sum;
+		return (long) getStatistics().getSum();
 	}
 
 	/**
@@ -414,6 +412,32 @@ public class ByteImage extends Image implements Serializable {
 	 */
 
 	public byte[] getPixels() {
+		shared = true;
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to write it, without giving it out
+	 * for good. The cached statistics are dropped when the array is given, so
+	 * the caller must have written it before they are computed again, or else
+	 * call setModified once it has written it.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public byte[] getPixelArray() {
+		setModified();
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to read it, the cached statistics
+	 * are kept: the caller must not write it, see getPixelArray.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public byte[] getReadOnlyPixelArray() {
 		return pixels;
 	}
 
@@ -426,6 +450,7 @@ public class ByteImage extends Image implements Serializable {
 
 	public void setPixels(byte[] values) {
 		pixels = (byte[]) values.clone();
+		setModified();
 	}
 	
 	/**
@@ -437,6 +462,7 @@ public class ByteImage extends Image implements Serializable {
 
 	public void setPixelsUnsafe(byte[] values) {
 		pixels = values;
+		shared = true;
 	}
 
 	/**
@@ -533,24 +559,28 @@ public class ByteImage extends Image implements Serializable {
 	@Override
 	public void setPixelDouble(int loc, double value) {
 		pixels[loc] = doubleToSignedByte(value);
+		setPixelModified();
 		//pixels[loc] = (byte) Math.round(doubleToByte * value - 128);
 	}
 
 	@Override
 	public void setPixelInt(int loc, int value) {
 		pixels[loc] = intToSignedByte(value);
+		setPixelModified();
 		//pixels[loc] = (byte) (value >> 24);
 	}
 
 	@Override
 	public void setPixelByte(int loc, int value) {
 		pixels[loc] = unsignedByteToSignedByte(value);
+		setPixelModified();
 		//pixels[loc] = (byte) (value + Byte.MIN_VALUE);
 	}
 
 	@Override
 	public void setPixelBoolean(int loc, boolean value) {
 		pixels[loc] = booleanToSignedByte(value);
+		setPixelModified();
 		//pixels[loc] = value ? Byte.MAX_VALUE : Byte.MIN_VALUE;
 	}
 
@@ -588,12 +618,8 @@ public class ByteImage extends Image implements Serializable {
 	 * 		the signed Byte representation of the minimum
 	 */
 	public byte minimum(){
-		byte val = Byte.MAX_VALUE;
-		for (int p = 0; p < size(); p++)
-			if ( pixels[p] < val)
-				val = pixels[p];
-		return val;
-		
+		return (byte) Math.min(Byte.MAX_VALUE, getStatistics().getMinimum()
+			+ Byte.MIN_VALUE);
 	}
 	
 	/**
@@ -602,11 +628,8 @@ public class ByteImage extends Image implements Serializable {
 	 * 		the signed Byte representation of the maximum
 	 */
 	public byte maximum(){
-		byte val = Byte.MIN_VALUE;
-		for (int p = 0; p < size(); p++)
-			if ( pixels[p] > val)
-				val = pixels[p];
-		return val;
+		return (byte) Math.max(Byte.MIN_VALUE, getStatistics().getMaximum()
+			+ Byte.MIN_VALUE);
 	}
 	
 	/**
@@ -617,12 +640,8 @@ public class ByteImage extends Image implements Serializable {
 	 * 		the signed Byte representation of the minimum in the specified band
 	 */
 	public byte minimum(int band){
-		byte val = Byte.MAX_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if ( pixels[p] < val)
-				val = pixels[p];
-		return val;
-		
+		return (byte) Math.min(Byte.MAX_VALUE, getStatistics().getMinimum(band)
+			+ Byte.MIN_VALUE);
 	}
 	
 	/**
@@ -633,11 +652,32 @@ public class ByteImage extends Image implements Serializable {
 	 * 		the signed Byte representation of the maximum in the specified band
 	 */
 	public byte maximum(int band){
-		byte val = Byte.MIN_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if ( pixels[p] > val)
-				val = pixels[p];
-		return val;
+		return (byte) Math.max(Byte.MIN_VALUE, getStatistics().getMaximum(band)
+			+ Byte.MIN_VALUE);
+	}
+
+	@Override
+	protected ImageStatistics computeStatistics() {
+		return ImageStatistics.compute(size(), bdim, true,
+			new ImageStatistics.Kernel() {
+				public void add(ImageStatistics statistics, int from, int to) {
+					statistics.addBytes(pixels, from, to);
+				}
+			}, 0);
+	}
+
+	@Override
+	public double volume() {
+		if (!isUnmasked())
+			return super.volume();
+		return byteToDouble * getStatistics().getSum();
+	}
+
+	@Override
+	public int volumeByte() {
+		if (!isUnmasked())
+			return super.volumeByte();
+		return (int) getStatistics().getSum();
 	}
 
 	@Override
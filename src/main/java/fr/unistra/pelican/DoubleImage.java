@@ -3,6 +3,8 @@ package fr.unistra.pelican;
 import java.io.Serializable;
 import java.util.Arrays;
 
+import fr.unistra.pelican.util.ImageStatistics;
+
 /**
  * This class represents a double valued image Range for a double pixel is
  * [0.0; 1.0]
@@ -136,6 +138,7 @@ public class DoubleImage extends Image implements Serializable {
 
 	public void fill(double b) {
 		Arrays.fill(pixels, b);
+		setModified();
 	}
 
 	/**
@@ -150,6 +153,7 @@ public class DoubleImage extends Image implements Serializable {
 		for (int i = band; i < size(); i += bdim) {
 			pixels[i] = b;
 		}
+		setModified();
 	}
 
 	/**
@@ -172,6 +176,32 @@ public class DoubleImage extends Image implements Serializable {
 	 */
 
 	public double[] getPixelsUnsafe() {
+		shared = true;
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to write it, without giving it out
+	 * for good. The cached statistics are dropped when the array is given, so
+	 * the caller must have written it before they are computed again, or else
+	 * call setModified once it has written it.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public double[] getPixelArray() {
+		setModified();
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to read it, the cached statistics
+	 * are kept: the caller must not write it, see getPixelArray.
+	 * 
+	 * @return the pixel array
+	 */
+
+	public double[] getReadOnlyPixelArray() {
 		return pixels;
 	}
 	
@@ -184,6 +214,7 @@ public class DoubleImage extends Image implements Serializable {
 
 	public void setPixels(double[] values) {
 		pixels = (double[]) values.clone();
+		setModified();
 	}
 
 	/**
@@ -198,6 +229,7 @@ public class DoubleImage extends Image implements Serializable {
 
 	public void setPixelsUnsafe(double[] values) {
 		pixels =  values;
+		shared = true;
 	}
 	
 	/**
@@ -427,17 +459,20 @@ public class DoubleImage extends Image implements Serializable {
 	@Override
 	public void setPixelDouble(int loc, double value) {
 		pixels[loc] = value;
+		setPixelModified();
 	}
 
 	@Override
 	public void setPixelInt(int loc, int value) {
 		pixels[loc] = intToDouble(value);
+		setPixelModified();
 		//pixels[loc] = intToDouble * (double) value + intToDoubleOffset;
 	}
 
 	@Override
 	public void setPixelByte(int loc, int value) {
 		pixels[loc] = unsignedByteToDouble(value);
+		setPixelModified();
 		//pixels[loc] = byteToDouble * (double) value;
 
 	}
@@ -445,6 +480,7 @@ public class DoubleImage extends Image implements Serializable {
 	@Override
 	public void setPixelBoolean(int loc, boolean value) {
 		pixels[loc] = booleanToDouble(value);
+		setPixelModified();
 		//pixels[loc] = value ? 1.0 : 0.0;
 	}
 
@@ -466,11 +502,7 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		a double representation of the maximum
 	 */
 	public double maximum() {
-		double val = Double.NEGATIVE_INFINITY;
-		for (int p = 0; p < size(); p++)
-			if (getPixelDouble(p) > val)
-				val = getPixelDouble(p);
-		return val;
+		return getStatistics().getMaximum();
 	}
 	
 	/**
@@ -479,11 +511,7 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		a double representation of the minimum
 	 */
 	public double minimum() {
-		double val = Double.MAX_VALUE;
-		for (int p = 0; p < size(); p++)
-			if (getPixelDouble(p) < val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.min(Double.MAX_VALUE, getStatistics().getMinimum());
 	}
 	
 	/**
@@ -494,11 +522,7 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		the double representation of the maximum in the specified band
 	 */
 	public double maximum(int band) {
-		double val = Double.NEGATIVE_INFINITY;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelDouble(p) > val)
-				val = getPixelDouble(p);
-		return val;
+		return getStatistics().getMaximum(band);
 	}
 	
 	/**
@@ -509,11 +533,7 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		a double representation of the minimum in the specified band
 	 */
 	public double minimum(int band) {
-		double val = Double.MAX_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelDouble(p) < val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.min(Double.MAX_VALUE, getStatistics().getMinimum(band));
 	}
 
 	/**
@@ -524,11 +544,7 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		a double representation of the maximum in the specified band
 	 */
 	public double maximumIgnoreNonRealValues(int band) {
-		double val = Double.NEGATIVE_INFINITY;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelDouble(p) > val)
-				val = getPixelDouble(p);
-		return val;
+		return maximum(band);
 	}
 	
 	/**
@@ -539,11 +555,24 @@ public class DoubleImage extends Image implements Serializable {
 	 * 		a double representation of the minimum in the specified band
 	 */
 	public double minimumIgnoreNonRealValues(int band) {
-		double val = Double.MAX_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelDouble(p) < val)
-				val = getPixelDouble(p);
-		return val;
+		return minimum(band);
+	}
+
+	@Override
+	protected ImageStatistics computeStatistics() {
+		return ImageStatistics.compute(size(), bdim, false,
+			new ImageStatistics.Kernel() {
+				public void add(ImageStatistics statistics, int from, int to) {
+					statistics.addDoubles(pixels, from, to);
+				}
+			}, 0);
+	}
+
+	@Override
+	public double volume() {
+		if (!isUnmasked())
+			return super.volume();
+		return getStatistics().getSum();
 	}
 
 	@Override
@@ -6,18 +6,22 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import fr.unistra.pelican.util.Disposable;
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.Pixel;
 import fr.unistra.pelican.util.Point3D;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.PointVideo;
-import fr.unistra.pelican.util.Tools;
 import fr.unistra.pelican.util.iterator.AbstractImageIterator;
 import fr.unistra.pelican.util.iterator.ImageIterator;
 import fr.unistra.pelican.util.iterator.ImageIteratorXY;
 import fr.unistra.pelican.util.iterator.MaskedImageIterator;
 import fr.unistra.pelican.util.iterator.MaskedImageIteratorXY;
+import fr.unistra.pelican.util.iterator.SpanCursor;
+import fr.unistra.pelican.util.mask.CompiledMask;
 import fr.unistra.pelican.util.mask.Mask;
 import fr.unistra.pelican.util.mask.MaskStack;
 
@@ -156,6 +160,45 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * TODO : Set it private
 	 */
 	public MaskStack mask;
+
+	/**
+	 * Number of modifications of the pixels, the cached statistics being valid
+	 * while it is unchanged. Pixels may be written by several threads, so it is
+	 * updated atomically.
+	 */
+	private transient volatile long modifications = 0;
+
+	private static final AtomicLongFieldUpdater<Image> MODIFICATIONS = AtomicLongFieldUpdater
+			.newUpdater(Image.class, "modifications");
+
+	/**
+	 * Set by the single pixel setters, which must stay cheap: the number of
+	 * modifications is only increased for them when it is read
+	 */
+	private transient boolean pixelsModified = false;
+
+	/**
+	 * Number of modifications of all the images counted by setModified and
+	 * addModification, so that compiled masks only check their masks once it
+	 * has changed
+	 */
+	private static final AtomicLong ALL_MODIFICATIONS = new AtomicLong();
+
+	/**
+	 * Cached statistics of the pixels
+	 */
+	private transient ImageStatistics statistics = null;
+
+	/**
+	 * Number of modifications when the statistics were computed
+	 */
+	private transient long statisticsModifications;
+
+	/**
+	 * Set when the pixel array has been given out, so that the pixels may be
+	 * modified without notice and the statistics are never cached
+	 */
+	protected transient boolean shared = false;
 	
 	
 	/**
@@ -540,11 +583,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the minimum
 	 */
 	public double minimumDouble() {
-		double val = Double.MAX_VALUE;
-		for (int p = 0; p < size(); p++)
-			if (getPixelDouble(p) < val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.min(Double.MAX_VALUE, getStatistics().getMinimum());
 	}
 
 	/**
@@ -553,11 +592,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the maximum
 	 */
 	public double maximumDouble() {
-		double val = Double.MIN_VALUE;
-		for (int p = 0; p < size(); p++)
-			if (getPixelDouble(p) > val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.max(Double.MIN_VALUE, getStatistics().getMaximum());
 	}
 	
 	/**
@@ -568,11 +603,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the minimum in specified band
 	 */
 	public double minimumDouble(int band) {
-		double val = Double.MAX_VALUE;
-		for (int p = band; p < size(); p+=bdim)
-			if (getPixelDouble(p) < val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.min(Double.MAX_VALUE, getStatistics().getMinimum(band));
 	}
 
 	/**
@@ -583,14 +614,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the minimum in specified band
 	 */
 	public double minimumDoubleIgnoreNonRealValues(int band) {
-		double val = Double.MAX_VALUE;
-		for (int p = band; p < size(); p+=bdim)
-		{
-			double v=getPixelDouble(p);
-			if (Tools.isValue(v) && v < val)
-				val = v;
-		}
-		return val;
+		return Math.min(Double.MAX_VALUE, getStatistics().getFiniteMinimum(band));
 	}
 	
 	/**
@@ -600,15 +624,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the maximum in specified band
 	 */
 	public double maximumDoubleIgnoreNonRealValues(int band) {
-		double val = Double.MIN_VALUE;
-		for (int p = band; p < size(); p+=bdim)
-		{
-			double v=getPixelDouble(p);
-			if (Tools.isValue(v) && v > val)
-				val = v;
-		}
-			
-		return val;
+		return Math.max(Double.MIN_VALUE, getStatistics().getFiniteMaximum(band));
 	}
 	
 	/**
@@ -618,11 +634,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return a double representation of the maximum in specified band
 	 */
 	public double maximumDouble(int band) {
-		double val = Double.MIN_VALUE;
-		for (int p = band; p < size(); p+=bdim)
-			if (getPixelDouble(p) > val)
-				val = getPixelDouble(p);
-		return val;
+		return Math.max(Double.MIN_VALUE, getStatistics().getMaximum(band));
 	}
 
 	/**
@@ -733,6 +745,103 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 		return v;
 	}
 
+	/**
+	 * Tells that the pixels have been modified, to be called by each method
+	 * writing pixels. Code writing the pixel array given by getPixelArray calls
+	 * it once it is done.
+	 */
+	public final void setModified() {
+		MODIFICATIONS.incrementAndGet(this);
+		ALL_MODIFICATIONS.incrementAndGet();
+	}
+
+	/**
+	 * Tells that a single pixel has been modified, to be called by the pixel
+	 * setters once the pixel is written. It only sets a flag, which is turned
+	 * into a modification when the number of modifications is read.
+	 */
+	protected final void setPixelModified() {
+		if (!pixelsModified)
+			pixelsModified = true;
+	}
+
+	/**
+	 * Turns the modifications of single pixels into a modification.
+	 * 
+	 * @return the number of modifications
+	 */
+	private long countModifications() {
+		if (pixelsModified) {
+			pixelsModified = false;
+			return MODIFICATIONS.incrementAndGet(this);
+		}
+		return modifications;
+	}
+
+	/**
+	 * Tells that the pixels have been modified, as setModified does.
+	 * 
+	 * @return the number of modifications, this one included
+	 */
+	protected final long addModification() {
+		ALL_MODIFICATIONS.incrementAndGet();
+		return MODIFICATIONS.incrementAndGet(this);
+	}
+
+	/**
+	 * Gets the number of modifications of all the images made through
+	 * setModified, or through the setters of the BooleanImage which keep their
+	 * modified pixels. Other single pixel modifications are not counted.
+	 * 
+	 * @return the number of modifications of all the images
+	 */
+	public static long getAllModificationCount() {
+		return ALL_MODIFICATIONS.get();
+	}
+
+	/**
+	 * Gets the number of modifications of the pixels, which tells whether
+	 * something computed from them is out of date.
+	 * 
+	 * @return the number of modifications, -1 if the pixel array has been
+	 *         given out and may be modified without notice
+	 */
+	public final long getModificationCount() {
+		long res = countModifications();
+		return shared ? -1 : res;
+	}
+
+	/**
+	 * Gets the statistics of the pixels, computed in a single pass and kept
+	 * until the pixels are modified. The pixel mask is not considered.
+	 * 
+	 * @return the statistics, in the representation of the image type
+	 */
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = statistics;
+		long stamp = countModifications();
+		if (res == null || shared || statisticsModifications != stamp) {
+			res = computeStatistics();
+			statistics = res;
+			statisticsModifications = stamp;
+		}
+		return res;
+	}
+
+	/**
+	 * Computes the statistics of the pixels. Subclasses computing them in
+	 * another representation than the double one also override the
+	 * minimumDouble and maximumDouble methods.
+	 * 
+	 * @return the statistics of the double values of the pixels
+	 */
+	protected ImageStatistics computeStatistics() {
+		ImageStatistics res = new ImageStatistics(bdim, false);
+		for (int p = 0; p < size(); p++)
+			res.add(p % bdim, getPixelDouble(p));
+		return res;
+	}
+
 	/**
 	 * Convert coordinate in the XYZTB system in the internal linear coordinate system.
 	 * @param x
@@ -3417,6 +3526,26 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 		else this.mask=new MaskStack();
 	}
 	
+	/**
+	 * Get the mask stack of this image compiled for its dimensions, to look up
+	 * the presence of pixels in constant time. It is compiled again only when
+	 * the mask stack has been modified.
+	 * @return the compiled mask
+	 */
+	public final CompiledMask getCompiledMask() {
+		return mask.compile(xdim, ydim, zdim, tdim, bdim);
+	}
+
+	/**
+	 * Tells whether no pixel is masked, so that the mask checks can be skipped
+	 * entirely. It is the case without masks as well as when the masks cover
+	 * the whole image.
+	 * @return true if every pixel is present
+	 */
+	public boolean isUnmasked() {
+		return mask == null || getCompiledMask().isFull();
+	}
+
 	/**
 	 * Test if pixel at given location is under mask or not
 	 * @param loc linear location of pixel
@@ -3424,12 +3553,33 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 */
 	public boolean isPresent(int loc)
 	{
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled() && compiled.isLinear())
+			return compiled.isPresent(loc);
 		return mask.isInMask(loc);
 		
 	}
 	public boolean isPresent(long loc){
 		return isPresent((int)loc);
 	}
+
+	/**
+	 * Find the first pixel not masked from a given location, so that present
+	 * pixels are iterated without testing the masked ones one by one
+	 * @param loc linear location where the search starts
+	 * @return linear location of the first present pixel at or after loc, -1
+	 *         if there is none
+	 */
+	public int nextPresent(int loc)
+	{
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled() && compiled.isLinear())
+			return compiled.nextPresent(loc);
+		for (int size = size(); loc < size; loc++)
+			if (isPresent(loc))
+				return loc;
+		return -1;
+	}
 	
 	/**
 	 * Test if pixel at given location is under mask or not
@@ -3438,7 +3588,7 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 */
 	public boolean isPresent(Pixel p)
 	{
-		return mask.isInMask(p.x,p.y,p.z,p.t,p.b);
+		return isPresent(p.x,p.y,p.z,p.t,p.b);
 	}
 	
 	/**
@@ -3458,6 +3608,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 */
 
 	public final boolean isPresent(int x, int y, int z, int t, int b) {
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,z,t,b);
 		return mask.isInMask(x,y,z,t,b);
 	}
 
@@ -3470,6 +3623,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXY( int x, int y ) { 
 
 	//	if ( this.isOutOfBoundsXY( x,y ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,0,0,0);
 		return mask.isInMaskXY( x,y );
 	}
 
@@ -3483,6 +3639,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYZ( int x, int y, int z ) { 
 
 	//	if ( this.isOutOfBoundsXYZ( x,y,z ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,z,0,0);
 		return mask.isInMaskXYZ(x,y,z);
 	}
 
@@ -3496,6 +3655,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYB( int x, int y, int b ) { 
 
 	//	if ( this.isOutOfBoundsXYB( x,y,b ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,0,0,b);
 		return mask.isInMaskXYB(x,y,b);
 	}
 
@@ -3510,6 +3672,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYT(int x, int y, int t) { 
 
 	//	if ( this.isOutOfBoundsXYT( x,y,t ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,0,t,0);
 		return mask.isInMaskXYT(x,y,t);
 	}
 
@@ -3526,6 +3691,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYZT( int x, int y, int z, int t ) { 
 
 	//	if ( this.isOutOfBoundsXYZT( x,y,z,t ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,z,t,0);
 		return mask.isInMaskXYZT( x,y,z,t );
 	}
 
@@ -3541,6 +3709,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYZB( int x, int y, int z, int b ) { 
 
 	//	if ( this.isOutOfBoundsXYZB( x,y,z,b ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,z,0,b);
 		return mask.isInMaskXYZB( x,y,z,b );
 	}
 
@@ -3556,6 +3727,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYTB( int x, int y, int t, int b ) { 
 
 	//	if ( this.isOutOfBoundsXYTB( x,y,t,b ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,0,t,b);
 		return mask.isInMaskXYTB( x,y,t,b );
 	}
 
@@ -3572,6 +3746,9 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	public final boolean isPresentXYZTB( int x, int y, int z, int t, int b ) { 
 
 	//	if ( this.isOutOfBoundsXYZTB( x,y,z,t,b ) ) return false;
+		CompiledMask compiled = getCompiledMask();
+		if (compiled.isCompiled())
+			return compiled.isPresent(x,y,z,t,b);
 		return mask.isInMaskXYZTB( x,y,z,t,b );
 	}
 	
@@ -3580,6 +3757,8 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	 * @return number of pixels not currently masked
 	 */
 	public int getNumberOfPresentPixel() {
+		if (isUnmasked())
+			return size();
 		int nb = 0;
 		for(int i=0;i<size();i++)
 			if (isPresent(i))
@@ -3744,6 +3923,25 @@ public abstract class Image implements Serializable, Mask, Iterable<Pixel>, Disp
 	}
 
 	
+	/**
+	 * Returns a cursor over the present pixels of this image, giving runs of
+	 * linear indices line by line instead of a Pixel for each pixel
+	 * @return the cursor
+	 */
+	public final SpanCursor spans() {
+		return new SpanCursor( this );
+	}
+
+	/**
+	 * Returns a cursor over the present pixels of a band of this image, giving
+	 * runs of linear indices line by line instead of a Pixel for each pixel
+	 * @param b channel number
+	 * @return the cursor
+	 */
+	public final SpanCursor spans( int b ) {
+		return new SpanCursor( this,b );
+	}
+
 	private ImageIteratorXY myIteratorXY=null;
 	
 	
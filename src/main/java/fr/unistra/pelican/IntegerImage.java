@@ -4,6 +4,8 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import fr.unistra.pelican.util.ImageStatistics;
+
 /** This class represents an integer valued image
  * Range for an integer pixel is [Integer.MIN_VALUE; Integer.MAX_VALUE]
  * @author PELICAN team
@@ -98,6 +100,42 @@ public class IntegerImage extends Image implements Serializable
 	}
 	
 	
+	/**
+	 * Gets the pixel array (not a copy !), use it at your own risk.
+	 * @return	the pixel array
+	 */
+
+	public int[] getPixelsUnsafe()
+	{
+		shared = true;
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to write it, without giving it out
+	 * for good. The cached statistics are dropped when the array is given, so
+	 * the caller must have written it before they are computed again, or else
+	 * call setModified once it has written it.
+	 * @return	the pixel array
+	 */
+
+	public int[] getPixelArray()
+	{
+		setModified();
+		return pixels;
+	}
+
+	/**
+	 * Gets the pixel array (not a copy !) to read it, the cached statistics
+	 * are kept: the caller must not write it, see getPixelArray.
+	 * @return	the pixel array
+	 */
+
+	public int[] getReadOnlyPixelArray()
+	{
+		return pixels;
+	}
+
 	/**
 	 * Sets the pixels to the copy of the given array
 	 * @param	values	pixel array to copy
@@ -106,6 +144,7 @@ public class IntegerImage extends Image implements Serializable
 	public void setPixels(int[] values)
 	{
 		pixels = (int[])values.clone();
+		setModified();
 	}
 
 	/**
@@ -116,6 +155,7 @@ public class IntegerImage extends Image implements Serializable
 	public void fill(int b)
 	{
 		Arrays.fill(pixels, b);
+		setModified();
 	}
 
 	@Override
@@ -364,23 +404,27 @@ public class IntegerImage extends Image implements Serializable
 	@Override
 	public void setPixelDouble(int loc, double value) {
 		pixels[loc] = doubleToInt(value);
+		setPixelModified();
 		//pixels[loc] = (int)((value - 0.5) * doubleToInt); 
 	}
 
 	@Override
 	public void setPixelInt(int loc, int value) {		
 		pixels[loc] = value;
+		setPixelModified();
 	}
 
 	@Override
 	public void setPixelByte(int loc, int value) {
 		pixels[loc] = unsignedByteToInt(value);
+		setPixelModified();
 		//pixels[loc] = (value  + Byte.MIN_VALUE) << 24;
 	}
 
 	@Override
 	public void setPixelBoolean(int loc, boolean value) {
 		pixels[loc]= booleanToInt(value);
+		setPixelModified();
 		//pixels[loc] = value ? Integer.MAX_VALUE : 0;
 	}
 
@@ -414,11 +458,7 @@ public class IntegerImage extends Image implements Serializable
 	 * 		the integer representation of the minimum
 	 */
 	public int minimum(){
-		int val = Integer.MAX_VALUE;
-		for (int p = 0; p < size(); p++)
-			if (getPixelInt(p) < val)
-				val = getPixelInt(p);
-		return val;
+		return (int) Math.min(Integer.MAX_VALUE, getStatistics().getMinimum());
 	}
 	
 	/**
@@ -427,11 +467,7 @@ public class IntegerImage extends Image implements Serializable
 	 * 		the integer representation of the maximum
 	 */
 	public int maximum(){
-		int val = Integer.MIN_VALUE;
-		for (int p = 0; p < size(); p++)
-			if (getPixelInt(p) > val)
-				val = getPixelInt(p);
-		return val;
+		return (int) Math.max(Integer.MIN_VALUE, getStatistics().getMaximum());
 	}
 	
 	/**
@@ -442,11 +478,7 @@ public class IntegerImage extends Image implements Serializable
 	 * 		the integer representation of the minimum in the specified band
 	 */
 	public int minimum(int band){
-		int val = Integer.MAX_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelInt(p) < val)
-				val = getPixelInt(p);
-		return val;
+		return (int) Math.min(Integer.MAX_VALUE, getStatistics().getMinimum(band));
 	}
 	
 	/**
@@ -457,11 +489,26 @@ public class IntegerImage extends Image implements Serializable
 	 * 		the integer representation of the maximum in the specified band
 	 */
 	public int maximum(int band){
-		int val = Integer.MIN_VALUE;
-		for (int p = band; p < size(); p+=this.getBDim())
-			if (getPixelInt(p) > val)
-				val = getPixelInt(p);
-		return val;
+		return (int) Math.max(Integer.MIN_VALUE, getStatistics().getMaximum(band));
+	}
+
+	@Override
+	protected ImageStatistics computeStatistics() {
+		return ImageStatistics.compute(size(), bdim, false,
+			new ImageStatistics.Kernel() {
+				public void add(ImageStatistics statistics, int from, int to) {
+					statistics.addInts(pixels, from, to);
+				}
+			}, 0);
+	}
+
+	@Override
+	public double volume() {
+		if (!isUnmasked())
+			return super.volume();
+		ImageStatistics statistics = getStatistics();
+		return intToDouble * statistics.getSum() + intToDoubleOffset
+			* statistics.getCount();
 	}
 	
 	/**
@@ -500,7 +547,7 @@ public class IntegerImage extends Image implements Serializable
 	{
 		boolean[] isLabelUsed = new boolean[this.maximumInt()+1];
 		Arrays.fill(isLabelUsed, false);
-		if(this.getMask()==null||this.getMask().isEmpty())
+		if(this.isUnmasked())
 		{
 			for(int i=0;i<this.size();i++)
 			{
@@ -4,15 +4,19 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.largeImages.BooleanUnit;
 import fr.unistra.pelican.util.largeImages.ByteUnit;
 import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.SourceFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -35,6 +39,16 @@ public class LargeBooleanImage extends BooleanImage implements
 	 */
 	private transient File fichier;
 
+	/**
+	 * Channel opened on the working file, through which units are mapped
+	 */
+	private transient FileChannel channel;
+
+	/**
+	 * File from which the units are read until they are modified
+	 */
+	private transient SourceFile sourceFile;
+
 	/**
 	 * Stores number of pixels in the Image
 	 */
@@ -46,7 +60,7 @@ public class LargeBooleanImage extends BooleanImage implements
 	private int unitDim;
 
 	/**
-	 * Indicates the length of a serialized unit
+	 * Indicates the length of an unit in the working file
 	 */
 	protected long unitLength;
 
@@ -58,25 +72,13 @@ public class LargeBooleanImage extends BooleanImage implements
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
-	private transient HashMap<Integer, Unit> unitMap;
+	private transient ConcurrentHashMap<Integer, Unit> unitMap;
 
 	/**
 	 * Memory id given by the LargeImageMemoryManager
 	 */
 	private transient int memoryId;
 
-	/**
-	 * unitId is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitId;
-
-	/**
-	 * unitLoc is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitLoc;
-
 	/**
 	 * Long version of xdim
 	 */
@@ -107,7 +109,7 @@ public class LargeBooleanImage extends BooleanImage implements
 	 */
 	public LargeBooleanImage() {
 		super();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
 	}
 
@@ -301,7 +303,7 @@ public class LargeBooleanImage extends BooleanImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.BOOLEAN_DATALENGTH);
 	}
 
 	@Override
@@ -349,11 +351,11 @@ public class LargeBooleanImage extends BooleanImage implements
 	 */
 	private boolean getPixel(long loc) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		BooleanUnit currentUnit = this.getAnUnit((int) unitId);
-		return currentUnit.getPixel((int) unitLoc);
+		BooleanUnit currentUnit = this.getAnUnit(unitId);
+		return currentUnit.getPixel(unitLoc);
 	}
 
 	@Override
@@ -450,6 +452,26 @@ public class LargeBooleanImage extends BooleanImage implements
 		this.fichier = fichier;
 	}
 
+	@Override
+	public FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public SourceFile getSourceFile() {
+		return this.sourceFile;
+	}
+
+	@Override
+	public void setSourceFile(SourceFile source) {
+		this.sourceFile = source;
+	}
+
 	/**
 	 * Sets the pixels at the given location to the given value as boolean
 	 * 
@@ -460,15 +482,15 @@ public class LargeBooleanImage extends BooleanImage implements
 	 */
 	private void setPixel(long loc, boolean value) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		LargeImageMemoryManager.getInstance().lock.lock();
+		// the lock keeps the unit from being discarded while it is written
+		LargeImageMemoryManager.getInstance().getLock(this.memoryId).lock();
 		try{
-			BooleanUnit currentUnit = this.getAnUnit((int) unitId);
-			currentUnit.setPixel((int) unitLoc, value);
+			this.getAnUnit(unitId).setPixel(unitLoc, value);
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			LargeImageMemoryManager.getInstance().getLock(this.memoryId).unlock();
 		}
 	}
 
@@ -649,6 +671,8 @@ public class LargeBooleanImage extends BooleanImage implements
 
 	@Override
 	public int getSum() {
+		if (isUnmasked())
+			return (int) getStatistics().getSum();
 		System.err.println("Someone getSum on a largeImage, result may not be accurate");
 		int sum = 0;
 		for (long i = 0; i < size; i++) {
@@ -704,7 +728,7 @@ public class LargeBooleanImage extends BooleanImage implements
 	}
 
 	@Override
-	public HashMap<Integer, Unit> getMap() {
+	public Map<Integer, Unit> getMap() {
 		return this.unitMap;
 	}
 
@@ -721,8 +745,9 @@ public class LargeBooleanImage extends BooleanImage implements
 	
 	private void readObject(ObjectInputStream in) throws IOException,ClassNotFoundException {
 		in.defaultReadObject();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
+		this.computeUnitLength();
 		this.createFile();
 		BooleanUnit unit;
 		for(int u=0;u<this.getUnitDim();u++){
@@ -738,6 +763,14 @@ public class LargeBooleanImage extends BooleanImage implements
 		}
 	}
 	
+	@Override
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = new ImageStatistics(this.getBDim(), false);
+		for (int u = 0; u < this.getUnitDim(); u++)
+			res.add(this.getAnUnit(u).getStatistics());
+		return res;
+	}
+
 	@Override
 	public boolean maximum(){
 		for (int u = 0; u < this.getUnitDim(); u++)
@@ -4,13 +4,17 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.largeImages.ByteUnit;
 import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.SourceFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -33,6 +37,16 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	 */
 	private transient File fichier;
 
+	/**
+	 * Channel opened on the working file, through which units are mapped
+	 */
+	private transient FileChannel channel;
+
+	/**
+	 * File from which the units are read until they are modified
+	 */
+	private transient SourceFile sourceFile;
+
 	/**
 	 * Stores number of pixels in the Image
 	 */
@@ -44,7 +58,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	private int unitDim;
 
 	/**
-	 * Indicates the length of a serialized unit
+	 * Indicates the length of an unit in the working file
 	 */
 	protected long unitLength;
 
@@ -56,25 +70,13 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
-	protected transient HashMap<Integer, Unit> unitMap;
+	protected transient ConcurrentHashMap<Integer, Unit> unitMap;
 
 	/**
 	 * Memory id given by the LargeImageMemoryManager
 	 */
 	protected transient int memoryId;
 
-	/**
-	 * unitId is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitId;
-
-	/**
-	 * unitLoc is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitLoc;
-
 	/**
 	 * Long version of xdim
 	 */
@@ -105,7 +107,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	 */
 	public LargeByteImage() {
 		super();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
 	}
 
@@ -295,6 +297,26 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 		this.fichier = file;
 	}
 
+	@Override
+	public FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public SourceFile getSourceFile() {
+		return this.sourceFile;
+	}
+
+	@Override
+	public void setSourceFile(SourceFile source) {
+		this.sourceFile = source;
+	}
+
 	@Override
 	public int getUnitSize() {
 		return 1 << this.getUnitPowerSize();
@@ -381,11 +403,11 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	 */
 	private byte getPixel(long loc) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		ByteUnit currentUnit = this.getAnUnit((int) unitId);
-		return currentUnit.getPixel((int) unitLoc);
+		ByteUnit currentUnit = this.getAnUnit(unitId);
+		return currentUnit.getPixel(unitLoc);
 	}
 
 	@Override
@@ -438,15 +460,15 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	 */
 	private void setPixel(long loc, byte value) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		LargeImageMemoryManager.getInstance().lock.lock();
+		// the lock keeps the unit from being discarded while it is written
+		LargeImageMemoryManager.getInstance().getLock(this.memoryId).lock();
 		try{
-			ByteUnit currentUnit = this.getAnUnit((int) unitId);
-			currentUnit.setPixel((int) unitLoc, value);
+			this.getAnUnit(unitId).setPixel(unitLoc, value);
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			LargeImageMemoryManager.getInstance().getLock(this.memoryId).unlock();
 		}
 	}
 
@@ -666,7 +688,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.BYTE_DATALENGTH);
 	}
 
 	@Override
@@ -675,7 +697,7 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	}
 
 	@Override
-	public HashMap<Integer, Unit> getMap() {
+	public Map<Integer, Unit> getMap() {
 		return this.unitMap;
 	}
 
@@ -692,8 +714,9 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	private void readObject(ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
+		this.computeUnitLength();
 		this.createFile();
 		ByteUnit unit;
 		for(int u=0;u<this.getUnitDim();u++){
@@ -710,55 +733,11 @@ public class LargeByteImage extends ByteImage implements LargeImageInterface {
 	}
 
 	@Override
-	public byte maximum(){
-		byte val = Byte.MIN_VALUE;
-		byte currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum();
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public byte minimum(){
-		byte val = Byte.MAX_VALUE;
-		byte currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum();
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public byte maximum(int band){
-		byte val = Byte.MIN_VALUE;
-		byte currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum(band);
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-	
-	@Override
-	public byte minimum(int band){
-		byte val = Byte.MAX_VALUE;
-		byte currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum(band);
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = new ImageStatistics(this.getBDim(), true);
+		for (int u = 0; u < this.getUnitDim(); u++)
+			res.add(this.getAnUnit(u).getStatistics());
+		return res;
 	}
 	/*
 	 * Image Methods
@@ -4,12 +4,16 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.largeImages.DoubleUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.SourceFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -32,6 +36,16 @@ public class LargeDoubleImage extends DoubleImage implements
 	 */
 	private transient File fichier;
 
+	/**
+	 * Channel opened on the working file, through which units are mapped
+	 */
+	private transient FileChannel channel;
+
+	/**
+	 * File from which the units are read until they are modified
+	 */
+	private transient SourceFile sourceFile;
+
 	/**
 	 * Stores number of pixels in the Image
 	 */
@@ -43,7 +57,7 @@ public class LargeDoubleImage extends DoubleImage implements
 	private int unitDim;
 
 	/**
-	 * Indicates the length of a serialized unit
+	 * Indicates the length of an unit in the working file
 	 */
 	protected long unitLength;
 
@@ -55,25 +69,13 @@ public class LargeDoubleImage extends DoubleImage implements
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
-	private transient HashMap<Integer, Unit> unitMap;
+	private transient ConcurrentHashMap<Integer, Unit> unitMap;
 
 	/**
 	 * Memory id given by the LargeImageMemoryManager
 	 */
 	private transient int memoryId;
 
-	/**
-	 * unitId is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitId;
-
-	/**
-	 * unitLoc is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitLoc;
-
 	/**
 	 * Long version of xdim
 	 */
@@ -104,7 +106,7 @@ public class LargeDoubleImage extends DoubleImage implements
 	 */
 	public LargeDoubleImage() {
 		super();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
 	}
 
@@ -289,6 +291,26 @@ public class LargeDoubleImage extends DoubleImage implements
 		this.fichier = file;
 	}
 
+	@Override
+	public FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public SourceFile getSourceFile() {
+		return this.sourceFile;
+	}
+
+	@Override
+	public void setSourceFile(SourceFile source) {
+		this.sourceFile = source;
+	}
+
 	@Override
 	public int getUnitSize() {
 		return 1 << this.getUnitPowerSize();
@@ -375,11 +397,11 @@ public class LargeDoubleImage extends DoubleImage implements
 	 */
 	private double getPixel(long loc) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		DoubleUnit currentUnit = this.getAnUnit((int) unitId);
-		return currentUnit.getPixel((int) unitLoc);
+		DoubleUnit currentUnit = this.getAnUnit(unitId);
+		return currentUnit.getPixel(unitLoc);
 	}
 
 	@Override
@@ -438,14 +460,15 @@ public class LargeDoubleImage extends DoubleImage implements
 	 */
 	private void setPixel(long loc, double value) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		LargeImageMemoryManager.getInstance().lock.lock();
+		// the lock keeps the unit from being discarded while it is written
+		LargeImageMemoryManager.getInstance().getLock(this.memoryId).lock();
 		try{
-			this.getAnUnit((int) unitId).setPixel((int) unitLoc, value);
+			this.getAnUnit(unitId).setPixel(unitLoc, value);
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			LargeImageMemoryManager.getInstance().getLock(this.memoryId).unlock();
 		}
 	}
 
@@ -593,7 +616,7 @@ public class LargeDoubleImage extends DoubleImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.DOUBLE_DATALENGTH);
 	}
 
 	@Override
@@ -614,7 +637,7 @@ public class LargeDoubleImage extends DoubleImage implements
 	}
 
 	@Override
-	public HashMap<Integer, Unit> getMap() {
+	public Map<Integer, Unit> getMap() {
 		return this.unitMap;
 	}
 
@@ -631,8 +654,9 @@ public class LargeDoubleImage extends DoubleImage implements
 	private void readObject(ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
+		this.computeUnitLength();
 		this.createFile();
 		DoubleUnit unit;
 		for(int u=0;u<this.getUnitDim();u++){
@@ -649,81 +673,21 @@ public class LargeDoubleImage extends DoubleImage implements
 	}
 
 	@Override
-	public double minimum(){
-		double val = Double.MAX_VALUE;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum();
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public double maximum(){
-		double val = Double.NEGATIVE_INFINITY;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum();
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public double minimum(int band){
-		double val = Double.MAX_VALUE;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum(band);
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public double maximum(int band){
-		double val = Double.NEGATIVE_INFINITY;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum(band);
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
+	public double minimumIgnoreNonRealValues(int band){
+		return Math.min(Double.MAX_VALUE, getStatistics().getFiniteMinimum(band));
 	}
 
 	@Override
-	public double minimumIgnoreNonRealValues(int band){
-		double val = Double.MAX_VALUE;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimumDoubleIgnoreNonRealValues(band);
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
+	public double maximumIgnoreNonRealValues(int band){
+		return getStatistics().getFiniteMaximum(band);
 	}
 
 	@Override
-	public double maximumIgnoreNonRealValues(int band){
-		double val = Double.NEGATIVE_INFINITY;
-		double currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximumDoubleIgnoreNonRealValues(band);
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = new ImageStatistics(this.getBDim(), false);
+		for (int u = 0; u < this.getUnitDim(); u++)
+			res.add(this.getAnUnit(u).getStatistics());
+		return res;
 	}
 
 	/*
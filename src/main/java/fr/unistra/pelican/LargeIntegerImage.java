@@ -4,14 +4,18 @@ import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.largeImages.ByteUnit;
 import fr.unistra.pelican.util.largeImages.DoubleUnit;
 import fr.unistra.pelican.util.largeImages.IntegerUnit;
 import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.SourceFile;
 import fr.unistra.pelican.util.largeImages.Unit;
 
 /**
@@ -34,6 +38,16 @@ public class LargeIntegerImage extends IntegerImage implements
 	 */
 	private transient File fichier;
 
+	/**
+	 * Channel opened on the working file, through which units are mapped
+	 */
+	private transient FileChannel channel;
+
+	/**
+	 * File from which the units are read until they are modified
+	 */
+	private transient SourceFile sourceFile;
+
 	/**
 	 * Stores number of pixels in the Image
 	 */
@@ -45,7 +59,7 @@ public class LargeIntegerImage extends IntegerImage implements
 	private int unitDim;
 
 	/**
-	 * Indicates the length of a serialized unit
+	 * Indicates the length of an unit in the working file
 	 */
 	protected long unitLength;
 
@@ -57,25 +71,13 @@ public class LargeIntegerImage extends IntegerImage implements
 	/**
 	 * Hashmap which contains the soft references to the units
 	 */
-	private transient HashMap<Integer, Unit> unitMap;
+	private transient ConcurrentHashMap<Integer, Unit> unitMap;
 
 	/**
 	 * Memory id given by the LargeImageMemoryManager
 	 */
 	private transient int memoryId;
 
-	/**
-	 * unitId is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitId;
-
-	/**
-	 * unitLoc is a field in order to avoid creating it at each call of getPixel
-	 * or setPixel
-	 */
-	private transient long unitLoc;
-
 	/**
 	 * Long version of xdim
 	 */
@@ -106,7 +108,7 @@ public class LargeIntegerImage extends IntegerImage implements
 	 */
 	public LargeIntegerImage() {
 		super();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
 	}
 
@@ -300,7 +302,7 @@ public class LargeIntegerImage extends IntegerImage implements
 
 	@Override
 	public void computeUnitLength() {
-		LargeImageUtil.computeUnitLength(this);
+		LargeImageUtil.computeUnitLength(this, LargeImageUtil.INTEGER_DATALENGTH);
 	}
 
 	@Override
@@ -349,11 +351,11 @@ public class LargeIntegerImage extends IntegerImage implements
 	 */
 	private int getPixel(long loc) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		IntegerUnit currentUnit = this.getAnUnit((int) unitId);
-		return currentUnit.getPixel((int) unitLoc);
+		IntegerUnit currentUnit = this.getAnUnit(unitId);
+		return currentUnit.getPixel(unitLoc);
 	}
 
 	@Override
@@ -456,6 +458,26 @@ public class LargeIntegerImage extends IntegerImage implements
 		this.fichier = fichier;
 	}
 
+	@Override
+	public FileChannel getChannel() {
+		return this.channel;
+	}
+
+	@Override
+	public void setChannel(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	@Override
+	public SourceFile getSourceFile() {
+		return this.sourceFile;
+	}
+
+	@Override
+	public void setSourceFile(SourceFile source) {
+		this.sourceFile = source;
+	}
+
 	/**
 	 * Sets the pixels at the given location to the given value as integer
 	 * 
@@ -466,15 +488,15 @@ public class LargeIntegerImage extends IntegerImage implements
 	 */
 	private void setPixel(long loc, int value) {
 
-		unitId = loc >> getUnitPowerSize();
-		unitLoc = loc & ((1 << getUnitPowerSize()) - 1);
+		int unitId = (int) (loc >> getUnitPowerSize());
+		int unitLoc = (int) (loc & ((1 << getUnitPowerSize()) - 1));
 
-		LargeImageMemoryManager.getInstance().lock.lock();
-		try{	
-			IntegerUnit currentUnit = this.getAnUnit((int) unitId);
-			currentUnit.setPixel((int) unitLoc, value);
+		// the lock keeps the unit from being discarded while it is written
+		LargeImageMemoryManager.getInstance().getLock(this.memoryId).lock();
+		try{
+			this.getAnUnit(unitId).setPixel(unitLoc, value);
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			LargeImageMemoryManager.getInstance().getLock(this.memoryId).unlock();
 		}
 	}
 
@@ -762,7 +784,7 @@ public class LargeIntegerImage extends IntegerImage implements
 	}
 
 	@Override
-	public HashMap<Integer, Unit> getMap() {
+	public Map<Integer, Unit> getMap() {
 		return this.unitMap;
 	}
 
@@ -779,8 +801,9 @@ public class LargeIntegerImage extends IntegerImage implements
 	private void readObject(ObjectInputStream in) throws IOException,
 			ClassNotFoundException {
 		in.defaultReadObject();
-		this.unitMap = new HashMap<Integer, Unit>();
+		this.unitMap = new ConcurrentHashMap<Integer, Unit>();
 		this.memoryId = LargeImageMemoryManager.getInstance().addImage(this);
+		this.computeUnitLength();
 		this.createFile();
 		IntegerUnit unit;
 		for(int u=0;u<this.getUnitDim();u++){
@@ -797,55 +820,11 @@ public class LargeIntegerImage extends IntegerImage implements
 	}
 
 	@Override
-	public int maximum(){
-		int val = Integer.MIN_VALUE;
-		int currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum();
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public int minimum(){
-		int val = Integer.MAX_VALUE;
-		int currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum();
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public int maximum(int band){
-		int val = Integer.MIN_VALUE;
-		int currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).maximum(band);
-			if (currVal>val){
-				val = currVal;
-			}
-		}
-		return val;
-	}
-
-	@Override
-	public int minimum(int band){
-		int val = Integer.MAX_VALUE;
-		int currVal;
-		for (int u = 0; u < this.getUnitDim(); u++){
-			currVal =  this.getAnUnit(u).minimum(band);
-			if (currVal<val){
-				val = currVal;
-			}
-		}
-		return val;
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = new ImageStatistics(this.getBDim(), false);
+		for (int u = 0; u < this.getUnitDim(); u++)
+			res.add(this.getAnUnit(u).getStatistics());
+		return res;
 	}
 	
 	/*
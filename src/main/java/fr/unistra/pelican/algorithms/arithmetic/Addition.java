@@ -4,11 +4,13 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.InvalidParameterException;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
 import fr.unistra.pelican.util.mask.MaskStack;
 
 /**
  * Compute the addition beetwen two images, inputImage1 + inputImage2. The
  * outputImage format is the same as inputImage1. No check is done on value.
+ * The images are processed tile by tile on all the available processors.
  *
  *	Mask management (by witz) :
  *		- computation occurs as if masked pixels were at 0.
@@ -59,19 +61,22 @@ public class Addition extends Algorithm {
 		mask.push( inputImage2.getMask() );
 		outputImage.setMask( mask );
 
-		int size = inputImage1.size();
-		boolean isHere1, isHere2;
-		double val1, val2;
-		for ( int i = 0 ; i < size ; ++i ) { 
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				boolean isHere1, isHere2;
+				double val1, val2;
+				for ( int i = start ; i < end ; ++i ) { 
 
-			isHere1 = inputImage1.isPresent(i);
-			isHere2 = inputImage2.isPresent(i);
-			if ( isHere1 ) val1 = inputImage1.getPixelDouble(i);
-			else val1 = 0.0;
-			if ( isHere2 ) val2 = inputImage2.getPixelDouble(i);
-			else val2 = 0.0;
-			outputImage.setPixelDouble(i, val1 + val2 );
-		}
+					isHere1 = inputImage1.isPresent(i);
+					isHere2 = inputImage2.isPresent(i);
+					if ( isHere1 ) val1 = inputImage1.getPixelDouble(i);
+					else val1 = 0.0;
+					if ( isHere2 ) val2 = inputImage2.getPixelDouble(i);
+					else val2 = 0.0;
+					outputImage.setPixelDouble(i, val1 + val2 );
+				}
+			}
+		}, inputImage1, inputImage2, outputImage);
 	}
 
 	/**
@@ -4,6 +4,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
 import fr.unistra.pelican.util.mask.MaskStack;
 
 /**
@@ -12,6 +13,7 @@ import fr.unistra.pelican.util.mask.MaskStack;
  * 
  * Works on double precision.
  * The outputImage format is DoubleImage
+ * The images are processed tile by tile on all the available processors.
  * 
  * @author  ?, Benjamin Perret
  */
@@ -58,16 +60,25 @@ public class LinearCombination extends Algorithm {
 		outputImage = new DoubleImage(inputImage[0].getXDim(), inputImage[0]
 				.getYDim(), inputImage[0].getZDim(), inputImage[0].getTDim(),
 				inputImage[0].getBDim());
-		int size = inputImage[0].size();
-		int nb = inputImage.length;
-		double val;
-		for (int i = 0; i < size; ++i) {
-			val = 0;
-			for (int k = 0; k < nb; k++)
-				if ( inputImage[k].isPresent(i) )
-				val += inputImage[k].getPixelDouble(i) * coef[k];
-			outputImage.setPixelDouble(i, val);
-		}
+		final int nb = inputImage.length;
+		final double[] weights = new double[nb];
+		for (int k = 0; k < nb; k++)
+			weights[k] = coef[k];
+		Image[] images = new Image[nb + 1];
+		System.arraycopy(inputImage, 0, images, 0, nb);
+		images[nb] = outputImage;
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				double val;
+				for (int i = start; i < end; ++i) {
+					val = 0;
+					for (int k = 0; k < nb; k++)
+						if ( inputImage[k].isPresent(i) )
+						val += inputImage[k].getPixelDouble(i) * weights[k];
+					outputImage.setPixelDouble(i, val);
+				}
+			}
+		}, images);
 
 		MaskStack mask = new MaskStack( MaskStack.AND );
 		for ( int k = 0 ; k < nb ; k++ ) mask.push( this.inputImage[k].getMask() );
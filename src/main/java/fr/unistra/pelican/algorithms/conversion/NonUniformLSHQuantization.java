@@ -1,7 +1,7 @@
 package fr.unistra.pelican.algorithms.conversion;
 
 import fr.unistra.pelican.*;
-import fr.unistra.pelican.util.Pixel;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 
 
@@ -32,9 +32,12 @@ public class NonUniformLSHQuantization extends Algorithm {
 
 		this.output = this.input.copyImage( false );
 		this.output.setMask( this.input.getMask() );
-		for ( Pixel px : this.input ) { 
+		SpanCursor cursor = this.input.spans( 0 );
+		while ( cursor.next() ) 
+		for ( int p = cursor.getStart() ; p < cursor.getEnd() ; p += cursor.getStep() ) { 
 
-			int[] lsh = this.input.getVectorPixelXYZTByte( px.x,px.y,px.z,px.t );
+			int x = cursor.getX( p ), y = cursor.getY(), z = cursor.getZ(), t = cursor.getT();
+			int[] lsh = this.input.getVectorPixelXYZTByte( x,y,z,t );
 			// L
 			if ( lsh[0] < 0.5 ) 
 				 lsh[0] = new Double( 1. / ( 1 + Math.exp( -m*( lsh[0]-ll ) ) ) ).intValue();
@@ -43,7 +46,7 @@ public class NonUniformLSHQuantization extends Algorithm {
 			lsh[1] = new Double( 1. / ( 1 + Math.exp( -k*( lsh[1]-s0 ) ) ) ).intValue();
 			// H
 			;
-			this.output.setVectorPixelXYZTByte( px.x,px.y,px.z,px.t, lsh );
+			this.output.setVectorPixelXYZTByte( x,y,z,t, lsh );
 		}
 	}
 
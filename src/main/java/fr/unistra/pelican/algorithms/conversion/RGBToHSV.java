@@ -4,6 +4,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
 
 /**
  * This class realizes the transformation of a tristumulus RGB image into a
@@ -51,8 +52,6 @@ public class RGBToHSV extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		int size = input.size();
-
 		if (input.getBDim() != 3)
 			throw new AlgorithmException(
 					"The input must be a tristumulus RGB image");
@@ -61,59 +60,64 @@ public class RGBToHSV extends Algorithm {
 		this.output.setMask( this.input.getMask() );
 		output.setColor(true);
 
-		for (int i = 0; i < size; i=i+3) {			
-			int R = input.getPixelByte(i);
-			int G = input.getPixelByte(i+1);
-			int B = input.getPixelByte(i+2);
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				// pixels are processed by triplets starting in the tile
+				for (int i = start + (3 - start % 3) % 3; i < end; i=i+3) {			
+					int R = input.getPixelByte(i);
+					int G = input.getPixelByte(i+1);
+					int B = input.getPixelByte(i+2);
 
-			// normalise to [0,1]
-			double rN = R * 0.003921;
-			double gN = G * 0.003921;
-			double bN = B * 0.003921;
+					// normalise to [0,1]
+					double rN = R * 0.003921;
+					double gN = G * 0.003921;
+					double bN = B * 0.003921;
 
-			double H, S, V;
+					double H, S, V;
 
-			double min = rN;
-			if (gN < min)
-				min = gN;
-			if (bN < min)
-				min = bN;
+					double min = rN;
+					if (gN < min)
+						min = gN;
+					if (bN < min)
+						min = bN;
 
-			double max = rN;
-			if (gN > max)
-				max = gN;
-			if (bN > max)
-				max = bN;
+					double max = rN;
+					if (gN > max)
+						max = gN;
+					if (bN > max)
+						max = bN;
 
-			S = H = 0.0;
-			V = max;
+					S = H = 0.0;
+					V = max;
 
-			double delta = max - min;
+					double delta = max - min;
 
-			if (max != 0 && delta != 0.0) {
-				S = delta / max;
+					if (max != 0 && delta != 0.0) {
+						S = delta / max;
 
-				if (rN == max)
-					H = 60 * (gN - bN) / delta;
+						if (rN == max)
+							H = 60 * (gN - bN) / delta;
 
-				else if (gN == max)
-					H = 60 * (bN - rN) / delta + 120;
+						else if (gN == max)
+							H = 60 * (bN - rN) / delta + 120;
 
-				else
-					H = 60 * (rN - gN) / delta + 240; // bN == max
+						else
+							H = 60 * (rN - gN) / delta + 240; // bN == max
 
-					if (H < 0.0)
-						H += 360;
-					if (H > 360)
-						H -= 360;
+							if (H < 0.0)
+								H += 360;
+							if (H > 360)
+								H -= 360;
 
-					H = H / 360.0;
-			}
+							H = H / 360.0;
+					}
 
-			output.setPixelDouble(i, H);
-			output.setPixelDouble(i+1, S);
-			output.setPixelDouble(i+2, V);
-		}
+					output.setPixelDouble(i, H);
+					output.setPixelDouble(i+1, S);
+					output.setPixelDouble(i+2, V);
+				}
+			}
+		}, 2, input, output);
 		if (scaleToByte)
 			output=scaleToByte(output);
 
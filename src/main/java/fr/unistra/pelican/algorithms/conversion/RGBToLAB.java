@@ -0,0 +1,111 @@
+package fr.unistra.pelican.algorithms.conversion;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.colour.ColourConversion;
+
+/**
+ * This class realizes the transformation of a tristumulus RGB image into a CIE
+ * LAB image. It gives the values of RGBToXYZ followed by XYZToLAB, but both
+ * are done in a single pass without the intermediate XYZ image.
+ *
+ * For byte images, an interpolation step can be given: LAB values are then
+ * only computed on a grid of RGB values and interpolated for the others, which
+ * is much faster but approximate.
+ *
+ *	MASK MANAGEMENT :
+ *	- input's mask becomes output's mask.
+ *	- no modification on color calculation.
+ *
+ * @see ColourConversion
+ * @author PELICAN team.
+ *
+ */
+
+public class RGBToLAB extends Algorithm {
+
+	/**
+	 * Input parameter
+	 */
+	public Image input;
+
+	/**
+	 * Output parameter
+	 */
+	public Image output;
+
+	/**
+	 * Scales the result into a ByteImage as XYZToLAB does
+	 */
+	public boolean scaleToByte = false;
+
+	/**
+	 * Distance between the RGB values on which LAB values are computed, it
+	 * must divide 255 : 0 for an exact conversion
+	 */
+	public int interpolationStep = 0;
+
+	/**
+	 * Number of threads used by the conversion : 0 for all the available
+	 * processors, 1 for a sequential conversion.
+	 */
+	public int parallelism = 0;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public RGBToLAB() {
+		super.inputs = "input";
+		super.options = "scaleToByte,interpolationStep,parallelism";
+		super.outputs = "output";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		if (input.getBDim() != 3)
+			throw new AlgorithmException(
+					"The input must be a tristumulus RGB image");
+
+		output = ColourConversion.RGB_TO_LAB.convert(input, interpolationStep,
+				parallelism);
+		if (scaleToByte)
+			output = XYZToLAB.scaleToByte(output);
+	}
+
+	/**
+	 * This class realizes the transformation of a tristumulus RGB image into a
+	 * CIE LAB image.
+	 *
+	 * @param input
+	 *            Tristumulus RGB image.
+	 * @return A double valued CIE LAB image.
+	 */
+	public static Image exec(Image input) {
+		return (Image) new RGBToLAB().process(input);
+	}
+
+	/**
+	 * This class realizes the transformation of a tristumulus RGB image into a
+	 * CIE LAB image.
+	 *
+	 * @param input
+	 *            Tristumulus RGB image.
+	 * @param scaleToByte
+	 *            scales the result into a ByteImage
+	 * @param interpolationStep
+	 *            distance between the RGB values on which LAB values are
+	 *            computed, 0 for an exact conversion
+	 * @return A CIE LAB image.
+	 */
+	public static Image exec(Image input, boolean scaleToByte,
+			int interpolationStep) {
+		return (Image) new RGBToLAB().process(input, scaleToByte,
+				interpolationStep);
+	}
+}
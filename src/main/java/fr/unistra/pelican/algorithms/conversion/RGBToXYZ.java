@@ -3,6 +3,7 @@ package fr.unistra.pelican.algorithms.conversion;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.colour.ColourConversion;
 
 /**
  * This class realizes the transformation of a tristumulus RGB image into a
@@ -30,6 +31,12 @@ public class RGBToXYZ extends Algorithm {
 	 */
 	public Image output;
 
+	/**
+	 * Number of threads used by the conversion : 0 for all the available
+	 * processors, 1 for a sequential conversion.
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Constructor
 	 * 
@@ -38,6 +45,7 @@ public class RGBToXYZ extends Algorithm {
 
 		super();
 		super.inputs = "input";
+		super.options = "parallelism";
 		super.outputs = "output";
 		
 	}
@@ -48,29 +56,12 @@ public class RGBToXYZ extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		int size = input.size();
-
 		if (input.getBDim() != 3)
 			throw new AlgorithmException(
 					"The input must be a tristumulus RGB image");
 
-		output = input.newDoubleImage();
-		this.output.setMask( this.input.getMask() );
-		output.setColor(true);
-		
-		for(int i=0;i<size;i=i+3)
-		{
-			int R = input.getPixelByte(i);
-			int G = input.getPixelByte(i+1);
-			int B = input.getPixelByte(i+2);
-
-			double[] xyz = convert(R, G, B);
-
-			output.setPixelDouble(i, xyz[0]);
-			output.setPixelDouble(i+1, xyz[1]);
-			output.setPixelDouble(i+2, xyz[2]);
-			
-		}		
+		// same values as convert, computed by chunks of pixels
+		output = ColourConversion.RGB_TO_XYZ.convert(input, 0, parallelism);
 	}
 
 	/**
@@ -4,6 +4,7 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.ByteImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.colour.ColourConversion;
 
 /**
  * This class realizes the transformation of a tristumulus double valued CIE XYZ
@@ -30,6 +31,12 @@ public class XYZToLAB extends Algorithm {
 	public Image output;
 
 	public boolean scaleToByte=false;
+
+	/**
+	 * Number of threads used by the conversion : 0 for all the available
+	 * processors, 1 for a sequential conversion.
+	 */
+	public int parallelism = 0;
 	
 	/**
 	 * Constructor
@@ -37,7 +44,7 @@ public class XYZToLAB extends Algorithm {
 	 */
 	public XYZToLAB() {
 		super.inputs = "input";
-		super.options="scaleToByte";
+		super.options="scaleToByte,parallelism";
 		super.outputs = "output";
 		
 	}
@@ -48,28 +55,12 @@ public class XYZToLAB extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		int size = input.size();
-
 		if (input.getBDim() != 3)
 			throw new AlgorithmException(
 					"The input must be a tristumulus XYZ image");
 
-		output = input.newDoubleImage();
-		this.output.setMask( this.input.getMask() );
-		output.setColor(true);
-
-		for(int i=0;i<size;i=i+3)
-		{
-			double X = input.getPixelDouble(i);
-			double Y = input.getPixelDouble(i+1);
-			double Z = input.getPixelDouble(i+2);
-
-			double[] lab = convert(X, Y, Z);
-
-			output.setPixelDouble(i, lab[0]);
-			output.setPixelDouble(i+1, lab[1]);
-			output.setPixelDouble(i+2, lab[2]);
-		}
+		// same values as convert, computed by chunks of pixels
+		output = ColourConversion.XYZ_TO_LAB.convert(input, 0, parallelism);
 		if (scaleToByte)
 			output=scaleToByte(output);
 	}
@@ -123,7 +114,7 @@ public class XYZToLAB extends Algorithm {
 	 * 
 	 * @return resulting ByteImage
 	 */
-	private static Image scaleToByte(Image lab) {
+	static Image scaleToByte(Image lab) {
 		ByteImage bimg = new ByteImage(lab, false);
 		int size = bimg.size();
 		double f = 2.55; // 255.0/100.0
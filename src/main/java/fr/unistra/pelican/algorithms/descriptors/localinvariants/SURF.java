@@ -59,6 +59,14 @@ public class SURF extends Descriptor {
 
 	public static final int DESCRIPTOR_LENGTH = 64;
 
+	/**	Gaussian weights of the orientation samples, in units of the scale.
+	 *	The 2d gaussian is separable, so the weight of a sample is the product
+	 *	of the weights of its coordinates. */
+	private static final double[] ORIENTATION_WEIGHTS = SURF.gaussianWeights( 6,2.5 );
+
+	/**	Gaussian weights of the descriptor samples, in units of the scale. */
+	private static final double[] DESCRIPTOR_WEIGHTS = SURF.gaussianWeights( 10,3.3 );
+
 	  /////////////////
 	 // CONSTRUCTOR //
 	/////////////////
@@ -169,12 +177,14 @@ public class SURF extends Descriptor {
 		ArrayList<Double> resY = new ArrayList<Double> ();
 		ArrayList<Double> resAngle = new ArrayList<Double> ();
 
+		double norm = 1. / ( 2.*Math.PI * 6.25*s*s );
+
 		// calculate haar responses for points within radius of 6*scale
 		for( int i = -6*s; i <= 6*s; i += s ) 
 		for( int j = -6*s; j <= 6*s; j += s ) 
 			if ( i*i + j*j  < 36*s*s ) { // check if current sample point is within the circle
 
-				gauss = gaussian( new Double(i),new Double(j), 2.5*s );
+				gauss = norm * ORIENTATION_WEIGHTS[ i/s+6 ] * ORIENTATION_WEIGHTS[ j/s+6 ];
 				double gaussHaarX = gauss * this.haarX( r+j,c+i,4*s );
 				double gaussHaarY = gauss * this.haarY( r+j,c+i,4*s );
 				resX.add( new Double( gaussHaarX ) );
@@ -256,6 +266,7 @@ public class SURF extends Descriptor {
 		int x = Tools.cvround( ipt.x );
 		int y = Tools.cvround( ipt.y );  
 		double scale = SURF.getScale( ipt );
+		double norm = 1. / ( 2.*Math.PI * 3.3*scale * 3.3*scale );
 		double co = Math.cos( SURF.getOrientation( ipt ) );
 		double si = Math.sin( SURF.getOrientation( ipt ) );
 		Double[] desc = new Double[ DESCRIPTOR_LENGTH + 3 ];
@@ -278,7 +289,7 @@ public class SURF extends Descriptor {
 				        int sample_y = Tools.cvround( y + ( l*scale*co + k*scale*si ) );
 
 						// Get the gaussian weighted x and y responses
-						gauss = this.gaussian( k*scale, l*scale, 3.3*scale );  
+						gauss = norm * DESCRIPTOR_WEIGHTS[ k+10 ] * DESCRIPTOR_WEIGHTS[ l+10 ];
 						rx = gauss * this.haarX( sample_y, sample_x, 2*scale );
 						ry = gauss * this.haarY( sample_y, sample_x, 2*scale );
 
@@ -334,6 +345,7 @@ public class SURF extends Descriptor {
 		int scale = (int)Math.round( SURF.getScale( ipt ) );
 		int y = Tools.cvround( ipt.y );  
 		int x = Tools.cvround( ipt.x );
+		double norm = 1. / ( 2.*Math.PI * 3.3*scale * 3.3*scale );
 /////
 		double[] desc = new double[ DESCRIPTOR_LENGTH + 3 ];
 
@@ -353,7 +365,7 @@ public class SURF extends Descriptor {
 					for ( int l = j ; l < j+5; ++l ) { 
 
 						// get Gaussian weighted x and y responses
-						gauss = this.gaussian( k*scale, l*scale, 3.3*scale );  
+						gauss = norm * DESCRIPTOR_WEIGHTS[ k+10 ] * DESCRIPTOR_WEIGHTS[ l+10 ];
 						rx = gauss * this.haarX( k*scale+y, l*scale+x, 2*scale );
 						ry = gauss * this.haarY( k*scale+y, l*scale+x, 2*scale );
 
@@ -391,6 +403,19 @@ public class SURF extends Descriptor {
 
 
 
+	/**	Calculate the values of the 1d gaussian exp(-k^2/(2*sig^2)) at the
+	 *	integers k of [-radius,radius].
+	 *	@param radius
+	 *	@param sig
+	 *	@return the values, from -radius
+	 */
+	static double[] gaussianWeights( int radius, double sig ) { 
+		double[] weights = new double[ 2*radius+1 ];
+		for ( int k = -radius ; k <= radius ; k++ )
+			weights[ k+radius ] = Math.exp( -(k*k) / (2.*sig*sig) );
+		return weights;
+	}
+
 	/**	Calculate the value of the 2d gaussian at x,y
 	 *	@param x
 	 *	@param y
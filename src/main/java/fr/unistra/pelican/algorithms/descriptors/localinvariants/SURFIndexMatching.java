@@ -0,0 +1,118 @@
+package fr.unistra.pelican.algorithms.descriptors.localinvariants;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.util.Keypoint;
+import fr.unistra.pelican.util.data.KeypointArrayData;
+import fr.unistra.pelican.util.data.KeypointIndex;
+
+
+
+/**
+ *	Matches the SURF keypoints of an image with the ones of a prebuilt
+ *	<tt>KeypointIndex</tt>, which may hold the keypoints of a whole catalogue of
+ *	images. Each keypoint is matched as by <tt>KeypointArraySURFDistance.match</tt>,
+ *	but the nearest descriptors are searched in the index instead of being compared
+ *	one by one, and the keypoints are matched on several threads.
+ *
+ *	Besides the matched keypoints, the number of matches with each indexed data
+ *	is given, so that the most similar images of the catalogue are found.
+ *
+ *	@see KeypointIndex
+ *	@see SURF
+ *
+ *	@author PELICAN team.
+ */
+public class SURFIndexMatching extends Algorithm {
+
+	  ////////////
+	 // INPUTS //
+	////////////
+
+	/**	Keypoints computed by SURF on the query image. */
+	public KeypointArrayData query;
+
+	/**	Index of the keypoints the query is matched with. */
+	public KeypointIndex index;
+
+	  /////////////
+	 // OUTPUTS //
+	/////////////
+
+	/**	The keypoints of the query which matched, and their echoes in the index. */
+	public HashMap<Keypoint,Keypoint> matches;
+
+	/**	Number of keypoints of the query matched with each indexed data. */
+	public int[] votes;
+
+	  /////////////
+	 // OPTIONS //
+	/////////////
+
+	/**	A match is kept if the squared distance to the nearest descriptor is below
+	 *	ratio times the one to the second nearest. */
+	public double ratio = KeypointIndex.DEFAULT_RATIO;
+
+	/**	Number of descriptors compared to each keypoint, 0 for an exact search. */
+	public int checks = KeypointIndex.DEFAULT_CHECKS;
+
+	/**	Number of threads : 0 for all the available processors, 1 for a sequential matching. */
+	public int parallelism = 0;
+
+	  /////////////////
+	 // CONSTRUCTOR //
+	/////////////////
+
+	public SURFIndexMatching() {
+
+		super.inputs = "query,index";
+		super.options = "ratio,checks,parallelism";
+		super.outputs = "matches,votes";
+	}
+
+	  /////////////////////
+	 // "LAUNCH" METHOD //
+	/////////////////////
+
+	@SuppressWarnings("unchecked")
+	public void launch() throws AlgorithmException {
+
+		ArrayList<Keypoint> values = ( ArrayList<Keypoint> ) this.query.getValues();
+		int[] entries = this.index.match( this.query,this.ratio,this.checks,this.parallelism );
+		this.matches = new HashMap<Keypoint,Keypoint>();
+		this.votes = new int[ this.index.getNumberOfData() ];
+		for ( int i = 0 ; i < entries.length ; i++ ) {
+
+			if ( entries[i] < 0 ) continue;
+			this.matches.put( values.get( i ),this.index.getKeypoint( entries[i] ) );
+			this.votes[ this.index.getDataId( entries[i] ) ]++;
+		}
+	}
+
+	  ////////////////////
+	 // "EXEC" METHODS //
+	////////////////////
+
+	/**	Matches SURF keypoints with an index.
+	 *	@param query Keypoints computed by SURF.
+	 *	@param index Index of the keypoints the query is matched with.
+	 *	@return The keypoints of the query which matched, and their echoes in the index.
+	 */
+	@SuppressWarnings("unchecked")
+	public static HashMap<Keypoint,Keypoint> exec( KeypointArrayData query, KeypointIndex index ) {
+		return ( HashMap<Keypoint,Keypoint> ) new SURFIndexMatching().process( query,index );
+	}
+
+	/**	Counts the keypoints of a query matched with each data of an index.
+	 *	@param query Keypoints computed by SURF.
+	 *	@param index Index of the keypoints the query is matched with.
+	 *	@return The number of matches with each indexed data.
+	 */
+	public static int[] votes( KeypointArrayData query, KeypointIndex index ) {
+		return ( int[] ) new SURFIndexMatching().processOne( 1,query,index );
+	}
+
+}
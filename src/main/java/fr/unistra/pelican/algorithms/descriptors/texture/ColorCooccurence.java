@@ -5,6 +5,7 @@ import fr.unistra.pelican.algorithms.conversion.RGBToGray;
 import fr.unistra.pelican.algorithms.statistics.Cooccurence;
 import fr.unistra.pelican.util.Pixel;
 import fr.unistra.pelican.util.data.MatrixData;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 
 /**	
@@ -111,12 +112,15 @@ public class ColorCooccurence extends Descriptor {
 								4 );
 
 		System.out.println( "begin: " + this.input.size() );
-		for( Pixel p : this.input ) { 
+		SpanCursor cursor = this.input.spans();
+		while ( cursor.next() ) 
+		for( int p = cursor.getStart() ; p < cursor.getEnd() ; p++ ) { 
 
+			int x = cursor.getX( p ), y = cursor.getY(), z = cursor.getZ(), t = cursor.getT();
 			for ( int i = 0 ; i < 4 ; i++ ) { 
 
-				int m = this.scan( p, this.cmasks[i] );
-				this.P.setPixelXYZTBByte( p.x,p.y,p.z,p.t,i, m );
+				int m = this.scan( x,y,z,t, this.cmasks[i] );
+				this.P.setPixelXYZTBByte( x,y,z,t,i, m );
 			}
 		}
 
@@ -132,14 +136,14 @@ public class ColorCooccurence extends Descriptor {
 
 
 
-	private int scan( Pixel p, char cmask ) { 
+	private int scan( int x, int y, int z, int t, char cmask ) { 
 
 		double p2,p3,p4;
 		int m;
 
 		switch ( cmask ) {
 
-			// doing : pi = this.input.getPixelXYZTDouble( p.x+dx,p.y+dx,p.z,p.t );
+			// doing : pi = this.input.getPixelXYZTDouble( x+dx,y+dx,z,t );
 			// can throw an ArrayIndexOutOfBoundsException when pi is a "beyond borders" pixel.
 			// so we take care of border pixels by setting them to 0 by default.
 			//
@@ -150,45 +154,45 @@ public class ColorCooccurence extends Descriptor {
 			// then how should cases of configurations with only 2 or 3 pixels equal be resolved ?
 
 			case 'c': // upper left convolution mask
-//				try { p1 = this.input.getPixelXYZTDouble( p.x-1,p.y-1,p.z,p.t ); }
+//				try { p1 = this.input.getPixelXYZTDouble( x-1,y-1,z,t ); }
 //				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = 0; }
-				try { p2 = this.input.getPixelXYZTDouble( p.x,p.y-1,p.z,p.t ); }
+				try { p2 = this.input.getPixelXYZTDouble( x,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = 0; }
-				try { p3 = this.input.getPixelXYZTDouble( p.x-1,p.y,p.z,p.t ); }
+				try { p3 = this.input.getPixelXYZTDouble( x-1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = 0; }
-				p4 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
+				p4 = this.input.getPixelXYZTDouble( x,y,z,t );
 //				m = scanc( p1,p2,p3,0 );
 				break;
 
 			case 'd': // upper right convolution mask
-//				try { p1 = this.input.getPixelXYZTDouble( p.x,p.y-1,p.z,p.t ); }
+//				try { p1 = this.input.getPixelXYZTDouble( x,y-1,z,t ); }
 //				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = 0; }
-				try { p2 = this.input.getPixelXYZTDouble( p.x+1,p.y-1,p.z,p.t ); }
+				try { p2 = this.input.getPixelXYZTDouble( x+1,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = 0; }
-				p3 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p4 = this.input.getPixelXYZTDouble( p.x+1,p.y,p.z,p.t ); }
+				p3 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p4 = this.input.getPixelXYZTDouble( x+1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = 0; }
 //				m = scand( p1,p2,0,p4 );
 				break;
 
 			case 'e': // bottom left convolution mask
-//				try { p1 = this.input.getPixelXYZTDouble( p.x-1,p.y,p.z,p.t ); }
+//				try { p1 = this.input.getPixelXYZTDouble( x-1,y,z,t ); }
 //				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = 0; }
-				p2 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p3 = this.input.getPixelXYZTDouble( p.x-1,p.y+1,p.z,p.t ); }
+				p2 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p3 = this.input.getPixelXYZTDouble( x-1,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = 0; }
-				try { p4 = this.input.getPixelXYZTDouble( p.x,p.y+1,p.z,p.t ); }
+				try { p4 = this.input.getPixelXYZTDouble( x,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = 0; }
 //				m = scane( p1,0,p3,p4 );
 				break;
 
 			case 'f': // bottom right convolution mask
-//				p1 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p2 = this.input.getPixelXYZTDouble( p.x+1,p.y,p.z,p.t ); }
+//				p1 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p2 = this.input.getPixelXYZTDouble( x+1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = 0; }
-				try { p3 = this.input.getPixelXYZTDouble( p.x,p.y+1,p.z,p.t ); }
+				try { p3 = this.input.getPixelXYZTDouble( x,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = 0; }
-				try { p4 = this.input.getPixelXYZTDouble( p.x+1,p.y+1,p.z,p.t ); }
+				try { p4 = this.input.getPixelXYZTDouble( x+1,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = 0; }
 				break;
 
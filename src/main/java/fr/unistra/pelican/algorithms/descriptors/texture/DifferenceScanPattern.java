@@ -2,9 +2,9 @@ package fr.unistra.pelican.algorithms.descriptors.texture;
 
 import fr.unistra.pelican.*;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
-import fr.unistra.pelican.util.Pixel;
 import fr.unistra.pelican.util.Tools;
 import fr.unistra.pelican.util.data.DoubleArrayData;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 
 
@@ -50,9 +50,11 @@ public class DifferenceScanPattern extends Descriptor {
 		this.values = new Double[6];
 		for ( int i = 0 ; i < 6 ; i++ ) this.values[i] = new Double( 0. );
 
-		for( Pixel p : this.input ) 
-			for ( Character c : this.cmasks ) 
-				this.scan( p,c );
+		SpanCursor cursor = this.input.spans();
+		while ( cursor.next() ) 
+			for ( int p = cursor.getStart() ; p < cursor.getEnd() ; p++ ) 
+				for ( Character c : this.cmasks ) 
+					this.scan( cursor.getX( p ),cursor.getY(),cursor.getZ(),cursor.getT(),c );
 
 		// Is this the right way to normalize ? I seems so, but..
 		this.values = Tools.vectorNormalize( this.values );
@@ -65,54 +67,54 @@ public class DifferenceScanPattern extends Descriptor {
 
 
 
-	private void scan( Pixel p, char cmask ) { 
+	private void scan( int x, int y, int z, int t, char cmask ) { 
 
 		double p1,p2,p3,p4;
 
 		switch ( cmask ) {
 
-			// doing : pi = this.input.getPixelXYZTDouble( p.x+dx,p.y+dx,p.z,p.t );
+			// doing : pi = this.input.getPixelXYZTDouble( x+dx,y+dx,z,t );
 			// can throw an ArrayIndexOutOfBoundsException when pi is a "beyond borders" pixel.
 			// so we take care of border pixels by setting them to the same values as 
 			// their nearest "inside image" 4-neighbour.
 
 			case 'c': // upper left convolution mask
-				p4 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p3 = this.input.getPixelXYZTDouble( p.x-1,p.y,p.z,p.t ); }
+				p4 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p3 = this.input.getPixelXYZTDouble( x-1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = p4; }
-				try { p1 = this.input.getPixelXYZTDouble( p.x-1,p.y-1,p.z,p.t ); }
+				try { p1 = this.input.getPixelXYZTDouble( x-1,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = p3; }
-				try { p2 = this.input.getPixelXYZTDouble( p.x,p.y-1,p.z,p.t ); }
+				try { p2 = this.input.getPixelXYZTDouble( x,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = p4; }
 				break;
 
 			case 'd': // upper right convolution mask
-				p3 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p4 = this.input.getPixelXYZTDouble( p.x+1,p.y,p.z,p.t ); }
+				p3 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p4 = this.input.getPixelXYZTDouble( x+1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = p3; }
-				try { p1 = this.input.getPixelXYZTDouble( p.x,p.y-1,p.z,p.t ); }
+				try { p1 = this.input.getPixelXYZTDouble( x,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = p3; }
-				try { p2 = this.input.getPixelXYZTDouble( p.x+1,p.y-1,p.z,p.t ); }
+				try { p2 = this.input.getPixelXYZTDouble( x+1,y-1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = p4; }
 				break;
 
 			case 'e': // bottom left convolution mask
-				p2 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p1 = this.input.getPixelXYZTDouble( p.x-1,p.y,p.z,p.t ); }
+				p2 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p1 = this.input.getPixelXYZTDouble( x-1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p1 = p2; }
-				try { p3 = this.input.getPixelXYZTDouble( p.x-1,p.y+1,p.z,p.t ); }
+				try { p3 = this.input.getPixelXYZTDouble( x-1,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = p1; }
-				try { p4 = this.input.getPixelXYZTDouble( p.x,p.y+1,p.z,p.t ); }
+				try { p4 = this.input.getPixelXYZTDouble( x,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = p2; }
 				break;
 
 			case 'f': // bottom right convolution mask
-				p1 = this.input.getPixelXYZTDouble( p.x,p.y,p.z,p.t );
-				try { p2 = this.input.getPixelXYZTDouble( p.x+1,p.y,p.z,p.t ); }
+				p1 = this.input.getPixelXYZTDouble( x,y,z,t );
+				try { p2 = this.input.getPixelXYZTDouble( x+1,y,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p2 = p1; }
-				try { p3 = this.input.getPixelXYZTDouble( p.x,p.y+1,p.z,p.t ); }
+				try { p3 = this.input.getPixelXYZTDouble( x,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p3 = p1; }
-				try { p4 = this.input.getPixelXYZTDouble( p.x+1,p.y+1,p.z,p.t ); }
+				try { p4 = this.input.getPixelXYZTDouble( x+1,y+1,z,t ); }
 				catch ( ArrayIndexOutOfBoundsException ex ) { p4 = p2; }
 				break;
 
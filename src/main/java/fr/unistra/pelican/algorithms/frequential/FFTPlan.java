@@ -0,0 +1,109 @@
+package fr.unistra.pelican.algorithms.frequential;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared 1D complex FFT of a given length. The factorization and the twiddle
+ * factors of each length are computed once and kept, so that they are reused
+ * by all the transforms of that length, from any thread: a plan has no other
+ * state.
+ *
+ * The data are interleaved: Re(d[i]) = data[i0 + stride*i] and Im(d[i]) =
+ * data[i0 + stride*i + 1]. Transforms are computed in place and are not
+ * normalized.
+ *
+ * @author PELICAN team.
+ *
+ */
+public class FFTPlan {
+
+	/**
+	 * Plans already computed, by length
+	 */
+	private static final ConcurrentHashMap<Integer, FFTPlan> plans = new ConcurrentHashMap<Integer, FFTPlan>();
+
+	/**
+	 * Factors handled by a specialized pass
+	 */
+	private static final int[] FAST_FACTORS = { 2, 3, 5, 7 };
+
+	/**
+	 * Mixed radix FFT holding the twiddle factors
+	 */
+	private final ComplexDoubleFFT_Mixed fft;
+
+	private FFTPlan(int n) {
+		fft = new ComplexDoubleFFT_Mixed(n);
+	}
+
+	/**
+	 * Gets the plan of a length, computing it on first use.
+	 *
+	 * @param n
+	 *          length of the transforms
+	 * @return the shared plan
+	 */
+	public static FFTPlan get(int n) {
+		FFTPlan plan = plans.get(n);
+		if (plan == null) {
+			plans.putIfAbsent(n, new FFTPlan(n));
+			plan = plans.get(n);
+		}
+		return plan;
+	}
+
+	/**
+	 * Length of the transforms
+	 *
+	 * @return
+	 */
+	public int getLength() {
+		return fft.n;
+	}
+
+	/**
+	 * Forward transform, in place.
+	 *
+	 * @param data
+	 *          interleaved complex data
+	 * @param i0
+	 *          index of the real part of the first value
+	 * @param stride
+	 *          distance between two values, at least 2
+	 */
+	public void transform(double[] data, int i0, int stride) {
+		fft.transform(data, i0, stride);
+	}
+
+	/**
+	 * Inverse transform, in place and not divided by the length.
+	 *
+	 * @param data
+	 *          interleaved complex data
+	 * @param i0
+	 *          index of the real part of the first value
+	 * @param stride
+	 *          distance between two values, at least 2
+	 */
+	public void backtransform(double[] data, int i0, int stride) {
+		fft.backtransform(data, i0, stride);
+	}
+
+	/**
+	 * Smallest length greater or equal to n whose prime factors are 2, 3, 5
+	 * and 7, for which transforms are fast.
+	 *
+	 * @param n
+	 * @return the length
+	 */
+	public static int goodSize(int n) {
+		for (int m = Math.max(n, 1);; m++) {
+			int r = m;
+			for (int f : FAST_FACTORS)
+				while (r % f == 0)
+					r /= f;
+			if (r == 1)
+				return m;
+		}
+	}
+}
@@ -54,7 +54,7 @@ public class RegionMeanSizePerFrameHistogram extends Algorithm {
 		Arrays.fill(regionSize,0);
 		Arrays.fill(frameMin,Integer.MAX_VALUE);
 		Arrays.fill(frameMax,Integer.MIN_VALUE);
-		if(inputSegmentation.getMask()==null||inputSegmentation.getMask().isEmpty())
+		if(inputSegmentation.isUnmasked())
 		{
 			for(int t=0;t<tDim;t++)
 				for(int z=0;z<zDim;z++)
@@ -46,7 +46,7 @@ public class RegionSizeHistogram extends Algorithm {
 		int size = inputSegmentation.size();
 		int[] regionSize=new int[numberOfRegions];
 		Arrays.fill(regionSize,0);
-		if(inputSegmentation.getMask()==null||inputSegmentation.getMask().isEmpty())
+		if(inputSegmentation.isUnmasked())
 		{
 			for(int i=0;i<size;i++)
 			{
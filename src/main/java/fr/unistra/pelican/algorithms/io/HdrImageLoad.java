@@ -17,6 +17,12 @@ public class HdrImageLoad extends Algorithm {
 	 */
 	public String filename;
 
+	/**
+	 * (optional) flag to load the image as a large image, for cubes larger
+	 * than the heap
+	 */
+	public boolean large = false;
+
 	/**
 	 * Output parameter
 	 */
@@ -30,6 +36,7 @@ public class HdrImageLoad extends Algorithm {
 
 		super();
 		super.inputs = "filename";
+		super.options = "large";
 		super.outputs = "output";
 		
 	}
@@ -39,7 +46,10 @@ public class HdrImageLoad extends Algorithm {
 		// RawImage source = PicTool.load(filename);
 
 		// output = source.getPelicanImage();
-		output = new HdrReader().getPelicanImage(filename); // TODO utiliser
+		if (large)
+			output = new HdrReader().getLargePelicanImage(filename);
+		else
+			output = new HdrReader().getPelicanImage(filename); // TODO utiliser
 															// plus tard une
 															// méthode statique
 
@@ -53,4 +63,15 @@ public class HdrImageLoad extends Algorithm {
 	public static Image exec(String filename) {
 		return (Image) new HdrImageLoad().process(filename);
 	}
+
+	/**
+	 *  Loads hdr images used in remote sensing, as a large image if required.
+	 * 
+	 * @param filename Filename of the hrd image.
+	 * @param large Flag to load the image as a large image.
+	 * @return The hdr image.
+	 */
+	public static Image exec(String filename, boolean large) {
+		return (Image) new HdrImageLoad().process(filename, large);
+	}
 }
\ No newline at end of file
@@ -209,6 +209,11 @@ public class ImageLoader extends Algorithm {
 			return;
 		}
 
+		if (filename.endsWith("pelr")) {
+			outputImage = PelicanRawImageLoad.exec(filename);
+			return;
+		}
+
 		if (filename.endsWith("pelican") || filename.endsWith("pel")
 			|| filename.endsWith("plc")) {
 			try {
@@ -0,0 +1,274 @@
+package fr.unistra.pelican.algorithms.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.RawImageHeader;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.Unit;
+
+/**
+ * Loads images saved in PELICAN raw format by PelicanRawImageSave.</br>
+ *
+ * Without compression the pixels are mapped from the file: they are copied at
+ * once into the arrays of an image in memory, or, with the large option, the
+ * units of a large image are mapped read only from the file, so that no pixel
+ * is read before it is used. Pixels set on such a large image are written to
+ * its own working file, the loaded file is never modified. A single (z,t)
+ * slice can also be loaded, with or without compression.
+ *
+ * @see fr.unistra.pelican.util.RawImageHeader
+ * @author PELICAN team.
+ */
+public class PelicanRawImageLoad extends Algorithm {
+
+	/**
+	 * Number of pixels mapped at once
+	 */
+	private static final int BLOCK_SIZE = 1 << 24;
+
+	/**
+	 * Filename of the image
+	 */
+	public String filename;
+
+	/**
+	 * (optional) flag to load the image as a large image mapped from the file
+	 */
+	public boolean large = false;
+
+	/**
+	 * (optional) depth of the slice to load, -1 to load the whole image
+	 */
+	public int z = -1;
+
+	/**
+	 * (optional) frame of the slice to load, -1 to load the whole image
+	 */
+	public int t = -1;
+
+	/**
+	 * Loaded image
+	 */
+	public Image output;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public PelicanRawImageLoad() {
+		super.inputs = "filename";
+		super.options = "large,z,t";
+		super.outputs = "output";
+	}
+
+	public void launch() throws AlgorithmException {
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "r");
+			FileChannel channel = file.getChannel();
+			try {
+				RawImageHeader header = RawImageHeader.read(channel);
+				if (z >= 0 || t >= 0)
+					output = loadSlice(header, channel);
+				else if (large)
+					output = (Image) loadLarge(header, channel);
+				else
+					output = loadImage(header, channel);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ex) {
+			throw new AlgorithmException("file reading error with file: " + filename, ex);
+		}
+	}
+
+	/**
+	 * Loads the whole image in memory.
+	 */
+	private Image loadImage(RawImageHeader header, FileChannel channel)
+		throws IOException {
+		Image image = header.newImage(header.zdim, header.tdim);
+		int sliceSize = header.getSliceSize();
+		if (header.layout == RawImageHeader.DEFLATED) {
+			for (int slice = 0; slice < header.getChunkCount(); slice++)
+				inflate(header, channel, slice, image, slice * sliceSize);
+		} else {
+			int size = image.size();
+			int dataLength = header.getDataLength();
+			for (int start = 0; start < size; start += BLOCK_SIZE) {
+				int count = Math.min(BLOCK_SIZE, size - start);
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					header.dataOffset + (long) start * dataLength, (long) count * dataLength);
+				copy(buffer.order(header.order), image, start, count);
+			}
+		}
+		return image;
+	}
+
+	/**
+	 * Loads the (z,t) slice in memory, only its pixels are read.
+	 */
+	private Image loadSlice(RawImageHeader header, FileChannel channel)
+		throws IOException {
+		if (z < 0 || z >= header.zdim || t < 0 || t >= header.tdim)
+			throw new AlgorithmException("Slice (" + z + "," + t
+				+ ") is not in the image of " + header.zdim + "x" + header.tdim
+				+ " slices");
+		Image image = header.newImage(1, 1);
+		int slice = z + header.zdim * t;
+		if (header.layout == RawImageHeader.DEFLATED) {
+			inflate(header, channel, slice, image, 0);
+		} else {
+			int sliceSize = header.getSliceSize();
+			int dataLength = header.getDataLength();
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+				header.dataOffset + (long) slice * sliceSize * dataLength,
+				(long) sliceSize * dataLength);
+			copy(buffer.order(header.order), image, 0, sliceSize);
+		}
+		return image;
+	}
+
+	/**
+	 * Loads the image as a large image. When the file is in native order its
+	 * units are mapped from it until they are modified, otherwise the pixels
+	 * are copied unit by unit into a new working file.
+	 */
+	private LargeImageInterface loadLarge(RawImageHeader header,
+		FileChannel channel) throws IOException {
+		if (header.layout != RawImageHeader.RAW)
+			throw new PelicanException(
+				"A compressed raw image can not be loaded as a large image");
+		LargeImageInterface largeIm = header.newLargeImage();
+		if (header.order == ByteOrder.nativeOrder() || header.getDataLength() == 1) {
+			LargeImageUtil.openFile(largeIm, new File(filename), header.dataOffset);
+			return largeIm;
+		}
+		largeIm.createFile();
+		long end = header.dataOffset + (long) header.xdim * header.ydim
+			* header.zdim * header.tdim * header.bdim * header.getDataLength();
+		long position = header.dataOffset;
+		for (int id = 0; id < largeIm.getUnitDim(); id++) {
+			long length = Math.min(largeIm.getUnitLength(), end - position);
+			ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+				length);
+			Unit unit = largeIm.newUnit();
+			unit.readPixels(buffer.order(header.order));
+			largeIm.setUnit(unit, id, true);
+			position += length;
+		}
+		return largeIm;
+	}
+
+	/**
+	 * Inflates the chunk of a slice into an image.
+	 */
+	private void inflate(RawImageHeader header, FileChannel channel, int slice,
+		Image image, int start) throws IOException {
+		ByteBuffer chunk = ByteBuffer.allocate(header.chunkLengths[slice]);
+		long position = header.chunkOffsets[slice];
+		while (chunk.hasRemaining())
+			if (channel.read(chunk, position + chunk.position()) < 0)
+				throw new AlgorithmException("Truncated raw image file: " + filename);
+		int sliceSize = header.getSliceSize();
+		byte[] pixels = new byte[sliceSize * header.getDataLength()];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(chunk.array());
+			int length = 0;
+			while (length < pixels.length && !inflater.finished())
+				length += inflater.inflate(pixels, length, pixels.length - length);
+			if (length < pixels.length)
+				throw new AlgorithmException("Truncated raw image file: " + filename);
+		} catch (DataFormatException ex) {
+			throw new AlgorithmException("file reading error with file: " + filename, ex);
+		} finally {
+			inflater.end();
+		}
+		copy(ByteBuffer.wrap(pixels).order(header.order), image, start, sliceSize);
+	}
+
+	/**
+	 * Copies pixels from a buffer ordered as the file into an image in memory.
+	 *
+	 * @param buffer
+	 *          pixels from the beginning of the buffer
+	 * @param image
+	 *          image in memory
+	 * @param start
+	 *          index of the first pixel in the image
+	 * @param count
+	 *          number of pixels
+	 */
+	private static void copy(ByteBuffer buffer, Image image, int start, int count) {
+		if (image instanceof ByteImage) {
+			buffer.get(((ByteImage) image).getPixelArray(), start, count);
+		} else if (image instanceof IntegerImage) {
+			buffer.asIntBuffer().get(((IntegerImage) image).getPixelArray(), start,
+				count);
+		} else if (image instanceof DoubleImage) {
+			buffer.asDoubleBuffer().get(((DoubleImage) image).getPixelArray(), start,
+				count);
+		} else {
+			for (int i = 0; i < count; i++)
+				image.setPixelBoolean(start + i, buffer.get(i) != 0);
+			return;
+		}
+		image.setModified();
+	}
+
+	/**
+	 * Loads an image saved in PELICAN raw format in memory.
+	 *
+	 * @param filename
+	 *          Filename of the image
+	 * @return the loaded image
+	 */
+	public static Image exec(String filename) {
+		return (Image) new PelicanRawImageLoad().process(filename);
+	}
+
+	/**
+	 * Loads an image saved in PELICAN raw format, as a large image mapped from
+	 * the file if required.
+	 *
+	 * @param filename
+	 *          Filename of the image
+	 * @param large
+	 *          Flag to load the image as a large image
+	 * @return the loaded image
+	 */
+	public static Image exec(String filename, boolean large) {
+		return (Image) new PelicanRawImageLoad().process(filename, large);
+	}
+
+	/**
+	 * Loads a single (z,t) slice of an image saved in PELICAN raw format.
+	 *
+	 * @param filename
+	 *          Filename of the image
+	 * @param z
+	 *          depth of the slice
+	 * @param t
+	 *          frame of the slice
+	 * @return the slice, as an image whose zdim and tdim are 1
+	 */
+	public static Image exec(String filename, int z, int t) {
+		return (Image) new PelicanRawImageLoad().process(filename, false, z, t);
+	}
+
+}
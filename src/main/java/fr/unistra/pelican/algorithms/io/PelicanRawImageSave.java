@@ -0,0 +1,232 @@
+package fr.unistra.pelican.algorithms.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.DeflaterOutputStream;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.RawImageHeader;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+
+/**
+ * Saves images in PELICAN raw format: a versioned header followed by the
+ * pixels in native order, which PelicanRawImageLoad can map without parsing
+ * them. With compression each (z,t) slice is deflated on its own, so that a
+ * single slice can be loaded.
+ *
+ * @see fr.unistra.pelican.util.RawImageHeader
+ * @author PELICAN team.
+ */
+public class PelicanRawImageSave extends Algorithm {
+
+	/**
+	 * Number of pixels written at once
+	 */
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	/**
+	 * Image to be saved
+	 */
+	public Image input;
+
+	/**
+	 * Filename of the image
+	 */
+	public String filename;
+
+	/**
+	 * (optional) compression flag, the pixels can only be mapped when it is
+	 * false
+	 */
+	public boolean compression = false;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public PelicanRawImageSave() {
+		super.inputs = "input,filename";
+		super.options = "compression";
+		super.outputs = "";
+	}
+
+	public void launch() throws AlgorithmException {
+		RawImageHeader header = RawImageHeader.of(input,
+			compression ? RawImageHeader.DEFLATED : RawImageHeader.RAW);
+		try {
+			RandomAccessFile file = new RandomAccessFile(filename, "rw");
+			FileChannel channel = file.getChannel();
+			try {
+				channel.truncate(0);
+				header.write(channel);
+				if (compression) {
+					writeChunks(header, channel);
+					// the chunk table is now known
+					header.write(channel);
+				} else if (input instanceof LargeImageInterface) {
+					writeUnits(header, channel);
+				} else {
+					writeRaw(header, channel);
+				}
+			} finally {
+				channel.close();
+			}
+		} catch (IOException ex) {
+			throw new AlgorithmException("file writing error with file: " + filename, ex);
+		}
+	}
+
+	/**
+	 * Writes the pixels of an image in memory by blocks.
+	 */
+	private void writeRaw(RawImageHeader header, FileChannel channel)
+		throws IOException {
+		int size = input.size();
+		int dataLength = header.getDataLength();
+		ByteBuffer buffer = ByteBuffer.allocate(Math.min(size, BLOCK_SIZE) * dataLength)
+			.order(ByteOrder.nativeOrder());
+		long position = header.dataOffset;
+		for (int start = 0; start < size; start += BLOCK_SIZE) {
+			int count = Math.min(BLOCK_SIZE, size - start);
+			fill(buffer, start, count);
+			buffer.limit(count * dataLength);
+			position += write(channel, buffer, position);
+		}
+	}
+
+	/**
+	 * Writes the pixels of a large image unit by unit, each unit is written as
+	 * it is stored in the working file of the image.
+	 */
+	private void writeUnits(RawImageHeader header, FileChannel channel)
+		throws IOException {
+		LargeImageInterface largeIm = (LargeImageInterface) input;
+		long end = header.dataOffset + (long) header.xdim * header.ydim
+			* header.zdim * header.tdim * header.bdim * header.getDataLength();
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) largeIm.getUnitLength())
+			.order(ByteOrder.nativeOrder());
+		long position = header.dataOffset;
+		for (int id = 0; id < largeIm.getUnitDim(); id++) {
+			buffer.clear();
+			largeIm.getAnUnit(id).writePixels(buffer);
+			// the last unit is not full of pixels
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			position += write(channel, buffer, position);
+		}
+	}
+
+	/**
+	 * Writes each (z,t) slice in its own deflated chunk and records the chunks
+	 * in the header.
+	 */
+	private void writeChunks(RawImageHeader header, FileChannel channel)
+		throws IOException {
+		int sliceSize = header.getSliceSize();
+		int dataLength = header.getDataLength();
+		ByteBuffer buffer = ByteBuffer.allocate(sliceSize * dataLength).order(
+			ByteOrder.nativeOrder());
+		ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+		long position = header.dataOffset;
+		for (int slice = 0; slice < header.getChunkCount(); slice++) {
+			fill(buffer, (long) slice * sliceSize, sliceSize);
+			chunk.reset();
+			DeflaterOutputStream out = new DeflaterOutputStream(chunk);
+			out.write(buffer.array(), 0, sliceSize * dataLength);
+			out.close();
+			header.chunkOffsets[slice] = position;
+			header.chunkLengths[slice] = chunk.size();
+			position += write(channel, ByteBuffer.wrap(chunk.toByteArray()), position);
+		}
+	}
+
+	/**
+	 * Puts pixels of the input at the beginning of a buffer, as they are
+	 * stored in the images. Arrays are copied at once, the pixels of large
+	 * images are read one by one.
+	 *
+	 * @param buffer
+	 *          buffer in native order
+	 * @param start
+	 *          index of the first pixel
+	 * @param count
+	 *          number of pixels
+	 */
+	private void fill(ByteBuffer buffer, long start, int count) {
+		buffer.clear();
+		boolean array = !(input instanceof LargeImageInterface);
+		if (array && input instanceof ByteImage) {
+			buffer.put(((ByteImage) input).getReadOnlyPixelArray(), (int) start, count);
+		} else if (array && input instanceof IntegerImage) {
+			buffer.asIntBuffer().put(((IntegerImage) input).getReadOnlyPixelArray(),
+				(int) start, count);
+		} else if (array && input instanceof DoubleImage) {
+			buffer.asDoubleBuffer().put(((DoubleImage) input).getReadOnlyPixelArray(),
+				(int) start, count);
+		} else {
+			for (int i = 0; i < count; i++) {
+				long loc = start + i;
+				if (input instanceof ByteImage)
+					buffer.put(i, (byte) (input.getPixelByte(loc) + Byte.MIN_VALUE));
+				else if (input instanceof IntegerImage)
+					buffer.putInt(4 * i, input.getPixelInt(loc));
+				else if (input instanceof DoubleImage)
+					buffer.putDouble(8 * i, input.getPixelDouble(loc));
+				else
+					buffer.put(i, input.getPixelBoolean(loc) ? (byte) 1 : (byte) 0);
+			}
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Writes the remaining bytes of a buffer at the given position.
+	 *
+	 * @return the number of bytes written
+	 */
+	private static int write(FileChannel channel, ByteBuffer buffer, long position)
+		throws IOException {
+		int length = buffer.remaining();
+		int written = 0;
+		while (written < length)
+			written += channel.write(buffer, position + written);
+		return length;
+	}
+
+	/**
+	 * Saves images in PELICAN raw format, without compression.
+	 *
+	 * @param input
+	 *          Image to be saved
+	 * @param filename
+	 *          Filename of the image
+	 */
+	public static void exec(Image input, String filename) {
+		new PelicanRawImageSave().process(input, filename);
+	}
+
+	/**
+	 * Saves images in PELICAN raw format, optionally with each slice
+	 * compressed.
+	 *
+	 * @param input
+	 *          Image to be saved
+	 * @param filename
+	 *          Filename of the image
+	 * @param compression
+	 *          Flag to enable or disable compression
+	 */
+	public static void exec(Image input, String filename, boolean compression) {
+		new PelicanRawImageSave().process(input, filename, compression);
+	}
+
+}
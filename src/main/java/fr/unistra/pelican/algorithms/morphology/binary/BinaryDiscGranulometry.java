@@ -3,12 +3,19 @@ package fr.unistra.pelican.algorithms.morphology.binary;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.spatial.EuclideanDistanceTransform;
 import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
 
 /**
  * Performs a binary granulometry with a disc shaped flat structuring element.
  * 
+ * Without mask, the openings of a 2D image are computed with Euclidean distance
+ * transforms: a pixel remains after the erosion by a disc of radius r if its
+ * squared distance to the background is greater than r^2, and after the
+ * dilation if its squared distance to the eroded image is at most r^2.
+ * 
  * @author S.L.
  */
 
@@ -57,6 +64,12 @@ public class BinaryDiscGranulometry extends Algorithm {
 		int MOMENTX = 0;
 		int MOMENTY = 0;
 
+		// squared distance to the background, the same for every size
+		// (isMasked() is true when the image has no mask)
+		DoubleImage background = null;
+		if ( input.isMasked() && input.getZDim() == 1 )
+			background = EuclideanDistanceTransform.exec( input,true,true,0 );
+
 		// every size
 		for (int i = 0; i < length; i++) {
 			int side=i;
@@ -64,7 +77,9 @@ public class BinaryDiscGranulometry extends Algorithm {
 					.createCircleFlatStructuringElement(side);
 
 			// schnell Hans, schnell!!!
-			Image tmp = BinaryOpening.exec(input, disc);
+			Image tmp;
+			if ( background != null ) tmp = discOpening( background,side );
+			else tmp = BinaryOpening.exec(input, disc);
 
 			for ( int b = 0 ; b < input.getBDim() ; b++ ) { 
 
@@ -79,6 +94,22 @@ public class BinaryDiscGranulometry extends Algorithm {
 		}
 	}
 
+	/**
+	 * Opening by a disc from the squared distances to the background.
+	 */
+	private Image discOpening(DoubleImage background, int radius) { 
+
+		double r2 = (double) radius * radius;
+		BooleanImage eroded = new BooleanImage( input,false );
+		for ( int p = 0 ; p < eroded.size() ; p++ )
+			eroded.setPixelBoolean( p,background.getPixelDouble( p ) > r2 );
+		DoubleImage dist = EuclideanDistanceTransform.exec( eroded,true );
+		BooleanImage opened = new BooleanImage( input,false );
+		for ( int p = 0 ; p < opened.size() ; p++ )
+			opened.setPixelBoolean( p,dist.getPixelDouble( p ) <= r2 );
+		return opened;
+	}
+
 	private double moment(Image img, int channel, int i, int j, int radius) { 
 
 		double d = 0.0;
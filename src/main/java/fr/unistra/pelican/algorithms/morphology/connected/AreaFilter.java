@@ -24,6 +24,9 @@ import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivit
  * 
  * Assumed connectivity is 8 neighborhood, option is here to modify it.
  * 
+ * With a TrivialConnectivity the tree is built as a CompactComponentTree, on several threads, 
+ * other connectivities use BuildComponentTree.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -59,9 +62,14 @@ public class AreaFilter extends Algorithm {
 	 */
 	public TreeType treeType=TreeType.Max;
 	
+	/**
+	 * Number of threads building a compact tree, 0 for all the available processors
+	 */
+	public int parallelism=0;
+	
 	public AreaFilter(){
 		super.inputs="inputImage,size";
-		super.options="treeType,con,monoModaleHyperConnection";
+		super.options="treeType,con,monoModaleHyperConnection,parallelism";
 		super.outputs="outputImage";
 	}
 	
@@ -73,7 +81,10 @@ public class AreaFilter extends Algorithm {
 		if (size<1)
 			throw new AlgorithmException("Size filter must be greater or equal to one.");
 		AreaAttributFilter filter = new AreaAttributFilter(size);
-		ComponentTree root = BuildComponentTree.exec(inputImage, con,treeType);
+		ComponentTree<Double> root;
+		if(con instanceof TrivialConnectivity)
+			root = BuildCompactComponentTree.exec(inputImage, con,treeType,parallelism);
+		else root = BuildComponentTree.exec(inputImage, con,treeType);
 				root = FilterComponentTree.exec(root, new AttributeFilter[]{filter}, FilterStrategy.Min);	
 		outputImage=ReconstructImageFromTree.exec(root);
 	}
@@ -92,6 +103,11 @@ public class AreaFilter extends Algorithm {
 	{
 		return (T)new AreaFilter().process(inputImage,size,treeType,con);
 	}
+	
+	public static <T extends Image> T exec(T inputImage, int size, TreeType treeType,Connectivity3D con, int parallelism)
+	{
+		return (T)new AreaFilter().process(inputImage,size,treeType,con,false,parallelism);
+	}
 
 	public static void main(String [] args){
 		//Image im =ImageLoader.exec("samples/AstronomicalImagesFITS/img1-10.fits");
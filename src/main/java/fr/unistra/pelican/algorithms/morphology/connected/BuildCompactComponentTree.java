@@ -0,0 +1,518 @@
+/**
+ *
+ */
+package fr.unistra.pelican.algorithms.morphology.connected;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.Point3D;
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.attributes.CompactAttribute;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.Connectivity3D;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivity;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ * Build component tree from a monoband image, stored in primitive arrays (see
+ * CompactComponentTree).
+ *
+ * Pixels are sorted by a counting sort on their rank among the levels of the
+ * image (directly on the values of a ByteImage), then the tree is built by
+ * union-find on linear indices, from the leaves to the root (Berger et al.,
+ * "Effective component tree computation with application to pattern
+ * recognition in astronomical imaging", ICIP 2007). Memory is a few int per
+ * pixel, no object is created per pixel nor per node.
+ *
+ * With several threads, the image is cut into strips of lines (of planes for a
+ * 3D image) whose trees are built concurrently, then merged two by two along
+ * the borders of the strips (Wilkinson et al., "Concurrent computation of
+ * attribute filters on shared memory parallel machines", PAMI 2008). The tree
+ * has the same nodes as the one built by a single thread, only the canonical
+ * pixels of the nodes may differ.
+ *
+ * Only the first band of the first frame is used, as in BuildComponentTree.
+ * Only TrivialConnectivity is supported. When the image is not connected with
+ * the given connectivity, the roots of the other components are attached to the
+ * root of the tree.
+ *
+ * @author PELICAN team.
+ */
+public class BuildCompactComponentTree extends Algorithm {
+
+	/**
+	 * TreeType to compute
+	 */
+	public TreeType treeType=TreeType.Max;
+
+	/**
+	 * Input image
+	 */
+	public Image inputImage;
+
+	/**
+	 * Connectivity to use
+	 */
+	public Connectivity3D connectivity;
+
+	/**
+	 * Number of threads, 0 for all the available processors
+	 */
+	public int parallelism=0;
+
+	/**
+	 * Attributes computed on the nodes of the tree
+	 */
+	public CompactAttribute [] attributes=null;
+
+	/**
+	 * Result
+	 */
+	public CompactComponentTree tree;
+
+	/**
+	 * Image dimensions
+	 */
+	private int xdim,ydim,zdim;
+
+	/**
+	 * Offsets of the neighbours
+	 */
+	private Point3D [] neighbours;
+
+	/**
+	 * Greatest distance, as a linear index, to a previous neighbour
+	 */
+	private int maxBack;
+
+	/**
+	 * Rank of the level of each pixel, from the root to the leaves
+	 */
+	private int [] key;
+
+	/**
+	 * Number of distinct ranks
+	 */
+	private int nbKeys;
+
+	/**
+	 * Parent of each pixel
+	 */
+	private int [] parent;
+
+	/**
+	 * Pixels sorted from the root to the leaves
+	 */
+	private int [] sorted;
+
+	/**
+	 * Union-find forest of the processed pixels, -1 for the other ones
+	 */
+	private int [] zpar;
+
+	public BuildCompactComponentTree(){
+		this.inputs="inputImage,connectivity";
+		this.options="treeType,parallelism,attributes";
+		this.outputs="tree";
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	@Override
+	public void launch() throws AlgorithmException {
+		if(!(connectivity instanceof TrivialConnectivity))
+			throw new AlgorithmException("BuildCompactComponentTree only supports TrivialConnectivity");
+		xdim=inputImage.xdim;
+		ydim=inputImage.ydim;
+		zdim=inputImage.zdim;
+		int n=xdim*ydim*zdim;
+		neighbours = connectivity.getConnectedNeighbours(0,0,0);
+
+		// strips of lines, or of planes, at least as thick as the neighbourhood
+		int unit=(zdim>1)?xdim*ydim:xdim;
+		int nbUnits=(zdim>1)?zdim:ydim;
+		int reach=0;
+		maxBack=0;
+		for(Point3D d:neighbours)
+		{
+			reach=Math.max(reach,Math.abs((zdim>1)?d.z:d.y));
+			maxBack=Math.max(maxBack,-(d.x+xdim*(d.y+ydim*d.z)));
+		}
+		int threads=TileExecutor.getParallelism(parallelism);
+		int nbStrips=Math.min(threads,Math.min(nbUnits/Math.max(reach,1),n/TileExecutor.DEFAULT_TILE_SIZE));
+		nbStrips=Math.max(nbStrips,1);
+		final int [] stripStart = new int[nbStrips+1];
+		for(int i=0;i<=nbStrips;i++)
+			stripStart[i]=(int)((long)nbUnits*i/nbStrips)*unit;
+
+		double [] level = new double[n];
+		key = new int[n];
+		computeKeys(level,threads);
+
+		sorted = new int[n];
+		parent = new int[n];
+		zpar = new int[n];
+		Arrays.fill(zpar,-1);
+		int root;
+		if(nbStrips==1)
+		{
+			buildStrip(0,n);
+			zpar=null;
+			root=sorted[0];
+			for(int p=0;p<n;p++)
+				if(parent[p]==p)
+					parent[p]=root;
+			canonicalize(0,n);
+		}
+		else {
+			TileExecutor.runStrips(new TileExecutor.TileTask() {
+				public void process(int start, int end) {
+					for(int i=start;i<end;i++)
+					{
+						buildStrip(stripStart[i],stripStart[i+1]);
+						canonicalize(stripStart[i],stripStart[i+1]);
+					}
+				}
+			}, nbStrips, nbStrips);
+			// groups of step strips are merged two by two
+			for(int step=1;step<nbStrips;step*=2)
+			{
+				final int s=step;
+				final int last=nbStrips;
+				TileExecutor.runStrips(new TileExecutor.TileTask() {
+					public void process(int start, int end) {
+						for(int j=start;j<end;j++)
+						{
+							int i=s+2*s*j;
+							mergeStrips(stripStart[i-s],stripStart[i],stripStart[Math.min(i+s,last)]);
+						}
+					}
+				}, (nbStrips-s+2*s-1)/(2*s), parallelism);
+			}
+			root=-1;
+			for(int p=0;p<n;p++)
+				if(parent[p]==p && (root==-1 || key[p]<key[root]))
+					root=p;
+			for(int p=0;p<n;p++)
+				if(parent[p]==p)
+					parent[p]=root;
+			canonicalizeMerged(stripStart,nbStrips);
+			zpar=null;
+			sortMerged();
+		}
+		key=null;
+
+		int [] area = new int[n];
+		Arrays.fill(area,1);
+		for(int i=n-1;i>0;i--)
+		{
+			int p=sorted[i];
+			area[parent[p]]+=area[p];
+		}
+
+		tree = new CompactComponentTree(xdim,ydim,zdim,treeType,parent,level,area,sorted);
+		tree.setConnectivity(connectivity);
+		tree.image=inputImage;
+		if(attributes!=null)
+			tree.addAttributes(attributes);
+		parent=null;
+		sorted=null;
+	}
+
+	/**
+	 * Reads the levels of the pixels and their ranks among the levels of the
+	 * image, ranks are reversed for a min tree
+	 * @param level
+	 * @param threads
+	 */
+	private void computeKeys(final double [] level, int threads)
+	{
+		final int n=level.length;
+		final int bdim=inputImage.bdim;
+		final boolean min=(treeType == TreeType.Min);
+		if(inputImage.getClass()==ByteImage.class)
+		{
+			nbKeys=256;
+			final double [] lut = new double[256];
+			for(int k=0;k<256;k++)
+				lut[k]=Image.signedByteToDouble((byte)(k+Byte.MIN_VALUE));
+			final byte [] pixels =((ByteImage)inputImage).getReadOnlyPixelArray();
+			TileExecutor.runStrips(new TileExecutor.TileTask() {
+				public void process(int start, int end) {
+					for(int p=start;p<end;p++)
+					{
+						int k=pixels[bdim*p]-Byte.MIN_VALUE;
+						level[p]=lut[k];
+						key[p]=min?255-k:k;
+					}
+				}
+			}, n, threads);
+			return;
+		}
+		for(int p=0;p<n;p++)
+			level[p]=inputImage.getPixelDouble(bdim*p);
+		final double [] values = level.clone();
+		if(threads>1)
+			Arrays.parallelSort(values);
+		else Arrays.sort(values);
+		int nb=0;
+		for(int i=0;i<n;i++)
+			if(i==0 || values[i]!=values[nb-1])
+				values[nb++]=values[i];
+		nbKeys=nb;
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				for(int p=start;p<end;p++)
+				{
+					int k=Arrays.binarySearch(values,0,nbKeys,level[p]);
+					key[p]=min?nbKeys-1-k:k;
+				}
+			}
+		}, n, threads);
+	}
+
+	/**
+	 * Builds the tree of the pixels in [start,end[, only neighbours in this
+	 * range are considered. The pixels of the range are sorted in the same
+	 * range of sorted, the roots are their own parents.
+	 * @param start
+	 * @param end
+	 */
+	private void buildStrip(int start, int end)
+	{
+		if(nbKeys<=end-start)
+		{
+			// counting sort
+			int [] first = new int[nbKeys+1];
+			for(int p=start;p<end;p++)
+				first[key[p]+1]++;
+			for(int k=0;k<nbKeys;k++)
+				first[k+1]+=first[k];
+			for(int p=start;p<end;p++)
+				sorted[start+first[key[p]]++]=p;
+		}
+		else {
+			// too many levels for a strip, sort keys and pixels packed together
+			long [] packed = new long[end-start];
+			for(int p=start;p<end;p++)
+				packed[p-start]=((long)key[p]<<32)|p;
+			Arrays.sort(packed);
+			for(int i=0;i<packed.length;i++)
+				sorted[start+i]=(int)packed[i];
+		}
+
+		for(int i=end-1;i>=start;i--)
+		{
+			int p=sorted[i];
+			parent[p]=p;
+			zpar[p]=p;
+			int x=p%xdim;
+			int y=(p/xdim)%ydim;
+			int z=p/(xdim*ydim);
+			for(Point3D d:neighbours)
+			{
+				int nx=x+d.x, ny=y+d.y, nz=z+d.z;
+				if(nx>=0 && ny>=0 && nz>=0 && nx<xdim && ny<ydim && nz<zdim)
+				{
+					int q=nx+xdim*(ny+ydim*nz);
+					if(q>=start && q<end && zpar[q]!=-1)
+					{
+						int r=find(q);
+						if(r!=p)
+						{
+							parent[r]=p;
+							zpar[r]=p;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Canonicalizes the parents of the pixels sorted in [start,end[, parents
+	 * are visited first
+	 * @param start
+	 * @param end
+	 */
+	private void canonicalize(int start, int end)
+	{
+		for(int i=start+1;i<end;i++)
+		{
+			int p=sorted[i];
+			int q=parent[p];
+			if(key[parent[q]]==key[q])
+				parent[p]=parent[q];
+		}
+	}
+
+	/**
+	 * Merges the trees of the pixels of [left,middle[ and of [middle,right[
+	 * along their border
+	 * @param left
+	 * @param middle
+	 * @param right
+	 */
+	private void mergeStrips(int left, int middle, int right)
+	{
+		// the strips are thicker than the neighbourhood
+		int end=(int)Math.min((long)middle+maxBack,right);
+		for(int p=middle;p<end;p++)
+		{
+			int x=p%xdim;
+			int y=(p/xdim)%ydim;
+			int z=p/(xdim*ydim);
+			for(Point3D d:neighbours)
+			{
+				int nx=x+d.x, ny=y+d.y, nz=z+d.z;
+				if(nx>=0 && ny>=0 && nz>=0 && nx<xdim && ny<ydim && nz<zdim)
+				{
+					int q=nx+xdim*(ny+ydim*nz);
+					if(q<middle && q>=left)
+						connect(p,q);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Merges the branches of two neighbour pixels, from the pixels to the
+	 * roots
+	 * @param x
+	 * @param y
+	 */
+	private void connect(int x, int y)
+	{
+		x=levelRoot(x);
+		y=levelRoot(y);
+		if(key[x]<key[y])
+		{
+			int t=x;
+			x=y;
+			y=t;
+		}
+		while(x!=y && y!=-1)
+		{
+			// key[x]>=key[y], find the lowest ancestor of x above y
+			int z=(parent[x]==x)?-1:levelRoot(parent[x]);
+			if(z!=-1 && key[z]>=key[y])
+				x=z;
+			else {
+				parent[x]=y;
+				x=y;
+				y=z;
+			}
+		}
+	}
+
+	/**
+	 * Pixel at the top of the chain of pixels of the same level, with path
+	 * compression
+	 * @param p
+	 * @return
+	 */
+	private int levelRoot(int p)
+	{
+		int r=p;
+		while(parent[r]!=r && key[parent[r]]==key[r])
+			r=parent[r];
+		while(p!=r)
+		{
+			int q=parent[p];
+			parent[p]=r;
+			p=q;
+		}
+		return r;
+	}
+
+	/**
+	 * Canonicalizes the parents after merging, strip by strip. The top of the
+	 * chain of each pixel is first stored in zpar, without writing parent,
+	 * so that strips can be processed concurrently.
+	 * @param stripStart
+	 * @param nbStrips
+	 */
+	private void canonicalizeMerged(final int [] stripStart, int nbStrips)
+	{
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				for(int p=stripStart[start];p<stripStart[end];p++)
+				{
+					int r=p;
+					while(parent[r]!=r && key[parent[r]]==key[r])
+						r=parent[r];
+					zpar[p]=r;
+				}
+			}
+		}, nbStrips, parallelism);
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				for(int p=stripStart[start];p<stripStart[end];p++)
+					parent[p]=(zpar[p]==p)?zpar[parent[p]]:zpar[p];
+			}
+		}, nbStrips, parallelism);
+	}
+
+	/**
+	 * Sorts the pixels after merging: by level, canonical pixels first, so
+	 * that parents are before their children
+	 */
+	private void sortMerged()
+	{
+		int n=parent.length;
+		int [] first = new int[2*nbKeys+1];
+		for(int p=0;p<n;p++)
+			first[bucket(p)+1]++;
+		for(int k=0;k<2*nbKeys;k++)
+			first[k+1]+=first[k];
+		for(int p=0;p<n;p++)
+			sorted[first[bucket(p)]++]=p;
+	}
+
+	private int bucket(int p)
+	{
+		int q=parent[p];
+		return 2*key[p]+((q!=p && key[q]==key[p])?1:0);
+	}
+
+	/**
+	 * Root of the set of a processed pixel, with path compression
+	 * @param p
+	 * @return
+	 */
+	private int find(int p)
+	{
+		int r=p;
+		while(zpar[r]!=r)
+			r=zpar[r];
+		while(zpar[p]!=r)
+		{
+			int q=zpar[p];
+			zpar[p]=r;
+			p=q;
+		}
+		return r;
+	}
+
+	public static CompactComponentTree exec(Image inputImage, Connectivity3D connectivity){
+		return (CompactComponentTree)(new BuildCompactComponentTree()).process(inputImage,connectivity);
+	}
+
+	public static CompactComponentTree exec(Image inputImage, Connectivity3D connectivity, TreeType treeType){
+		return (CompactComponentTree)(new BuildCompactComponentTree()).process(inputImage,connectivity,treeType);
+	}
+
+	public static CompactComponentTree exec(Image inputImage, Connectivity3D connectivity, TreeType treeType, int parallelism){
+		return (CompactComponentTree)(new BuildCompactComponentTree()).process(inputImage,connectivity,treeType,parallelism);
+	}
+
+	public static CompactComponentTree exec(Image inputImage, Connectivity3D connectivity, TreeType treeType, CompactAttribute... attributes){
+		return (CompactComponentTree)(new BuildCompactComponentTree()).process(inputImage,connectivity,treeType,0,attributes);
+	}
+
+}
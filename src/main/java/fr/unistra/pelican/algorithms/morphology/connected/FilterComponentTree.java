@@ -8,6 +8,7 @@ import java.util.Stack;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
@@ -21,6 +22,8 @@ import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
  * - max : a node is deleted if it and its children do not fulfill filter rules
  * 
  * Combination rule of filters is AND, 
+ * 
+ * A CompactComponentTree is filtered in place with the same rules, its root is never deleted.
  * @TODO add more combination rules
  * 
  * @author Benjamin Perret
@@ -71,6 +74,68 @@ public class FilterComponentTree extends Algorithm {
 		return res;
 	}
 	
+	private boolean checkFilters(CompactComponentTree tree, int node)
+	{
+		boolean res=true;
+		for(AttributeFilter f: filters)
+		{
+			res=f.filter(tree,node);
+			if(!res) break;
+		}
+		return res;
+	}
+	
+	/**
+	 * Filters a compact tree: nodes are flagged from the root to the leaves for
+	 * min and direct rules, from the leaves to the root for max rule, then deleted at once.
+	 */
+	private void compactFilter()
+	{
+		CompactComponentTree tree=(CompactComponentTree)root;
+		int n=tree.size();
+		boolean [] keep = new boolean[n];
+		int r=tree.getRootIndex();
+		keep[r]=true;
+		switch(strategy)
+		{
+		case Min:
+			for(int i=1;i<n;i++)
+			{
+				int p=tree.getSortedPixel(i);
+				if(tree.isCanonical(p))
+					keep[p]=keep[tree.getParent(p)] && checkFilters(tree,p);
+			}
+			break;
+		case Max:
+			for(int i=n-1;i>0;i--)
+			{
+				int p=tree.getSortedPixel(i);
+				if(tree.isCanonical(p))
+				{
+					// keep[p] is already set if a child is kept
+					if(!keep[p])
+						keep[p]=checkFilters(tree,p);
+					if(keep[p])
+						keep[tree.getParent(p)]=true;
+				}
+			}
+			keep[r]=true;
+			break;
+		case Direct:
+			for(int i=1;i<n;i++)
+			{
+				int p=tree.getSortedPixel(i);
+				if(tree.isCanonical(p))
+					keep[p]=checkFilters(tree,p);
+			}
+			break;
+		default:
+			System.out.println("Not supported yet: " + strategy);
+			return;
+		}
+		tree.deleteNodes(keep);
+	}
+	
 	private void directFilter()
 	{
 		Stack<ComponentNode> s= new Stack<ComponentNode>();
@@ -155,6 +220,11 @@ public class FilterComponentTree extends Algorithm {
 	 */
 	@Override
 	public void launch() throws AlgorithmException {
+		if(root instanceof CompactComponentTree)
+		{
+			compactFilter();
+			return;
+		}
 		switch(strategy)
 		{
 		case Min:
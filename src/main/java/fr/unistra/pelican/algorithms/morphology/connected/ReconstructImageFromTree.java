@@ -3,12 +3,15 @@
  */
 package fr.unistra.pelican.algorithms.morphology.connected;
 
+import java.util.Arrays;
+
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.attributes.ComponentAttribute;
@@ -19,6 +22,8 @@ import fr.unistra.pelican.util.vectorial.ordering.VectorialOrdering;
 /**
  * Reconstruct an image from a connected component tree
  * 
+ * Only Level and Area data are available with a CompactComponentTree.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -90,6 +95,11 @@ public class ReconstructImageFromTree extends Algorithm {
 		xdim=tree.getXdim();
 		ydim=tree.getYdim();
 		zdim=tree.getZdim();
+		if(tree instanceof CompactComponentTree)
+		{
+			drawCompact((CompactComponentTree)tree);
+			return;
+		}
 		root=tree.getRoot();
 		switch (data)
 		{
@@ -117,6 +127,45 @@ public class ReconstructImageFromTree extends Algorithm {
 
 	}
 
+	private void drawCompact(CompactComponentTree compact)
+	{
+		int n=compact.size();
+		boolean [] children = onlyLeaves ? compact.hasChildren() : null;
+		switch (data)
+		{
+		case Level:
+			output=new DoubleImage(xdim,ydim,zdim,1,1);
+			double [] levels=((DoubleImage)output).getPixelArray();
+			Arrays.fill(levels,Double.NEGATIVE_INFINITY);
+			for(int p=0;p<n;p++)
+				if(!onlyLeaves || !children[compact.getNode(p)])
+				{
+					double level=compact.getLevel(p);
+					if(constraint)
+						level=Math.min(level, tree.image.getPixelDouble(tree.image.bdim*p));
+					levels[p]=level;
+				}
+			output.setModified();
+			output.setName("Reconstruction");
+			break;
+		case Area:
+			output=new IntegerImage(xdim,ydim,zdim,1,1);
+			int [] areas=((IntegerImage)output).getPixelArray();
+			Arrays.fill(areas,Integer.MIN_VALUE);
+			for(int p=0;p<n;p++)
+			{
+				int node=compact.getNode(p);
+				if(!onlyLeaves || !children[node])
+					areas[p]=compact.getArea(node);
+			}
+			output.setModified();
+			output.setName("Area map");
+			break;
+		default:
+			throw new AlgorithmException("Only Level and Area data are available with a CompactComponentTree");
+		}
+	}
+	
 	private void drawAttr() throws UnsupportedDataTypeException
 	{
 		Object vv= tree.findNodeAt(0, 0, 0).getAttributeValue(clazz);
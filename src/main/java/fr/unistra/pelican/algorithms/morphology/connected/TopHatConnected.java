@@ -3,17 +3,24 @@
  */
 package fr.unistra.pelican.algorithms.morphology.connected;
 
+import java.util.Arrays;
+
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.visualisation.MViewer;
 import fr.unistra.pelican.gui.MultiViews.MultiView;
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil;
 
 /**
+ * Deletes all the nodes, except the root, containing a pixel of the mask.
+ * 
+ * A CompactComponentTree is filtered in place, each node being visited once.
+ * 
  * @author Benjamin Perret
  *
  */
@@ -44,6 +51,11 @@ public class TopHatConnected<T> extends Algorithm {
 		int xdim=mask.xdim;
 		int ydim=mask.ydim;
 		int zdim=mask.zdim;
+		if(tree instanceof CompactComponentTree)
+		{
+			compactTopHat((CompactComponentTree)tree);
+			return;
+		}
 		ComponentNode<T> root=tree.getRoot();
 		for(int z=0;z<zdim;z++)
 			for(int y=0;y<ydim;y++)
@@ -67,6 +79,27 @@ public class TopHatConnected<T> extends Algorithm {
 
 	}
 	
+	private void compactTopHat(CompactComponentTree compact)
+	{
+		int root=compact.getRootIndex();
+		boolean [] keep = new boolean[compact.size()];
+		Arrays.fill(keep, true);
+		for(int z=0;z<mask.zdim;z++)
+			for(int y=0;y<mask.ydim;y++)
+				for(int x=0;x<mask.xdim;x++)
+					if(mask.getPixelXYZBoolean(x, y, z))
+					{
+						// stops at the first node already deleted, and its ancestors
+						int n=compact.findIndexAt(x, y, z);
+						while(n!=root && keep[n])
+						{
+							keep[n]=false;
+							n=compact.getParent(n);
+						}
+					}
+		compact.deleteNodes(keep);
+	}
+	
 	public static <T> ComponentTree<T> exec (ComponentTree<T> tree, Image mask)
 	{
 		return (ComponentTree<T>)(new TopHatConnected<T>()).process(tree,mask);
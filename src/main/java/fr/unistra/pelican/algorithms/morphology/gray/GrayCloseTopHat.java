@@ -31,11 +31,18 @@ public class GrayCloseTopHat extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayCloseTopHat() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 		
 	}
@@ -61,7 +68,7 @@ public class GrayCloseTopHat extends Algorithm {
 	 */
 	public void launch() {
 		outputImage = Difference.exec(
-				GrayClosing.exec(inputImage, se),
+				GrayClosing.exec(inputImage, se, parallelism),
 				inputImage
 				);
 	}
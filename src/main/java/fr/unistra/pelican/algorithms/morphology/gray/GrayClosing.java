@@ -27,11 +27,18 @@ public class GrayClosing extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayClosing() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 		
 	}
@@ -51,14 +58,31 @@ public class GrayClosing extends Algorithm {
 		return (Image) new GrayClosing().process(inputImage, se);
 	}
 
+	/**
+	 * Performs a gray closing (dilation then erosion) with a 2-D flat
+	 * structuring element on the given number of threads
+	 * 
+	 * @param inputImage
+	 *            The input image
+	 * @param se
+	 *            The flat structuring element used in the morphological
+	 *            operation
+	 * @param parallelism
+	 *            Number of threads, 0 for all the available processors
+	 * @return The output image
+	 */
+	public static Image exec(Image inputImage, BooleanImage se, int parallelism) {
+		return (Image) new GrayClosing().process(inputImage, se, parallelism);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() {
-		outputImage = GrayDilation.exec(inputImage, se);
-		outputImage = GrayErosion.exec(outputImage, se);
+		outputImage = GrayDilation.exec(inputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
+		outputImage = GrayErosion.exec(outputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
 	}
 
 }
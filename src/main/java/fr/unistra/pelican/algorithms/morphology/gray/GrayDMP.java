@@ -51,6 +51,12 @@ public class GrayDMP extends Algorithm {
 	 */
 	public boolean geodesic = true;
 
+	/**
+	 * the number of threads used by the erosions and dilations, 0 for all the
+	 * available processors
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * the output image
 	 */
@@ -107,7 +113,7 @@ public class GrayDMP extends Algorithm {
 	 */
 	public GrayDMP() {
 		super.inputs = "input,size";
-		super.options = "se,difference,openings,closings,geodesic";
+		super.options = "se,difference,openings,closings,geodesic,parallelism";
 		super.outputs = "output";
 	}
 
@@ -133,12 +139,12 @@ public class GrayDMP extends Algorithm {
 		for (previous = input, i = 0; i < size && openings; i++) {
 			System.out.print(".");
 			// Erosion
-			marker=GrayErosion.exec(marker,se);
+			marker=GrayErosion.exec(marker,se,null,GrayErosion.NO_OPTIMIZATION,parallelism);
 			// Calcul des reconstructions
 			current=marker;
 			if (!geodesic)
 				for (int ii=0;ii<=i;ii++)
-					current = GrayDilation.exec(current, se);
+					current = GrayDilation.exec(current, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
 			else 
 				current = FastGrayReconstruction.exec(marker,input);
 			// Calcul des différences
@@ -159,12 +165,12 @@ public class GrayDMP extends Algorithm {
 		for (previous = input, j = i, i = 0; i < size && closings; i++,j++) {
 			System.out.print(".");
 			// Dilatation
-			marker=GrayDilation.exec(marker,se);
+			marker=GrayDilation.exec(marker,se,null,GrayErosion.NO_OPTIMIZATION,parallelism);
 			// Calcul des reconstructions
 			current=marker;
 			if (!geodesic)
 				for (int ii=0;ii<=i;ii++)
-					current = GrayErosion.exec(current, se);
+					current = GrayErosion.exec(current, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
 			else 
 				current = FastGrayReconstruction.exec(marker,input,true);
 			// Calcul des différences
@@ -3,6 +3,8 @@ package fr.unistra.pelican.algorithms.morphology.gray;
 import fr.unistra.pelican.*;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.buffers.DoubleBuffers;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+import fr.unistra.pelican.util.morphology.FlatGrayKernels;
 
 
 
@@ -59,6 +61,11 @@ public class GrayErosion extends Algorithm {
 	 */
 	public int optimization = NO_OPTIMIZATION;
 
+	/**	Number of threads used by the operation : 0 for all the available processors, 
+	 *	1 for a sequential operation. 
+	 */
+	public int parallelism = 0;
+
 
 
 	  ///////////////////////
@@ -68,7 +75,7 @@ public class GrayErosion extends Algorithm {
 	public GrayErosion() { 
 
 		super.inputs = "inputImage,se";
-		super.options = "mask,optimization";
+		super.options = "mask,optimization,parallelism";
 		super.outputs = "outputImage";
 	}
 
@@ -107,6 +114,19 @@ public class GrayErosion extends Algorithm {
 	public static Image exec(Image inputImage, BooleanImage se, BooleanImage mask, int opt ) { 
 		return ( Image ) new GrayErosion().process(inputImage, se, mask, opt );
 	}
+
+	/**	Performs a specific gray erosion with a 2-D flat structuring element and a mask, 
+	 *	on the given number of threads.
+	 *	@param inputImage Input image.
+	 *	@param se Flat structuring element used in the morphological operation.
+	 *	@param mask Mask used to only compute a part of the image.
+	 *	@param opt Way of optimize things. Should be one of this class XXX_OPTIMIZATION constants.
+	 *	@param parallelism Number of threads, 0 for all the available processors.
+	 *	@return Output image.
+	 */
+	public static Image exec(Image inputImage, BooleanImage se, BooleanImage mask, int opt, int parallelism ) { 
+		return ( Image ) new GrayErosion().process(inputImage, se, mask, opt, parallelism );
+	}
 	
 	
 
@@ -138,7 +158,7 @@ public class GrayErosion extends Algorithm {
 				int opt = wichOptimization( this.se, this.inputImage );
 				if ( opt == NO_OPTIMIZATION ) 
 					this.standardErosion();
-				else this.outputImage = GrayErosion.exec( this.inputImage,this.se,this.mask,opt );
+				else this.outputImage = GrayErosion.exec( this.inputImage,this.se,this.mask,opt,this.parallelism );
 
 		}
 	}
@@ -214,30 +234,59 @@ public class GrayErosion extends Algorithm {
 	 //
 	// STANDARD EROSION METHOD
 
-	/**	Performs a standard "naive" erosion. */
+	/**	Performs a standard "naive" erosion, tile by tile on all the available processors. */
 	private void standardErosion() { 
 
 		this.outputImage = this.inputImage.copyImage( false );
-		int xDim = this.inputImage.getXDim();
-		int yDim = this.inputImage.getYDim();
-		int tDim = this.inputImage.getTDim();
-		int bDim = this.inputImage.getBDim();
-		int zDim = this.inputImage.getZDim();
-		Point4D[] points = this.se.foreground();
-		boolean isHere;
-		for ( int t = 0 ; t < tDim ; t++ )
-		for ( int z = 0 ; z < zDim ; z++ )
-		for ( int y = 0 ; y < yDim ; y++ ) 
-		for ( int x = 0 ; x < xDim ; x++ )
-		for ( int b = 0 ; b < bDim ; b++ ) { 
-			if(mask!=null)
-				isHere = this.inputImage.isPresent( x,y,z,t,b )&&mask.getPixelXYZTBBoolean(x, y, z, t, b);
-			else
-				isHere = this.inputImage.isPresent( x,y,z,t,b );
-			if ( isHere ) 
-				 this.outputImage.setPixelDouble( x,y,z,t,b, this.getMinGray( x,y,z,t,b, points ) );
-			else this.outputImage.setPixelDouble( x,y,z,t,b, 0. );
-		} // rof
+		if ( FlatGrayKernels.isApplicable( this.inputImage,this.mask ) ) { 
+
+			// unmasked images in memory are processed on their pixel arrays
+			final FlatGrayKernels kernels = new FlatGrayKernels( this.inputImage,this.se );
+			TileExecutor.run( new TileExecutor.TileTask() { 
+				public void process( int start, int end ) { 
+					kernels.process( inputImage,outputImage,false,start,end );
+				}
+			}, 0, this.parallelism, this.inputImage, this.outputImage );
+			return;
+		}
+		final int xDim = this.inputImage.getXDim();
+		final int yDim = this.inputImage.getYDim();
+		final int bDim = this.inputImage.getBDim();
+		final int zDim = this.inputImage.getZDim();
+		final Point4D[] points = this.se.foreground();
+		TileExecutor.TileTask task = new TileExecutor.TileTask() { 
+			public void process( int start, int end ) { 
+
+				boolean isHere;
+				for ( int i = start ; i < end ; i++ ) { 
+
+					int b = i % bDim;
+					int x = ( i / bDim ) % xDim;
+					int y = ( i / bDim / xDim ) % yDim;
+					int z = ( i / bDim / xDim / yDim ) % zDim;
+					int t = i / bDim / xDim / yDim / zDim;
+					if(mask!=null)
+						isHere = inputImage.isPresent( x,y,z,t,b )&&mask.getPixelXYZTBBoolean(x, y, z, t, b);
+					else
+						isHere = inputImage.isPresent( x,y,z,t,b );
+					if ( isHere ) 
+						 outputImage.setPixelDouble( x,y,z,t,b, getMinGray( x,y,z,t,b, points ) );
+					else outputImage.setPixelDouble( x,y,z,t,b, 0. );
+				} // rof
+			}
+		};
+		// the units under a small se are pinned with the tile, a larger se 
+		// reads its neighbourhood through the usual paging
+		long halo = 0;
+		for ( int i = 0 ; i < points.length ; i++ ) 
+			halo = Math.max( halo, Math.abs( (long) bDim * ( points[i].x - this.se.getCenter().x 
+				+ (long) xDim * ( points[i].y - this.se.getCenter().y 
+				+ (long) yDim * ( points[i].z - this.se.getCenter().z 
+				+ (long) zDim * ( points[i].t - this.se.getCenter().t ) ) ) ) ) );
+		Image[] images = ( this.mask == null ) ? new Image[] { this.inputImage, this.outputImage } 
+			: new Image[] { this.inputImage, this.outputImage, this.mask };
+		if ( halo > TileExecutor.getTileSize( images ) ) halo = 0;
+		TileExecutor.run( task, (int) halo, this.parallelism, images );
 	} // endfunc
 
 
@@ -254,11 +303,11 @@ public class GrayErosion extends Algorithm {
 		BooleanImage optSe = fr.unistra.pelican.util.morphology.FlatStructuringElement2D.
 								createHorizontalLineFlatStructuringElement( 
 									xdim, new java.awt.Point( this.se.getCenter().x, 0) );
-		this.outputImage = GrayErosion.exec( this.inputImage,optSe,null );
+		this.outputImage = GrayErosion.exec( this.inputImage,optSe,null,NO_OPTIMIZATION,this.parallelism );
 		optSe = fr.unistra.pelican.util.morphology.FlatStructuringElement2D.
 								createVerticalLineFlatStructuringElement( 
 									ydim, new java.awt.Point( 0, this.se.getCenter().y  ) );
-		this.outputImage = GrayErosion.exec( this.outputImage,optSe );
+		this.outputImage = GrayErosion.exec( this.outputImage,optSe,null,NO_OPTIMIZATION,this.parallelism );
 	} // endfunc
 
 
@@ -347,44 +396,49 @@ public class GrayErosion extends Algorithm {
 	private void horizontalErosion() { 
 
 		this.outputImage = this.inputImage.copyImage( false );
-		int xdim = this.inputImage.getXDim();
-		int ydim = this.inputImage.getYDim();
-		int zdim = this.inputImage.getZDim();
-		int tdim = this.inputImage.getTDim();
+		final int xdim = this.inputImage.getXDim();
+		final int ydim = this.inputImage.getYDim();
+		final int zdim = this.inputImage.getZDim();
+		final int tdim = this.inputImage.getTDim();
 		int bdim = this.inputImage.getBDim();
-		int size = xdim;
-		DoubleBuffers buffers = new DoubleBuffers( size );
-		int lambda = this.se.getXDim(); //  lambada !
-		int o = this.se.getCenter().x;
-
-		assert buffers.size%lambda == 0;
-
-		double px;
-		int m,n;
-		for ( int b = 0 ; b < bdim ; b++ ) 
-		for ( int t = 0 ; t < tdim ; t++ )
-		for ( int z = 0 ; z < zdim ; z++ )
-		for ( int y = 0 ; y < ydim ; y++ ) { 
-
-			this.initRowBuffers( y,z,t,b, buffers,lambda );
-			for ( int x = 0 ; x < xdim ; x++ ) { 
-
-				m = x+lambda-o-1;
-				n = x-o;
-				if ( m >= xdim ) { 
-
-					if ( n < 0 ) px = Double.MAX_VALUE;
-					else px = buffers.h[ n ];
-
-				} else {
-
-					if ( n < 0 ) px = buffers.g[ m ];
-					else px = Math.min( buffers.g[ m ],buffers.h[ n ] );
-				}
-				this.outputImage.setPixelDouble( x,y,z,t,b, px );
-			} // rof x
-
-		} // rof
+		final int lambda = this.se.getXDim(); //  lambada !
+		final int o = this.se.getCenter().x;
+
+		assert xdim%lambda == 0;
+
+		// every row (y,z,t,b) is independent, rows are processed by strips
+		TileExecutor.runStrips( new TileExecutor.TileTask() { 
+			public void process( int start, int end ) { 
+
+				DoubleBuffers buffers = new DoubleBuffers( xdim );
+				double px;
+				int m,n;
+				for ( int line = start ; line < end ; line++ ) { 
+
+					int y = line % ydim;
+					int z = ( line / ydim ) % zdim;
+					int t = ( line / ydim / zdim ) % tdim;
+					int b = line / ydim / zdim / tdim;
+					initRowBuffers( y,z,t,b, buffers,lambda );
+					for ( int x = 0 ; x < xdim ; x++ ) { 
+
+						m = x+lambda-o-1;
+						n = x-o;
+						if ( m >= xdim ) { 
+
+							if ( n < 0 ) px = Double.MAX_VALUE;
+							else px = buffers.h[ n ];
+
+						} else {
+
+							if ( n < 0 ) px = buffers.g[ m ];
+							else px = Math.min( buffers.g[ m ],buffers.h[ n ] );
+						}
+						outputImage.setPixelDouble( x,y,z,t,b, px );
+					} // rof x
+				} // rof
+			}
+		}, ydim*zdim*tdim*bdim, this.parallelism );
 
 	} // endfunc
 
@@ -397,44 +451,49 @@ public class GrayErosion extends Algorithm {
 	private void verticalErosion() { 
 
 		this.outputImage = this.inputImage.copyImage( false );
-		int xdim = this.inputImage.getXDim();
-		int ydim = this.inputImage.getYDim();
-		int zdim = this.inputImage.getZDim();
-		int tdim = this.inputImage.getTDim();
+		final int xdim = this.inputImage.getXDim();
+		final int ydim = this.inputImage.getYDim();
+		final int zdim = this.inputImage.getZDim();
+		final int tdim = this.inputImage.getTDim();
 		int bdim = this.inputImage.getBDim();
-		int size = ydim;
-		DoubleBuffers buffers = new DoubleBuffers( size );
-		int lambda = this.se.getYDim(); 
-		int o = this.se.getCenter().y;
-
-		assert buffers.size%lambda == 0;
-
-		double px;
-		int m,n;
-		for ( int b = 0 ; b < bdim ; b++ ) 
-		for ( int t = 0 ; t < tdim ; t++ )
-		for ( int z = 0 ; z < zdim ; z++ )
-		for ( int x = 0 ; x < xdim ; x++ ) { 
-
-			this.initColumnBuffers( x,z,t,b, buffers,lambda );
-			for ( int y = 0 ; y < ydim ; y++ ) { 
-
-				m = y+lambda-o-1;
-				n = y-o;
-				if ( m >= ydim ) { 
-
-					if ( n < 0 ) px = Double.MAX_VALUE;
-					else px = buffers.h[ n ];
-
-				} else {
-
-					if ( n < 0 ) px = buffers.g[ m ];
-					else px = Math.min( buffers.g[ m ],buffers.h[ n ] );
-				}
-				this.outputImage.setPixelDouble( x,y,z,t,b, px );
-			} // rof x
-
-		} // rof
+		final int lambda = this.se.getYDim();
+		final int o = this.se.getCenter().y;
+
+		assert ydim%lambda == 0;
+
+		// every column (x,z,t,b) is independent, columns are processed by strips
+		TileExecutor.runStrips( new TileExecutor.TileTask() { 
+			public void process( int start, int end ) { 
+
+				DoubleBuffers buffers = new DoubleBuffers( ydim );
+				double px;
+				int m,n;
+				for ( int line = start ; line < end ; line++ ) { 
+
+					int x = line % xdim;
+					int z = ( line / xdim ) % zdim;
+					int t = ( line / xdim / zdim ) % tdim;
+					int b = line / xdim / zdim / tdim;
+					initColumnBuffers( x,z,t,b, buffers,lambda );
+					for ( int y = 0 ; y < ydim ; y++ ) { 
+
+						m = y+lambda-o-1;
+						n = y-o;
+						if ( m >= ydim ) { 
+
+							if ( n < 0 ) px = Double.MAX_VALUE;
+							else px = buffers.h[ n ];
+
+						} else {
+
+							if ( n < 0 ) px = buffers.g[ m ];
+							else px = Math.min( buffers.g[ m ],buffers.h[ n ] );
+						}
+						outputImage.setPixelDouble( x,y,z,t,b, px );
+					} // rof y
+				} // rof
+			}
+		}, xdim*zdim*tdim*bdim, this.parallelism );
 
 	} // endfunc
 
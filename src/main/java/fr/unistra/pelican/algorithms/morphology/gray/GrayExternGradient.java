@@ -28,11 +28,18 @@ public class GrayExternGradient extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayExternGradient() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 	}
 
@@ -57,7 +64,7 @@ public class GrayExternGradient extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() {
-		outputImage = Difference.exec(GrayDilation.exec(inputImage, se),
+		outputImage = Difference.exec(GrayDilation.exec(inputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism),
 				inputImage);
 	}
 
@@ -33,12 +33,18 @@ public class GrayGradient extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayGradient() {
 		super.inputs = "inputImage,se";
-		super.options = "mask";
+		super.options = "mask,parallelism";
 		super.outputs = "outputImage";	
 	}
 
@@ -81,8 +87,8 @@ public class GrayGradient extends Algorithm {
 	 */
 	public void launch() {
 		outputImage = Difference.exec(
-				GrayDilation.exec(inputImage,se, mask),
-				GrayErosion.exec(inputImage, se, mask)
+				GrayDilation.exec(inputImage, se, mask, GrayErosion.NO_OPTIMIZATION, parallelism),
+				GrayErosion.exec(inputImage, se, mask, GrayErosion.NO_OPTIMIZATION, parallelism)
 				);
 	}
 	
@@ -28,11 +28,18 @@ public class GrayInternGradient extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayInternGradient() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 	}
 
@@ -58,7 +65,7 @@ public class GrayInternGradient extends Algorithm {
 	public void launch() {
 		outputImage = Difference.exec(
 				inputImage,
-				GrayErosion.exec(inputImage, se)
+				GrayErosion.exec(inputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism)
 				);
 	}
 	
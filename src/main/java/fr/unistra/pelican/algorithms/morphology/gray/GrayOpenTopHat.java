@@ -31,11 +31,18 @@ public class GrayOpenTopHat extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayOpenTopHat() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 	}
 
@@ -61,7 +68,7 @@ public class GrayOpenTopHat extends Algorithm {
 	public void launch() {
 		outputImage = Difference.exec(
 				inputImage,
-				GrayOpening.exec(inputImage, se)
+				GrayOpening.exec(inputImage, se, parallelism)
 				);
 	}
 	
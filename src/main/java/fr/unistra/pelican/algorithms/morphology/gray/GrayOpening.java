@@ -27,11 +27,18 @@ public class GrayOpening extends Algorithm {
 	 */
 	public Image outputImage;
 
+	/**
+	 * Number of threads used by the operation : 0 for all the available
+	 * processors, 1 for a sequential operation
+	 */
+	public int parallelism = 0;
+
 	/**
 	 * Default constructor
 	 */
 	public GrayOpening() {
 		super.inputs = "inputImage,se";
+		super.options = "parallelism";
 		super.outputs = "outputImage";
 	}
 
@@ -50,14 +57,31 @@ public class GrayOpening extends Algorithm {
 		return (Image) new GrayOpening().process(inputImage, se);
 	}
 
+	/**
+	 * Performs a gray opening (erosion then dilation) with a 2-D flat
+	 * structuring element on the given number of threads
+	 * 
+	 * @param inputImage
+	 *            The input image
+	 * @param se
+	 *            The flat structuring element used in the morphological
+	 *            operation
+	 * @param parallelism
+	 *            Number of threads, 0 for all the available processors
+	 * @return The output image
+	 */
+	public static Image exec(Image inputImage, BooleanImage se, int parallelism) {
+		return (Image) new GrayOpening().process(inputImage, se, parallelism);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() {
-		outputImage = GrayErosion.exec(inputImage, se);
-		outputImage = GrayDilation.exec(outputImage, se);
+		outputImage = GrayErosion.exec(inputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
+		outputImage = GrayDilation.exec(outputImage, se, null, GrayErosion.NO_OPTIMIZATION, parallelism);
 	}
 
 }
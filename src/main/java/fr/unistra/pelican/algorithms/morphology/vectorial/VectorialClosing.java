@@ -4,12 +4,17 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayDilation;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
 import fr.unistra.pelican.PelicanException;
 import fr.unistra.pelican.util.vectorial.orders.VectorialOrdering;
 
 /**
  * This class performs a vectorial closing (dilation then erosion) with a given structuring
  * element and ordering. Works on double precision.
+ *
+ * With a total ordering on an unmasked image, the vectors are sorted only once, before
+ * the dilation.
  * 
  * @author Abdullah
  * 
@@ -65,6 +70,12 @@ public class VectorialClosing extends Algorithm
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
+		if (VectorialOrderKeys.isApplicable(inputImage, se, vo)) {
+			VectorialOrderKeys keys = new VectorialOrderKeys(inputImage, vo);
+			outputImage = keys.toVectors(GrayErosion.exec(GrayDilation.exec(keys.getKeys(), se), se));
+			return;
+		}
+
 		outputImage = inputImage.copyImage(false);
 
 		try {
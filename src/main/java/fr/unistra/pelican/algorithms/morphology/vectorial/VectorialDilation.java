@@ -4,12 +4,16 @@ import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayDilation;
 import fr.unistra.pelican.util.Point4D;
 import fr.unistra.pelican.util.vectorial.orders.VectorialOrdering;
 
 /**
  * This class performs a vectorial dilation with the given structuring element and vector ordering on a double
  * precision
+ *
+ * With a total ordering on an unmasked image, the vectors are sorted once and the dilation
+ * is computed by GrayDilation on their ranks.
  * 
  * @author Abdullah
  * 
@@ -96,6 +100,12 @@ public class VectorialDilation extends Algorithm
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
+		if (VectorialOrderKeys.isApplicable(inputImage, se, vo)) {
+			VectorialOrderKeys keys = new VectorialOrderKeys(inputImage, vo);
+			outputImage = keys.toVectors(GrayDilation.exec(keys.getKeys(), se));
+			return;
+		}
+
 		outputImage = inputImage.copyImage(false);
 
 		int xDim = inputImage.getXDim();
@@ -0,0 +1,197 @@
+package fr.unistra.pelican.algorithms.morphology.vectorial;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.morphology.FlatGrayKernels;
+import fr.unistra.pelican.util.vectorial.orders.TotalVectorialOrdering;
+import fr.unistra.pelican.util.vectorial.orders.VectorialOrdering;
+
+/**
+ * Ranks of the vectors of an image for a total ordering. The distinct vectors are sorted
+ * once, each pixel gets the rank of its vector, and the flat vectorial operators are
+ * computed as gray operators on the ranks, which select a rank among the neighbours
+ * without building any vector. The ranks are then mapped back to the vectors.
+ * 
+ * Vectors which compare equal while being different get different ranks, following the
+ * lexicographical order of their components, so that a rank always stands for a single
+ * vector. The vectorial operators instead keep the first of such vectors in the order of
+ * the structuring element.
+ * 
+ * @author PELICAN team.
+ */
+class VectorialOrderKeys
+{
+	/**
+	 * the image of the vectors
+	 */
+	private final Image image;
+
+	/**
+	 * the ranks of the pixels, kept as doubles which the gray operators read and write
+	 * exactly
+	 */
+	private final DoubleImage keys;
+
+	/**
+	 * a pixel of each rank
+	 */
+	private final int[] pixels;
+
+	/**
+	 * Tells whether the ranks can replace the vectors: the ordering must be total, and the
+	 * image and the structuring element such that the gray operators treat the pixels as
+	 * the vectorial ones (no mask, 2D structuring element).
+	 * 
+	 * @param image the input image
+	 * @param se the structuring element
+	 * @param vo the vector ordering
+	 * @return true if the ranks can be used
+	 */
+	static boolean isApplicable(Image image, BooleanImage se, VectorialOrdering vo)
+	{
+		return vo instanceof TotalVectorialOrdering && se.getZDim() == 1 && se.getTDim() == 1
+			&& FlatGrayKernels.isApplicable(image, null);
+	}
+
+	/**
+	 * Sorts the vectors of an image and ranks its pixels.
+	 * 
+	 * @param image the input image
+	 * @param vo the vector ordering, total
+	 */
+	VectorialOrderKeys(Image image, VectorialOrdering vo)
+	{
+		this.image = image;
+		int bdim = image.getBDim();
+		final double[][] vectors = new double[image.size() / bdim][bdim];
+		for (int p = 0, i = 0; p < vectors.length; p++)
+			for (int b = 0; b < bdim; b++, i++)
+				vectors[p][b] = image.getPixelDouble(i);
+
+		// the distinct vectors, in lexicographical order
+		int[] distinct = new int[vectors.length];
+		Integer[] sorted = new Integer[vectors.length];
+		int n;
+		if (image instanceof ByteImage && bdim <= 7)
+			n = sortBytes((ByteImage) image, distinct, sorted);
+		else {
+			Integer[] order = new Integer[vectors.length];
+			for (int p = 0; p < order.length; p++)
+				order[p] = p;
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer p1, Integer p2)
+				{
+					return VectorialOrderKeys.compare(vectors[p1], vectors[p2]);
+				}
+			});
+			n = 0;
+			for (int i = 0; i < order.length; i++) {
+				if (i == 0 || compare(vectors[order[i - 1]], vectors[order[i]]) != 0)
+					sorted[n++] = order[i];
+				distinct[order[i]] = n - 1;
+			}
+		}
+
+		// the sort is stable, so that equal vectors for the ordering stay in
+		// lexicographical order, and it is linear for lexicographical orderings
+		final TotalVectorialOrdering ordering = (TotalVectorialOrdering) vo;
+		Integer[] ranked = Arrays.copyOf(sorted, n);
+		Arrays.sort(ranked, new Comparator<Integer>() {
+			public int compare(Integer p1, Integer p2)
+			{
+				return ordering.compare(vectors[p1], vectors[p2]);
+			}
+		});
+		int[] rank = new int[vectors.length];
+		pixels = new int[n];
+		for (int r = 0; r < n; r++) {
+			pixels[r] = ranked[r];
+			rank[ranked[r]] = r;
+		}
+
+		keys = new DoubleImage(image.getXDim(), image.getYDim(), image.getZDim(),
+			image.getTDim(), 1);
+		double[] k = keys.getPixelArray();
+		for (int p = 0; p < k.length; p++)
+			k[p] = rank[sorted[distinct[p]]];
+		keys.setModified();
+	}
+
+	/**
+	 * @return the ranks of the pixels, in a single band image
+	 */
+	DoubleImage getKeys()
+	{
+		return keys;
+	}
+
+	/**
+	 * Replaces ranks by their vectors.
+	 * 
+	 * @param ranks ranks of the pixels, as given by a gray operator on the keys
+	 * @return the image of the vectors, of the type of the input image
+	 */
+	Image toVectors(Image ranks)
+	{
+		Image output = image.copyImage(false);
+		int bdim = image.getBDim();
+		double[] r = ((DoubleImage) ranks).getReadOnlyPixelArray();
+		for (int p = 0, i = 0; p < r.length; p++) {
+			int src = pixels[(int) r[p]] * bdim;
+			for (int b = 0; b < bdim; b++, i++)
+				output.setPixelDouble(i, image.getPixelDouble(src + b));
+		}
+		return output;
+	}
+
+	/**
+	 * Sorts the distinct vectors of a byte image, each vector being packed in a long from
+	 * the unsigned values of its components.
+	 * 
+	 * @param image the input image, of at most 7 bands
+	 * @param distinct set to the index of the vector of each pixel among the distinct vectors
+	 * @param sorted set to a pixel of each distinct vector, in lexicographical order
+	 * @return the number of distinct vectors
+	 */
+	private static int sortBytes(ByteImage image, int[] distinct, Integer[] sorted)
+	{
+		byte[] bytes = image.getReadOnlyPixelArray();
+		int bdim = image.getBDim();
+		long[] codes = new long[distinct.length];
+		for (int p = 0, i = 0; p < codes.length; p++) {
+			long code = 0;
+			for (int b = 0; b < bdim; b++, i++)
+				code = (code << 8) | (bytes[i] - Byte.MIN_VALUE);
+			codes[p] = code;
+		}
+		long[] unique = codes.clone();
+		Arrays.sort(unique);
+		int n = 0;
+		for (int i = 0; i < unique.length; i++)
+			if (i == 0 || unique[i] != unique[n - 1])
+				unique[n++] = unique[i];
+		for (int p = 0; p < codes.length; p++) {
+			int d = Arrays.binarySearch(unique, 0, n, codes[p]);
+			distinct[p] = d;
+			if (sorted[d] == null)
+				sorted[d] = p;
+		}
+		return n;
+	}
+
+	/**
+	 * Lexicographical comparison of the components of two vectors.
+	 */
+	private static int compare(double[] v1, double[] v2)
+	{
+		for (int b = 0; b < v1.length; b++)
+			if (v1[b] != v2[b])
+				return v1[b] < v2[b] ? -1 : 1;
+		return 0;
+	}
+}
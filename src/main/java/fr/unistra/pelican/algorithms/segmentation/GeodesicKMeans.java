@@ -14,7 +14,7 @@ import fr.unistra.pelican.algorithms.segmentation.labels.FrontiersFromSegmentati
 import fr.unistra.pelican.algorithms.segmentation.labels.LabelsToBinaryMasks;
 import fr.unistra.pelican.algorithms.spatial.TopographicTransform;
 import fr.unistra.pelican.algorithms.visualisation.Viewer2D;
-import fr.unistra.pelican.util.HierarchicalQueue;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 import fr.unistra.pelican.util.Memory;
 import fr.unistra.pelican.util.Point4D;
 
@@ -131,7 +131,8 @@ public class GeodesicKMeans extends Algorithm {
 
 		int scale = Math.max(inputImage.getXDim(), inputImage.getYDim());// 500;
 		double mem1 = Memory.totalUsedMemoryMB();
-		HierarchicalQueue queue = new HierarchicalQueue(scale * scale * 255);
+		IntHierarchicalQueue queue = new IntHierarchicalQueue((int) Math.min(
+			Integer.MAX_VALUE, (long) scale * scale * 255));
 		double mem2 = Memory.totalUsedMemoryMB();
 		System.out.println("Allocated memory for queue:" + (int) (mem2 - mem1)
 			+ " MB");
@@ -12,6 +12,7 @@ import fr.unistra.pelican.algorithms.conversion.BinaryMasksToLabels;
 import fr.unistra.pelican.algorithms.conversion.ProcessChannels;
 import fr.unistra.pelican.algorithms.logical.CompareConstant;
 import fr.unistra.pelican.algorithms.segmentation.flatzones.BooleanConnectedComponentsLabeling;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 
 
 /**
@@ -98,6 +99,8 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 			.getYDim(), 1, 1, 2);
 		outputImage = new IntegerImage(inputImage.getXDim(), inputImage.getYDim(),
 			inputImage.getZDim(), inputImage.getTDim(), 1/* inputImage.getBDim() */);
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(GRAY_LEVELS);
+		int[] neighbours = new int[8];
 		for (int z = 0; z < inputImage.getZDim(); z++)
 			// Temporarily disable the B dim as we use it for the different
 			// markers
@@ -111,7 +114,7 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 							// Work still have values from 0 to 255.
 							input.setPixelInt(x, y, 0, 0, b, inputImage.getPixelByte(x, y, z,
 								t, b));
-				HierarchicalQueue queue = new HierarchicalQueue(GRAY_LEVELS);
+				queue.reset();
 				int currentLabel = 1;
 				output.fill(NULL);
 
@@ -144,7 +147,7 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 							output.setPixelXYBInt(x, y, 0, p);
 							output.setPixelXYBInt(x, y, 1, c);
 							if (bord(x, y, p))
-								queue.add(new Point(x, y), NULL);
+								queue.add(y * xdim + x, NULL);
 						}
 					}
 				if (cpu) {
@@ -169,18 +172,21 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 //				Viewer2D.exec(LabelsToRandomColors.exec(output.getImage4D(1,Image.B)));
 
 				while (!queue.isEmpty()) {
-					Point p = queue.get();
-					int label = output.getPixelXYBInt(p.x, p.y, 0);
-					int band = output.getPixelXYBInt(p.x, p.y, 1);
+					int p = queue.get();
+					int px = p % xdim;
+					int py = p / xdim;
+					int label = output.getPixelXYBInt(px, py, 0);
+					int band = output.getPixelXYBInt(px, py, 1);
 					// get the non labelled 8-neighbours of (x,y)
-					Point[] neighbours = getNonLabelledNeighbours(output, p.x, p.y);
-					for (int i = 0; i < neighbours.length; i++) {
+					int cnt = getNonLabelledNeighbours(output, px, py, neighbours);
+					for (int i = 0; i < cnt; i++) {
+						int nx = neighbours[i] % xdim;
+						int ny = neighbours[i] / xdim;
 						// give him the label of p
-						output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 0, label);
-						output.setPixelXYBInt(neighbours[i].x, neighbours[i].y, 1, band);
+						output.setPixelXYBInt(nx, ny, 0, label);
+						output.setPixelXYBInt(nx, ny, 1, band);
 						// get his gray level IN THE APPROPRIATE BAND
-						int val = input.getPixelXYBInt(neighbours[i].x, neighbours[i].y,
-							band);
+						int val = input.getPixelXYBInt(nx, ny, band);
 						// add him to the appropriate queue
 						queue.add(neighbours[i], val);
 					}
@@ -240,7 +246,7 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 	}
 
 	private void marker(IntegerImage input, IntegerImage output, int x, int y,
-		int m, HierarchicalQueue queue, int label) {
+		int m, IntHierarchicalQueue queue, int label) {
 		LinkedList<Point> fifo = new LinkedList<Point>();
 
 		fifo.add(new Point(x, y));
@@ -248,7 +254,7 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 		while (fifo.size() > 0) {
 			Point p = (Point) fifo.removeFirst();
 
-			queue.add(p, NULL);
+			queue.add(p.y * xdim + p.x, NULL);
 			output.setPixelXYBInt(p.x, p.y, 0, label);
 			output.setPixelXYBInt(p.x, p.y, 1, m);
 
@@ -279,14 +285,19 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 		}
 	}
 
-	private Point[] getNonLabelledNeighbours(IntegerImage output, int x, int y) {
-		Point[] neighbours = new Point[8];
-
+	/**
+	 * Writes the linear indexes of the non labelled neighbours of (x,y) into
+	 * neighbours, which must hold 8 values.
+	 * 
+	 * @return the number of neighbours found
+	 */
+	private int getNonLabelledNeighbours(IntegerImage output, int x, int y,
+		int[] neighbours) {
 		int cnt = 0;
 
 		for (int j = y - 1; j <= y + 1; j++) {
 			for (int i = x - 1; i <= x + 1; i++) {
-				if (i < 0 || i >= output.getXDim() || j < 0 || j >= output.getYDim())
+				if (i < 0 || i >= xdim || j < 0 || j >= ydim)
 					continue;
 				if (connexity4 && i != 0 && j != 0)
 					continue;
@@ -295,66 +306,12 @@ public class MarkerBasedMultiWatershed extends Algorithm {
 				int z = output.getPixelXYBInt(i, j, 0);
 
 				if (!(i == x && j == y) && z == NULL)
-					neighbours[cnt++] = new Point(i, j);
+					neighbours[cnt++] = j * xdim + i;
 
 			}
 		}
 
-		if (cnt < 8) {
-			Point[] tmp = new Point[cnt];
-
-			for (int i = 0; i < cnt; i++)
-				tmp[i] = neighbours[i];
-
-			neighbours = tmp;
-		}
-
-		return neighbours;
+		return cnt;
 	}
 
-	private class HierarchicalQueue {
-		private LinkedList<Point>[] queue;
-
-		private int current;
-
-		HierarchicalQueue(int size) {
-			queue = new LinkedList[size];
-
-			for (int i = 0; i < size; i++)
-				queue[i] = new LinkedList<Point>();
-
-			current = 0;
-		}
-
-		void add(Point p, int val) {
-			if (val >= current)
-				queue[val].add(p);
-			else
-				queue[current].add(p);
-		}
-
-		Point get() {
-			if (queue[current].size() >= 2)
-				return (Point) queue[current].removeFirst();
-			else if (queue[current].size() == 1) {
-				Point p = (Point) queue[current].removeFirst();
-
-				while (current < 255 && queue[current].size() == 0)
-					current++;
-
-				return p;
-
-			} else
-				return null;
-		}
-
-		boolean isEmpty() {
-			int sum = 0;
-
-			for (int i = current; i < queue.length; i++)
-				sum += queue[i].size();
-
-			return (sum == 0);
-		}
-	}
 }
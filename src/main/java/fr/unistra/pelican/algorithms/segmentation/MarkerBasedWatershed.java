@@ -13,6 +13,7 @@ import fr.unistra.pelican.algorithms.segmentation.flatzones.BooleanConnectedComp
 import fr.unistra.pelican.algorithms.segmentation.labels.LabelsToRandomColors;
 import fr.unistra.pelican.algorithms.segmentation.labels.RegionSize;
 import fr.unistra.pelican.algorithms.visualisation.Viewer2D;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 
 /**
  * This class performs a marker-based watershed segmentation using the Soille
@@ -125,6 +126,8 @@ public class MarkerBasedWatershed extends Algorithm {
 		IntegerImage output = new IntegerImage(xdim, inputImage.getYDim(), 1, 1, 1);
 		outputImage = new IntegerImage(xdim, ydim, inputImage.getZDim(), inputImage
 			.getTDim(), inputImage.getBDim());
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(GRAY_LEVELS);
+		int[] neighbours = new int[8];
 		for (int z = 0; z < inputImage.getZDim(); z++)
 			for (int b = 0; b < inputImage.getBDim(); b++)
 				for (int t = 0; t < inputImage.getTDim(); t++) {
@@ -136,7 +139,7 @@ public class MarkerBasedWatershed extends Algorithm {
 							// Work still have values from 0 to 255.
 							input.setPixelInt(x, y, 0, 0, 0, inputImage.getPixelByte(x, y, z,
 								t, b));
-					HierarchicalQueue queue = new HierarchicalQueue(GRAY_LEVELS);
+					queue.reset();
 					int currentLabel = 1;
 					output.fill(NULL);
 
@@ -177,7 +180,7 @@ public class MarkerBasedWatershed extends Algorithm {
 							else if (p != NULL) {
 								output.setPixelXYInt(x, y, p);
 								if (bord(x, y, p))
-									queue.add(new Point(x, y), NULL);
+									queue.add(y * xdim + x, NULL);
 							}
 						}
 
@@ -202,15 +205,16 @@ public class MarkerBasedWatershed extends Algorithm {
 
 					// Perform the flooding
 					while (!queue.isEmpty()) {
-						Point p = queue.get();
-						int label = output.getPixelXYInt(p.x, p.y);
+						int p = queue.get();
+						int label = output.getPixelInt(p);
 						// get the non labelled 8-neighbours of (x,y)
-						Point[] neighbours = getNonLabelledNeighbours(output, p.x, p.y);
-						for (int i = 0; i < neighbours.length; i++) {
+						int cnt = getNonLabelledNeighbours(output, p % xdim, p / xdim,
+							neighbours);
+						for (int i = 0; i < cnt; i++) {
 							// give him the label of p
-							output.setPixelXYInt(neighbours[i].x, neighbours[i].y, label);
+							output.setPixelInt(neighbours[i], label);
 							// get his gray level
-							int val = input.getPixelXYInt(neighbours[i].x, neighbours[i].y);
+							int val = input.getPixelInt(neighbours[i]);
 							// add him to the appropriate queue
 							queue.add(neighbours[i], val);
 						}
@@ -270,7 +274,7 @@ public class MarkerBasedWatershed extends Algorithm {
 	}
 
 	private void marker(IntegerImage input, IntegerImage output, int x, int y,
-		HierarchicalQueue queue, int label) {
+		IntHierarchicalQueue queue, int label) {
 		LinkedList fifo = new LinkedList();
 
 		fifo.add(new Point(x, y));
@@ -278,7 +282,7 @@ public class MarkerBasedWatershed extends Algorithm {
 		while (fifo.size() > 0) {
 			Point p = (Point) fifo.removeFirst();
 
-			queue.add(p, NULL);
+			queue.add(p.y * xdim + p.x, NULL);
 			output.setPixelXYInt(p.x, p.y, label);
 
 			for (int j = p.y - 1; j <= p.y + 1; j++) {
@@ -308,83 +312,33 @@ public class MarkerBasedWatershed extends Algorithm {
 		}
 	}
 
-	private Point[] getNonLabelledNeighbours(IntegerImage output, int x, int y) {
-		Point[] neighbours = new Point[8];
-
+	/**
+	 * Writes the linear indexes of the non labelled neighbours of (x,y) into
+	 * neighbours, which must hold 8 values.
+	 * 
+	 * @return the number of neighbours found
+	 */
+	private int getNonLabelledNeighbours(IntegerImage output, int x, int y,
+		int[] neighbours) {
 		int cnt = 0;
 
 		for (int j = y - 1; j <= y + 1; j++) {
 			for (int i = x - 1; i <= x + 1; i++) {
-				if (i < 0 || i >= output.getXDim() || j < 0 || j >= output.getYDim())
+				if (i < 0 || i >= xdim || j < 0 || j >= ydim)
 					continue;
 				if (connexity4 && i != 0 && j != 0)
 					continue;
 				if (!mask.getPixelXYBoolean(i, j))
 					continue;
-				int z = output.getPixelXYInt(i, j);
+				int z = output.getPixelInt(j * xdim + i);
 
 				if (!(i == x && j == y) && z == NULL)
-					neighbours[cnt++] = new Point(i, j);
+					neighbours[cnt++] = j * xdim + i;
 
 			}
 		}
 
-		if (cnt < 8) {
-			Point[] tmp = new Point[cnt];
-
-			for (int i = 0; i < cnt; i++)
-				tmp[i] = neighbours[i];
-
-			neighbours = tmp;
-		}
-
-		return neighbours;
-	}
-
-	private class HierarchicalQueue {
-		private LinkedList[] queue;
-
-		private int current;
-
-		HierarchicalQueue(int size) {
-			queue = new LinkedList[size];
-
-			for (int i = 0; i < size; i++)
-				queue[i] = new LinkedList();
-
-			current = 0;
-		}
-
-		void add(Point p, int val) {
-			if (val >= current)
-				queue[val].add(p);
-			else
-				queue[current].add(p);
-		}
-
-		Point get() {
-			if (queue[current].size() >= 2)
-				return (Point) queue[current].removeFirst();
-			else if (queue[current].size() == 1) {
-				Point p = (Point) queue[current].removeFirst();
-
-				while (current < 255 && queue[current].size() == 0)
-					current++;
-
-				return p;
-
-			} else
-				return null;
-		}
-
-		boolean isEmpty() {
-			int sum = 0;
-
-			for (int i = current; i < queue.length; i++)
-				sum += queue[i].size();
-
-			return (sum == 0);
-		}
+		return cnt;
 	}
 
 }
@@ -1,8 +1,6 @@
 package fr.unistra.pelican.algorithms.segmentation;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.TreeMap;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
@@ -10,6 +8,7 @@ import fr.unistra.pelican.BooleanImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.IntHierarchicalQueue;
 import fr.unistra.pelican.util.Point4D;
 
 
@@ -19,6 +18,9 @@ import fr.unistra.pelican.util.Point4D;
  * Seeded region growing. IEEE Transaction on Pattern
  * Analysis and Machine Intelligence, 16(6) :641–647, 1994.
  * 
+ * The sequentially sorted list is an IntHierarchicalQueue of pixel indexes,
+ * whose levels are the deltas quantized to 1/DELTA_PRECISION of gray level.
+ * 
  * @author Jonathan Weber
  *
  */
@@ -63,6 +65,11 @@ public class SeededRegionGrowing extends Algorithm {
 	public static final int IGNORE=-2;
 	public static int FRONTIER;
 	
+	/**
+	 * Number of levels of the sequentially sorted list per gray level
+	 */
+	private static final int DELTA_PRECISION = 4096;
+	
 	public SeededRegionGrowing()
 	{
 		super.inputs="inputImage,seeds,neighbourhood";
@@ -101,11 +108,12 @@ public class SeededRegionGrowing extends Algorithm {
 		//Init graph
 		
 		// Init SSL
-		TreeMap<Double,ArrayList<Point4D>> ssl = new TreeMap<Double,ArrayList<Point4D>>();
+		IntHierarchicalQueue ssl = new IntHierarchicalQueue(255*DELTA_PRECISION+1);
+		int index=0;
 		for(int t=0;t<tDim;t++)
 			for(int z=0;z<zDim;z++)
 				for(int y=0;y<yDim;y++)
-					for(int x=0;x<xDim;x++)
+					for(int x=0;x<xDim;x++,index++)
 					{
 						if(outputImage.getPixelXYZTInt(x, y, z, t)==UNLABELED)
 						{
@@ -127,7 +135,7 @@ public class SeededRegionGrowing extends Algorithm {
 							}
 							if(delta!=Double.MAX_VALUE)
 							{
-								addToSSL(new Point4D(x,y,z,t),delta,ssl,pointDelta);
+								addToSSL(index,delta,ssl,pointDelta);
 							}
 						}
 					}
@@ -138,17 +146,23 @@ public class SeededRegionGrowing extends Algorithm {
 			count++;
 			/*if(count%10000==0)
 				System.out.println(count+"/"+seeds.size());*/
-			Point4D point = getFirstFromSSL(ssl);
-			if(seeds.getPixelXYZTInt(point.x, point.y, point.z, point.t)==UNLABELED)
+			int point = ssl.get();
+			// A pixel is queued again when its delta decreases, it is only
+			// processed the first time it leaves the SSL
+			if(outputImage.getPixelInt(point)==UNLABELED)
 			{
+				int pointX = point%xDim;
+				int pointY = (point/xDim)%yDim;
+				int pointZ = (point/xDim/yDim)%zDim;
+				int pointT = point/xDim/yDim/zDim;
 				int currentLabel=-1;
 				boolean frontierFlag=false;
 				for(Point4D n : neighbourhood)
 				{
-					int locX = point.x+n.x;
-					int locY = point.y+n.y;
-					int locZ = point.z+n.z;
-					int locT = point.t+n.t;
+					int locX = pointX+n.x;
+					int locY = pointY+n.y;
+					int locZ = pointZ+n.z;
+					int locT = pointT+n.t;
 					if(!outputImage.isOutOfBoundsXYZT(locX, locY, locZ, locT))
 					{
 						int neighbourLabel = outputImage.getPixelXYZTInt(locX,locY,locZ,locT);
@@ -168,25 +182,25 @@ public class SeededRegionGrowing extends Algorithm {
 				}
 				if(frontierFlag)
 				{
-					outputImage.setPixelXYZTInt(point.x, point.y, point.z, point.t, FRONTIER);
+					outputImage.setPixelInt(point, FRONTIER);
 					//System.out.println("Frontier : "+FRONTIER);
 				}
 				else
 				{
-					outputImage.setPixelXYZTInt(point.x, point.y, point.z, point.t, currentLabel);
+					outputImage.setPixelInt(point, currentLabel);
 					//System.out.println("Label : "+currentLabel);
-					means[currentLabel].addPixel(inputImage.getPixelXYZTByte(point.x, point.y, point.z, point.t));
+					means[currentLabel].addPixel(inputImage.getPixelByte(point));
 					for(Point4D n : neighbourhood)
 					{
-						int locX = point.x+n.x;
-						int locY = point.y+n.y;
-						int locZ = point.z+n.z;
-						int locT = point.t+n.t;
+						int locX = pointX+n.x;
+						int locY = pointY+n.y;
+						int locZ = pointZ+n.z;
+						int locT = pointT+n.t;
 						if(!outputImage.isOutOfBoundsXYZT(locX, locY, locZ, locT))
 						{
 							if(outputImage.getPixelXYZTInt(locX, locY, locZ, locT)==UNLABELED)
 							{
-								addToSSL(new Point4D(locX, locY, locZ, locT),Math.abs(inputImage.getPixelXYZTByte(locX, locY, locZ, locT)-means[currentLabel].getMean()),ssl,pointDelta);
+								addToSSL(outputImage.getLinearIndexXYZT_(locX, locY, locZ, locT),Math.abs(inputImage.getPixelXYZTByte(locX, locY, locZ, locT)-means[currentLabel].getMean()),ssl,pointDelta);
 							}
 						}
 					}
@@ -251,51 +265,16 @@ public class SeededRegionGrowing extends Algorithm {
 		}
 	}
 	
-	private void addToSSL(Point4D point, double delta,TreeMap<Double,ArrayList<Point4D>> ssl, double[] pointDelta)
+	private void addToSSL(int point, double delta, IntHierarchicalQueue ssl, double[] pointDelta)
 	{
-		boolean addPoint=true;
-		if(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]!=Double.MAX_VALUE)
-		{
-			if(delta<pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)])
-			{
-				ArrayList<Point4D> tmp = ssl.get(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]);
-				tmp.remove(point);
-				if(tmp.isEmpty())
-				{
-					ssl.remove(pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]);
-				}
-			}
-			else
-			{
-				addPoint=false;
-			}
-		}
-		if(addPoint)
+		// The pixel is only queued if it is new or if its delta decreases
+		if(delta<pointDelta[point])
 		{
-			pointDelta[outputImage.getLinearIndexXYZT_(point.x, point.y, point.z, point.t)]=delta;
-			if(ssl.containsKey(delta))
-			{
-				ssl.get(delta).add(point);
-			} else
-			{
-				ArrayList<Point4D> tmp = new ArrayList<Point4D>();
-				tmp.add(point);
-				ssl.put(delta, tmp);
-			}
+			pointDelta[point]=delta;
+			ssl.insert(point, (int)(delta*DELTA_PRECISION));
 		}		
 	}
 	
-	private Point4D getFirstFromSSL(TreeMap<Double,ArrayList<Point4D>> ssl)
-	{
-		ArrayList<Point4D> tmp = ssl.get(ssl.firstKey());
-		Point4D point = tmp.remove(0);
-		if(tmp.isEmpty())
-		{
-			ssl.pollFirstEntry();
-		}
-		return point;
-	}
-	
 	/**
 	 * Perform a seed region growing
 	 * 
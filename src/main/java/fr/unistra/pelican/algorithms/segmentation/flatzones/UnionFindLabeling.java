@@ -0,0 +1,426 @@
+package fr.unistra.pelican.algorithms.segmentation.flatzones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ * Two-pass connected components labeling on primitive arrays, shared by the
+ * labeling algorithms of this package.
+ *
+ * The pixels are scanned along axes given from the fastest to the slowest,
+ * each with its size and its stride in the pixel arrays, so that the scan
+ * order does not have to be the order of the arrays. A pixel is connected to
+ * its neighbours of the same value, the neighbourhood being given by the
+ * displacements towards the neighbours already scanned. The first pass joins
+ * the pixels in a union-find forest whose root is always the first pixel of
+ * its set in the scan order, the second pass numbers the roots in the scan
+ * order. The labels are thus the ones given by a correspondance table.
+ *
+ * As in the decision tree of Wu et al., once a pixel is joined to a
+ * neighbour, the neighbours adjacent to that one are already in its set and
+ * are not checked.
+ *
+ * The lines of the scan are shared by several threads: each strip of lines is
+ * labeled on its own, then the first lines of the strips are joined to the
+ * previous strips.
+ *
+ * @author PELICAN team.
+ */
+public class UnionFindLabeling {
+
+	/**
+	 * Sizes of the axes, from the fastest to the slowest
+	 */
+	private final int[] dims;
+
+	/**
+	 * Strides of the axes in the pixel arrays
+	 */
+	private final int[] strides;
+
+	/**
+	 * Displacements towards the neighbours already scanned, along the axes
+	 */
+	private final int[][] neighbours;
+
+	/**
+	 * Offsets of the neighbours in the pixel arrays
+	 */
+	private final int[] offsets;
+
+	/**
+	 * Offsets of the lines of the neighbours, in lines
+	 */
+	private final int[] lineOffsets;
+
+	/**
+	 * Neighbours adjacent to each neighbour, as bit masks
+	 */
+	private final long[] covers;
+
+	/**
+	 * Greatest number of lines between a pixel and its neighbours
+	 */
+	private final int reach;
+
+	/**
+	 * Marks the pixels which are not labeled in the forest
+	 */
+	private static final int UNLABELED = Integer.MIN_VALUE;
+
+	/**
+	 * Constructor
+	 *
+	 * @param dims
+	 *          sizes of the axes, from the fastest to the slowest in the scan
+	 * @param strides
+	 *          strides of the axes in the pixel arrays
+	 * @param neighbours
+	 *          displacements towards the neighbours, each one being scanned
+	 *          before the pixel
+	 */
+	public UnionFindLabeling(int[] dims, int[] strides, int[][] neighbours) {
+		this.dims = dims;
+		this.strides = strides;
+		// neighbours along axes of size 1 are never in the image
+		ArrayList<int[]> kept = new ArrayList<int[]>();
+		for (int[] d : neighbours) {
+			boolean inside = true;
+			for (int i = 0; i < d.length; i++)
+				if (d[i] != 0 && dims[i] == 1)
+					inside = false;
+			if (inside)
+				kept.add(d);
+		}
+		// two neighbours of the same value which are adjacent are already in the
+		// same set, so the neighbours adjacent to many others are tried first
+		final int[] adjacent = new int[kept.size()];
+		for (int m = 0; m < kept.size(); m++)
+			for (int n = 0; n < kept.size(); n++)
+				if (UnionFindLabeling.adjacent(kept, kept.get(m), kept.get(n)))
+					adjacent[m]++;
+		Integer[] order = new Integer[kept.size()];
+		for (int n = 0; n < order.length; n++)
+			order[n] = n;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer m, Integer n) {
+				return adjacent[n] - adjacent[m];
+			}
+		});
+		this.neighbours = new int[order.length][];
+		for (int n = 0; n < order.length; n++)
+			this.neighbours[n] = kept.get(order[n]);
+		covers = new long[this.neighbours.length];
+		if (this.neighbours.length <= 64)
+			for (int m = 0; m < covers.length; m++)
+				for (int n = 0; n < covers.length; n++)
+					if (UnionFindLabeling.adjacent(kept, this.neighbours[m],
+						this.neighbours[n]))
+						covers[m] |= 1L << n;
+		offsets = new int[this.neighbours.length];
+		lineOffsets = new int[this.neighbours.length];
+		int max = 0;
+		for (int n = 0; n < this.neighbours.length; n++) {
+			int[] d = this.neighbours[n];
+			for (int i = 0, size = 1; i < dims.length; i++) {
+				offsets[n] += d[i] * strides[i];
+				if (i > 0) {
+					lineOffsets[n] += d[i] * size;
+					size *= dims[i];
+				}
+			}
+			if (lineOffsets[n] > 0 || lineOffsets[n] == 0 && d[0] >= 0)
+				throw new IllegalArgumentException(
+					"Neighbours must be scanned before the pixel");
+			max = Math.max(max, -lineOffsets[n]);
+		}
+		reach = max;
+	}
+
+	/**
+	 * Tells whether two neighbours are neighbours of each other.
+	 */
+	private static boolean adjacent(ArrayList<int[]> neighbours, int[] a, int[] b) {
+		for (int[] d : neighbours) {
+			boolean forward = true, backward = true;
+			for (int i = 0; i < d.length; i++) {
+				forward &= a[i] - b[i] == d[i];
+				backward &= b[i] - a[i] == d[i];
+			}
+			if (forward || backward)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Displacements towards the neighbours scanned before a pixel, within the
+	 * first axes.
+	 *
+	 * @param axes
+	 *          number of axes of the scan
+	 * @param connected
+	 *          number of first axes along which pixels are connected
+	 * @param full
+	 *          true for all the neighbours of the unit cube (8 in 2D, 26 in 3D),
+	 *          false for the neighbours along a single axis (4 in 2D, 6 in 3D)
+	 * @return the displacements
+	 */
+	public static int[][] causalNeighbours(int axes, int connected, boolean full) {
+		ArrayList<int[]> res = new ArrayList<int[]>();
+		int count = 1;
+		for (int i = 0; i < connected; i++)
+			count *= 3;
+		// the first half of the unit cube, in the scan order, is scanned before
+		for (int k = 0; k < count / 2; k++) {
+			int[] d = new int[axes];
+			int nonZero = 0;
+			for (int i = 0, r = k; i < connected; i++, r /= 3) {
+				d[i] = r % 3 - 1;
+				if (d[i] != 0)
+					nonZero++;
+			}
+			if (full || nonZero == 1)
+				res.add(d);
+		}
+		return res.toArray(new int[res.size()][]);
+	}
+
+	/**
+	 * Adds a displacement to a set of displacements.
+	 *
+	 * @param neighbours
+	 *          displacements
+	 * @param d
+	 *          added displacement
+	 * @return the displacements
+	 */
+	public static int[][] add(int[][] neighbours, int[] d) {
+		int[][] res = new int[neighbours.length + 1][];
+		System.arraycopy(neighbours, 0, res, 0, neighbours.length);
+		res[neighbours.length] = d;
+		return res;
+	}
+
+	/**
+	 * Values of the pixels of an image, 1 and 0 for a boolean image.
+	 *
+	 * @param input
+	 *          image
+	 * @return the values, in the order of the pixels of the image
+	 */
+	static int[] getValues(Image input) {
+		int[] values = new int[input.size()];
+		if (input instanceof BooleanImage) {
+			for (int i = 0; i < values.length; i++)
+				values[i] = input.getPixelBoolean(i) ? 1 : 0;
+		} else
+			for (int i = 0; i < values.length; i++)
+				values[i] = input.getPixelInt(i);
+		return values;
+	}
+
+	/**
+	 * Copies labels in a label image.
+	 *
+	 * @param output
+	 *          label image
+	 * @param labels
+	 *          labels, in the order of the pixels of the image
+	 */
+	static void setLabels(IntegerImage output, int[] labels) {
+		for (int i = 0; i < labels.length; i++)
+			output.setPixelInt(i, labels[i]);
+	}
+
+	/**
+	 * Labels the connected components.
+	 *
+	 * @param values
+	 *          values of the pixels, width values per pixel
+	 * @param width
+	 *          number of values of a pixel, two pixels being connected if all
+	 *          their values are equal
+	 * @param all
+	 *          true to label all the pixels, false to leave the pixels whose
+	 *          value is skipped out (then width must be 1)
+	 * @param skipped
+	 *          value of the pixels which are not labeled, when all is false
+	 * @param output
+	 *          set to the label of each pixel, from 1 in the scan order, or 0
+	 *          for the pixels which are not labeled
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 * @return the number of components
+	 */
+	public int label(final int[] values, final int width, final boolean all,
+		final int skipped, int[] output, int parallelism) {
+		final int[] parent = new int[output.length];
+		final int lines = output.length / dims[0];
+		final boolean[] firstLines = new boolean[lines];
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				firstLines[start] = true;
+				scan(values, width, all, skipped, parent, start, end, false);
+			}
+		}, lines, parallelism);
+		// the previous strips are complete, so the first lines of a strip are
+		// joined to them in the scan order
+		for (int line = 1; line < lines; line++)
+			if (firstLines[line])
+				scan(values, width, all, skipped, parent, line, Math.min(lines, line
+					+ reach), true);
+
+		// the parent of a pixel is scanned before it, and numbered first
+		int count = 0;
+		int[] pos = new int[dims.length];
+		for (int line = 0, s = 0; line < lines; line++) {
+			int e = position(line, pos);
+			for (int x = 0; x < dims[0]; x++, s++, e += strides[0]) {
+				int p = parent[s];
+				if (p == UNLABELED)
+					output[e] = 0;
+				else if (p == s) {
+					output[e] = ++count;
+					parent[s] = -count;
+				} else {
+					int label = -parent[p];
+					output[e] = label;
+					parent[s] = -label;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Scans lines, joining each pixel to its neighbours of the same value.
+	 *
+	 * @param start
+	 *          first line
+	 * @param end
+	 *          last line, excluded
+	 * @param merge
+	 *          false to initialize the pixels and join them to the neighbours
+	 *          of lines from start, true to join them to the neighbours of the
+	 *          lines before start
+	 */
+	private void scan(int[] values, int width, boolean all, int skipped,
+		int[] parent, int start, int end, boolean merge) {
+		int xDim = dims[0];
+		int stride = strides[0];
+		// pixels of a line whose neighbours along x are all in the image
+		int margin = 0;
+		for (int n = 0; n < neighbours.length; n++)
+			margin = Math.max(margin, Math.abs(neighbours[n][0]));
+		int[] pos = new int[dims.length];
+		// displacements along x and offsets of the neighbours of a line
+		int[] dx = new int[neighbours.length];
+		int[] scanOffsets = new int[neighbours.length];
+		int[] arrayOffsets = new int[neighbours.length];
+		long[] bits = new long[neighbours.length];
+		long[] joined = new long[neighbours.length];
+		for (int line = start; line < end; line++) {
+			int e = position(line, pos);
+			// neighbours of the line in the image, and in the lines considered
+			int count = 0;
+			for (int n = 0; n < neighbours.length; n++)
+				if ((line + lineOffsets[n] < start) == merge
+					&& inside(pos, neighbours[n])) {
+					dx[count] = neighbours[n][0];
+					scanOffsets[count] = neighbours[n][0] + lineOffsets[n] * xDim;
+					bits[count] = n < 64 ? 1L << n : 0;
+					joined[count] = covers[n];
+					arrayOffsets[count++] = offsets[n];
+				}
+			for (int x = 0, s = line * xDim; x < xDim; x++, s++, e += stride) {
+				boolean labeled = all || values[e] != skipped;
+				if (!merge)
+					parent[s] = labeled ? s : UNLABELED;
+				if (!labeled)
+					continue;
+				// root of the set of the pixel, kept along the neighbours
+				int root = merge ? find(parent, s) : s;
+				boolean border = x < margin || x >= xDim - margin;
+				long done = 0;
+				for (int k = 0; k < count; k++) {
+					if ((done & bits[k]) != 0 || border
+						&& (x + dx[k] < 0 || x + dx[k] >= xDim))
+						continue;
+					int q = s + scanOffsets[k];
+					int f = e + arrayOffsets[k];
+					// a neighbour of the same value is labeled as well
+					if (width == 1 ? values[e] != values[f] : !equal(values, width, e, f))
+						continue;
+					done |= joined[k];
+					int r = find(parent, q);
+					if (r < root) {
+						parent[root] = r;
+						root = r;
+					} else if (r > root)
+						parent[r] = root;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Position of the first pixel of a line.
+	 *
+	 * @param line
+	 *          line
+	 * @param pos
+	 *          set to the position of the pixel along the axes
+	 * @return the index of the pixel in the arrays
+	 */
+	private int position(int line, int[] pos) {
+		int e = 0;
+		pos[0] = 0;
+		for (int i = 1, r = line; i < dims.length; i++) {
+			pos[i] = r % dims[i];
+			r /= dims[i];
+			e += pos[i] * strides[i];
+		}
+		return e;
+	}
+
+	/**
+	 * Tells whether a neighbour is in the image, along all the axes but the
+	 * first one.
+	 */
+	private boolean inside(int[] pos, int[] d) {
+		for (int i = 1; i < d.length; i++) {
+			int p = pos[i] + d[i];
+			if (p < 0 || p >= dims[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Tells whether two pixels have the same values.
+	 */
+	private static boolean equal(int[] values, int width, int e, int f) {
+		for (int b = 0, i = e * width, j = f * width; b < width; b++, i++, j++)
+			if (values[i] != values[j])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Root of the set of a pixel, halving the path to it.
+	 */
+	private static int find(int[] parent, int s) {
+		while (parent[s] != s) {
+			parent[s] = parent[parent[s]];
+			s = parent[s];
+		}
+		return s;
+	}
+}
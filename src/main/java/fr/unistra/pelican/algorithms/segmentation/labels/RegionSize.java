@@ -41,7 +41,7 @@ public class RegionSize extends Algorithm {
 		// Fill this array with the size of each region.
 		for (int i = 0; i < max; i++)
 			regionSize[i] = 0;
-		if(input.getMask()==null||input.getMask().isEmpty())
+		if(input.isUnmasked())
 		{
 			for (int i = 0; i < input.size(); i++) {
 				int label = input.getPixelInt(i);
@@ -114,7 +114,7 @@ public class MultivariateLogicalPredicateConnectivity extends Algorithm {
 		fifoQ = new FIFOQueue<Point4D>();
 		QFZ = inputImage.newIntegerImage(XDim,YDim,ZDim,TDim,1);
 		QFZ.fill(UNLABELLED);
-		if(inputImage.getMask()==null||inputImage.getMask().isEmpty())
+		if(inputImage.isUnmasked())
 		{
 			for(currentT=0;currentT<TDim;currentT++)
 				for(currentZ=0;currentZ<ZDim;currentZ++)
@@ -184,7 +184,7 @@ public class MultivariateLogicalPredicateConnectivity extends Algorithm {
 	private final void addUnlabelledAlphaNeighboursToFIFO(int x, int y, int z, int t)
 	{
 		int[] pixelValues = inputImage.getVectorPixelXYZTByte(x, y, z, t);
-		if(inputImage.getMask()==null||inputImage.getMask().isEmpty())
+		if(inputImage.isUnmasked())
 		{
 			for(int i=0;i<neighbourhood.length;i++)
 			{
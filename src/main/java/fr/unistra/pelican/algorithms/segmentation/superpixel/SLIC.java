@@ -1,170 +1,377 @@
 package fr.unistra.pelican.algorithms.segmentation.superpixel;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
-import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
-import fr.unistra.pelican.algorithms.conversion.RGBToXYZ;
-import fr.unistra.pelican.algorithms.conversion.XYZToLAB;
-import fr.unistra.pelican.algorithms.morphology.vectorial.gradient.MultispectralEuclideanGradient;
-import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+import fr.unistra.pelican.util.colour.ColourConversion;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
 
 /**
  * Implementation of SLIC superpixels
- * 
+ *
  * Radhakrishna Achanta, Appu Shaji, Kevin Smith, Aurelien Lucchi, Pascal Fua, and Sabine Süsstrunk,
- *  SLIC Superpixels Compared to State-of-the-art Superpixel Methods, 
+ *  SLIC Superpixels Compared to State-of-the-art Superpixel Methods,
  * IEEE Transactions on Pattern Analysis and Machine Intelligence, vol. 34, num. 11, p. 2274 - 2282, May 2012.
- * 
+ *
+ * Three band images are taken as RGB and clustered in CIE LAB. Images with
+ * another number of bands are clustered on their bands, scaled in [0,100] like
+ * the L of LAB so that m keeps its meaning.
+ *
+ * The pixels are kept in a flat float buffer. Pixel assignment is done by
+ * strips of lines and the update of the cluster centers by groups of clusters,
+ * on several threads: a strip only writes its own pixels and a cluster only
+ * reads the pixels of its window, so that the result does not depend on the
+ * number of threads.
+ *
  * @author Jonathan Weber
  */
 
 public class SLIC extends Algorithm {
-	
+
 	public Image inputImage;
 	public int numberOfSuperpixels;
-	
+
 	//Between 1 and 40, low value to respect boundary, high value to respect compactness
 	public double m=10;
-	
+
+	/**
+	 * Maximum number of iterations
+	 */
+	public int maxIterations=10;
+
+	/**
+	 * Iterations stop when the mean move of the cluster centers, in pixels, is at most this threshold
+	 */
+	public double threshold=0.1;
+
+	/**
+	 * Merges the pieces of superpixels which are disconnected or smaller than a quarter of the expected size
+	 */
+	public boolean enforceConnectivity=true;
+
+	/**
+	 * Number of threads : 0 for all the available processors, 1 for a sequential computation.
+	 */
+	public int parallelism=0;
+
 	public IntegerImage superpixels;
-	
+
+	private int xDim;
+	private int yDim;
+	private int bDim;
+
+	//Distance between two initial cluster centers
+	private int step;
+
+	//Pixel values, bDim floats per pixel
+	private float[] features;
+
+	private int nbClusters;
+	private double[] centerX;
+	private double[] centerY;
+	//Cluster colours, bDim values per cluster
+	private double[] centerColour;
+
+	private int[] label;
+	private float[] distance;
+
 	public SLIC()
 	{
 		super();
 		super.inputs="inputImage,numberOfSuperpixels";
-		super.options="m";
+		super.options="m,maxIterations,threshold,enforceConnectivity,parallelism";
 		super.outputs = "superpixels";
 	}
 
 	@Override
 	public void launch() throws AlgorithmException {
-		int xDim = inputImage.xdim;
-		int yDim = inputImage.ydim;
-		
-		
-		// Convert image to Lab color space
-		Image lab = XYZToLAB.exec(RGBToXYZ.exec(inputImage));
-		
-		// Perform gradient on RGB image
-		Image gradient = MultispectralEuclideanGradient.exec(inputImage, FlatStructuringElement2D.createSquareFlatStructuringElement(3));
-		
+		if(inputImage.getZDim()!=1 || inputImage.getTDim()!=1)
+			throw new AlgorithmException("SLIC works on 2-D images");
+		xDim = inputImage.getXDim();
+		yDim = inputImage.getYDim();
+		bDim = inputImage.getBDim();
+
+		features = computeFeatures();
+
 		//Compute step value
-		int step = (int) Math.round(Math.sqrt(((double)gradient.size())/numberOfSuperpixels));
-		
-		//Initiate cluster
-		ArrayList<Cluster> clusters = new ArrayList<Cluster>();
+		step = Math.max(1,(int) Math.round(Math.sqrt(((double)xDim*yDim)/numberOfSuperpixels)));
+
+		initClusters();
+
+		label = new int[xDim*yDim];
+		distance = new float[xDim*yDim];
+		for(int iteration=0;iteration<maxIterations;iteration++)
+		{
+			assignPixels();
+			double move = updateClusters();
+			if(nbClusters==0||move/nbClusters<=threshold)
+				break;
+		}
+
+		if(enforceConnectivity)
+			label = enforceConnectivity(label, xDim, yDim, step*step/4);
+
+		//Segmentation result
+		superpixels = new IntegerImage(xDim,yDim,1,1,1);
+		superpixels.setPixels(label);
+		features = null;
+		distance = null;
+		label = null;
+	}
+
+	/**
+	 * Copies the pixel values in a float buffer: LAB values for a three band image, scaled values of the bands otherwise.
+	 * @return the pixel values, in the order of the linear indexes of the image
+	 */
+	private float[] computeFeatures()
+	{
+		if(bDim==3)
+			return ColourConversion.RGB_TO_LAB.convertToFloats(inputImage, 0, parallelism);
+		final float[] values = new float[inputImage.size()];
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				for(int p=start;p<end;p++)
+					values[p]=(float) (100*inputImage.getPixelDouble(p));
+			}
+		}, 0, parallelism, inputImage);
+		return values;
+	}
+
+	/**
+	 * Puts a cluster center on a grid of the given step, each one moved to the lowest gradient in its 3x3 neighbourhood.
+	 */
+	private void initClusters()
+	{
+		int nx = (xDim-step/2+step-1)/step;
+		int ny = (yDim-step/2+step-1)/step;
+		nbClusters = nx*ny;
+		centerX = new double[nbClusters];
+		centerY = new double[nbClusters];
+		centerColour = new double[nbClusters*bDim];
+		int k=0;
 		for(int y=step/2;y<yDim;y+=step)
 			for(int x=step/2;x<xDim;x+=step)
 			{
-				clusters.add(new Cluster(lab.getPixelXYBDouble(x, y, 0),lab.getPixelXYBDouble(x, y, 1),lab.getPixelXYBDouble(x, y, 2),x,y));
+				double lowestGradient=Double.MAX_VALUE;
+				int bestX=x;
+				int bestY=y;
+				for(int yy=y-1;yy<=y+1;yy++)
+					for(int xx=x-1;xx<=x+1;xx++)
+					{
+						if(xx<1||yy<1||xx>=xDim-1||yy>=yDim-1)
+							continue;
+						double gradient=gradient(xx,yy);
+						if(gradient<lowestGradient)
+						{
+							lowestGradient=gradient;
+							bestX=xx;
+							bestY=yy;
+						}
+					}
+				centerX[k]=bestX;
+				centerY[k]=bestY;
+				int p=(bestY*xDim+bestX)*bDim;
+				for(int b=0;b<bDim;b++)
+					centerColour[k*bDim+b]=features[p+b];
+				k++;
 			}
-		
-		//Move cluster center to lowest gradient in 3x3 neighbourhood
-		for(Cluster c : clusters)
+	}
+
+	/**
+	 * Squared norm of the central differences of the pixel values, at a pixel which is not on the border
+	 */
+	private double gradient(int x, int y)
+	{
+		int p=(y*xDim+x)*bDim;
+		int dx=bDim;
+		int dy=xDim*bDim;
+		double gradient=0;
+		for(int b=0;b<bDim;b++)
 		{
-			int lowestGradient=Integer.MAX_VALUE;
-			int bestX=0;
-			int bestY=0;
-			for(int y=c.y-1;y<=c.y+1;y++)
-				for(int x=c.x-1;x<=c.x+1;x++)
+			double gx=features[p+b+dx]-features[p+b-dx];
+			double gy=features[p+b+dy]-features[p+b-dy];
+			gradient+=gx*gx+gy*gy;
+		}
+		return gradient;
+	}
+
+	/**
+	 * Assigns each pixel to the nearest cluster whose window contains it, by strips of lines.
+	 */
+	private void assignPixels()
+	{
+		final double factor = m*m/((double)step*step);
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				Arrays.fill(distance, start*xDim, end*xDim, Float.MAX_VALUE);
+				Arrays.fill(label, start*xDim, end*xDim, -1);
+				for(int k=0;k<nbClusters;k++)
 				{
-					if(gradient.getPixelXYByte(x, y)<lowestGradient)
+					int cx=(int) Math.round(centerX[k]);
+					int cy=(int) Math.round(centerY[k]);
+					int yMin=Math.max(start, cy-step);
+					int yMax=Math.min(end-1, cy+step);
+					int xMin=Math.max(0, cx-step);
+					int xMax=Math.min(xDim-1, cx+step);
+					int c=k*bDim;
+					for(int y=yMin;y<=yMax;y++)
 					{
-						lowestGradient=gradient.getPixelXYByte(x, y);
-						bestX=x;
-						bestY=y;
+						double dy=y-centerY[k];
+						for(int x=xMin;x<=xMax;x++)
+						{
+							int p=y*xDim+x;
+							int f=p*bDim;
+							double dc=0;
+							for(int b=0;b<bDim;b++)
+							{
+								double diff=features[f+b]-centerColour[c+b];
+								dc+=diff*diff;
+							}
+							double dx=x-centerX[k];
+							float d=(float) (dc+(dx*dx+dy*dy)*factor);
+							if(d<distance[p])
+							{
+								distance[p]=d;
+								label[p]=k;
+							}
+						}
 					}
 				}
-			c.x=bestX;
-			c.y=bestY;
-			c.l=lab.getPixelXYBDouble(bestX, bestY, 0);
-			c.a=lab.getPixelXYBDouble(bestX, bestY, 1);
-			c.b=lab.getPixelXYBDouble(bestX, bestY, 2);
-		}
-		
-		// initialize label and distance image
-		IntegerImage label = new IntegerImage(xDim,yDim,1,1,1);
-		label.fill(-1);
-		DoubleImage distance = new DoubleImage(xDim,yDim,1,1,1);
-		distance.fill(Double.MAX_VALUE);
-		
-		double error=0;
-		int loop=0;
-		do
-		{			
-			loop++;
-			System.out.println("Loop "+loop+" started !");
-			
-			// Pixel assignment to cluster
-			for(int k=0;k<clusters.size();k++)
-			{
-				Cluster c = clusters.get(k);
-				int yMin=Math.max(0, c.y-step);
-				int yMax=Math.min(yDim-1, c.y+step);
-				int xMin=Math.max(0, c.x-step);
-				int xMax=Math.min(xDim-1, c.x+step);
-				for(int y=yMin;y<=yMax;y++)
-					for(int x=xMin;x<=xMax;x++)
-					{
-						double l=lab.getPixelXYBDouble(x,y,0);
-						double a=lab.getPixelXYBDouble(x,y,1);
-						double b=lab.getPixelXYBDouble(x,y,2);
-						double dc=Math.sqrt((l-c.l)*(l-c.l)+(a-c.a)*(a-c.a)+(b-c.b)*(b-c.b));
-						double ds=Math.sqrt((x-c.x)*(x-c.x)+(y-c.y)*(y-c.y));
-						double d = Math.sqrt(dc*dc+((ds/step)*(ds/step))*(m*m));
-						if(d<distance.getPixelXYDouble(x, y))
+			}
+		}, yDim, parallelism);
+	}
+
+	/**
+	 * Moves each cluster to the mean position and colour of its pixels, by groups of clusters.
+	 * @return the sum of the moves of the cluster centers
+	 */
+	private double updateClusters()
+	{
+		final double[] newX = new double[nbClusters];
+		final double[] newY = new double[nbClusters];
+		final double[] newColour = new double[nbClusters*bDim];
+		final double[] moves = new double[nbClusters];
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				double[] sum = new double[bDim];
+				for(int k=start;k<end;k++)
+				{
+					// the pixels of a cluster are in the window it had at the assignment
+					int cx=(int) Math.round(centerX[k]);
+					int cy=(int) Math.round(centerY[k]);
+					int yMin=Math.max(0, cy-step);
+					int yMax=Math.min(yDim-1, cy+step);
+					int xMin=Math.max(0, cx-step);
+					int xMax=Math.min(xDim-1, cx+step);
+					long sumX=0;
+					long sumY=0;
+					int count=0;
+					Arrays.fill(sum, 0);
+					for(int y=yMin;y<=yMax;y++)
+						for(int x=xMin;x<=xMax;x++)
 						{
-							distance.setPixelXYDouble(x,y,d);
-							label.setPixelXYInt(x, y, k);
+							int p=y*xDim+x;
+							if(label[p]==k)
+							{
+								sumX+=x;
+								sumY+=y;
+								count++;
+								for(int b=0;b<bDim;b++)
+									sum[b]+=features[p*bDim+b];
+							}
 						}
-					}						
+					if(count==0)
+					{
+						newX[k]=centerX[k];
+						newY[k]=centerY[k];
+						System.arraycopy(centerColour, k*bDim, newColour, k*bDim, bDim);
+						continue;
+					}
+					newX[k]=(double) sumX/count;
+					newY[k]=(double) sumY/count;
+					for(int b=0;b<bDim;b++)
+						newColour[k*bDim+b]=sum[b]/count;
+					double dx=newX[k]-centerX[k];
+					double dy=newY[k]-centerY[k];
+					moves[k]=Math.sqrt(dx*dx+dy*dy);
+				}
 			}
-			// Cluster center update and error computation
-			error=0;
-			int[][] newClusterCenter = new int [clusters.size()][2];
-			for(int[] val : newClusterCenter)
+		}, nbClusters, parallelism);
+		centerX=newX;
+		centerY=newY;
+		centerColour=newColour;
+		double move=0;
+		for(int k=0;k<nbClusters;k++)
+			move+=moves[k];
+		return move;
+	}
+
+	/**
+	 * Relabels the 4-connected components of a label map. A component of at most minSize pixels is merged into a component
+	 * met before it in the scanning order, so that each superpixel is connected and not too small.
+	 * @param label label of each pixel, by lines
+	 * @param xDim width of the map
+	 * @param yDim height of the map
+	 * @param minSize greatest size of a component which is merged
+	 * @return the new labels, from 0 to the number of superpixels
+	 */
+	private static int[] enforceConnectivity(int[] label, int xDim, int yDim, int minSize)
+	{
+		int size=xDim*yDim;
+		int[] newLabel = new int[size];
+		Arrays.fill(newLabel, -1);
+		int[] queue = new int[size];
+		int[] dx = {-1,0,1,0};
+		int[] dy = {0,-1,0,1};
+		int current=0;
+		int adjacent=0;
+		for(int y=0;y<yDim;y++)
+			for(int x=0;x<xDim;x++)
 			{
-				val[0]=0;
-				val[1]=0;
-			}
-			int[] newClusterPixelCount = new int[clusters.size()];
-			Arrays.fill(newClusterPixelCount, 0);
-			for(int y=0;y<yDim;y++)
-				for(int x=0;x<xDim;x++)
+				int p=y*xDim+x;
+				if(newLabel[p]>=0)
+					continue;
+				// a component met before, to merge into if this one is too small
+				for(int n=0;n<4;n++)
 				{
-					int labelValue = label.getPixelXYInt(x,y);
-					if(labelValue!=-1)
+					int xx=x+dx[n];
+					int yy=y+dy[n];
+					if(xx>=0&&yy>=0&&xx<xDim&&yy<yDim&&newLabel[yy*xDim+xx]>=0)
+						adjacent=newLabel[yy*xDim+xx];
+				}
+				newLabel[p]=current;
+				queue[0]=p;
+				int count=1;
+				for(int i=0;i<count;i++)
+				{
+					int qx=queue[i]%xDim;
+					int qy=queue[i]/xDim;
+					for(int n=0;n<4;n++)
 					{
-						newClusterCenter[labelValue][0]+=x;
-						newClusterCenter[labelValue][1]+=y;
-						newClusterPixelCount[labelValue]++;
+						int xx=qx+dx[n];
+						int yy=qy+dy[n];
+						if(xx<0||yy<0||xx>=xDim||yy>=yDim)
+							continue;
+						int q=yy*xDim+xx;
+						if(newLabel[q]<0&&label[q]==label[p])
+						{
+							newLabel[q]=current;
+							queue[count++]=q;
+						}
 					}
 				}
-			for(int i=0;i<newClusterCenter.length;i++)
-			{
-				int newX = Math.round(((float) newClusterCenter[i][0])/newClusterPixelCount[i]);
-				int newY = Math.round(((float) newClusterCenter[i][1])/newClusterPixelCount[i]);
-				
-				error+=Math.sqrt((newX-clusters.get(i).x)*(newX-clusters.get(i).x)+(newY-clusters.get(i).y)*(newY-clusters.get(i).y));
-				clusters.get(i).x=newX;
-				clusters.get(i).y=newY;
-				clusters.get(i).l=lab.getPixelXYBDouble(newX, newY, 0);
-				clusters.get(i).a=lab.getPixelXYBDouble(newX, newY, 1);
-				clusters.get(i).b=lab.getPixelXYBDouble(newX, newY, 2);
-			}			
-			System.out.println("Loop "+loop+" done ! Residual error : "+error);
-		} while (error!=0);
-		
-		//Segmentation result
-		superpixels = label;
-
+				if(count<=minSize&&current>0)
+					for(int i=0;i<count;i++)
+						newLabel[queue[i]]=adjacent;
+				else
+					current++;
+			}
+		return newLabel;
 	}
-	
+
 	/**
 	 * @param inputImage  image to compute
 	 * @param numberOfSuperpixels desired number of superpixels
@@ -174,7 +381,7 @@ public class SLIC extends Algorithm {
 	{
 		return (IntegerImage) new SLIC().process(inputImage, numberOfSuperpixels);
 	}
-	
+
 	/**
 	 * @param inputImage  image to compute
 	 * @param numberOfSuperpixels desired number of superpixels
@@ -186,22 +393,4 @@ public class SLIC extends Algorithm {
 		return (IntegerImage) new SLIC().process(inputImage, numberOfSuperpixels,m);
 	}
 
-	private class Cluster
-	{
-		public double l;
-		public double a;
-		public double b;
-		public int x;
-		public int y;
-		
-		public Cluster(double l, double a, double b, int x, int y)
-		{
-			this.l=l;
-			this.a=a;
-			this.b=b;
-			this.x=x;
-			this.y=y;
-		}
-	}
-	
 }
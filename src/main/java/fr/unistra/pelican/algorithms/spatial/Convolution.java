@@ -10,6 +10,9 @@ import fr.unistra.pelican.util.morphology.GrayStructuringElement;
 /**
  * Standard convolution for linear filters
  * 
+ * Images of a single (z,t) slice are convolved by FastConvolution, which
+ * chooses between the direct, separable and FFT methods.
+ * 
  * @author Lefevre
  */
 public class Convolution extends Algorithm {
@@ -51,6 +54,17 @@ public class Convolution extends Algorithm {
 		int yDim = input.getYDim();
 		int bDim = input.getBDim();
 
+		if (input.getZDim() == 1 && input.getTDim() == 1) {
+			// the reflected kernel is centered at its middle, whatever the
+			// center of the kernel
+			int kx = kernel.getXDim();
+			int ky = kernel.getYDim();
+			output = FastConvolution.convolve(input, FastConvolution
+				.weights(kernel), kx, ky, kx - 1 - kx / 2, ky - 1 - ky / 2,
+				FastConvolution.Method.AUTO, true, 0);
+			return;
+		}
+
 		// reflect...
 		kernel = kernel.getReflection();
 
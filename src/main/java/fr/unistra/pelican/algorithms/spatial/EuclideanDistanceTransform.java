@@ -0,0 +1,277 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ * Computes the exact Euclidean distance transform of a binary image in linear
+ * time.
+ *
+ * The features are the true pixels, as in DistanceTransform: they get 0 and
+ * the other pixels get the distance to the nearest feature. The transform is
+ * separable: the squared distances are computed along the lines of x, then
+ * along the columns of y and the lines of z, each time as the lower envelope
+ * of the parabolas of the previous pass (Felzenszwalb and Huttenlocher,
+ * Meijster et al.). Lines are independent, so each pass is shared between
+ * threads. Frames and bands are processed separately.
+ *
+ * The nearest output, computed with the features option, gives the linear
+ * index of the nearest feature of each pixel, or -1 if its frame and band has
+ * no feature.
+ *
+ * @author PELICAN team.
+ */
+public class EuclideanDistanceTransform extends Algorithm {
+
+	/**
+	 * Input image
+	 */
+	public Image input;
+
+	/**
+	 * (optional) flag to get the squared distances, which are integers
+	 */
+	public boolean squared = false;
+
+	/**
+	 * (optional) flag to take the false pixels as features
+	 */
+	public boolean background = false;
+
+	/**
+	 * (optional) flag to compute the nearest feature of each pixel
+	 */
+	public boolean features = false;
+
+	/**
+	 * (optional) number of threads, 0 for all the processors
+	 */
+	public int parallelism = 0;
+
+	/**
+	 * Distance to the nearest feature, infinite if there is none
+	 */
+	public DoubleImage output;
+
+	/**
+	 * Linear index of the nearest feature, only with the features option
+	 */
+	public IntegerImage nearest;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public EuclideanDistanceTransform() {
+		super.inputs = "input";
+		super.options = "squared,background,features,parallelism";
+		super.outputs = "output,nearest";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		output = new DoubleImage(input, false);
+		final double[] dist = output.getPixelArray();
+		final int[] index;
+		if (features) {
+			nearest = new IntegerImage(input, false);
+			index = nearest.getPixelArray();
+		} else {
+			nearest = null;
+			index = null;
+		}
+		for (int p = 0; p < dist.length; p++) {
+			boolean feature = input.getPixelBoolean(p) != background;
+			dist[p] = feature ? 0 : Double.POSITIVE_INFINITY;
+			if (index != null)
+				index[p] = feature ? p : -1;
+		}
+
+		int bdim = input.getBDim();
+		int xdim = input.getXDim();
+		int ydim = input.getYDim();
+		int zdim = input.getZDim();
+		transform(dist, index, xdim, bdim);
+		transform(dist, index, ydim, bdim * xdim);
+		transform(dist, index, zdim, bdim * xdim * ydim);
+
+		if (!squared)
+			for (int p = 0; p < dist.length; p++)
+				dist[p] = Math.sqrt(dist[p]);
+		output.setModified();
+		if (nearest != null)
+			nearest.setModified();
+	}
+
+	/**
+	 * Adds the squared distances along an axis to the squared distances of the
+	 * previous passes, line by line.
+	 *
+	 * @param dist
+	 *          squared distances, updated
+	 * @param index
+	 *          nearest features, updated, or null
+	 * @param length
+	 *          number of pixels along the axis
+	 * @param stride
+	 *          distance between two consecutive pixels of the axis in the
+	 *          arrays
+	 */
+	private void transform(final double[] dist, final int[] index,
+		final int length, final int stride) {
+		if (length == 1)
+			return;
+		final int lines = dist.length / length;
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				double[] f = new double[length];
+				int[] fi = new int[length];
+				int[] v = new int[length];
+				double[] z = new double[length + 1];
+				for (int line = start; line < end; line++) {
+					int offset = line % stride + line / stride * stride * length;
+					transformLine(dist, index, offset, stride, length, f, fi, v, z);
+				}
+			}
+		}, lines, parallelism);
+	}
+
+	/**
+	 * Computes the lower envelope of the parabolas (q-i)^2+f(i) of a line and
+	 * samples it. Infinite parabolas are left out of the envelope.
+	 *
+	 * @param dist
+	 *          squared distances, updated
+	 * @param index
+	 *          nearest features, updated, or null
+	 * @param offset
+	 *          index of the first pixel of the line
+	 * @param stride
+	 *          distance between two consecutive pixels of the line
+	 * @param length
+	 *          number of pixels of the line
+	 * @param f
+	 *          buffer for the squared distances of the line
+	 * @param fi
+	 *          buffer for the nearest features of the line
+	 * @param v
+	 *          buffer for the parabolas of the envelope
+	 * @param z
+	 *          buffer for the bounds of the parabolas of the envelope
+	 */
+	private static void transformLine(double[] dist, int[] index, int offset,
+		int stride, int length, double[] f, int[] fi, int[] v, double[] z) {
+		int k = -1;
+		for (int q = 0, p = offset; q < length; q++, p += stride) {
+			f[q] = dist[p];
+			if (index != null)
+				fi[q] = index[p];
+			if (f[q] == Double.POSITIVE_INFINITY)
+				continue;
+			if (k < 0) {
+				k = 0;
+				v[0] = q;
+				z[0] = Double.NEGATIVE_INFINITY;
+				z[1] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			double s = intersection(f, q, v[k]);
+			while (s <= z[k]) {
+				k--;
+				s = intersection(f, q, v[k]);
+			}
+			k++;
+			v[k] = q;
+			z[k] = s;
+			z[k + 1] = Double.POSITIVE_INFINITY;
+		}
+		// no feature on the line, nothing changes
+		if (k < 0)
+			return;
+		k = 0;
+		for (int q = 0, p = offset; q < length; q++, p += stride) {
+			while (z[k + 1] < q)
+				k++;
+			double d = q - v[k];
+			dist[p] = d * d + f[v[k]];
+			if (index != null)
+				index[p] = fi[v[k]];
+		}
+	}
+
+	/**
+	 * Abscissa of the intersection of the parabolas of q and r, with r < q.
+	 * The first parabola of the envelope has an infinite lower bound, so that
+	 * it is never removed.
+	 */
+	private static double intersection(double[] f, int q, int r) {
+		return ((f[q] + (double) q * q) - (f[r] + (double) r * r)) / (2 * (q - r));
+	}
+
+	/**
+	 * Computes the Euclidean distance of each pixel to the nearest true pixel.
+	 *
+	 * @param input
+	 *          binary image
+	 * @return the distances, infinite if there is no true pixel
+	 */
+	public static DoubleImage exec(Image input) {
+		return (DoubleImage) new EuclideanDistanceTransform().process(input);
+	}
+
+	/**
+	 * Computes the Euclidean distance, or its square, of each pixel to the
+	 * nearest true pixel.
+	 *
+	 * @param input
+	 *          binary image
+	 * @param squared
+	 *          flag to get the squared distances
+	 * @return the distances, infinite if there is no true pixel
+	 */
+	public static DoubleImage exec(Image input, boolean squared) {
+		return (DoubleImage) new EuclideanDistanceTransform().process(input,
+			squared);
+	}
+
+	/**
+	 * Computes the Euclidean distance, or its square, of each pixel to the
+	 * nearest true pixel, or false pixel with the background flag.
+	 *
+	 * @param input
+	 *          binary image
+	 * @param squared
+	 *          flag to get the squared distances
+	 * @param background
+	 *          flag to take the false pixels as features
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 * @return the distances, infinite if there is no feature
+	 */
+	public static DoubleImage exec(Image input, boolean squared,
+		boolean background, int parallelism) {
+		return (DoubleImage) new EuclideanDistanceTransform().process(input,
+			squared, background, false, parallelism);
+	}
+
+	/**
+	 * Computes the linear index of the nearest true pixel of each pixel.
+	 *
+	 * @param input
+	 *          binary image
+	 * @return the indexes, -1 if there is no true pixel
+	 */
+	public static IntegerImage execNearest(Image input) {
+		return (IntegerImage) new EuclideanDistanceTransform().processOne(1,
+			input, false, false, true);
+	}
+
+}
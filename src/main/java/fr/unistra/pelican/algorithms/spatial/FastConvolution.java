@@ -0,0 +1,601 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import Jama.Matrix;
+import Jama.SingularValueDecomposition;
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.frequential.FFTPlan;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+import fr.unistra.pelican.util.morphology.GrayStructuringElement;
+
+/**
+ * Convolution which chooses how to compute itself. The result is the one of
+ * Convolution: the weights of the kernel falling out of the image are left out
+ * and the others are normalized, or, without normalization, the image is
+ * padded with zeros. Every (z,t,b) plane is convolved, with the first band of
+ * the kernel.
+ *
+ * Three methods are available, the cheapest one being chosen from the sizes
+ * of the image and of the kernel:
+ * <ul>
+ * <li>DIRECT: sum over the kernel at each pixel, for small kernels;</li>
+ * <li>SEPARABLE: the kernel is split by a singular value decomposition into a
+ * sum of products of 1D kernels, which are applied line by line, for kernels of
+ * low rank such as gaussians;</li>
+ * <li>FFT: the image is cut in tiles which are convolved in the frequency
+ * domain (overlap-save), two tiles at once as the real and imaginary parts of
+ * a complex image, for large kernels.</li>
+ * </ul>
+ * The FFT of each length is planned once and shared by all the calls and
+ * threads (see FFTPlan). Rows, lines or tiles are shared between threads.
+ *
+ * @author PELICAN team.
+ *
+ */
+public class FastConvolution extends Algorithm {
+
+	/**
+	 * Convolution methods
+	 */
+	public enum Method {
+		AUTO, DIRECT, SEPARABLE, FFT
+	};
+
+	/**
+	 * Relative cost of a multiply-add of the direct method
+	 */
+	private static final double DIRECT_COST = 1.0;
+
+	/**
+	 * Relative cost of a multiply-add of the separable method
+	 */
+	private static final double SEPARABLE_COST = 2.5;
+
+	/**
+	 * Relative cost of a butterfly of the FFT method, per pixel of a tile and
+	 * per bit of its length
+	 */
+	private static final double FFT_COST = 2.6;
+
+	/**
+	 * Smallest length of the tiles of the FFT method, below which the cost of
+	 * a transform is not worth it
+	 */
+	private static final int MIN_TILE_LENGTH = 64;
+
+	/**
+	 * Largest length of the tiles of the FFT method, unless the kernel is
+	 * larger
+	 */
+	private static final int MAX_TILE_LENGTH = 512;
+
+	/**
+	 * Singular values lower than this, relatively to the first one, are
+	 * neglected
+	 */
+	private static final double RANK_EPSILON = 1e-12;
+
+	/**
+	 * Input image
+	 */
+	public Image input;
+
+	/**
+	 * Convolution kernel
+	 */
+	@SuppressWarnings("deprecation")
+	public GrayStructuringElement kernel;
+
+	/**
+	 * (optional) convolution method
+	 */
+	public Method method = Method.AUTO;
+
+	/**
+	 * (optional) flag to normalize by the weights of the kernel in the image,
+	 * else the image is padded with zeros
+	 */
+	public boolean normalize = true;
+
+	/**
+	 * (optional) number of threads, 0 for all the processors
+	 */
+	public int parallelism = 0;
+
+	/**
+	 * Output image, of the type of the input image
+	 */
+	public Image output;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public FastConvolution() {
+		super.inputs = "input,kernel";
+		super.options = "method,normalize,parallelism";
+		super.outputs = "output";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		output = FastConvolution.convolve(input, FastConvolution.weights(kernel),
+			kernel.getXDim(), kernel.getYDim(), kernel.getCenter().x, kernel
+				.getCenter().y, method, normalize, parallelism);
+	}
+
+	/**
+	 * Gets the weights of the first band of a kernel, 0 where the kernel has
+	 * no value.
+	 *
+	 * @param kernel
+	 * @return the weights, k(i,j)=k[i+xdim*j]
+	 */
+	@SuppressWarnings("deprecation")
+	static double[] weights(GrayStructuringElement kernel) {
+		int kx = kernel.getXDim();
+		double[] k = new double[kx * kernel.getYDim()];
+		for (int j = 0; j < kernel.getYDim(); j++)
+			for (int i = 0; i < kx; i++)
+				if (kernel.isValue(i, j))
+					k[i + kx * j] = kernel.getPixelXYDouble(i, j);
+		return k;
+	}
+
+	/**
+	 * Convolves all the planes of an image.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param k
+	 *          kernel, k(i,j)=k[i+kx*j]
+	 * @param kx
+	 * @param ky
+	 * @param cx
+	 *          center of the kernel
+	 * @param cy
+	 * @param method
+	 *          convolution method, AUTO to choose the cheapest one
+	 * @param normalize
+	 *          flag to normalize by the weights of the kernel in the image
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 * @return the result, of the type of the input image
+	 */
+	static Image convolve(Image input, double[] k, int kx, int ky, int cx,
+		int cy, Method method, boolean normalize, int parallelism) {
+		double[] data = SeparableConvolution.getPixels(input);
+		double[] res = new double[data.length];
+		int xdim = input.getXDim();
+		int ydim = input.getYDim();
+		int bdim = input.getBDim();
+		FastConvolution.convolve(data, res, xdim, ydim, bdim, data.length
+			/ (xdim * ydim), k, kx, ky, cx, cy, method, parallelism);
+		if (normalize)
+			FastConvolution.normalize(res, xdim, ydim, bdim, k, kx, ky, cx, cy);
+		return SeparableConvolution.setPixels(input, res);
+	}
+
+	/**
+	 * Convolves planes padded with zeros: out(x,y) is the sum of
+	 * k(i,j)*in(x+cx-i,y+cy-j) over the pixels of the plane.
+	 *
+	 * @param in
+	 *          pixels, with the layout of an image
+	 * @param out
+	 *          result, same layout
+	 * @param xdim
+	 * @param ydim
+	 * @param bdim
+	 *          number of bands, the planes of a pixel are consecutive
+	 * @param nbPlanes
+	 *          number of (z,t,b) planes
+	 * @param k
+	 *          kernel, k(i,j)=k[i+kx*j]
+	 * @param kx
+	 * @param ky
+	 * @param cx
+	 *          center of the kernel
+	 * @param cy
+	 * @param method
+	 *          convolution method, AUTO to choose the cheapest one
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 * @return the method used
+	 */
+	static Method convolve(double[] in, double[] out, int xdim, int ydim,
+		int bdim, int nbPlanes, double[] k, int kx, int ky, int cx, int cy,
+		Method method, int parallelism) {
+		int nonZero = 0;
+		for (int i = 0; i < k.length; i++)
+			if (k[i] != 0)
+				nonZero++;
+		double[][] terms = null;
+		if (method == Method.AUTO || method == Method.SEPARABLE)
+			terms = FastConvolution.separate(k, kx, ky);
+		int fx = FastConvolution.tileLength(xdim, kx);
+		int fy = FastConvolution.tileLength(ydim, ky);
+
+		if (method == Method.AUTO) {
+			double size = (double) xdim * ydim * nbPlanes;
+			double direct = DIRECT_COST * size * nonZero;
+			double separable = SEPARABLE_COST * size * terms.length * (kx + ky + 1);
+			double tiles = Math.ceil((double) xdim / (fx - kx + 1))
+				* Math.ceil((double) ydim / (fy - ky + 1)) * nbPlanes / 2.0;
+			double fft = FFT_COST * tiles * 2 * fx * fy
+				* (FastConvolution.log2(fx) + FastConvolution.log2(fy));
+			if (direct <= separable && direct <= fft)
+				method = Method.DIRECT;
+			else if (separable <= fft)
+				method = Method.SEPARABLE;
+			else
+				method = Method.FFT;
+		}
+		switch (method) {
+		case DIRECT:
+			FastConvolution.direct(in, out, xdim, ydim, bdim, nbPlanes, k, kx, ky,
+				cx, cy, parallelism);
+			break;
+		case SEPARABLE:
+			FastConvolution.separable(in, out, xdim, ydim, bdim, terms, kx, ky, cx,
+				cy, parallelism);
+			break;
+		case FFT:
+			FastConvolution.fft(in, out, xdim, ydim, bdim, nbPlanes, k, kx, ky, cx,
+				cy, fx, fy, parallelism);
+			break;
+		default:
+			throw new AlgorithmException("Unknown convolution method " + method);
+		}
+		return method;
+	}
+
+	/**
+	 * Direct convolution, row by row.
+	 */
+	private static void direct(final double[] in, final double[] out,
+		final int xdim, final int ydim, final int bdim, int nbPlanes, double[] k,
+		final int kx, final int ky, final int cx, final int cy, int parallelism) {
+		int n = 0;
+		for (int i = 0; i < k.length; i++)
+			if (k[i] != 0)
+				n++;
+		// non zero weights, and their offsets in the arrays
+		final int[] di = new int[n];
+		final int[] dj = new int[n];
+		final double[] w = new double[n];
+		final int[] offset = new int[n];
+		n = 0;
+		for (int j = 0; j < ky; j++)
+			for (int i = 0; i < kx; i++)
+				if (k[i + kx * j] != 0) {
+					di[n] = cx - i;
+					dj[n] = cy - j;
+					w[n] = k[i + kx * j];
+					offset[n] = bdim * (di[n] + xdim * dj[n]);
+					n++;
+				}
+		final int nb = n;
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				for (int row = start; row < end; row++) {
+					int y = row % ydim;
+					int plane = row / ydim;
+					int b = plane % bdim;
+					int base = b + bdim * xdim * ydim * (plane / bdim);
+					boolean inside = y + cy - ky + 1 >= 0 && y + cy < ydim;
+					for (int x = 0; x < xdim; x++) {
+						int p = base + bdim * (x + xdim * y);
+						double res = 0;
+						if (inside && x + cx - kx + 1 >= 0 && x + cx < xdim) {
+							for (int q = 0; q < nb; q++)
+								res += w[q] * in[p + offset[q]];
+						} else {
+							for (int q = 0; q < nb; q++) {
+								int sx = x + di[q];
+								int sy = y + dj[q];
+								if (sx >= 0 && sx < xdim && sy >= 0 && sy < ydim)
+									res += w[q] * in[p + offset[q]];
+							}
+						}
+						out[p] = res;
+					}
+				}
+			}
+		}, nbPlanes * ydim, parallelism);
+	}
+
+	/**
+	 * Splits a kernel into a sum of products of 1D kernels.
+	 *
+	 * @return the terms, each one being the kernel along x followed by the
+	 *         kernel along y
+	 */
+	private static double[][] separate(double[] k, int kx, int ky) {
+		// Jama needs at least as many rows as columns
+		boolean transpose = kx > ky;
+		int rows = transpose ? kx : ky;
+		int cols = transpose ? ky : kx;
+		Matrix m = new Matrix(rows, cols);
+		for (int j = 0; j < ky; j++)
+			for (int i = 0; i < kx; i++)
+				if (transpose)
+					m.set(i, j, k[i + kx * j]);
+				else
+					m.set(j, i, k[i + kx * j]);
+		SingularValueDecomposition svd = new SingularValueDecomposition(m);
+		double[] s = svd.getSingularValues();
+		int rank = 0;
+		while (rank < s.length && s[rank] > s[0] * RANK_EPSILON)
+			rank++;
+		Matrix u = svd.getU();
+		Matrix v = svd.getV();
+		double[][] terms = new double[rank][];
+		for (int r = 0; r < rank; r++) {
+			double[] term = new double[kx + ky];
+			// u spans the rows, v the columns
+			for (int i = 0; i < kx; i++)
+				term[i] = s[r] * (transpose ? u.get(i, r) : v.get(i, r));
+			for (int j = 0; j < ky; j++)
+				term[kx + j] = transpose ? v.get(j, r) : u.get(j, r);
+			terms[r] = term;
+		}
+		return terms;
+	}
+
+	/**
+	 * Sum of separable convolutions.
+	 */
+	private static void separable(double[] in, double[] out, int xdim,
+		int ydim, int bdim, double[][] terms, int kx, int ky, int cx, int cy,
+		int parallelism) {
+		double[] tmp = new double[in.length];
+		for (int r = 0; r < terms.length; r++) {
+			double[] kernelX = new double[kx];
+			double[] kernelY = new double[ky];
+			System.arraycopy(terms[r], 0, kernelX, 0, kx);
+			System.arraycopy(terms[r], kx, kernelY, 0, ky);
+			System.arraycopy(in, 0, tmp, 0, in.length);
+			SeparableConvolution.filterLines(tmp, xdim, bdim, new ZeroPaddedFilter(
+				kernelX, cx), parallelism);
+			SeparableConvolution.filterLines(tmp, ydim, bdim * xdim,
+				new ZeroPaddedFilter(kernelY, cy), parallelism);
+			for (int p = 0; p < out.length; p++)
+				out[p] += tmp[p];
+		}
+	}
+
+	/**
+	 * Convolution of a line padded with zeros
+	 */
+	private static class ZeroPaddedFilter implements
+		SeparableConvolution.LineFilter {
+
+		private final double[] kernel;
+
+		private final int center;
+
+		ZeroPaddedFilter(double[] kernel, int center) {
+			this.kernel = kernel;
+			this.center = center;
+		}
+
+		public void filter(double[] in, double[] out, int length) {
+			for (int q = 0; q < length; q++) {
+				int first = Math.max(0, q + center - length + 1);
+				int last = Math.min(kernel.length - 1, q + center);
+				double res = 0;
+				for (int i = first, src = q + center - first; i <= last; i++, src--)
+					res += kernel[i] * in[src];
+				out[q] = res;
+			}
+		}
+	}
+
+	/**
+	 * Convolution in the frequency domain. Each tile of bx*by pixels of the
+	 * result is the valid part of the circular convolution of a fx*fy tile of
+	 * the input, two tiles being transformed at once.
+	 */
+	private static void fft(final double[] in, final double[] out,
+		final int xdim, final int ydim, final int bdim, int nbPlanes, double[] k,
+		final int kx, final int ky, final int cx, final int cy, final int fx,
+		final int fy, int parallelism) {
+		final FFTPlan planX = FFTPlan.get(fx);
+		final FFTPlan planY = FFTPlan.get(fy);
+		final int bx = fx - kx + 1;
+		final int by = fy - ky + 1;
+		final int tilesX = (xdim + bx - 1) / bx;
+		final int tilesY = (ydim + by - 1) / by;
+		final int nbTiles = tilesX * tilesY * nbPlanes;
+		final double scale = 1.0 / ((double) fx * fy);
+
+		// spectrum of the kernel
+		final double[] spectrum = new double[2 * fx * fy];
+		for (int j = 0; j < ky; j++)
+			for (int i = 0; i < kx; i++)
+				spectrum[2 * (i + fx * j)] = k[i + kx * j];
+		for (int j = 0; j < ky; j++)
+			planX.transform(spectrum, 2 * fx * j, 2);
+		for (int i = 0; i < fx; i++)
+			planY.transform(spectrum, 2 * i, 2 * fx);
+
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				double[] buffer = new double[2 * fx * fy];
+				for (int pair = start; pair < end; pair++) {
+					java.util.Arrays.fill(buffer, 0);
+					int rows = 0;
+					for (int part = 0; part < 2; part++) {
+						int tile = 2 * pair + part;
+						if (tile >= nbTiles)
+							break;
+						rows = Math.max(rows, copyTile(tile, part, buffer));
+					}
+					for (int v = 0; v < rows; v++)
+						planX.transform(buffer, 2 * fx * v, 2);
+					for (int u = 0; u < fx; u++)
+						planY.transform(buffer, 2 * u, 2 * fx);
+					for (int p = 0; p < buffer.length; p += 2) {
+						double re = buffer[p];
+						double im = buffer[p + 1];
+						buffer[p] = re * spectrum[p] - im * spectrum[p + 1];
+						buffer[p + 1] = re * spectrum[p + 1] + im * spectrum[p];
+					}
+					for (int u = 0; u < fx; u++)
+						planY.backtransform(buffer, 2 * u, 2 * fx);
+					for (int v = ky - 1; v < fy; v++)
+						planX.backtransform(buffer, 2 * fx * v, 2);
+					for (int part = 0; part < 2; part++) {
+						int tile = 2 * pair + part;
+						if (tile >= nbTiles)
+							break;
+						pasteTile(tile, part, buffer);
+					}
+				}
+			}
+
+			/**
+			 * Copies the pixels read by a tile into the real or imaginary part
+			 * of the buffer.
+			 *
+			 * @return the number of rows copied
+			 */
+			private int copyTile(int tile, int part, double[] buffer) {
+				int tx = tile % tilesX;
+				int ty = tile / tilesX % tilesY;
+				int plane = tile / (tilesX * tilesY);
+				int base = plane % bdim + bdim * xdim * ydim * (plane / bdim);
+				int sx = tx * bx + cx - kx + 1;
+				int sy = ty * by + cy - ky + 1;
+				int x0 = Math.max(0, -sx);
+				int x1 = Math.min(fx, xdim - sx);
+				int y1 = Math.min(fy, ydim - sy);
+				for (int v = Math.max(0, -sy); v < y1; v++)
+					for (int u = x0, p = base + bdim * (sx + u + xdim * (sy + v)); u < x1; u++, p += bdim)
+						buffer[2 * (u + fx * v) + part] = in[p];
+				return Math.max(0, y1);
+			}
+
+			/**
+			 * Copies the valid part of the real or imaginary part of the
+			 * buffer into the result.
+			 */
+			private void pasteTile(int tile, int part, double[] buffer) {
+				int tx = tile % tilesX;
+				int ty = tile / tilesX % tilesY;
+				int plane = tile / (tilesX * tilesY);
+				int base = plane % bdim + bdim * xdim * ydim * (plane / bdim);
+				int x0 = tx * bx;
+				int y0 = ty * by;
+				int w = Math.min(bx, xdim - x0);
+				int h = Math.min(by, ydim - y0);
+				for (int v = 0; v < h; v++)
+					for (int u = 0, p = base + bdim * (x0 + xdim * (y0 + v)); u < w; u++, p += bdim)
+						out[p] = scale * buffer[2 * (u + kx - 1 + fx * (v + ky - 1)) + part];
+			}
+		}, (nbTiles + 1) / 2, parallelism);
+	}
+
+	/**
+	 * Chooses the length of the tiles along an axis, which minimizes the cost
+	 * of the transforms. Tiles are kept small enough to stay in cache.
+	 *
+	 * @param dim
+	 *          length of the image
+	 * @param k
+	 *          length of the kernel
+	 * @return the length of the tiles, a good size for the FFT
+	 */
+	private static int tileLength(int dim, int k) {
+		int max = Math.min(FFTPlan.goodSize(dim + k - 1), Math.max(MAX_TILE_LENGTH,
+			FFTPlan.goodSize(2 * k)));
+		int best = max;
+		double bestCost = Double.MAX_VALUE;
+		for (int f = FFTPlan.goodSize(Math.min(max, Math.max(k, MIN_TILE_LENGTH))); f <= max; f = FFTPlan.goodSize(f + 1)) {
+			int tiles = (dim + f - k) / (f - k + 1);
+			double cost = (double) tiles * f * (FastConvolution.log2(f) + 1);
+			if (cost < bestCost) {
+				bestCost = cost;
+				best = f;
+			}
+		}
+		return best;
+	}
+
+	private static double log2(int n) {
+		return Math.log(n) / Math.log(2);
+	}
+
+	/**
+	 * Divides a convolution padded with zeros by the sum of the weights of the
+	 * kernel in the image, given by a summed area table of the kernel.
+	 */
+	static void normalize(double[] res, int xdim, int ydim, int bdim,
+		double[] k, int kx, int ky, int cx, int cy) {
+		double[] sat = new double[(kx + 1) * (ky + 1)];
+		for (int j = 0; j < ky; j++)
+			for (int i = 0; i < kx; i++)
+				sat[i + 1 + (kx + 1) * (j + 1)] = k[i + kx * j] + sat[i + (kx + 1) * (j + 1)]
+					+ sat[i + 1 + (kx + 1) * j] - sat[i + (kx + 1) * j];
+		// weights k(i,j) in the image: x+cx-xdim < i <= x+cx
+		int[] iFirst = new int[xdim];
+		int[] iEnd = new int[xdim];
+		for (int x = 0; x < xdim; x++) {
+			iFirst[x] = Math.max(0, x + cx - xdim + 1);
+			iEnd[x] = Math.min(kx, x + cx + 1);
+		}
+		int planeSize = xdim * ydim * bdim;
+		for (int y = 0; y < ydim; y++) {
+			int jFirst = Math.max(0, y + cy - ydim + 1);
+			int jEnd = Math.min(ky, y + cy + 1);
+			for (int x = 0; x < xdim; x++) {
+				double sum = sat[iEnd[x] + (kx + 1) * jEnd]
+					- sat[iFirst[x] + (kx + 1) * jEnd] - sat[iEnd[x] + (kx + 1) * jFirst]
+					+ sat[iFirst[x] + (kx + 1) * jFirst];
+				for (int p = bdim * (x + xdim * y); p < res.length; p += planeSize)
+					for (int b = 0; b < bdim; b++)
+						res[p + b] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * Convolution with the cheapest method, normalized as Convolution does.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param kernel
+	 *          Convolution kernel
+	 * @return Output image
+	 */
+	@SuppressWarnings({ "unchecked", "deprecation" })
+	public static <T extends Image> T exec(T input, GrayStructuringElement kernel) {
+		return (T) new FastConvolution().process(input, kernel);
+	}
+
+	/**
+	 * Convolution with a given method.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param kernel
+	 *          Convolution kernel
+	 * @param method
+	 *          convolution method, AUTO to choose the cheapest one
+	 * @param normalize
+	 *          flag to normalize by the weights of the kernel in the image,
+	 *          else the image is padded with zeros
+	 * @return Output image
+	 */
+	@SuppressWarnings({ "unchecked", "deprecation" })
+	public static <T extends Image> T exec(T input,
+		GrayStructuringElement kernel, Method method, boolean normalize) {
+		return (T) new FastConvolution().process(input, kernel, method, normalize);
+	}
+}
@@ -3,13 +3,12 @@ package fr.unistra.pelican.algorithms.spatial;
 import fr.unistra.pelican.Algorithm;
 import fr.unistra.pelican.AlgorithmException;
 import fr.unistra.pelican.Image;
-import fr.unistra.pelican.util.Tools;
-import fr.unistra.pelican.util.morphology.GrayStructuringElement;
 
 /**
- * Standard gaussian filter..applied with a 2D kernel. Not optimized.
- * 
- * TODO : use two 1D kernels.
+ * Standard gaussian filter, with a square kernel of given size. The kernel is
+ * separable, so the image is convolved with a 1D kernel along x then along y,
+ * which gives the same result as Convolution with the 2D kernel. For large
+ * sigmas, see RecursiveGaussianFilter.
  * 
  * @author Abdullah
  */
@@ -37,9 +36,9 @@ public class GaussianFilter extends Algorithm {
 	public int size = 5;
 
 	/**
-	 * Structuring element used for the filter
+	 * 1D kernel used for the filter along each axis
 	 */
-	public GrayStructuringElement kernel;
+	public double[] kernel;
 
 	/**
 	 * Constructor
@@ -58,22 +57,12 @@ public class GaussianFilter extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		kernel = GrayStructuringElement.createSquareFlatStructuringElement(size);
-
-		for (int x = 0; x < kernel.getXDim(); x++) {
-			for (int y = 0; y < kernel.getYDim(); y++) {
-				int _x = x - kernel.getCenter().y;
-				int _y = y - kernel.getCenter().x;
-
-				kernel.setPixelXYDouble(y, x, Tools.Gaussian2D(_x, _y, sigma));
-			}
-		}
-
-		output = (Image) new Convolution().process(input, kernel);
+		kernel = SeparableConvolution.gaussianKernel(sigma, size);
+		output = SeparableConvolution.exec(input, kernel, kernel);
 	}
 	
 	/**
-	 * Standard gaussian filter..applied with a 2D kernel.
+	 * Standard gaussian filter, with a kernel of size 5.
 	 * @param input Input image
 	 * @param sigma Standard deviation of the gaussian
 	 * @return Ouput image
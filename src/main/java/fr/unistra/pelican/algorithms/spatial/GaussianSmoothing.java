@@ -7,6 +7,10 @@ import fr.unistra.pelican.Image;
 /**
  * Performs a Gaussian Smoothing (by the use of Gaussian masks)
  * 
+ * The mask is the product of two 1D masks, so the image is convolved along x
+ * then along y by SeparableConvolution. Near the borders the mask is
+ * normalized over the pixels of the image.
+ * 
  * @author Dany DAMAJ
  */
 public class GaussianSmoothing extends Algorithm {
@@ -32,7 +36,7 @@ public class GaussianSmoothing extends Algorithm {
 	public Image output;
 
 	/**
-	 * Gaussian mask
+	 * Gaussian mask, only built by computeGaussianMask(int,float)
 	 */
 	public float gaussianMask[][];
 
@@ -58,64 +62,12 @@ public class GaussianSmoothing extends Algorithm {
 	 * @see fr.unistra.pelican.Algorithm#launch()
 	 */
 	public void launch() throws AlgorithmException {
-		computeGaussianMask();
-
 		xDim = input.getXDim();
 		yDim = input.getYDim();
-		int tDim = input.getTDim();
-		int bDim = input.getBDim();
-		int zDim = input.getZDim();
-
-		output = input.copyImage(false);
-
-		for (int b = 0; b < bDim; b++)
-			for (int t = 0; t < tDim; t++)
-				for (int z = 0; z < zDim; z++)
-					for (int x = 0/* (size - 1) / 2 */; x < xDim /*- (size-1)/2*/; x++)
-						for (int y = 0/* (size - 1) / 2 */; y < yDim /*-  (size - 1) / 2*/; y++) {
-							double tmp = applyGaussianMask(x, y, z, t, b);
-							output.setPixelDouble(x, y, z, t, b, tmp);
-						}
-	}
-
-	/*
-	 * 
-	 */
-	private double applyGaussianMask(int x, int y, int z, int t, int b) {
-		double res = 0.0;
-
-		if (x >= (size - 1) / 2 && x < xDim - (size - 1) / 2
-				&& y >= (size - 1) / 2 && y < yDim - (size - 1) / 2) { // normal
-			// case
-			for (int i = 0; i < size; i++)
-				for (int j = 0; j < size; j++)
-					res += gaussianMask[i][j]
-							* input.getPixelDouble(x + i - (size - 1) / 2, y
-									+ j - (size - 1) / 2, z, t, b);
-		} else { // the mask overflows the image
-			float real_sum = 0.0f;
-			for (int i = 0; i < size; i++)
-				for (int j = 0; j < size; j++)
-					if (x + i - (size - 1) / 2 >= 0
-							&& x + i - (size - 1) / 2 < xDim
-							&& y + j - (size - 1) / 2 >= 0
-							&& y + j - (size - 1) / 2 < yDim)
-						real_sum += gaussianMask[i][j];
-
-			for (int i = 0; i < size; i++)
-				for (int j = 0; j < size; j++)
-					if (x + i - (size - 1) / 2 >= 0
-							&& x + i - (size - 1) / 2 < xDim
-							&& y + j - (size - 1) / 2 >= 0
-							&& y + j - (size - 1) / 2 < yDim)
-						res += gaussianMask[i][j]
-								* input.getPixelDouble(x + i - (size - 1) / 2,
-										y + j - (size - 1) / 2, z, t, b)
-								/ real_sum;
-
-		}
 
-		return res;
+		// the mask is centered at (size-1)/2 : reversed, its center is size/2
+		double[] mask = SeparableConvolution.gaussianKernel(sig, size);
+		output = SeparableConvolution.exec(input, mask, mask);
 	}
 
 	/*
@@ -0,0 +1,162 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.Image;
+
+/**
+ * Gaussian filter computed by the recursive filter of Young and van Vliet: a
+ * causal and an anticausal third order filter along x, then along y. The cost
+ * per pixel does not depend on sigma, so it suits large sigmas, whereas
+ * GaussianFilter is exact for a truncated kernel. The border pixels are
+ * replicated out of the image. Lines are shared between threads.
+ *
+ * The recursive filter loses accuracy for small sigmas: below 1, the image is
+ * convolved with a sampled kernel of radius 3 sigma, which is cheap.
+ *
+ * I.T. Young, L.J. van Vliet, Recursive implementation of the Gaussian filter,
+ * Signal Processing, 44(2), 1995.
+ *
+ * @author PELICAN team.
+ */
+public class RecursiveGaussianFilter extends Algorithm {
+
+	/**
+	 * Input image
+	 */
+	public Image input;
+
+	/**
+	 * Standard deviation of the gaussian
+	 */
+	public double sigma;
+
+	/**
+	 * (optional) number of threads, 0 for all the processors
+	 */
+	public int parallelism = 0;
+
+	/**
+	 * Output image, of the type of the input image
+	 */
+	public Image output;
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public RecursiveGaussianFilter() {
+		super.inputs = "input,sigma";
+		super.options = "parallelism";
+		super.outputs = "output";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		if (sigma < 0)
+			throw new AlgorithmException("Sigma must be positive");
+		if (sigma < 1) {
+			double[] kernel = SeparableConvolution.gaussianKernel(sigma,
+				2 * (int) Math.ceil(3 * sigma) + 1);
+			double sum = 0;
+			for (int i = 0; i < kernel.length; i++)
+				sum += kernel[i];
+			for (int i = 0; i < kernel.length; i++)
+				kernel[i] /= sum;
+			output = (Image) new SeparableConvolution().process(input, kernel,
+				kernel, null, false, parallelism);
+			return;
+		}
+		double[] data = SeparableConvolution.getPixels(input);
+		SeparableConvolution.LineFilter filter = new YoungVanVlietFilter(sigma);
+		int bdim = input.getBDim();
+		SeparableConvolution.filterLines(data, input.getXDim(), bdim, filter,
+			parallelism);
+		SeparableConvolution.filterLines(data, input.getYDim(), bdim
+			* input.getXDim(), filter, parallelism);
+		output = SeparableConvolution.setPixels(input, data);
+	}
+
+	/**
+	 * Recursive gaussian filter of a line
+	 */
+	private static class YoungVanVlietFilter implements
+		SeparableConvolution.LineFilter {
+
+		/**
+		 * Coefficients normalized by b0, B is the gain of the input
+		 */
+		private final double B, b1, b2, b3;
+
+		YoungVanVlietFilter(double sigma) {
+			double q;
+			if (sigma >= 2.5)
+				q = 0.98711 * sigma - 0.96330;
+			else
+				q = 3.97156 - 4.14554 * Math.sqrt(1 - 0.26891 * sigma);
+			double q2 = q * q;
+			double q3 = q2 * q;
+			double b0 = 1.57825 + 2.44413 * q + 1.4281 * q2 + 0.422205 * q3;
+			b1 = (2.44413 * q + 2.85619 * q2 + 1.26661 * q3) / b0;
+			b2 = -(1.4281 * q2 + 1.26661 * q3) / b0;
+			b3 = 0.422205 * q3 / b0;
+			B = 1 - (b1 + b2 + b3);
+		}
+
+		public void filter(double[] in, double[] out, int length) {
+			// the filters start in the steady state of the border pixels
+			double w1 = in[0], w2 = in[0], w3 = in[0];
+			for (int q = 0; q < length; q++) {
+				double w = B * in[q] + b1 * w1 + b2 * w2 + b3 * w3;
+				out[q] = w;
+				w3 = w2;
+				w2 = w1;
+				w1 = w;
+			}
+			double y1 = out[length - 1], y2 = y1, y3 = y1;
+			for (int q = length - 1; q >= 0; q--) {
+				double y = B * out[q] + b1 * y1 + b2 * y2 + b3 * y3;
+				out[q] = y;
+				y3 = y2;
+				y2 = y1;
+				y1 = y;
+			}
+		}
+	}
+
+	/**
+	 * Gaussian filter with a cost independent of sigma.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param sigma
+	 *          Standard deviation of the gaussian
+	 * @return Output image
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T input, double sigma) {
+		return (T) new RecursiveGaussianFilter().process(input, sigma);
+	}
+
+	/**
+	 * Gaussian filter with a cost independent of sigma.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param sigma
+	 *          Standard deviation of the gaussian
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 * @return Output image
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T input, double sigma,
+		int parallelism) {
+		return (T) new RecursiveGaussianFilter().process(input, sigma,
+			parallelism);
+	}
+}
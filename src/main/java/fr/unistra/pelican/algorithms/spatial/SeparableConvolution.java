@@ -0,0 +1,284 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import fr.unistra.pelican.Algorithm;
+import fr.unistra.pelican.AlgorithmException;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ * Convolution by a separable kernel, given as one 1D kernel for each axis. The
+ * image is convolved line by line along x, then along y and z, so the cost per
+ * pixel is the sum of the lengths of the kernels instead of their product.
+ * Lines are shared between threads. Frames and bands are processed
+ * separately.
+ *
+ * The center of a kernel of length n is n/2, as for the square structuring
+ * elements given to Convolution. By default the weights falling out of the
+ * image are left out and the result is divided by the sum of the remaining
+ * weights, as Convolution does: the result is then the same as with the 2D
+ * kernel of the product of the 1D kernels. Without normalization, the border
+ * pixels are replicated out of the image and the kernels are used as given,
+ * which suits derivative kernels.
+ *
+ * @author PELICAN team.
+ */
+public class SeparableConvolution extends Algorithm {
+
+	/**
+	 * Input image
+	 */
+	public Image input;
+
+	/**
+	 * Kernel along x, null to leave x out
+	 */
+	public double[] kernelX;
+
+	/**
+	 * Kernel along y, null to leave y out
+	 */
+	public double[] kernelY;
+
+	/**
+	 * (optional) kernel along z, null to leave z out
+	 */
+	public double[] kernelZ = null;
+
+	/**
+	 * (optional) flag to divide by the sum of the weights in the image
+	 */
+	public boolean normalize = true;
+
+	/**
+	 * (optional) number of threads, 0 for all the processors
+	 */
+	public int parallelism = 0;
+
+	/**
+	 * Output image, of the type of the input image
+	 */
+	public Image output;
+
+	/**
+	 * Filter of a single line
+	 */
+	interface LineFilter {
+
+		/**
+		 * Filters a line. It is called from several threads at once.
+		 *
+		 * @param in
+		 *          pixels of the line
+		 * @param out
+		 *          filtered pixels
+		 * @param length
+		 *          number of pixels of the line
+		 */
+		public void filter(double[] in, double[] out, int length);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 */
+	public SeparableConvolution() {
+		super.inputs = "input,kernelX,kernelY";
+		super.options = "kernelZ,normalize,parallelism";
+		super.outputs = "output";
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see fr.unistra.pelican.Algorithm#launch()
+	 */
+	public void launch() throws AlgorithmException {
+		double[] data = SeparableConvolution.getPixels(input);
+		int bdim = input.getBDim();
+		int xdim = input.getXDim();
+		int ydim = input.getYDim();
+		if (kernelX != null)
+			SeparableConvolution.filterLines(data, xdim, bdim, new KernelFilter(
+				kernelX, normalize), parallelism);
+		if (kernelY != null)
+			SeparableConvolution.filterLines(data, ydim, bdim * xdim,
+				new KernelFilter(kernelY, normalize), parallelism);
+		if (kernelZ != null)
+			SeparableConvolution.filterLines(data, input.getZDim(), bdim * xdim
+				* ydim, new KernelFilter(kernelZ, normalize), parallelism);
+		output = SeparableConvolution.setPixels(input, data);
+	}
+
+	/**
+	 * Convolution of a line by a kernel
+	 */
+	private static class KernelFilter implements LineFilter {
+
+		private final double[] kernel;
+
+		private final boolean normalize;
+
+		private final double sum;
+
+		KernelFilter(double[] kernel, boolean normalize) {
+			if (kernel.length == 0)
+				throw new AlgorithmException("Empty kernel");
+			this.kernel = kernel;
+			this.normalize = normalize;
+			double s = 0;
+			for (int i = 0; i < kernel.length; i++)
+				s += kernel[i];
+			this.sum = s;
+		}
+
+		public void filter(double[] in, double[] out, int length) {
+			int n = kernel.length;
+			int center = n / 2;
+			// pixels whose neighbours are all in the line
+			int first = Math.min(n - 1 - center, length);
+			int last = Math.max(first, length - center);
+			for (int q = 0; q < first; q++)
+				out[q] = border(in, q, length);
+			for (int q = first; q < last; q++) {
+				double res = 0;
+				for (int i = 0, src = q + center; i < n; i++, src--)
+					res += kernel[i] * in[src];
+				out[q] = normalize ? res / sum : res;
+			}
+			for (int q = last; q < length; q++)
+				out[q] = border(in, q, length);
+		}
+
+		private double border(double[] in, int q, int length) {
+			double res = 0;
+			double weights = 0;
+			for (int i = 0, src = q + kernel.length / 2; i < kernel.length; i++, src--)
+				if (src >= 0 && src < length) {
+					res += kernel[i] * in[src];
+					weights += kernel[i];
+				} else if (!normalize)
+					res += kernel[i] * in[src < 0 ? 0 : length - 1];
+			return normalize ? res / weights : res;
+		}
+	}
+
+	/**
+	 * Filters all the lines of an axis, lines being shared between threads.
+	 *
+	 * @param data
+	 *          pixels of the image, updated
+	 * @param length
+	 *          number of pixels along the axis
+	 * @param stride
+	 *          distance between two consecutive pixels of the axis in data
+	 * @param filter
+	 *          filter of a line
+	 * @param parallelism
+	 *          number of threads, 0 for all the processors
+	 */
+	static void filterLines(final double[] data, final int length,
+		final int stride, final LineFilter filter, int parallelism) {
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				double[] in = new double[length];
+				double[] out = new double[length];
+				for (int line = start; line < end; line++) {
+					int offset = line % stride + line / stride * stride * length;
+					for (int q = 0, p = offset; q < length; q++, p += stride)
+						in[q] = data[p];
+					filter.filter(in, out, length);
+					for (int q = 0, p = offset; q < length; q++, p += stride)
+						data[p] = out[q];
+				}
+			}
+		}, data.length / length, parallelism);
+	}
+
+	/**
+	 * Copies the pixels of an image in an array of doubles.
+	 */
+	static double[] getPixels(Image input) {
+		if (input instanceof DoubleImage)
+			return ((DoubleImage) input).getReadOnlyPixelArray().clone();
+		double[] data = new double[input.size()];
+		for (int p = 0; p < data.length; p++)
+			data[p] = input.getPixelDouble(p);
+		return data;
+	}
+
+	/**
+	 * Creates an image of the type of the input image from an array of doubles.
+	 */
+	static Image setPixels(Image input, double[] data) {
+		if (input instanceof DoubleImage) {
+			DoubleImage output = new DoubleImage(input, false);
+			output.setPixelsUnsafe(data);
+			return output;
+		}
+		Image output = input.copyImage(false);
+		for (int p = 0; p < data.length; p++)
+			output.setPixelDouble(p, data[p]);
+		return output;
+	}
+
+	/**
+	 * Convolution of an image by the product of two 1D kernels, normalized
+	 * as Convolution does.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param kernelX
+	 *          kernel along x
+	 * @param kernelY
+	 *          kernel along y
+	 * @return Output image
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T input, double[] kernelX,
+		double[] kernelY) {
+		return (T) new SeparableConvolution().process(input, kernelX, kernelY);
+	}
+
+	/**
+	 * Convolution of an image by the product of 1D kernels.
+	 *
+	 * @param input
+	 *          Input image
+	 * @param kernelX
+	 *          kernel along x, null to leave x out
+	 * @param kernelY
+	 *          kernel along y, null to leave y out
+	 * @param kernelZ
+	 *          kernel along z, null to leave z out
+	 * @param normalize
+	 *          flag to divide by the sum of the weights in the image, else the
+	 *          border pixels are replicated
+	 * @return Output image
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T extends Image> T exec(T input, double[] kernelX,
+		double[] kernelY, double[] kernelZ, boolean normalize) {
+		return (T) new SeparableConvolution().process(input, kernelX, kernelY,
+			kernelZ, normalize);
+	}
+
+	/**
+	 * Sampled gaussian kernel of given size, centered at size/2 and not
+	 * normalized.
+	 *
+	 * @param sigma
+	 *          Standard deviation of the gaussian
+	 * @param size
+	 *          length of the kernel
+	 * @return the kernel
+	 */
+	public static double[] gaussianKernel(double sigma, int size) {
+		double[] kernel = new double[size];
+		for (int i = 0; i < size; i++) {
+			double d = i - size / 2;
+			kernel[i] = (d == 0) ? 1 : Math.exp(-d * d / (2 * sigma * sigma));
+		}
+		return kernel;
+	}
+}
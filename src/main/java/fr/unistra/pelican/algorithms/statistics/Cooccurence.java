@@ -2,6 +2,7 @@ package fr.unistra.pelican.algorithms.statistics;
 
 import fr.unistra.pelican.*;
 import fr.unistra.pelican.util.Pixel;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 
 
@@ -82,20 +83,19 @@ public class Cooccurence extends Algorithm {
 
 		// create the co-occurence matrix
 		this.output = new IntegerImage( this.side,this.side,1,1,1 );
-		for ( Pixel p : this.output ) this.output.setPixelInt( p,0 );
+		for ( int p = 0 ; p < this.output.size() ; p++ ) this.output.setPixelInt( p,0 );
 
 		// compute the co-occurence matrix
 		int p1,p2, sum = 0;
-		Pixel pt = null;
-		for ( Pixel p : this.input ) { 
-
-			pt = new Pixel(   p.x + this.t.x, 
-							  p.y + this.t.y, 
-							  p.z + this.t.z, 
-							  p.t + this.t.t, 
-							  p.b + this.t.b );
-
-			try { p2 = this.input.getPixelByte( pt ); }
+		SpanCursor cursor = this.input.spans();
+		while ( cursor.next() ) 
+		for ( int p = cursor.getStart() ; p < cursor.getEnd() ; p++ ) { 
+
+			try { p2 = this.input.getPixelXYZTBByte( cursor.getX( p ) + this.t.x, 
+													 cursor.getY() + this.t.y, 
+													 cursor.getZ() + this.t.z, 
+													 cursor.getT() + this.t.t, 
+													 cursor.getB( p ) + this.t.b ); }
 			catch ( ArrayIndexOutOfBoundsException ex ) { continue; }
 
 			p1 = this.input.getPixelByte( p );
@@ -105,11 +105,10 @@ public class Cooccurence extends Algorithm {
 			this.output.setPixelXYInt( p1,p2, this.output.getPixelXYInt( p1,p2 )+1 );
 			sum++;
 		}
-		pt = null;
 System.out.println( "/cooc: " + sum / 4. );
 		// normalize the co-occurence matrix
 		if ( sum > 0 )
-			for ( Pixel p : this.output ) 
+			for ( int p = 0 ; p < this.output.size() ; p++ ) 
 				this.output.setPixelInt( p, this.output.getPixelInt( p ) / sum );
 
 	} // endfunc
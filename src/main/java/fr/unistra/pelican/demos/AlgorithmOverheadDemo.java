@@ -0,0 +1,41 @@
+package fr.unistra.pelican.demos;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.arithmetic.Addition;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+
+/**
+ * Measures the cost of a call to Algorithm.process on tiny images, where the
+ * binding of the parameters outweighs the processing itself.
+ * 
+ * @author PELICAN team.
+ */
+public class AlgorithmOverheadDemo {
+
+	public static void main(String[] args) {
+		int calls = 1000000;
+		if (args.length != 0)
+			calls = Integer.parseInt(args[0]);
+		Image a = new ByteImage(4, 4, 1, 1, 1);
+		Image b = new ByteImage(4, 4, 1, 1, 1);
+		a.fill(0.25);
+		b.fill(0.5);
+		BooleanImage se = FlatStructuringElement2D
+			.createSquareFlatStructuringElement(3);
+		// the first round only warms the JIT up
+		for (int round = 0; round < 3; round++) {
+			long t0 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				Addition.exec(a, b);
+			long t1 = System.nanoTime();
+			for (int i = 0; i < calls; i++)
+				GrayErosion.exec(a, se);
+			long t2 = System.nanoTime();
+			System.out.println("Addition.exec: " + (t1 - t0) / calls
+				+ " ns/call, GrayErosion.exec: " + (t2 - t1) / calls + " ns/call");
+		}
+	}
+}
@@ -4,6 +4,7 @@ import java.awt.Point;
 
 import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 /**
  * Some useful math function working on Pelican images, all calculus are done in double precision.
@@ -424,13 +425,15 @@ public abstract class IMath {
 		double max = Double.NEGATIVE_INFINITY;
 		Pixel pmax = new Pixel();
 
-		for (Pixel p : im) {
-			if (im.isPresent(p)) {
+		SpanCursor cursor = im.spans();
+		while (cursor.next()) {
+			for (int p = cursor.getStart(); p < cursor.getEnd(); p++) {
 				double v = im.getPixelDouble(p);
 				if (v > max)
 				{
 					max=v;
-					pmax.setLocation(p);
+					pmax.setLocation(cursor.getX(p), cursor.getY(), cursor.getZ(),
+						cursor.getT(), cursor.getB(p));
 				}
 			}
 		}
@@ -0,0 +1,465 @@
+package fr.unistra.pelican.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ * Statistics of the pixels of an image, band by band: minimum, maximum, sum,
+ * sum of squares and, for byte images, histogram. They are computed in a
+ * single pass over the pixels, shared between threads by chunks of pixels.
+ *
+ * The values are the ones stored by the image type: unsigned bytes for a
+ * ByteImage, integers for an IntegerImage, doubles for a DoubleImage and 0 or
+ * 1 for a BooleanImage. NaN values are counted in the sums but not in the
+ * extrema, and the finite extrema leave the infinite values out as well.
+ *
+ * @author PELICAN team.
+ */
+public class ImageStatistics {
+
+	/**
+	 * Number of bins of the histogram of a byte image
+	 */
+	public static final int BYTE_BINS = 256;
+
+	/**
+	 * Number of pixels below which the statistics are computed on a single
+	 * thread
+	 */
+	private static final int MIN_CHUNK = 1 << 16;
+
+	/**
+	 * Computation of the statistics of a range of values
+	 */
+	public interface Kernel {
+
+		/**
+		 * Adds a range of values of the image. It is called from several threads
+		 * at once, on disjoint ranges.
+		 *
+		 * @param statistics
+		 *          statistics updated
+		 * @param from
+		 *          index of the first value, in the first band
+		 * @param to
+		 *          index after the last value
+		 */
+		public void add(ImageStatistics statistics, int from, int to);
+	}
+
+	private final int bdim;
+
+	private final long[] count;
+
+	private final double[] minimum;
+
+	private final double[] maximum;
+
+	private final double[] finiteMinimum;
+
+	private final double[] finiteMaximum;
+
+	private final double[] sum;
+
+	private final double[] sumOfSquares;
+
+	private final long[][] histogram;
+
+	/**
+	 * Index of the first value added, to merge partial statistics in order
+	 */
+	private int first;
+
+	/**
+	 * Constructor of empty statistics.
+	 *
+	 * @param bdim
+	 *          number of bands
+	 * @param histogram
+	 *          true to compute the histograms of byte values
+	 */
+	public ImageStatistics(int bdim, boolean histogram) {
+		this.bdim = bdim;
+		count = new long[bdim];
+		minimum = new double[bdim];
+		maximum = new double[bdim];
+		finiteMinimum = new double[bdim];
+		finiteMaximum = new double[bdim];
+		sum = new double[bdim];
+		sumOfSquares = new double[bdim];
+		for (int b = 0; b < bdim; b++) {
+			minimum[b] = finiteMinimum[b] = Double.POSITIVE_INFINITY;
+			maximum[b] = finiteMaximum[b] = Double.NEGATIVE_INFINITY;
+		}
+		this.histogram = histogram ? new long[bdim][BYTE_BINS] : null;
+	}
+
+	/**
+	 * Computes the statistics of an image, sharing chunks of pixels between
+	 * threads.
+	 *
+	 * @param size
+	 *          number of values of the image
+	 * @param bdim
+	 *          number of bands
+	 * @param histogram
+	 *          true to compute the histograms of byte values
+	 * @param kernel
+	 *          computation on a range of values
+	 * @param parallelism
+	 *          number of threads, 0 for the parallelism of the pool
+	 * @return the statistics
+	 */
+	public static ImageStatistics compute(int size, final int bdim,
+		final boolean histogram, final Kernel kernel, int parallelism) {
+		ImageStatistics res = new ImageStatistics(bdim, histogram);
+		if (size < MIN_CHUNK) {
+			kernel.add(res, 0, size);
+			return res;
+		}
+		final ArrayList<ImageStatistics> parts = new ArrayList<ImageStatistics>();
+		TileExecutor.runStrips(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				ImageStatistics part = new ImageStatistics(bdim, histogram);
+				part.first = start * bdim;
+				kernel.add(part, start * bdim, end * bdim);
+				synchronized (parts) {
+					parts.add(part);
+				}
+			}
+		}, Math.max(1, size / bdim), Math.min(TileExecutor
+			.getParallelism(parallelism), size / MIN_CHUNK));
+		// the sums are merged in the order of the pixels, whatever the threads
+		Collections.sort(parts, new Comparator<ImageStatistics>() {
+			public int compare(ImageStatistics a, ImageStatistics b) {
+				return a.first < b.first ? -1 : a.first > b.first ? 1 : 0;
+			}
+		});
+		for (ImageStatistics part : parts)
+			res.add(part);
+		return res;
+	}
+
+	/**
+	 * Adds the values of other statistics of the same number of bands.
+	 *
+	 * @param other
+	 *          statistics added
+	 */
+	public void add(ImageStatistics other) {
+		for (int b = 0; b < bdim; b++) {
+			count[b] += other.count[b];
+			minimum[b] = Math.min(minimum[b], other.minimum[b]);
+			maximum[b] = Math.max(maximum[b], other.maximum[b]);
+			finiteMinimum[b] = Math.min(finiteMinimum[b], other.finiteMinimum[b]);
+			finiteMaximum[b] = Math.max(finiteMaximum[b], other.finiteMaximum[b]);
+			sum[b] += other.sum[b];
+			sumOfSquares[b] += other.sumOfSquares[b];
+			if (histogram != null && other.histogram != null)
+				for (int i = 0; i < BYTE_BINS; i++)
+					histogram[b][i] += other.histogram[b][i];
+		}
+	}
+
+	/**
+	 * Adds a value.
+	 *
+	 * @param band
+	 *          band of the value
+	 * @param value
+	 *          value, in [0,255] when the histogram is computed
+	 */
+	public void add(int band, double value) {
+		count[band]++;
+		sum[band] += value;
+		sumOfSquares[band] += value * value;
+		if (value < minimum[band])
+			minimum[band] = value;
+		if (value > maximum[band])
+			maximum[band] = value;
+		if (!Double.isInfinite(value)) {
+			if (value < finiteMinimum[band])
+				finiteMinimum[band] = value;
+			if (value > finiteMaximum[band])
+				finiteMaximum[band] = value;
+		}
+		if (histogram != null)
+			histogram[band][(int) value]++;
+	}
+
+	/**
+	 * Adds a range of signed bytes, stored as in a ByteImage.
+	 *
+	 * @param pixels
+	 *          values
+	 * @param from
+	 *          index of the first value, in the first band
+	 * @param to
+	 *          index after the last value
+	 */
+	public void addBytes(byte[] pixels, int from, int to) {
+		for (int b = 0; b < bdim; b++) {
+			int min = 255, max = 0;
+			long s = 0, s2 = 0;
+			long[] bins = histogram != null ? histogram[b] : null;
+			int n = 0;
+			for (int p = from + b; p < to; p += bdim, n++) {
+				int v = pixels[p] - Byte.MIN_VALUE;
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				s += v;
+				s2 += v * v;
+				if (bins != null)
+					bins[v]++;
+			}
+			addBand(b, n, min, max, min, max, s, s2);
+		}
+	}
+
+	/**
+	 * Adds a range of integers.
+	 *
+	 * @param pixels
+	 *          values
+	 * @param from
+	 *          index of the first value, in the first band
+	 * @param to
+	 *          index after the last value
+	 */
+	public void addInts(int[] pixels, int from, int to) {
+		for (int b = 0; b < bdim; b++) {
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			double s = 0, s2 = 0;
+			int n = 0;
+			for (int p = from + b; p < to; p += bdim, n++) {
+				int v = pixels[p];
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+				s += v;
+				s2 += (double) v * v;
+			}
+			addBand(b, n, min, max, min, max, s, s2);
+		}
+	}
+
+	/**
+	 * Adds a range of doubles.
+	 *
+	 * @param pixels
+	 *          values
+	 * @param from
+	 *          index of the first value, in the first band
+	 * @param to
+	 *          index after the last value
+	 */
+	public void addDoubles(double[] pixels, int from, int to) {
+		for (int b = 0; b < bdim; b++) {
+			double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+			double finiteMin = min, finiteMax = max;
+			double s = 0, s2 = 0;
+			int n = 0;
+			for (int p = from + b; p < to; p += bdim, n++) {
+				double v = pixels[p];
+				s += v;
+				s2 += v * v;
+				// comparisons are false for NaN
+				if (v < min)
+					min = v;
+				if (v > max)
+					max = v;
+			}
+			if (min == Double.NEGATIVE_INFINITY || max == Double.POSITIVE_INFINITY)
+				for (int p = from + b; p < to; p += bdim) {
+					double v = pixels[p];
+					if (!Double.isInfinite(v)) {
+						if (v < finiteMin)
+							finiteMin = v;
+						if (v > finiteMax)
+							finiteMax = v;
+					}
+				}
+			else {
+				finiteMin = min;
+				finiteMax = max;
+			}
+			addBand(b, n, min, max, finiteMin, finiteMax, s, s2);
+		}
+	}
+
+	/**
+	 * Adds a range of booleans, as 0 and 1.
+	 *
+	 * @param pixels
+	 *          values
+	 * @param from
+	 *          index of the first value, in the first band
+	 * @param to
+	 *          index after the last value
+	 */
+	public void addBooleans(boolean[] pixels, int from, int to) {
+		for (int b = 0; b < bdim; b++) {
+			int n = 0, s = 0;
+			for (int p = from + b; p < to; p += bdim, n++)
+				if (pixels[p])
+					s++;
+			if (n > 0)
+				addBand(b, n, s == n ? 1 : 0, s > 0 ? 1 : 0, s == n ? 1 : 0, s > 0 ? 1
+					: 0, s, s);
+		}
+	}
+
+	private void addBand(int b, long n, double min, double max,
+		double finiteMin, double finiteMax, double s, double s2) {
+		if (n == 0)
+			return;
+		count[b] += n;
+		sum[b] += s;
+		sumOfSquares[b] += s2;
+		minimum[b] = Math.min(minimum[b], min);
+		maximum[b] = Math.max(maximum[b], max);
+		finiteMinimum[b] = Math.min(finiteMinimum[b], finiteMin);
+		finiteMaximum[b] = Math.max(finiteMaximum[b], finiteMax);
+	}
+
+	/**
+	 * @return the number of bands
+	 */
+	public int getBDim() {
+		return bdim;
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the number of values of the band
+	 */
+	public long getCount(int band) {
+		return count[band];
+	}
+
+	/**
+	 * @return the number of values of the image
+	 */
+	public long getCount() {
+		long res = 0;
+		for (int b = 0; b < bdim; b++)
+			res += count[b];
+		return res;
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the minimum of the band, +infinity if there is no value
+	 */
+	public double getMinimum(int band) {
+		return minimum[band];
+	}
+
+	/**
+	 * @return the minimum of the image, +infinity if there is no value
+	 */
+	public double getMinimum() {
+		double res = Double.POSITIVE_INFINITY;
+		for (int b = 0; b < bdim; b++)
+			res = Math.min(res, minimum[b]);
+		return res;
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the maximum of the band, -infinity if there is no value
+	 */
+	public double getMaximum(int band) {
+		return maximum[band];
+	}
+
+	/**
+	 * @return the maximum of the image, -infinity if there is no value
+	 */
+	public double getMaximum() {
+		double res = Double.NEGATIVE_INFINITY;
+		for (int b = 0; b < bdim; b++)
+			res = Math.max(res, maximum[b]);
+		return res;
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the minimum of the finite values of the band
+	 */
+	public double getFiniteMinimum(int band) {
+		return finiteMinimum[band];
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the maximum of the finite values of the band
+	 */
+	public double getFiniteMaximum(int band) {
+		return finiteMaximum[band];
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the sum of the values of the band
+	 */
+	public double getSum(int band) {
+		return sum[band];
+	}
+
+	/**
+	 * @return the sum of the values of the image
+	 */
+	public double getSum() {
+		double res = 0;
+		for (int b = 0; b < bdim; b++)
+			res += sum[b];
+		return res;
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the sum of the squares of the values of the band
+	 */
+	public double getSumOfSquares(int band) {
+		return sumOfSquares[band];
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the mean of the band
+	 */
+	public double getMean(int band) {
+		return sum[band] / count[band];
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the variance of the band
+	 */
+	public double getVariance(int band) {
+		double mean = getMean(band);
+		return Math.max(0, sumOfSquares[band] / count[band] - mean * mean);
+	}
+
+	/**
+	 * @param band
+	 *          band
+	 * @return the histogram of the band, null if it was not computed. It must
+	 *         not be modified.
+	 */
+	public long[] getHistogram(int band) {
+		return histogram == null ? null : histogram[band];
+	}
+}
@@ -23,6 +23,8 @@ public class ImageWrapperBandSelector extends Image {
 		this.baseImage = baseImage;
 		this.numBand = numBand;
 		this.offset = numBand; // Yes it seems.
+		// the base image may be modified without notice
+		this.shared = true;
 	}
 
 	@Override
@@ -0,0 +1,272 @@
+package fr.unistra.pelican.util;
+
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * Hierarchical Queue of pixel indexes, with the same priority semantics as
+ * HierarchicalQueue: the levels are served in increasing order, each level is
+ * a FIFO, and an element added below the current level goes to the current
+ * level.</br>
+ *
+ * Elements are stored as int in a growable ring buffer per level, so adding
+ * and getting an element does not allocate anything. The table of levels grows
+ * with the highest level used, and the buffer of a level which gets empty is
+ * reused by the next ones. The non empty levels are recorded in two bit sets,
+ * one bit per level and one bit per word of the first set, so that sparse
+ * levels, as geodesic distances, are skipped 64 or 4096 at a time.
+ *
+ * @author PELICAN team.
+ *
+ */
+public class IntHierarchicalQueue {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Ring buffer of each level, null until the level is used
+	 */
+	private int[][] levels;
+
+	/**
+	 * Position of the first element of each level in its buffer
+	 */
+	private int[] heads;
+
+	/**
+	 * Number of elements of each level
+	 */
+	private int[] counts;
+
+	/**
+	 * One bit per level, set if the level is not empty
+	 */
+	private long[] occupied;
+
+	/**
+	 * One bit per word of occupied, set if the word is not zero
+	 */
+	private long[] summary;
+
+	/**
+	 * Buffers of the levels which got empty, ready to be reused
+	 */
+	private int[][] spares;
+
+	private int spareCount;
+
+	private int current;
+	private int number;
+	private int size;
+
+	/**
+	 * Highest level which may hold elements since the last clear
+	 */
+	private int highest;
+
+	public IntHierarchicalQueue(int size) {
+		this.size = size;
+		int length = Math.max(1, Math.min(size, 256));
+		levels = new int[length][];
+		heads = new int[length];
+		counts = new int[length];
+		occupied = new long[(length + 63) >> 6];
+		summary = new long[(occupied.length + 63) >> 6];
+		spares = new int[INITIAL_CAPACITY][];
+		current = 0;
+		number = 0;
+		highest = 0;
+	}
+
+	public int getCurrent() {
+		skipEmptyLevels();
+		return current;
+	}
+
+	public int getNumber() {
+		return number;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds an element to the queue.
+	 *
+	 * @param index
+	 *            linear index of the pixel
+	 * @param val
+	 *            level of the element, the current level is used if it is
+	 *            lower
+	 */
+	public void add(int index, int val) {
+		if (val < current)
+			val = current;
+		push(index, val);
+	}
+
+	/**
+	 * Inserts an element at its own level, even if it is lower than the
+	 * current level: the current level then goes down to it. Unlike add, this
+	 * keeps the queue ordered when the levels are not given in increasing
+	 * order.
+	 *
+	 * @param index
+	 *            linear index of the pixel
+	 * @param val
+	 *            level of the element
+	 */
+	public void insert(int index, int val) {
+		if (val < 0)
+			throw new PelicanException("Level " + val
+				+ " is negative in the hierarchical queue");
+		if (val < current)
+			current = val;
+		push(index, val);
+	}
+
+	/**
+	 * Appends an element to a level.
+	 */
+	private void push(int index, int val) {
+		if (val >= size)
+			throw new PelicanException("Level " + val
+				+ " exceeds the size of the hierarchical queue (" + size + ")");
+		if (val >= levels.length)
+			growLevels(val);
+		int[] buffer = levels[val];
+		int count = counts[val];
+		if (buffer == null) {
+			buffer = spareCount > 0 ? spares[--spareCount] : new int[INITIAL_CAPACITY];
+			levels[val] = buffer;
+		} else if (count == buffer.length) {
+			buffer = growBuffer(val);
+		}
+		buffer[(heads[val] + count) & (buffer.length - 1)] = index;
+		counts[val] = count + 1;
+		if (count == 0) {
+			occupied[val >> 6] |= 1L << val;
+			summary[val >> 12] |= 1L << (val >> 6);
+		}
+		if (val > highest)
+			highest = val;
+		number++;
+	}
+
+	/**
+	 * Gets the first element of the lowest non empty level.
+	 *
+	 * @return the linear index of the pixel, -1 if the queue is empty
+	 */
+	public int get() {
+		if (number == 0)
+			return -1;
+		skipEmptyLevels();
+		int[] buffer = levels[current];
+		int index = buffer[heads[current]];
+		heads[current] = (heads[current] + 1) & (buffer.length - 1);
+		number--;
+		if (--counts[current] == 0) {
+			release(current);
+			skipEmptyLevels();
+		}
+		return index;
+	}
+
+	public void clear() {
+		for (int i = 0; i <= highest && i < levels.length; i++) {
+			heads[i] = 0;
+			counts[i] = 0;
+		}
+		for (int i = 0; i <= (highest >> 6) && i < occupied.length; i++)
+			occupied[i] = 0;
+		for (int i = 0; i <= (highest >> 12) && i < summary.length; i++)
+			summary[i] = 0;
+		current = 0;
+		number = 0;
+		highest = 0;
+	}
+
+	public void reset() {
+		clear();
+	}
+
+	public boolean isEmpty() {
+		return (number == 0);
+	}
+
+	/**
+	 * Moves the current level to the lowest non empty level. Nothing is done
+	 * when the queue is empty, so that the current level does not change.
+	 */
+	private void skipEmptyLevels() {
+		if (number == 0 || counts[current] != 0)
+			return;
+		int word = current >> 6;
+		long bits = occupied[word] & (-1L << current);
+		if (bits == 0) {
+			// look for the next non empty word with the summary
+			int group = (word + 1) >> 6;
+			long words = summary[group] & (-1L << (word + 1));
+			while (words == 0)
+				words = summary[++group];
+			word = (group << 6) + Long.numberOfTrailingZeros(words);
+			bits = occupied[word];
+		}
+		current = (word << 6) + Long.numberOfTrailingZeros(bits);
+	}
+
+	/**
+	 * Records that a level got empty, its buffer is kept for the next levels.
+	 */
+	private void release(int val) {
+		occupied[val >> 6] &= ~(1L << val);
+		if (occupied[val >> 6] == 0)
+			summary[val >> 12] &= ~(1L << (val >> 6));
+		if (spareCount == spares.length) {
+			int[][] tmp = new int[2 * spares.length][];
+			System.arraycopy(spares, 0, tmp, 0, spareCount);
+			spares = tmp;
+		}
+		heads[val] = 0;
+		spares[spareCount++] = levels[val];
+		levels[val] = null;
+	}
+
+	/**
+	 * Enlarges the table of levels so that it holds the given level.
+	 */
+	private void growLevels(int val) {
+		int length = (int) Math.min(size, Math.max(val + 1L, 2L * levels.length));
+		int[][] newLevels = new int[length][];
+		int[] newHeads = new int[length];
+		int[] newCounts = new int[length];
+		System.arraycopy(levels, 0, newLevels, 0, levels.length);
+		System.arraycopy(heads, 0, newHeads, 0, heads.length);
+		System.arraycopy(counts, 0, newCounts, 0, counts.length);
+		levels = newLevels;
+		heads = newHeads;
+		counts = newCounts;
+		long[] newOccupied = new long[(length + 63) >> 6];
+		long[] newSummary = new long[(newOccupied.length + 63) >> 6];
+		System.arraycopy(occupied, 0, newOccupied, 0, occupied.length);
+		System.arraycopy(summary, 0, newSummary, 0, summary.length);
+		occupied = newOccupied;
+		summary = newSummary;
+	}
+
+	/**
+	 * Doubles the capacity of the full buffer of a level, its elements are
+	 * copied in order at the beginning of the new buffer.
+	 */
+	private int[] growBuffer(int val) {
+		int[] buffer = levels[val];
+		int[] newBuffer = new int[2 * buffer.length];
+		int head = heads[val];
+		System.arraycopy(buffer, head, newBuffer, 0, buffer.length - head);
+		System.arraycopy(buffer, 0, newBuffer, buffer.length - head, head);
+		levels[val] = newBuffer;
+		heads[val] = 0;
+		return newBuffer;
+	}
+}
@@ -0,0 +1,348 @@
+package fr.unistra.pelican.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.LargeBooleanImage;
+import fr.unistra.pelican.LargeByteImage;
+import fr.unistra.pelican.LargeDoubleImage;
+import fr.unistra.pelican.LargeIntegerImage;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+import fr.unistra.pelican.util.mask.MaskStack;
+
+/**
+ * Header of the PELICAN raw image format, written by PelicanRawImageSave and
+ * read by PelicanRawImageLoad.</br>
+ *
+ * The header is written in big endian order:
+ * <ul>
+ * <li>magic number "PELR" and version of the format</li>
+ * <li>pixel type, byte order of the pixels, layout and color flag</li>
+ * <li>the five dimensions</li>
+ * <li>name, type, properties, mask and center of the image, serialized</li>
+ * <li>for the DEFLATED layout, position and length of each chunk</li>
+ * <li>position of the pixels in the file</li>
+ * </ul>
+ * The pixels follow as stored in the images: band first, then x, y, z and t.
+ * Bytes are stored with the Byte.MIN_VALUE shift of ByteImage, booleans as 0
+ * or 1 on a byte. With the RAW layout the pixels are contiguous from a page
+ * aligned position, so they can be mapped. With the DEFLATED layout each
+ * (z,t) slice is a chunk compressed on its own, so a slice can be read
+ * without the others.
+ *
+ * @author PELICAN team.
+ */
+public class RawImageHeader {
+
+	/**
+	 * "PELR" in ASCII
+	 */
+	public static final int MAGIC = 0x50454C52;
+
+	/**
+	 * Version of the format written by this class
+	 */
+	public static final int VERSION = 1;
+
+	public static final int BOOLEAN = 0;
+	public static final int BYTE = 1;
+	public static final int INTEGER = 2;
+	public static final int DOUBLE = 3;
+
+	/**
+	 * Pixels stored contiguously, without compression
+	 */
+	public static final int RAW = 0;
+
+	/**
+	 * Each (z,t) slice stored in its own deflated chunk
+	 */
+	public static final int DEFLATED = 1;
+
+	/**
+	 * The pixels of the RAW layout start on a multiple of this number of bytes
+	 */
+	public static final int ALIGNMENT = 4096;
+
+	public int version = VERSION;
+	public int pixelType;
+	public ByteOrder order = ByteOrder.nativeOrder();
+	public int layout = RAW;
+	public boolean color;
+	public int xdim, ydim, zdim, tdim, bdim;
+
+	/**
+	 * Name, type, properties, mask and center of the image
+	 */
+	public Object[] attributes;
+
+	/**
+	 * Position and length of each chunk of the DEFLATED layout
+	 */
+	public long[] chunkOffsets;
+	public int[] chunkLengths;
+
+	/**
+	 * Position of the pixels, or of the first chunk, in the file
+	 */
+	public long dataOffset;
+
+	/**
+	 * Builds the header of an image.
+	 *
+	 * @param image
+	 *            image to describe
+	 * @param layout
+	 *            RAW or DEFLATED
+	 * @return the header, its dataOffset is set by write
+	 */
+	public static RawImageHeader of(Image image, int layout) {
+		RawImageHeader header = new RawImageHeader();
+		if (image instanceof BooleanImage)
+			header.pixelType = BOOLEAN;
+		else if (image instanceof ByteImage)
+			header.pixelType = BYTE;
+		else if (image instanceof IntegerImage)
+			header.pixelType = INTEGER;
+		else if (image instanceof DoubleImage)
+			header.pixelType = DOUBLE;
+		else
+			throw new PelicanException("The raw format does not support "
+				+ image.getClass().getSimpleName());
+		header.layout = layout;
+		header.color = image.color;
+		header.xdim = image.getXDim();
+		header.ydim = image.getYDim();
+		header.zdim = image.getZDim();
+		header.tdim = image.getTDim();
+		header.bdim = image.getBDim();
+		header.attributes = new Object[] { image.getName(), image.type,
+			image.properties, image.getMask(), image.getCenter() };
+		if (layout == DEFLATED) {
+			header.chunkOffsets = new long[header.getChunkCount()];
+			header.chunkLengths = new int[header.getChunkCount()];
+		}
+		return header;
+	}
+
+	/**
+	 * Gets the number of bytes of a pixel.
+	 *
+	 * @return the number of bytes of a pixel in the file
+	 */
+	public int getDataLength() {
+		switch (pixelType) {
+		case INTEGER:
+			return 4;
+		case DOUBLE:
+			return 8;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * Gets the number of values of a (z,t) slice.
+	 *
+	 * @return xdim*ydim*bdim
+	 */
+	public int getSliceSize() {
+		return xdim * ydim * bdim;
+	}
+
+	/**
+	 * Gets the number of (z,t) slices, which is also the number of chunks of
+	 * the DEFLATED layout.
+	 *
+	 * @return zdim*tdim
+	 */
+	public int getChunkCount() {
+		return zdim * tdim;
+	}
+
+	/**
+	 * Creates an image of the type of the header.
+	 *
+	 * @param zdim
+	 *            depth of the image
+	 * @param tdim
+	 *            number of frames of the image
+	 * @return the image with the attributes of the header
+	 */
+	public Image newImage(int zdim, int tdim) {
+		Image image;
+		switch (pixelType) {
+		case BOOLEAN:
+			image = new BooleanImage(xdim, ydim, zdim, tdim, bdim);
+			break;
+		case BYTE:
+			image = new ByteImage(xdim, ydim, zdim, tdim, bdim);
+			break;
+		case INTEGER:
+			image = new IntegerImage(xdim, ydim, zdim, tdim, bdim);
+			break;
+		default:
+			image = new DoubleImage(xdim, ydim, zdim, tdim, bdim);
+		}
+		this.setAttributes(image);
+		return image;
+	}
+
+	/**
+	 * Creates a large image of the type of the header, without working file.
+	 *
+	 * @return the image with the attributes of the header, its unit size is
+	 *         computed but its file must still be set
+	 */
+	public LargeImageInterface newLargeImage() {
+		Image image;
+		switch (pixelType) {
+		case BOOLEAN:
+			image = new LargeBooleanImage();
+			break;
+		case BYTE:
+			image = new LargeByteImage();
+			break;
+		case INTEGER:
+			image = new LargeIntegerImage();
+			break;
+		default:
+			image = new LargeDoubleImage();
+		}
+		LargeImageInterface largeIm = (LargeImageInterface) image;
+		image.setDim(xdim, ydim, zdim, tdim, bdim);
+		largeIm.computeUnitSize(0);
+		largeIm.calculate();
+		this.setAttributes(image);
+		return largeIm;
+	}
+
+	/**
+	 * Gives the name, type, properties, mask, center and color flag of the
+	 * header to an image.
+	 */
+	@SuppressWarnings("unchecked")
+	private void setAttributes(Image image) {
+		image.color = color;
+		if (attributes == null)
+			return;
+		image.setName((String) attributes[0]);
+		image.type = (Integer) attributes[1];
+		image.properties.putAll((Map<String, Object>) attributes[2]);
+		if (attributes[3] != null)
+			image.setMask((MaskStack) attributes[3]);
+		if (attributes[4] != null)
+			image.setCenter((Point4D) attributes[4]);
+	}
+
+	/**
+	 * Writes the header at the beginning of the file and sets dataOffset.
+	 * With the RAW layout the pixels start at the next multiple of ALIGNMENT.
+	 *
+	 * @param channel
+	 *            channel opened on the file
+	 */
+	public void write(FileChannel channel) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeInt(version);
+		out.writeByte(pixelType);
+		out.writeByte(order == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+		out.writeByte(layout);
+		out.writeBoolean(color);
+		out.writeInt(xdim);
+		out.writeInt(ydim);
+		out.writeInt(zdim);
+		out.writeInt(tdim);
+		out.writeInt(bdim);
+		ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+		ObjectOutputStream objects = new ObjectOutputStream(serialized);
+		objects.writeObject(attributes);
+		objects.close();
+		out.writeInt(serialized.size());
+		serialized.writeTo(out);
+		if (layout == DEFLATED) {
+			for (int i = 0; i < chunkOffsets.length; i++) {
+				out.writeLong(chunkOffsets[i]);
+				out.writeInt(chunkLengths[i]);
+			}
+		}
+		long length = out.size() + 8;
+		if (dataOffset < length)
+			dataOffset = (layout == RAW) ? (length + ALIGNMENT - 1) / ALIGNMENT
+				* ALIGNMENT : length;
+		out.writeLong(dataOffset);
+		out.close();
+		ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+		long position = 0;
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+
+	/**
+	 * Reads the header at the beginning of a file.
+	 *
+	 * @param channel
+	 *            channel opened on the file
+	 * @return the header
+	 */
+	public static RawImageHeader read(FileChannel channel) throws IOException {
+		channel.position(0);
+		// the stream is not closed, it would close the channel
+		DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+		if (in.readInt() != MAGIC)
+			throw new PelicanException("This file is not in PELICAN raw format");
+		RawImageHeader header = new RawImageHeader();
+		header.version = in.readInt();
+		if (header.version > VERSION)
+			throw new PelicanException("Unsupported version of the PELICAN raw format: "
+				+ header.version);
+		header.pixelType = in.readByte();
+		header.order = in.readByte() == 1 ? ByteOrder.LITTLE_ENDIAN
+			: ByteOrder.BIG_ENDIAN;
+		header.layout = in.readByte();
+		header.color = in.readBoolean();
+		header.xdim = in.readInt();
+		header.ydim = in.readInt();
+		header.zdim = in.readInt();
+		header.tdim = in.readInt();
+		header.bdim = in.readInt();
+		byte[] serialized = new byte[in.readInt()];
+		in.readFully(serialized);
+		try {
+			ObjectInputStream objects = new ObjectInputStream(
+				new ByteArrayInputStream(serialized));
+			header.attributes = (Object[]) objects.readObject();
+		} catch (ClassNotFoundException ex) {
+			throw new PelicanException("Unable to read the attributes of the image: "
+				+ ex.getMessage());
+		}
+		if (header.layout == DEFLATED) {
+			header.chunkOffsets = new long[header.getChunkCount()];
+			header.chunkLengths = new int[header.getChunkCount()];
+			for (int i = 0; i < header.chunkOffsets.length; i++) {
+				header.chunkOffsets[i] = in.readLong();
+				header.chunkLengths[i] = in.readInt();
+			}
+		}
+		header.dataOffset = in.readLong();
+		return header;
+	}
+}
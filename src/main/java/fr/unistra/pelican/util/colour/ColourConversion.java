@@ -0,0 +1,318 @@
+package fr.unistra.pelican.util.colour;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+import fr.unistra.pelican.util.lut.ThreeBandInterpolatedLUT;
+
+/**
+ * Conversion of three band images through a chain of colour stages, such as
+ * RGB to XYZ to LAB, done in a single pass without intermediate image. The
+ * pixels are read by chunks into planar arrays, every stage of the chain is
+ * applied to the chunk, then the chunk is written to the output. The tiles of
+ * the image are processed in parallel by the TileExecutor.
+ *
+ * For byte inputs the chain can also be replaced by a ThreeBandInterpolatedLUT:
+ * it is then only computed on the nodes of the grid of the LUT, once, and the
+ * other values are interpolated. This is approximate, and thus only done when
+ * a step is given.
+ *
+ * <pre>
+ * Image lab = ColourConversion.RGB_TO_LAB.convert(rgb);
+ * </pre>
+ *
+ * @see ColourStage
+ * @author PELICAN team.
+ */
+public class ColourConversion {
+
+	/**
+	 * Number of pixels of a chunk
+	 */
+	public static final int CHUNK = 1024;
+
+	/**
+	 * RGB to CIE XYZ, as RGBToXYZ
+	 */
+	public static final ColourConversion RGB_TO_XYZ = new ColourConversion(
+			ColourStage.RGB_TO_XYZ);
+
+	/**
+	 * CIE XYZ to CIE LAB, as XYZToLAB
+	 */
+	public static final ColourConversion XYZ_TO_LAB = new ColourConversion(
+			ColourStage.XYZ_TO_LAB);
+
+	/**
+	 * RGB to CIE LAB, as RGBToXYZ followed by XYZToLAB
+	 */
+	public static final ColourConversion RGB_TO_LAB = new ColourConversion(
+			ColourStage.RGB_TO_XYZ, ColourStage.XYZ_TO_LAB);
+
+	/**
+	 * Stages of the chain, in order
+	 */
+	private final ColourStage[] stages;
+
+	/**
+	 * Last LUT built for the chain, null if none has been
+	 */
+	private ThreeBandInterpolatedLUT lut = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param stages
+	 *            stages of the chain, in order
+	 */
+	public ColourConversion(ColourStage... stages) {
+		if (stages.length == 0)
+			throw new PelicanException("A colour conversion needs a stage");
+		this.stages = stages.clone();
+	}
+
+	/**
+	 * Applies the whole chain to a chunk of pixels in place.
+	 *
+	 * @param c0
+	 *            first band of the pixels
+	 * @param c1
+	 *            second band of the pixels
+	 * @param c2
+	 *            third band of the pixels
+	 * @param n
+	 *            number of pixels of the chunk
+	 */
+	public void apply(double[] c0, double[] c1, double[] c2, int n) {
+		for (ColourStage stage : stages)
+			stage.apply(c0, c1, c2, n);
+	}
+
+	/**
+	 * Converts an image exactly with all the available processors.
+	 *
+	 * @param input
+	 *            three band image
+	 * @return the converted double valued image
+	 */
+	public Image convert(Image input) {
+		return convert(input, 0, 0);
+	}
+
+	/**
+	 * Converts an image. The mask of the input becomes the one of the output.
+	 *
+	 * @param input
+	 *            three band image
+	 * @param step
+	 *            step of the interpolated LUT used for byte inputs, 0 for an
+	 *            exact conversion
+	 * @param parallelism
+	 *            number of threads, 0 for all the available processors
+	 * @return the converted double valued image
+	 */
+	public Image convert(Image input, int step, int parallelism) {
+		if (input.getBDim() != 3)
+			throw new PelicanException("The input must be a three band image");
+		Image output = input.newDoubleImage();
+		output.setMask(input.getMask());
+		output.setColor(true);
+		convert(input, output, step, parallelism);
+		return output;
+	}
+
+	/**
+	 * Converts an image into a given output of the same dimensions.
+	 *
+	 * @param input
+	 *            three band image
+	 * @param output
+	 *            receives the converted values
+	 * @param step
+	 *            step of the interpolated LUT used for byte inputs, 0 for an
+	 *            exact conversion
+	 * @param parallelism
+	 *            number of threads, 0 for all the available processors
+	 */
+	public void convert(final Image input, final Image output, int step,
+			int parallelism) {
+		final ThreeBandInterpolatedLUT table = getLUT(input, step);
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				// pixels are processed by triplets starting in the tile
+				int first = start + (3 - start % 3) % 3;
+				if (first >= end)
+					return;
+				Chunk chunk = new Chunk((end - first + 2) / 3, table);
+				for (int i = first; i < end; i += 3 * CHUNK) {
+					int n = Math.min(CHUNK, (end - i + 2) / 3);
+					chunk.convert(input, i, n);
+					for (int k = 0, p = i; k < n; k++, p += 3) {
+						output.setPixelDouble(p, chunk.c0[k]);
+						output.setPixelDouble(p + 1, chunk.c1[k]);
+						output.setPixelDouble(p + 2, chunk.c2[k]);
+					}
+				}
+			}
+		}, 2, parallelism, input, output);
+	}
+
+	/**
+	 * Converts an image into a buffer of floats, in the order of the linear
+	 * indexes of the image. It is meant for algorithms working on their own
+	 * copy of the pixels, which is then not kept in double precision.
+	 *
+	 * @param input
+	 *            three band image
+	 * @param step
+	 *            step of the interpolated LUT used for byte inputs, 0 for an
+	 *            exact conversion
+	 * @param parallelism
+	 *            number of threads, 0 for all the available processors
+	 * @return the converted values
+	 */
+	public float[] convertToFloats(final Image input, int step, int parallelism) {
+		if (input.getBDim() != 3)
+			throw new PelicanException("The input must be a three band image");
+		final float[] output = new float[input.size()];
+		final ThreeBandInterpolatedLUT table = getLUT(input, step);
+		TileExecutor.run(new TileExecutor.TileTask() {
+			public void process(int start, int end) {
+				int first = start + (3 - start % 3) % 3;
+				if (first >= end)
+					return;
+				Chunk chunk = new Chunk((end - first + 2) / 3, table);
+				for (int i = first; i < end; i += 3 * CHUNK) {
+					int n = Math.min(CHUNK, (end - i + 2) / 3);
+					chunk.convert(input, i, n);
+					for (int k = 0, p = i; k < n; k++, p += 3) {
+						output[p] = (float) chunk.c0[k];
+						output[p + 1] = (float) chunk.c1[k];
+						output[p + 2] = (float) chunk.c2[k];
+					}
+				}
+			}
+		}, 2, parallelism, input);
+		return output;
+	}
+
+	/**
+	 * Gets the LUT to use for an input, if any.
+	 *
+	 * @param input
+	 *            image converted
+	 * @param step
+	 *            step of the LUT, 0 for an exact conversion
+	 * @return the LUT, null for an exact conversion
+	 */
+	private ThreeBandInterpolatedLUT getLUT(Image input, int step) {
+		// a LUT on bytes only holds the values of byte inputs
+		if (step > 0 && (stages[0].readsBytes() || input instanceof ByteImage))
+			return getLUT(step);
+		return null;
+	}
+
+	/**
+	 * Buffers of the chunks of pixels converted by a task.
+	 */
+	private class Chunk {
+
+		/** Converted bands of the pixels of the chunk */
+		final double[] c0, c1, c2;
+
+		/** Byte values of the pixels, for the LUT */
+		final int[] v0, v1, v2;
+
+		/** LUT replacing the chain, null for an exact conversion */
+		final ThreeBandInterpolatedLUT table;
+
+		Chunk(int pixels, ThreeBandInterpolatedLUT table) {
+			int length = Math.min(CHUNK, pixels);
+			this.table = table;
+			c0 = new double[length];
+			c1 = new double[length];
+			c2 = new double[length];
+			if (table != null) {
+				v0 = new int[length];
+				v1 = new int[length];
+				v2 = new int[length];
+			} else
+				v0 = v1 = v2 = null;
+		}
+
+		/**
+		 * Reads and converts the pixels of the chunk.
+		 *
+		 * @param input
+		 *            image converted
+		 * @param i
+		 *            linear index of the first pixel of the chunk
+		 * @param n
+		 *            number of pixels of the chunk
+		 */
+		void convert(Image input, int i, int n) {
+			if (table != null) {
+				for (int k = 0, p = i; k < n; k++, p += 3) {
+					v0[k] = input.getPixelByte(p);
+					v1[k] = input.getPixelByte(p + 1);
+					v2[k] = input.getPixelByte(p + 2);
+				}
+				table.interpolate(v0, v1, v2, c0, c1, c2, n);
+				return;
+			}
+			if (stages[0].readsBytes())
+				for (int k = 0, p = i; k < n; k++, p += 3) {
+					c0[k] = input.getPixelByte(p);
+					c1[k] = input.getPixelByte(p + 1);
+					c2[k] = input.getPixelByte(p + 2);
+				}
+			else
+				for (int k = 0, p = i; k < n; k++, p += 3) {
+					c0[k] = input.getPixelDouble(p);
+					c1[k] = input.getPixelDouble(p + 1);
+					c2[k] = input.getPixelDouble(p + 2);
+				}
+			apply(c0, c1, c2, n);
+		}
+	}
+
+	/**
+	 * Gets the LUT of the chain for a given step, it is built if needed.
+	 *
+	 * @param step
+	 *            distance between two nodes of the LUT
+	 * @return the LUT
+	 */
+	public synchronized ThreeBandInterpolatedLUT getLUT(int step) {
+		if (lut != null && lut.step == step)
+			return lut;
+		ThreeBandInterpolatedLUT res = new ThreeBandInterpolatedLUT(step);
+		int nodes = res.nodes;
+		boolean bytes = stages[0].readsBytes();
+		double[] values = new double[nodes];
+		for (int i = 0; i < nodes; i++)
+			values[i] = bytes ? res.getNodeValue(i) : Image
+					.unsignedByteToDouble(res.getNodeValue(i));
+		// the chain is applied to the nodes line by line along the last band
+		double[] c0 = new double[nodes];
+		double[] c1 = new double[nodes];
+		double[] c2 = new double[nodes];
+		for (int i0 = 0; i0 < nodes; i0++)
+			for (int i1 = 0; i1 < nodes; i1++) {
+				for (int i2 = 0; i2 < nodes; i2++) {
+					c0[i2] = values[i0];
+					c1[i2] = values[i1];
+					c2[i2] = values[i2];
+				}
+				apply(c0, c1, c2, nodes);
+				int base = (i0 * nodes + i1) * nodes;
+				System.arraycopy(c0, 0, res.lut0, base, nodes);
+				System.arraycopy(c1, 0, res.lut1, base, nodes);
+				System.arraycopy(c2, 0, res.lut2, base, nodes);
+			}
+		lut = res;
+		return lut;
+	}
+
+}
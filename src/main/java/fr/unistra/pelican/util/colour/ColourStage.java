@@ -0,0 +1,95 @@
+package fr.unistra.pelican.util.colour;
+
+/**
+ * One step of a colour space conversion, applied to a chunk of pixels stored
+ * band by band: the first band of every pixel of the chunk in a first array,
+ * the second band in a second array and so on. Working on such planar arrays
+ * of primitives, the loops of a stage have no dependency between pixels and
+ * are left for the JIT to vectorise.
+ *
+ * The stages give exactly the values of the per pixel convert methods of the
+ * corresponding algorithms, the same operations being done in the same order.
+ *
+ * @see ColourConversion
+ * @author PELICAN team.
+ */
+public abstract class ColourStage {
+
+	/**
+	 * Converts a chunk of pixels in place.
+	 *
+	 * @param c0
+	 *            first band of the pixels
+	 * @param c1
+	 *            second band of the pixels
+	 * @param c2
+	 *            third band of the pixels
+	 * @param n
+	 *            number of pixels of the chunk
+	 */
+	public abstract void apply(double[] c0, double[] c1, double[] c2, int n);
+
+	/**
+	 * Tells how the input of the stage is read when it is the first one of a
+	 * conversion: as bytes in [0,255] like getPixelByte, or as doubles like
+	 * getPixelDouble.
+	 *
+	 * @return true if the stage expects byte values
+	 */
+	public boolean readsBytes() {
+		return false;
+	}
+
+	/**
+	 * RGB to CIE XYZ, as RGBToXYZ: the input is read as bytes.
+	 */
+	public static final ColourStage RGB_TO_XYZ = new ColourStage() {
+		public void apply(double[] c0, double[] c1, double[] c2, int n) {
+			for (int k = 0; k < n; k++) {
+				double rN = c0[k] * 0.003921;
+				double gN = c1[k] * 0.003921;
+				double bN = c2[k] * 0.003921;
+				c0[k] = 0.412453 * rN + 0.357580 * gN + 0.180423 * bN;
+				c1[k] = 0.212671 * rN + 0.715160 * gN + 0.072169 * bN;
+				c2[k] = 0.019334 * rN + 0.119193 * gN + 0.950227 * bN;
+			}
+		}
+
+		public boolean readsBytes() {
+			return true;
+		}
+	};
+
+	/**
+	 * CIE XYZ to CIE LAB for the D65 white point, as XYZToLAB.
+	 */
+	public static final ColourStage XYZ_TO_LAB = new ColourStage() {
+		public void apply(double[] c0, double[] c1, double[] c2, int n) {
+			for (int k = 0; k < n; k++) {
+				c0[k] = labFunction(c0[k] / 0.950456);
+				c1[k] = labFunction(c1[k] / 1.0);
+				c2[k] = labFunction(c2[k] / 1.088754);
+			}
+			for (int k = 0; k < n; k++) {
+				double x = c0[k], y = c1[k], z = c2[k];
+				c0[k] = 116 * y - 16.0;
+				c1[k] = 500 * (x - y);
+				c2[k] = 200 * (y - z);
+			}
+		}
+	};
+
+	/**
+	 * Non linear part of the CIE LAB transform.
+	 *
+	 * @param frac
+	 *            component divided by the one of the white point
+	 * @return the transformed component
+	 */
+	private static double labFunction(double frac) {
+		if (frac > 0.008856)
+			return Math.pow(frac, 0.333333);
+		return 7.787 * frac + 16.0 / 116.0;
+	}
+
+}
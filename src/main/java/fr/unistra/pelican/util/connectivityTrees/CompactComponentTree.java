@@ -0,0 +1,282 @@
+/**
+ *
+ */
+package fr.unistra.pelican.util.connectivityTrees;
+
+import java.util.HashMap;
+
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.Point3D;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.attributes.CompactAttribute;
+import fr.unistra.pelican.util.connectivityTrees.attributes.ComponentAttribute;
+
+/**
+ * A connected component tree stored in primitive arrays indexed by the linear
+ * index x+xdim*(y+ydim*z) of the pixels, as built by
+ * BuildCompactComponentTree.
+ *
+ * Each node is represented by its canonical pixel. The parent of a canonical
+ * pixel is the canonical pixel of the parent node, the parent of another pixel
+ * is the canonical pixel of its node, and the root is its own parent. A pixel
+ * is canonical if it is the root or if its level differs from the level of its
+ * parent. The area of a node, children included, is stored at its canonical
+ * pixel. The pixels are also kept sorted from the root to the leaves, so that
+ * a node is always visited after its parent.
+ *
+ * It can be given to FilterComponentTree and ReconstructImageFromTree, but the
+ * methods of ComponentTree working on ComponentNode are not available. Node
+ * attributes are given by CompactAttribute instead of ComponentAttribute.
+ *
+ * @author PELICAN team.
+ *
+ */
+public class CompactComponentTree extends ComponentTree<Double> {
+
+	/**
+	 * Tree type, the levels increase from the root to the leaves of a max tree
+	 */
+	private final TreeType treeType;
+
+	/**
+	 * Parent of each pixel
+	 */
+	private final int [] parent;
+
+	/**
+	 * Level of the node of each pixel
+	 */
+	private final double [] level;
+
+	/**
+	 * Area of each node, at its canonical pixel
+	 */
+	private final int [] area;
+
+	/**
+	 * Pixels sorted from the root to the leaves
+	 */
+	private final int [] sorted;
+
+	/**
+	 * Attributes computed on the tree
+	 */
+	private HashMap<Class<? extends CompactAttribute>, CompactAttribute> attributes = new HashMap<Class<? extends CompactAttribute>, CompactAttribute>();
+
+	/**
+	 * Builds a tree from its arrays, the parents must be canonicalized.
+	 *
+	 * @param xdim
+	 * @param ydim
+	 * @param zdim
+	 * @param treeType
+	 * @param parent
+	 * @param level
+	 * @param area
+	 * @param sorted
+	 */
+	public CompactComponentTree(int xdim, int ydim, int zdim, TreeType treeType,
+			int [] parent, double [] level, int [] area, int [] sorted) {
+		super(null, null, null);
+		setXdim(xdim);
+		setYdim(ydim);
+		setZdim(zdim);
+		this.treeType = treeType;
+		this.parent = parent;
+		this.level = level;
+		this.area = area;
+		this.sorted = sorted;
+	}
+
+	public TreeType getTreeType() {
+		return treeType;
+	}
+
+	/**
+	 * Number of pixels of the tree
+	 * @return
+	 */
+	public int size() {
+		return parent.length;
+	}
+
+	/**
+	 * Canonical pixel of the root
+	 * @return
+	 */
+	public int getRootIndex() {
+		return sorted[0];
+	}
+
+	/**
+	 * Parent of a pixel: the canonical pixel of its node, or of the parent
+	 * node for a canonical pixel
+	 * @param p linear index of the pixel
+	 * @return
+	 */
+	public int getParent(int p) {
+		return parent[p];
+	}
+
+	/**
+	 * Level of the node of a pixel
+	 * @param p linear index of the pixel
+	 * @return
+	 */
+	public double getLevel(int p) {
+		return level[p];
+	}
+
+	/**
+	 * Area of a node, children included
+	 * @param p linear index of the canonical pixel of the node
+	 * @return
+	 */
+	public int getArea(int p) {
+		return area[p];
+	}
+
+	/**
+	 * Pixel at given rank, from the root to the leaves
+	 * @param i
+	 * @return
+	 */
+	public int getSortedPixel(int i) {
+		return sorted[i];
+	}
+
+	/**
+	 * Says whether a pixel is the canonical pixel of its node
+	 * @param p linear index of the pixel
+	 * @return
+	 */
+	public boolean isCanonical(int p) {
+		int q = parent[p];
+		return q == p || level[q] != level[p];
+	}
+
+	/**
+	 * Node of the pixel (x,y,z)
+	 * @return the canonical pixel of the node
+	 */
+	public int findIndexAt(int x, int y, int z) {
+		return getNode(x + getXdim() * (y + getYdim() * z));
+	}
+
+	/**
+	 * Node of a pixel
+	 * @param p linear index of the pixel
+	 * @return the canonical pixel of the node
+	 */
+	public int getNode(int p) {
+		return isCanonical(p) ? p : parent[p];
+	}
+
+	/**
+	 * Tells which nodes have child nodes
+	 * @return a flag for each canonical pixel, true if the node has children
+	 */
+	public boolean [] hasChildren() {
+		boolean [] res = new boolean[parent.length];
+		for (int p = 0; p < parent.length; p++)
+			if (parent[p] != p && isCanonical(p))
+				res[parent[p]] = true;
+		return res;
+	}
+
+	/**
+	 * Deletes nodes: the pixels of a deleted node join the parent node. The
+	 * root is never deleted. The areas do not change, as the area of a node
+	 * includes its children.
+	 *
+	 * @param keep flag of each canonical pixel, false to delete the node
+	 */
+	public void deleteNodes(boolean [] keep) {
+		keep[sorted[0]] = true;
+		boolean [] canonical = new boolean[parent.length];
+		for (int p = 0; p < parent.length; p++)
+			canonical[p] = isCanonical(p);
+		// parents are visited first, so each of them already points to a
+		// node which is kept
+		for (int i = 1; i < sorted.length; i++) {
+			int p = sorted[i];
+			int q = parent[p];
+			if (!keep[q])
+				q = parent[q];
+			parent[p] = q;
+			if (!canonical[p] || !keep[p])
+				level[p] = level[q];
+		}
+	}
+
+	/**
+	 * Computes attributes of all the nodes in a single pass from the leaves to
+	 * the root, and adds them to the tree
+	 * @param newAttributes
+	 */
+	public void addAttributes(CompactAttribute... newAttributes) {
+		for (CompactAttribute a : newAttributes) {
+			a.init(this);
+			for (int p = 0; p < parent.length; p++)
+				a.addPixel(p);
+		}
+		for (int i = sorted.length - 1; i > 0; i--) {
+			int p = sorted[i];
+			int q = parent[p];
+			for (CompactAttribute a : newAttributes)
+				a.mergeChild(q, p);
+		}
+		for (CompactAttribute a : newAttributes)
+			attributes.put(a.getClass(), a);
+	}
+
+	/**
+	 * Gets an attribute added to the tree
+	 * @param clazz class of the attribute
+	 * @return the attribute, or null if it was not added
+	 */
+	@SuppressWarnings("unchecked")
+	public <A extends CompactAttribute> A getAttribute(Class<A> clazz) {
+		return (A) attributes.get(clazz);
+	}
+
+	@Override
+	public int countNodes() {
+		int nb = 0;
+		for (int p = 0; p < parent.length; p++)
+			if (isCanonical(p))
+				nb++;
+		return nb;
+	}
+
+	@Override
+	public int countLeaf() {
+		boolean [] children = hasChildren();
+		int nb = 0;
+		for (int p = 0; p < parent.length; p++)
+			if (isCanonical(p) && !children[p])
+				nb++;
+		return nb;
+	}
+
+	@Override
+	public ComponentNode<Double> getRoot() {
+		throw new PelicanException("A CompactComponentTree has no ComponentNode");
+	}
+
+	@Override
+	public ComponentNode<Double> findNodeAt(int x, int y, int z) {
+		throw new PelicanException("A CompactComponentTree has no ComponentNode");
+	}
+
+	@Override
+	public ComponentNode<Double> findNodeAt(Point3D p) {
+		throw new PelicanException("A CompactComponentTree has no ComponentNode");
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void addAttribute(ComponentAttribute a) {
+		throw new PelicanException("A CompactComponentTree has no ComponentNode");
+	}
+}
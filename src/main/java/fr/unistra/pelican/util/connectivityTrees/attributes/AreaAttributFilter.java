@@ -3,6 +3,7 @@
  */
 package fr.unistra.pelican.util.connectivityTrees.attributes;
 
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 
 /**
@@ -58,14 +59,26 @@ public class AreaAttributFilter extends AttributeFilter {
 	 */
 	@Override
 	public boolean filter(ComponentNode node) {
+		return filter(node.getArea());
+	}
+
+	/* (non-Javadoc)
+	 * @see fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter#filter(fr.unistra.pelican.util.connectivityTrees.CompactComponentTree, int)
+	 */
+	@Override
+	public boolean filter(CompactComponentTree tree, int node) {
+		return filter(tree.getArea(node));
+	}
+
+	private boolean filter(int area) {
 		boolean res;
 		switch (limiteIs)
 		{		
 		case MAX:
-			res=node.getArea()<sizeCriterion;
+			res=area<sizeCriterion;
 			break;
 		default:
-			res=node.getArea()>sizeCriterion;
+			res=area>sizeCriterion;
 			break;	
 		}
 		return res;
@@ -3,6 +3,7 @@
  */
 package fr.unistra.pelican.util.connectivityTrees.attributes;
 
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
 import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
 
 /**
@@ -20,4 +21,15 @@ public abstract class AttributeFilter {
 	 * @throws AttributeNotFoundException The needed attribute is not found in given ComponentNode
 	 */
 	public abstract boolean filter(ComponentNode node) throws AttributeNotFoundException;
+
+	/**
+	 * says whether or not a node of a compact tree fulfill attribute filter criteria
+	 * @param tree the compact component tree
+	 * @param node the canonical pixel of the node to test
+	 * @return result of the test
+	 * @throws AttributeNotFoundException The needed attribute is not stored in a compact tree
+	 */
+	public boolean filter(CompactComponentTree tree, int node) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException(getClass().getSimpleName() + " can not filter a CompactComponentTree");
+	}
 }
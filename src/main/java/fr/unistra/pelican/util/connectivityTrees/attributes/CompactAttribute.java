@@ -0,0 +1,62 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
+
+/**
+ * An attribute of the nodes of a CompactComponentTree, computed as a mergeable
+ * accumulator: each pixel starts as a node of its own, then every pixel and
+ * every node is merged into its parent, from the leaves to the root.
+ * 
+ * Values are kept in primitive arrays indexed by the linear index of the
+ * pixels, a node being represented by its canonical pixel. All the attributes
+ * of a tree are computed together by CompactComponentTree.addAttributes.
+ * 
+ * @author PELICAN team.
+ *
+ */
+public abstract class CompactAttribute {
+
+	/**
+	 * Tree of the attribute
+	 */
+	protected CompactComponentTree tree;
+
+	/**
+	 * Allocates the arrays of the attribute for all the pixels of the tree
+	 * @param tree
+	 */
+	public void init(CompactComponentTree tree)
+	{
+		this.tree=tree;
+		allocate(tree.size());
+	}
+
+	/**
+	 * Allocates the arrays of the attribute
+	 * @param size number of pixels
+	 */
+	protected abstract void allocate(int size);
+
+	/**
+	 * Sets the value of the node made of a single pixel
+	 * @param p linear index of the pixel
+	 */
+	public abstract void addPixel(int p);
+
+	/**
+	 * Merges the value of a child, or of a pixel, into its parent node
+	 * @param node canonical pixel of the parent node
+	 * @param child canonical pixel of the child, or pixel of the node
+	 */
+	public abstract void mergeChild(int node, int child);
+
+	/**
+	 * Value of the attribute on a node
+	 * @param node canonical pixel of the node
+	 * @return
+	 */
+	public abstract double getValue(int node);
+}
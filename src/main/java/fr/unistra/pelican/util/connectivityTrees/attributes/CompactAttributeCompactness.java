@@ -0,0 +1,21 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+/**
+ * Compactness of a node of a CompactComponentTree, as AttributeCompactness:
+ * area/(perimeter*perimeter).
+ * 
+ * @author PELICAN team.
+ *
+ */
+public class CompactAttributeCompactness extends CompactAttributePerimetre {
+
+	@Override
+	public double getValue(int node) {
+		double per=perimetre[node];
+		return tree.getArea(node)/(per*per);
+	}
+
+}
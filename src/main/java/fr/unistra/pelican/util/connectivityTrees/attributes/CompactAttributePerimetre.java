@@ -0,0 +1,72 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+
+/**
+ * Perimeter of a node of a CompactComponentTree, as AttributePerimetre: the
+ * number of sides of its pixels, in the XY plane, which are not shared with
+ * another pixel of the node or of its children.
+ * 
+ * Each pixel brings its 4 sides, minus 2 for each 4-neighbour entering the tree
+ * before it, that is above it or at the same level with a smaller index. Such a
+ * neighbour belongs to all the nodes containing the pixel, so the tree must be
+ * built with a connectivity including the 4 neighbourhood.
+ * 
+ * @author PELICAN team.
+ *
+ */
+public class CompactAttributePerimetre extends CompactAttribute {
+
+	/**
+	 * Perimeter of each node
+	 */
+	protected int [] perimetre;
+
+	@Override
+	protected void allocate(int size) {
+		perimetre = new int[size];
+	}
+
+	@Override
+	public void addPixel(int p) {
+		int xdim=tree.getXdim();
+		int x=p%xdim;
+		int y=(p/xdim)%tree.getYdim();
+		int per=4;
+		if(x>0 && before(p-1,p))
+			per-=2;
+		if(x<xdim-1 && before(p+1,p))
+			per-=2;
+		if(y>0 && before(p-xdim,p))
+			per-=2;
+		if(y<tree.getYdim()-1 && before(p+xdim,p))
+			per-=2;
+		perimetre[p]=per;
+	}
+
+	/**
+	 * Says whether pixel q enters the tree before pixel p
+	 */
+	private boolean before(int q, int p)
+	{
+		double lq=tree.getLevel(q);
+		double lp=tree.getLevel(p);
+		if(lq==lp)
+			return q<p;
+		return (tree.getTreeType()==TreeType.Min)?lq<lp:lq>lp;
+	}
+
+	@Override
+	public void mergeChild(int node, int child) {
+		perimetre[node]+=perimetre[child];
+	}
+
+	@Override
+	public double getValue(int node) {
+		return perimetre[node];
+	}
+
+}
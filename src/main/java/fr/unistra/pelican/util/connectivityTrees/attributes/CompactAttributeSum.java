@@ -0,0 +1,40 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+/**
+ * Sum of the levels of the pixels of a node of a CompactComponentTree and of
+ * its children
+ * 
+ * @author PELICAN team.
+ *
+ */
+public class CompactAttributeSum extends CompactAttribute {
+
+	/**
+	 * Sum of each node
+	 */
+	protected double [] sum;
+
+	@Override
+	protected void allocate(int size) {
+		sum = new double[size];
+	}
+
+	@Override
+	public void addPixel(int p) {
+		sum[p]=tree.getLevel(p);
+	}
+
+	@Override
+	public void mergeChild(int node, int child) {
+		sum[node]+=sum[child];
+	}
+
+	@Override
+	public double getValue(int node) {
+		return sum[node];
+	}
+
+}
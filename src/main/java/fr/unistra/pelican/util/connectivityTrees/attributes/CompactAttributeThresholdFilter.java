@@ -0,0 +1,64 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
+
+/**
+ * Attribute filter on an attribute of a CompactComponentTree, the attribute
+ * must have been added to the tree.
+ * 
+ * @author PELICAN team.
+ *
+ */
+public class CompactAttributeThresholdFilter extends AttributeFilter {
+
+	private Class<? extends CompactAttribute> clazz;
+	
+	private double threshold;
+	
+	/**
+	 * By default the threshold is the minimum value
+	 */
+	public AreaAttributFilter.LimiteIs limiteIs=AreaAttributFilter.LimiteIs.MIN;
+	
+	public CompactAttributeThresholdFilter(Class<? extends CompactAttribute> clazz, double threshold)
+	{
+		this.clazz=clazz;
+		this.threshold=threshold;
+	}
+	
+	public CompactAttributeThresholdFilter(Class<? extends CompactAttribute> clazz, double threshold, AreaAttributFilter.LimiteIs limiteIs)
+	{
+		this(clazz,threshold);
+		this.limiteIs=limiteIs;
+	}
+	
+	@Override
+	@SuppressWarnings("rawtypes")
+	public boolean filter(ComponentNode node) throws AttributeNotFoundException{
+		throw new AttributeNotFoundException(clazz.getSimpleName() + " is only computed on a CompactComponentTree");
+	}
+	
+	@Override
+	public boolean filter(CompactComponentTree tree, int node) throws AttributeNotFoundException{
+		CompactAttribute a=tree.getAttribute(clazz);
+		if(a==null)
+			throw new AttributeNotFoundException("Cannot find attribute " + clazz.getSimpleName());
+		double v=a.getValue(node);
+		if(limiteIs==AreaAttributFilter.LimiteIs.MAX)
+			return v < threshold;
+		return v > threshold;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+}
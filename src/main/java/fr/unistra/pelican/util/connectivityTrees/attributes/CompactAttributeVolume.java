@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package fr.unistra.pelican.util.connectivityTrees.attributes;
+
+/**
+ * Volume of a node of a CompactComponentTree, as AttributeVolume on a tree of
+ * Double: the sum over the pixels of the node and of its children of their
+ * level minus the level of the parent node (0 for the root).
+ * 
+ * @author PELICAN team.
+ *
+ */
+public class CompactAttributeVolume extends CompactAttributeSum {
+
+	@Override
+	public double getValue(int node) {
+		int parent=tree.getParent(node);
+		if(parent==node)
+			return sum[node];
+		return sum[node]-tree.getArea(node)*tree.getLevel(parent);
+	}
+
+}
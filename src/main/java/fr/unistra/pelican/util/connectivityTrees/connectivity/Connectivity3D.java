@@ -93,10 +93,12 @@ public abstract class Connectivity3D implements Iterator<Point3D>, Iterable<Poin
 	 * Change iterator center point
 	 * @param x
 	 * @param y
+	 * @param z
 	 */
 	public void setCurrentPoint(int x, int y,int z){
 		currentX=x;
 		currentY=y;
+		currentZ=z;
 	}
 	
 	/**
@@ -0,0 +1,517 @@
+package fr.unistra.pelican.util.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.Keypoint;
+import fr.unistra.pelican.util.largeImages.TileExecutor;
+
+/**
+ *	Approximate nearest neighbour index over the keypoints of one or several
+ *	<tt>KeypointArrayData</tt>, as computed by SURF, to match keypoints without
+ *	comparing them to every indexed one.
+ *
+ *	The descriptors are indexed by a forest of randomized k-d trees: each node
+ *	splits its points at the mean of one of the dimensions of highest variance,
+ *	picked at random, so that the trees cut the space differently. A query
+ *	descends every tree, then explores the branches left aside by increasing
+ *	distance to their splitting plane, in all the trees at once, until a given
+ *	number of descriptors has been checked. As in <tt>KeypointArraySURFDistance</tt>,
+ *	only keypoints of the same laplacian sign are compared, and a match is only
+ *	kept if the nearest descriptor is clearly nearer than the second one.
+ *
+ *	The index is built once every data has been added, then queries can be run
+ *	concurrently.
+ *
+ *	@see fr.unistra.pelican.util.data.distances.KeypointArraySURFDistance
+ *	@see fr.unistra.pelican.algorithms.descriptors.localinvariants.SURFIndexMatching
+ *
+ *	@author PELICAN team.
+ */
+public class KeypointIndex {
+
+	/**	Default number of trees of the forest. */
+	public static final int DEFAULT_TREES = 4;
+
+	/**	Default number of descriptors checked by a query. */
+	public static final int DEFAULT_CHECKS = 128;
+
+	/**	Default ratio between the squared distances to the nearest and to the second
+	 *	nearest descriptors under which a match is kept, the one of SURF matching. */
+	public static final double DEFAULT_RATIO = 0.5;
+
+	/**	Position of the laplacian in the values of a SURF keypoint. */
+	private static final int LAPLACIAN = 1;
+
+	/**	Position of the descriptor in the values of a SURF keypoint, after the scale,
+	 *	the laplacian and the orientation. */
+	private static final int OFFSET = 3;
+
+	/**	Greatest number of descriptors of a leaf. */
+	private static final int LEAF_SIZE = 4;
+
+	/**	Number of descriptors on which the variances of a node are estimated. */
+	private static final int SAMPLE_SIZE = 100;
+
+	/**	Number of dimensions of highest variance among which the split is picked. */
+	private static final int SPLIT_CANDIDATES = 5;
+
+	/**	Number of trees of the forest. */
+	private final int nbTrees;
+
+	/**	Seed of the random choices of the trees. */
+	private final long seed;
+
+	/**	Indexed data. */
+	private final ArrayList<KeypointArrayData> datas = new ArrayList<KeypointArrayData>();
+
+	/**	Indexed keypoints, by entry. */
+	private final ArrayList<Keypoint> keypoints = new ArrayList<Keypoint>();
+
+	/**	Data of each entry, and its position in the data. */
+	private int[] owner = new int[16], position = new int[16];
+
+	/**	Descriptors of the entries, dim values each. */
+	private double[] descriptors = new double[16];
+
+	/**	Laplacian of each entry. */
+	private double[] laplacians = new double[16];
+
+	/**	Length of the descriptors, -1 before the first keypoint. */
+	private int dim = -1;
+
+	/**	Forest of each laplacian value, null when the index must be built. */
+	private Forest[] forests = null;
+
+	/**	Creates an index with the default number of trees. */
+	public KeypointIndex() {
+		this( DEFAULT_TREES,0 );
+	}
+
+	/**	Creates an index.
+	 *	@param nbTrees Number of trees, more trees give better matches for the same
+	 *	number of checks but take more memory.
+	 *	@param seed Seed of the random choices of the trees.
+	 */
+	public KeypointIndex( int nbTrees, long seed ) {
+
+		if ( nbTrees < 1 ) throw new PelicanException( "An index needs at least one tree" );
+		this.nbTrees = nbTrees;
+		this.seed = seed;
+	}
+
+	  //////////////
+	 // INDEXING //
+	//////////////
+
+	/**	Adds the keypoints of a data to the index. The index is built again at the next query.
+	 *	@param data Keypoints computed by SURF.
+	 *	@return The number of the data in the index.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized int add( KeypointArrayData data ) {
+
+		int id = this.datas.size();
+		ArrayList<Keypoint> values = ( ArrayList<Keypoint> ) data.getValues();
+		for ( int i = 0 ; i < values.size() ; i++ ) {
+
+			Keypoint key = values.get( i );
+			Double[] desc = ( Double[] ) key.data.getValues();
+			if ( this.dim < 0 ) this.dim = desc.length - OFFSET;
+			if ( desc.length - OFFSET != this.dim )
+				throw new PelicanException( "Incompatible keypoint descriptors lengths !" );
+			int entry = this.keypoints.size();
+			if ( entry == this.owner.length ) {
+
+				this.owner = Arrays.copyOf( this.owner,2*entry );
+				this.position = Arrays.copyOf( this.position,2*entry );
+				this.laplacians = Arrays.copyOf( this.laplacians,2*entry );
+			}
+			if ( ( entry+1 ) * this.dim > this.descriptors.length )
+				this.descriptors = Arrays.copyOf( this.descriptors,
+						Math.max( 2*this.descriptors.length,( entry+1 ) * this.dim ) );
+			this.owner[entry] = id;
+			this.position[entry] = i;
+			this.laplacians[entry] = desc[LAPLACIAN];
+			for ( int d = 0 ; d < this.dim ; d++ )
+				this.descriptors[entry*this.dim + d] = desc[OFFSET + d];
+			this.keypoints.add( key );
+		}
+		this.datas.add( data );
+		this.forests = null;
+		return id;
+	}
+
+	/**	Builds the trees, which is otherwise done by the first query following an addition. */
+	public synchronized void build() {
+
+		if ( this.forests != null ) return;
+		int size = this.keypoints.size();
+		// one forest per laplacian value, since only keypoints of same laplacian are compared
+		double[] values = Arrays.copyOf( this.laplacians,size );
+		Arrays.sort( values );
+		ArrayList<Forest> list = new ArrayList<Forest>();
+		Random random = new Random( this.seed );
+		for ( int i = 0 ; i < size ; ) {
+
+			int j = i;
+			while ( j < size && values[j] == values[i] ) j++;
+			int[] entries = new int[j-i];
+			int count = 0;
+			for ( int e = 0 ; e < size ; e++ )
+				if ( this.laplacians[e] == values[i] ) entries[count++] = e;
+			list.add( new Forest( values[i],entries,random ) );
+			i = j;
+		}
+		this.forests = list.toArray( new Forest[ list.size() ] );
+	}
+
+	private synchronized Forest[] getForests() {
+
+		this.build();
+		return this.forests;
+	}
+
+	  /////////////
+	 // QUERIES //
+	/////////////
+
+	/**	Matches a keypoint with the indexed ones.
+	 *	@param point Keypoint computed by SURF.
+	 *	@param ratio A match is kept if the squared distance to the nearest descriptor is
+	 *	below ratio times the one to the second nearest.
+	 *	@param checks Number of descriptors compared to the one of the keypoint, 0 or less
+	 *	for an exact search.
+	 *	@return The entry of the matching keypoint, or -1 if there is none.
+	 */
+	public int match( Keypoint point, double ratio, int checks ) {
+		return new Search( this.getForests() ).match( point,ratio,checks );
+	}
+
+	/**	Matches the keypoints of a data with the indexed ones, on several threads.
+	 *	@param query Keypoints computed by SURF.
+	 *	@param ratio A match is kept if the squared distance to the nearest descriptor is
+	 *	below ratio times the one to the second nearest.
+	 *	@param checks Number of descriptors compared to each keypoint, 0 or less for an
+	 *	exact search.
+	 *	@param parallelism Number of threads, 0 for all the available processors.
+	 *	@return For each keypoint of the query, the entry of the matching keypoint or -1.
+	 */
+	@SuppressWarnings("unchecked")
+	public int[] match( KeypointArrayData query, final double ratio, final int checks,
+			int parallelism ) {
+
+		final ArrayList<Keypoint> values = ( ArrayList<Keypoint> ) query.getValues();
+		final int[] matches = new int[ values.size() ];
+		final Forest[] forests = this.getForests();
+		TileExecutor.runStrips( new TileExecutor.TileTask() {
+			public void process( int start, int end ) {
+				Search search = new Search( forests );
+				for ( int i = start ; i < end ; i++ )
+					matches[i] = search.match( values.get( i ),ratio,checks );
+			}
+		}, values.size(), parallelism );
+		return matches;
+	}
+
+	/**	@return The number of indexed keypoints. */
+	public int size() {
+		return this.keypoints.size();
+	}
+
+	/**	@return The number of indexed data. */
+	public int getNumberOfData() {
+		return this.datas.size();
+	}
+
+	/**	@param id Number of a data.
+	 *	@return The data. */
+	public KeypointArrayData getData( int id ) {
+		return this.datas.get( id );
+	}
+
+	/**	@param entry Entry of a keypoint, as returned by match.
+	 *	@return The keypoint. */
+	public Keypoint getKeypoint( int entry ) {
+		return this.keypoints.get( entry );
+	}
+
+	/**	@param entry Entry of a keypoint, as returned by match.
+	 *	@return The number of the data holding the keypoint. */
+	public int getDataId( int entry ) {
+		return this.owner[entry];
+	}
+
+	/**	@param entry Entry of a keypoint, as returned by match.
+	 *	@return The position of the keypoint in the values of its data. */
+	public int getPosition( int entry ) {
+		return this.position[entry];
+	}
+
+	  ///////////
+	 // TREES //
+	///////////
+
+	/**	Randomized k-d trees over the entries of one laplacian value. A tree is stored in
+	 *	arrays by node, in preorder: the left child of an inner node follows it. */
+	private class Forest {
+
+		final double laplacian;
+		final int size;
+		/**	Entries in the order of the leaves, by tree. */
+		final int[][] order;
+		/**	Split dimension of each node, -1 for a leaf, by tree. */
+		final int[][] split;
+		/**	Split value of each inner node, by tree. */
+		final double[][] value;
+		/**	Right child of an inner node, or first index in order of a leaf. */
+		final int[][] next;
+		/**	Index in order following the last entry of a leaf. */
+		final int[][] end;
+		private int nodes;
+
+		Forest( double laplacian, int[] entries, Random random ) {
+
+			this.laplacian = laplacian;
+			this.size = entries.length;
+			int capacity = 2 * ( this.size / LEAF_SIZE + 1 );
+			this.order = new int[nbTrees][];
+			this.split = new int[nbTrees][];
+			this.value = new double[nbTrees][];
+			this.next = new int[nbTrees][];
+			this.end = new int[nbTrees][];
+			for ( int t = 0 ; t < nbTrees ; t++ ) {
+
+				this.order[t] = entries.clone();
+				this.split[t] = new int[capacity];
+				this.value[t] = new double[capacity];
+				this.next[t] = new int[capacity];
+				this.end[t] = new int[capacity];
+				this.nodes = 0;
+				this.divide( t,0,this.size,random );
+			}
+		}
+
+		/**	Builds the subtree of the entries of order[t] in [lo,hi[.
+		 *	@return the node of the subtree */
+		private int divide( int t, int lo, int hi, Random random ) {
+
+			int node = this.nodes++;
+			if ( node >= this.split[t].length ) {
+
+				int capacity = 2 * this.split[t].length;
+				this.split[t] = Arrays.copyOf( this.split[t],capacity );
+				this.value[t] = Arrays.copyOf( this.value[t],capacity );
+				this.next[t] = Arrays.copyOf( this.next[t],capacity );
+				this.end[t] = Arrays.copyOf( this.end[t],capacity );
+			}
+			int[] entries = this.order[t];
+			int d = -1;
+			double mean = 0;
+			if ( hi - lo > LEAF_SIZE ) {
+
+				d = this.chooseDimension( entries,lo,hi,random );
+				for ( int i = lo ; i < hi ; i++ ) mean += descriptors[ entries[i]*dim + d ];
+				mean /= hi - lo;
+			}
+			int middle = lo;
+			if ( d >= 0 ) {
+
+				for ( int i = lo ; i < hi ; i++ )
+					if ( descriptors[ entries[i]*dim + d ] < mean ) {
+
+						int e = entries[i];
+						entries[i] = entries[middle];
+						entries[middle++] = e;
+					}
+			}
+			if ( middle == lo || middle == hi ) {
+
+				// nothing to split, or all the descriptors are alike along d
+				this.split[t][node] = -1;
+				this.next[t][node] = lo;
+				this.end[t][node] = hi;
+				return node;
+			}
+			this.split[t][node] = d;
+			this.value[t][node] = mean;
+			this.divide( t,lo,middle,random );
+			// the arrays may be grown by the subtrees
+			int right = this.divide( t,middle,hi,random );
+			this.next[t][node] = right;
+			return node;
+		}
+
+		/**	Picks at random one of the dimensions of highest variance of the entries. */
+		private int chooseDimension( int[] entries, int lo, int hi, Random random ) {
+
+			int n = Math.min( SAMPLE_SIZE,hi-lo );
+			double[] sum = new double[dim];
+			double[] sum2 = new double[dim];
+			for ( int i = 0 ; i < n ; i++ ) {
+
+				int base = entries[ lo + ( int ) ( ( long ) i * ( hi-lo ) / n ) ] * dim;
+				for ( int d = 0 ; d < dim ; d++ ) {
+
+					double v = descriptors[ base+d ];
+					sum[d] += v;
+					sum2[d] += v*v;
+				}
+			}
+			int candidates = Math.min( SPLIT_CANDIDATES,dim );
+			int[] best = new int[candidates];
+			double[] variance = new double[candidates];
+			Arrays.fill( variance,-1 );
+			for ( int d = 0 ; d < dim ; d++ ) {
+
+				double v = sum2[d] - sum[d]*sum[d] / n;
+				// insertion among the highest variances
+				int k = candidates;
+				while ( k > 0 && v > variance[k-1] ) k--;
+				if ( k == candidates ) continue;
+				System.arraycopy( variance,k,variance,k+1,candidates-k-1 );
+				System.arraycopy( best,k,best,k+1,candidates-k-1 );
+				variance[k] = v;
+				best[k] = d;
+			}
+			return best[ random.nextInt( candidates ) ];
+		}
+	}
+
+	/**	State of the queries of a thread: the branches left aside and the nearest
+	 *	descriptors found so far. */
+	private class Search {
+
+		final Forest[] forests;
+		/**	Heap of branches by their distance to the query. */
+		double[] bounds = new double[64];
+		int[] branches = new int[64], trees = new int[64];
+		int heapSize;
+		double[] query;
+		int nearest, second;
+		double nearestDistance, secondDistance;
+		int checked;
+
+		Search( Forest[] forests ) {
+			this.forests = forests;
+			this.query = new double[dim];
+		}
+
+		int match( Keypoint point, double ratio, int checks ) {
+
+			Double[] desc = ( Double[] ) point.data.getValues();
+			if ( desc.length - OFFSET != dim ) return -1;
+			Forest forest = null;
+			for ( Forest f : this.forests )
+				if ( f.laplacian == desc[LAPLACIAN] ) forest = f;
+			if ( forest == null ) return -1;
+			for ( int d = 0 ; d < dim ; d++ ) this.query[d] = desc[OFFSET+d];
+
+			this.nearest = this.second = -1;
+			this.nearestDistance = this.secondDistance = Double.MAX_VALUE;
+			this.checked = 0;
+			this.heapSize = 0;
+			// an exact search explores a single tree, until no branch can be nearer
+			int nbTrees = checks > 0 ? forest.order.length : 1;
+			for ( int t = 0 ; t < nbTrees ; t++ ) this.descend( forest,t,0 );
+			while ( this.heapSize > 0 && ( checks <= 0 || this.checked < checks ) ) {
+
+				if ( this.bounds[0] >= this.secondDistance ) break;
+				int t = this.trees[0], node = this.branches[0];
+				this.pop();
+				this.descend( forest,t,node );
+			}
+			if ( this.nearest >= 0 && this.nearestDistance < ratio * this.secondDistance )
+				return this.nearest;
+			return -1;
+		}
+
+		/**	Goes down to the leaf of the query, keeping the other branches aside. */
+		private void descend( Forest forest, int t, int node ) {
+
+			int[] split = forest.split[t];
+			while ( split[node] >= 0 ) {
+
+				double diff = this.query[ split[node] ] - forest.value[t][node];
+				int near = node+1, far = forest.next[t][node];
+				if ( diff >= 0 ) { near = far; far = node+1; }
+				if ( diff*diff < this.secondDistance ) this.push( diff*diff,far,t );
+				node = near;
+			}
+			int[] order = forest.order[t];
+			for ( int i = forest.next[t][node] ; i < forest.end[t][node] ; i++ )
+				this.check( order[i] );
+		}
+
+		/**	Compares an entry to the query. */
+		private void check( int entry ) {
+
+			// the trees hold the same entries
+			if ( entry == this.nearest || entry == this.second ) return;
+			this.checked++;
+			int base = entry*dim;
+			double d = 0;
+			for ( int k = 0 ; k < dim && d < this.secondDistance ; k++ ) {
+
+				double diff = descriptors[ base+k ] - this.query[k];
+				d += diff*diff;
+			}
+			if ( d < this.nearestDistance ) {
+
+				this.second = this.nearest;
+				this.secondDistance = this.nearestDistance;
+				this.nearest = entry;
+				this.nearestDistance = d;
+			} else if ( d < this.secondDistance ) {
+
+				this.second = entry;
+				this.secondDistance = d;
+			}
+		}
+
+		private void push( double bound, int node, int t ) {
+
+			if ( this.heapSize == this.bounds.length ) {
+
+				this.bounds = Arrays.copyOf( this.bounds,2*this.heapSize );
+				this.branches = Arrays.copyOf( this.branches,2*this.heapSize );
+				this.trees = Arrays.copyOf( this.trees,2*this.heapSize );
+			}
+			int i = this.heapSize++;
+			while ( i > 0 && this.bounds[ (i-1)/2 ] > bound ) {
+
+				int parent = (i-1)/2;
+				this.bounds[i] = this.bounds[parent];
+				this.branches[i] = this.branches[parent];
+				this.trees[i] = this.trees[parent];
+				i = parent;
+			}
+			this.bounds[i] = bound;
+			this.branches[i] = node;
+			this.trees[i] = t;
+		}
+
+		private void pop() {
+
+			int last = --this.heapSize;
+			double bound = this.bounds[last];
+			int i = 0;
+			while ( 2*i+1 < last ) {
+
+				int child = 2*i+1;
+				if ( child+1 < last && this.bounds[child+1] < this.bounds[child] ) child++;
+				if ( this.bounds[child] >= bound ) break;
+				this.bounds[i] = this.bounds[child];
+				this.branches[i] = this.branches[child];
+				this.trees[i] = this.trees[child];
+				i = child;
+			}
+			this.bounds[i] = bound;
+			this.branches[i] = this.branches[last];
+			this.trees[i] = this.trees[last];
+		}
+	}
+
+}
@@ -4,6 +4,7 @@ import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.util.Offset;
 import fr.unistra.pelican.util.Pixel;
 import fr.unistra.pelican.util.data.distances.MatrixEuclideanDistance;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 
 
@@ -84,7 +85,10 @@ public class MatrixData extends Data {
 			 "," + this.getTDim() + 
 			 "," + this.getBDim()  
 			 ;
-		for ( Pixel p : this.matrix ) s += "," + this.getValue( p );
+		SpanCursor cursor = this.matrix.spans();
+		while ( cursor.next() ) 
+			for ( int p = cursor.getStart() ; p < cursor.getEnd() ; p++ ) 
+				s += "," + this.matrix.getPixelDouble( p );
 		s += ",</DATA>";
 		return s;
 	}
@@ -116,8 +120,8 @@ public class MatrixData extends Data {
 			IntegerImage matrix = new IntegerImage( xdim,ydim,zdim,tdim,bdim );
 			data.setValues( matrix );
 
-			for ( Pixel p : matrix ) 
-				data.setValue( p, Integer.parseInt( words[c.offset++] ) );
+			for ( int p = 0 ; p < matrix.size() ; p++ ) 
+				matrix.setPixelDouble( p, Integer.parseInt( words[c.offset++] ) );
 
 			c.offset++; // pass </DATA>
 		}
@@ -1,9 +1,9 @@
 package fr.unistra.pelican.util.data.distances;
 
 import fr.unistra.pelican.IntegerImage;
-import fr.unistra.pelican.util.Pixel;
 import fr.unistra.pelican.util.data.Data;
 import fr.unistra.pelican.util.data.MatrixData;
+import fr.unistra.pelican.util.iterator.SpanCursor;
 
 /**
  *	Computes an euclidean distance between matrixes. In that particular case, 
@@ -28,12 +28,13 @@ public class MatrixEuclideanDistance extends EuclideanDistance {
 //			// we might have at sometimes an ArrayIndexOutOfBoundsException thrown.
 //			// in that case, the matrixes are considered very distant from each other ...
 
-			int c = 1;
-			for ( Pixel p : matrix1 ) { 
+			SpanCursor cursor = matrix1.spans();
+			while ( cursor.next() ) 
+			for ( int p = cursor.getStart() ; p < cursor.getEnd() ; p++ ) { 
 
-//				System.out.println( (c++) + " / " + matrix1.size() );
-				p1 = matrix1.getPixelXYZTBInt( p.x,p.y,p.z,p.t,p.b );
-				p2 = matrix2.getPixelXYZTBInt( p.x,p.y,p.z,p.t,p.b );
+				p1 = matrix1.getPixelInt( p );
+				p2 = matrix2.getPixelXYZTBInt( cursor.getX( p ),cursor.getY(),cursor.getZ(),
+											   cursor.getT(),cursor.getB( p ) );
 
 				distance += Math.pow( p1-p2, 2 );
 			}
@@ -0,0 +1,239 @@
+package fr.unistra.pelican.util.iterator;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.mask.CompiledMask;
+
+/**
+ * Cursor over the present pixels of an image by scanlines. Each call to next
+ * moves to a span: a run of linear indices of present pixels, all in the same
+ * line of the image, so that they share their y, z and t coordinates. Nothing
+ * is allocated while iterating, and the mask is only looked up at the borders
+ * of the spans, so an image without mask gives one span per line.
+ *
+ * <pre>
+ * SpanCursor cursor = image.spans();
+ * while (cursor.next())
+ * 	for (int p = cursor.getStart(); p &lt; cursor.getEnd(); p += cursor.getStep())
+ * 		sum += image.getPixelDouble(p);
+ * </pre>
+ *
+ * The cursor may also be restricted to one band, the indices of a span then
+ * being spaced by the number of bands.
+ *
+ * @see Image#spans()
+ * @author PELICAN team.
+ */
+public final class SpanCursor {
+
+	/** Image iterated. */
+	private final Image image;
+
+	/** Dimensions of the image. */
+	private final int xdim, ydim, zdim, bdim;
+
+	/** Number of indices in a line of the image. */
+	private final int lineLength;
+
+	/** Number of lines of the image. */
+	private final int lines;
+
+	/** Band iterated, -1 for all of them. */
+	private final int band;
+
+	/** Distance between two indices of a span. */
+	private final int step;
+
+	/** True if every pixel is present. */
+	private final boolean unmasked;
+
+	/** Compiled mask answering linear queries, null if there is none. */
+	private final CompiledMask compiled;
+
+	/** Current line and its coordinates. */
+	private int line = -1, y, z, t;
+
+	/** Bounds of the current line. */
+	private int lineStart, lineEnd;
+
+	/** Index where the search of the next span starts. */
+	private int position;
+
+	/** Bounds of the current span. */
+	private int start, end;
+
+	/**
+	 * Creates a cursor over the present pixels of all the bands of an image.
+	 *
+	 * @param image
+	 *            image iterated
+	 */
+	public SpanCursor(Image image) {
+		this(image, -1);
+	}
+
+	/**
+	 * Creates a cursor over the present pixels of an image.
+	 *
+	 * @param image
+	 *            image iterated
+	 * @param band
+	 *            band iterated, -1 for all of them
+	 */
+	public SpanCursor(Image image, int band) {
+		this.image = image;
+		this.xdim = image.getXDim();
+		this.ydim = image.getYDim();
+		this.zdim = image.getZDim();
+		this.bdim = image.getBDim();
+		this.lineLength = xdim * bdim;
+		this.lines = ydim * zdim * image.getTDim();
+		this.band = band;
+		this.step = band < 0 ? 1 : bdim;
+		this.unmasked = image.isUnmasked();
+		CompiledMask mask = unmasked ? null : image.getCompiledMask();
+		this.compiled = mask != null && mask.isCompiled() && mask.isLinear() ? mask
+				: null;
+		this.position = this.lineEnd = 0;
+	}
+
+	/**
+	 * Moves to the next span.
+	 *
+	 * @return false if there is no span left
+	 */
+	public boolean next() {
+		while (true) {
+			if (position >= lineEnd && !moveToLine(line + 1))
+				return false;
+			if (unmasked) {
+				start = position;
+				end = lineEnd;
+				position = lineEnd;
+				return true;
+			}
+			int p;
+			if (compiled != null && step == 1) {
+				p = compiled.nextPresent(position);
+				if (p < 0) {
+					line = lines;
+					position = lineEnd;
+					return false;
+				}
+				if (p >= lineEnd) {
+					moveToLine(p / lineLength);
+					position = p;
+				}
+				start = p;
+				end = Math.min(lineEnd, compiled.nextAbsent(p));
+				position = end;
+				return true;
+			}
+			for (p = position; p < lineEnd && !isPresent(p); p += step)
+				;
+			if (p < lineEnd) {
+				start = p;
+				for (p += step; p < lineEnd && isPresent(p); p += step)
+					;
+				end = p;
+				position = p;
+				return true;
+			}
+			position = lineEnd;
+		}
+	}
+
+	private boolean moveToLine(int l) {
+		if (l >= lines) {
+			line = lines;
+			return false;
+		}
+		line = l;
+		y = l % ydim;
+		z = l / ydim % zdim;
+		t = l / ydim / zdim;
+		lineStart = l * lineLength;
+		lineEnd = lineStart + lineLength;
+		position = band < 0 ? lineStart : lineStart + band;
+		return true;
+	}
+
+	private boolean isPresent(int p) {
+		if (compiled != null)
+			return compiled.isPresent(p);
+		int offset = p - lineStart;
+		return image.isPresent(offset / bdim, y, z, t, offset % bdim);
+	}
+
+	/**
+	 * @return the linear index of the first pixel of the span
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * @return the linear index after the last pixel of the span
+	 */
+	public int getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return the distance between two indices of a span: 1, or the number of
+	 *         bands when the cursor is restricted to a band
+	 */
+	public int getStep() {
+		return step;
+	}
+
+	/**
+	 * @return the linear index of the first pixel of the current line
+	 */
+	public int getLineStart() {
+		return lineStart;
+	}
+
+	/**
+	 * Gets the horizontal position of a pixel of the current line.
+	 *
+	 * @param p
+	 *            linear index of the pixel
+	 * @return its horizontal position
+	 */
+	public int getX(int p) {
+		return (p - lineStart) / bdim;
+	}
+
+	/**
+	 * Gets the channel of a pixel of the current line.
+	 *
+	 * @param p
+	 *            linear index of the pixel
+	 * @return its channel number
+	 */
+	public int getB(int p) {
+		return (p - lineStart) % bdim;
+	}
+
+	/**
+	 * @return the vertical position of the pixels of the span
+	 */
+	public int getY() {
+		return y;
+	}
+
+	/**
+	 * @return the depth position of the pixels of the span
+	 */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * @return the time position of the pixels of the span
+	 */
+	public int getT() {
+		return t;
+	}
+
+}
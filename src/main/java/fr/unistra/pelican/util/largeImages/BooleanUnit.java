@@ -1,9 +1,13 @@
 package fr.unistra.pelican.util.largeImages;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.ImageStatistics;
 
 /**
  * Units used in LargeBooleanImage
@@ -16,9 +20,9 @@ public class BooleanUnit extends Unit implements Serializable {
 	private static final long serialVersionUID = 7818151845300596076L;
 
 	/**
-	 * Array of pixels
+	 * Off-heap buffer of pixels
 	 */
-	private boolean[] pixels;
+	private transient ByteBuffer pixels;
 
 	/**
 	 * Constructs a new byte unit with the given size.
@@ -28,7 +32,7 @@ public class BooleanUnit extends Unit implements Serializable {
 	 */
 	public BooleanUnit(int unitSize) {
 		super();
-		this.pixels = new boolean[unitSize];
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.BOOLEAN_DATALENGTH);
 	}
 
 	/**
@@ -42,8 +46,10 @@ public class BooleanUnit extends Unit implements Serializable {
 	 */
 	public BooleanUnit(int unitSize, boolean value) {
 		super();
-		this.pixels = new boolean[unitSize];
-		Arrays.fill(this.pixels, value);
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.BOOLEAN_DATALENGTH);
+		for (int i = 0; i < unitSize; i++) {
+			this.pixels.put(i, value ? (byte) 1 : (byte) 0);
+		}
 	}
 
 	/**
@@ -54,7 +60,7 @@ public class BooleanUnit extends Unit implements Serializable {
 	 * @return
 	 */
 	public boolean getPixel(int loc) {
-		return this.pixels[loc];
+		return this.pixels.get(loc) != 0;
 	}
 
 	/**
@@ -67,7 +73,7 @@ public class BooleanUnit extends Unit implements Serializable {
 	 */
 	public void setPixel(int loc, boolean value) {
 		this.setModified();
-		this.pixels[loc] = value;
+		this.pixels.put(loc, value ? (byte) 1 : (byte) 0);
 	}
 
 	/**
@@ -77,20 +83,33 @@ public class BooleanUnit extends Unit implements Serializable {
 	 *            Array with the new values for the pixels
 	 */
 	public void setPixels(boolean[] newPixels) {
-		if (newPixels.length != this.pixels.length) {
+		if (newPixels.length != this.pixels.capacity()) {
 			throw new PelicanException(
 					"BooleanArray does not fit with the unit");
 		} else {
-			this.pixels = newPixels;
+			for (int i = 0; i < newPixels.length; i++) {
+				this.pixels.put(i, newPixels[i] ? (byte) 1 : (byte) 0);
+			}
 			this.setModified();
 		}
 	}
 
+	@Override
+	public void writePixels(ByteBuffer buffer) {
+		buffer.put(this.pixels.duplicate());
+	}
+
+	@Override
+	public void readPixels(ByteBuffer buffer) {
+		this.pixels.duplicate().put(buffer);
+	}
+
 	@Override
 	public BooleanUnit clone() {
 		//LargeImageMemoryManager.getInstance().checkMemory();
-		BooleanUnit result = new BooleanUnit(this.pixels.length);
-		result.setPixels(this.pixels.clone());
+		BooleanUnit result = new BooleanUnit(this.pixels.capacity());
+		result.pixels.duplicate().put(this.pixels.duplicate());
+		result.setModified();
 		return result;
 	}
 
@@ -100,8 +119,8 @@ public class BooleanUnit extends Unit implements Serializable {
 	 * @return True if the unit is empty, false otherwise
 	 */
 	public boolean isEmpty() {
-		for (int i = 0; i < this.pixels.length; i++) {
-			if (this.pixels[i]) {
+		for (int i = 0; i < this.pixels.capacity(); i++) {
+			if (this.pixels.get(i) != 0) {
 				return false;
 			}
 		}
@@ -115,13 +134,13 @@ public class BooleanUnit extends Unit implements Serializable {
 	 */
 	public boolean maximum(){
 		if (this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (pixels[p])
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) != 0)
 					return true;
 			return false;
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (pixels[p])
+				if (pixels.get(p) != 0)
 					return true;
 			return false;
 		}
@@ -134,13 +153,13 @@ public class BooleanUnit extends Unit implements Serializable {
 	 */
 	public boolean minimum(){
 		if (this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (!pixels[p])
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) == 0)
 					return false;
 			return true;
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (!pixels[p])
+				if (pixels.get(p) == 0)
 					return false;
 			return true;
 		}
@@ -156,13 +175,13 @@ public class BooleanUnit extends Unit implements Serializable {
 	public boolean maximum(int band){
 		int debut = this.checkForBandWork(band);
 		if (this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (pixels[p])
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) != 0)
 					return true;
 			return false;
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (pixels[p])
+				if (pixels.get(p) != 0)
 					return true;
 			return false;
 		}
@@ -178,21 +197,34 @@ public class BooleanUnit extends Unit implements Serializable {
 	public boolean minimum(int band){		
 		int debut = this.checkForBandWork(band);
 		if (this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (!pixels[p])
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) == 0)
 					return false;
 			return true;
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (!pixels[p])
+				if (pixels.get(p) == 0)
 					return false;
 			return true;
 		}
 	}
 	
+	@Override
+	protected ImageStatistics computeStatistics() {
+		int bdim = this.parentImage.getBDim();
+		ImageStatistics res = new ImageStatistics(bdim, false);
+		int size = this.size();
+		for (int p = 0, b = this.bOffset; p < size; p++) {
+			res.add(b, this.pixels.get(p) != 0 ? 1 : 0);
+			if (++b == bdim)
+				b = 0;
+		}
+		return res;
+	}
+
 	@Override
 	public int defaultSize(){
-		return this.pixels.length;
+		return this.pixels.capacity();
 	}
 	
 	@Override
@@ -225,4 +257,19 @@ public class BooleanUnit extends Unit implements Serializable {
 		}
 		return res;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		byte[] array = new byte[this.pixels.capacity()];
+		this.pixels.duplicate().get(array);
+		out.writeObject(array);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] array = (byte[]) in.readObject();
+		this.pixels = Unit.allocate(array.length, LargeImageUtil.BOOLEAN_DATALENGTH);
+		this.pixels.duplicate().put(array);
+	}
 }
@@ -1,9 +1,13 @@
 package fr.unistra.pelican.util.largeImages;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
 
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.ImageStatistics;
 
 /**
  * Units used in LargeByteImage.
@@ -16,9 +20,9 @@ public class ByteUnit extends Unit implements Serializable {
 	private static final long serialVersionUID = -5362794723641341936L;
 
 	/**
-	 * Array of pixels
+	 * Off-heap buffer of pixels
 	 */
-	private byte[] pixels;
+	private transient ByteBuffer pixels;
 
 	/**
 	 * Constructs a new byte unit with the given size.
@@ -28,7 +32,7 @@ public class ByteUnit extends Unit implements Serializable {
 	 */
 	public ByteUnit(int unitSize) {
 		super();
-		this.pixels = new byte[unitSize];
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.BYTE_DATALENGTH);
 	}
 
 	/**
@@ -42,8 +46,10 @@ public class ByteUnit extends Unit implements Serializable {
 	 */
 	public ByteUnit(int unitSize, byte value) {
 		super();
-		this.pixels = new byte[unitSize];
-		Arrays.fill(this.pixels, value);
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.BYTE_DATALENGTH);
+		for (int i = 0; i < unitSize; i++) {
+			this.pixels.put(i, value);
+		}
 	}
 
 	/**
@@ -54,7 +60,7 @@ public class ByteUnit extends Unit implements Serializable {
 	 * @return
 	 */
 	public byte getPixel(int loc) {
-		return this.pixels[loc];
+		return this.pixels.get(loc);
 	}
 
 	/**
@@ -67,7 +73,7 @@ public class ByteUnit extends Unit implements Serializable {
 	 */
 	public void setPixel(int loc, byte value) {
 		this.setModified();
-		this.pixels[loc] = value;
+		this.pixels.put(loc, value);
 	}
 
 	/**
@@ -77,19 +83,30 @@ public class ByteUnit extends Unit implements Serializable {
 	 *            Array with the new values for the pixels
 	 */
 	public void setPixels(byte[] newPixels) {
-		if (newPixels.length != this.pixels.length) {
+		if (newPixels.length != this.pixels.capacity()) {
 			throw new PelicanException("ByteArray does not fit with the unit");
 		} else {
-			this.pixels = newPixels;
+			this.pixels.duplicate().put(newPixels);
 			this.setModified();
 		}
 	}
 
+	@Override
+	public void writePixels(ByteBuffer buffer) {
+		buffer.put(this.pixels.duplicate());
+	}
+
+	@Override
+	public void readPixels(ByteBuffer buffer) {
+		this.pixels.duplicate().put(buffer);
+	}
+
 	@Override
 	public ByteUnit clone() {
 		//LargeImageMemoryManager.getInstance().checkMemory();
-		ByteUnit result = new ByteUnit(this.pixels.length);
-		result.setPixels(this.pixels.clone());
+		ByteUnit result = new ByteUnit(this.pixels.capacity());
+		result.pixels.duplicate().put(this.pixels.duplicate());
+		result.setModified();
 		return result;
 	}
 
@@ -99,8 +116,8 @@ public class ByteUnit extends Unit implements Serializable {
 	 * @return True if the unit is empty, false otherwise
 	 */
 	public boolean isEmpty() {
-		for (int i = 0; i < this.pixels.length; i++) {
-			if (this.pixels[i] > 0) {
+		for (int i = 0; i < this.pixels.capacity(); i++) {
+			if (this.pixels.get(i) > 0) {
 				return false;
 			}
 		}
@@ -116,13 +133,13 @@ public class ByteUnit extends Unit implements Serializable {
 	public byte maximum(){
 		byte val = Byte.MIN_VALUE;
 		if (this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (this.pixels[p] > val)
-					val = this.pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (this.pixels.get(p) > val)
+					val = this.pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (this.pixels[p] > val)
-					val = this.pixels[p];
+				if (this.pixels.get(p) > val)
+					val = this.pixels.get(p);
 		}
 		return val;
 	}
@@ -136,13 +153,13 @@ public class ByteUnit extends Unit implements Serializable {
 	public byte minimum(){
 		byte val = Byte.MAX_VALUE;
 		if (this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (this.pixels[p] < val)
-					val = this.pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (this.pixels.get(p) < val)
+					val = this.pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (this.pixels[p] < val)
-					val = this.pixels[p];
+				if (this.pixels.get(p) < val)
+					val = this.pixels.get(p);
 		}
 		return val;
 	}
@@ -158,15 +175,15 @@ public class ByteUnit extends Unit implements Serializable {
 		int debut = this.checkForBandWork(band);
 		byte val = Byte.MIN_VALUE;
 		if (this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim()){
-				if (this.pixels[p] > val){
-					val = this.pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim()){
+				if (this.pixels.get(p) > val){
+					val = this.pixels.get(p);
 				}
 			}
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim()){
-				if (this.pixels[p] > val){
-					val = this.pixels[p];
+				if (this.pixels.get(p) > val){
+					val = this.pixels.get(p);
 				}
 			}
 		}
@@ -184,19 +201,32 @@ public class ByteUnit extends Unit implements Serializable {
 		int debut = this.checkForBandWork(band);
 		byte val = Byte.MAX_VALUE;
 		if (this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (this.pixels[p] < val)
-					val = this.pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (this.pixels.get(p) < val)
+					val = this.pixels.get(p);
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (this.pixels[p] < val)
-					val = this.pixels[p];
+				if (this.pixels.get(p) < val)
+					val = this.pixels.get(p);
 		}
 		return val;
 	}
 	
+	@Override
+	protected ImageStatistics computeStatistics() {
+		int bdim = this.parentImage.getBDim();
+		ImageStatistics res = new ImageStatistics(bdim, true);
+		int size = this.size();
+		for (int p = 0, b = this.bOffset; p < size; p++) {
+			res.add(b, this.pixels.get(p) - Byte.MIN_VALUE);
+			if (++b == bdim)
+				b = 0;
+		}
+		return res;
+	}
+
 	public int defaultSize(){
-		return this.pixels.length;
+		return this.pixels.capacity();
 	}
 	
 	public boolean equals(Unit u){
@@ -248,4 +278,19 @@ public class ByteUnit extends Unit implements Serializable {
 		}		
 		return res;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		byte[] array = new byte[this.pixels.capacity()];
+		this.pixels.duplicate().get(array);
+		out.writeObject(array);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		byte[] array = (byte[]) in.readObject();
+		this.pixels = Unit.allocate(array.length, LargeImageUtil.BYTE_DATALENGTH);
+		this.pixels.duplicate().put(array);
+	}
 }
@@ -1,9 +1,14 @@
 package fr.unistra.pelican.util.largeImages;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
 
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.ImageStatistics;
 import fr.unistra.pelican.util.Tools;
 
 /**
@@ -17,9 +22,9 @@ public class DoubleUnit extends Unit implements Serializable {
 	private static final long serialVersionUID = 796697037611825746L;
 
 	/**
-	 * Array of pixels
+	 * Off-heap buffer of pixels
 	 */
-	private double[] pixels;
+	private transient DoubleBuffer pixels;
 
 	/**
 	 * Constructs a new double unit with the given size.
@@ -29,7 +34,7 @@ public class DoubleUnit extends Unit implements Serializable {
 	 */
 	public DoubleUnit(int unitSize) {
 		super();
-		this.pixels = new double[unitSize];
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.DOUBLE_DATALENGTH).asDoubleBuffer();
 	}
 
 	/**
@@ -43,8 +48,10 @@ public class DoubleUnit extends Unit implements Serializable {
 	 */
 	public DoubleUnit(int unitSize, double value) {
 		super();
-		this.pixels = new double[unitSize];
-		Arrays.fill(this.pixels, value);
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.DOUBLE_DATALENGTH).asDoubleBuffer();
+		for (int i = 0; i < unitSize; i++) {
+			this.pixels.put(i, value);
+		}
 	}
 
 	/**
@@ -55,7 +62,7 @@ public class DoubleUnit extends Unit implements Serializable {
 	 * @return
 	 */
 	public double getPixel(int loc) {
-		return this.pixels[loc];
+		return this.pixels.get(loc);
 	}
 
 	/**
@@ -68,7 +75,7 @@ public class DoubleUnit extends Unit implements Serializable {
 	 */
 	public void setPixel(int loc, double value) {
 		this.setModified();
-		this.pixels[loc] = value;
+		this.pixels.put(loc, value);
 	}
 
 	/**
@@ -78,19 +85,30 @@ public class DoubleUnit extends Unit implements Serializable {
 	 *            Array with the new values for the pixels
 	 */
 	public void setPixels(double[] newPixels) {
-		if (newPixels.length != this.pixels.length) {
+		if (newPixels.length != this.pixels.capacity()) {
 			throw new PelicanException("DoubleArray does not fit with the unit");
 		} else {
-			this.pixels = newPixels;
+			this.pixels.duplicate().put(newPixels);
 			this.setModified();
 		}
 	}
 
+	@Override
+	public void writePixels(ByteBuffer buffer) {
+		buffer.asDoubleBuffer().put(this.pixels.duplicate());
+	}
+
+	@Override
+	public void readPixels(ByteBuffer buffer) {
+		this.pixels.duplicate().put(buffer.asDoubleBuffer());
+	}
+
 	@Override
 	public DoubleUnit clone() {
 		//LargeImageMemoryManager.getInstance().checkMemory();
-		DoubleUnit result = new DoubleUnit(this.pixels.length);
-		result.setPixels(this.pixels.clone());
+		DoubleUnit result = new DoubleUnit(this.pixels.capacity());
+		result.pixels.duplicate().put(this.pixels.duplicate());
+		result.setModified();
 		return result;
 	}
 	
@@ -101,13 +119,13 @@ public class DoubleUnit extends Unit implements Serializable {
 	public double maximum(){
 		double val = Double.NEGATIVE_INFINITY;
 		if(this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (pixels[p] > val)
-					val = pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (pixels[p] > val)
-					val = pixels[p];
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
@@ -119,13 +137,13 @@ public class DoubleUnit extends Unit implements Serializable {
 	public double minimum(){
 		double val = Double.MAX_VALUE;
 		if(this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (pixels[p] < val)
-					val = pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (pixels[p] < val)
-				val = pixels[p];				
+				if (pixels.get(p) < val)
+				val = pixels.get(p);				
 		}
 		return val;
 	}
@@ -138,13 +156,13 @@ public class DoubleUnit extends Unit implements Serializable {
 		double val = Double.NEGATIVE_INFINITY;
 		int debut = this.checkForBandWork(band);
 		if(this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (pixels[p] > val)
-					val = pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (pixels[p] > val)
-					val = pixels[p];
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
@@ -158,13 +176,13 @@ public class DoubleUnit extends Unit implements Serializable {
 		double val = Double.MAX_VALUE;
 		int debut = this.checkForBandWork(band);
 		if(this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (pixels[p] < val)
-					val = pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (pixels[p] < val)
-				val = pixels[p];				
+				if (pixels.get(p) < val)
+				val = pixels.get(p);				
 		}
 		return val;
 	}
@@ -178,15 +196,15 @@ public class DoubleUnit extends Unit implements Serializable {
 		int debut = this.checkForBandWork(band);
 		if(this.end==null){
 			double v;
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim()){
-				v=pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim()){
+				v=pixels.get(p);
 				if (Tools.isValue(v) && v > val)
 					val = v;
 			}
 		}else{
 			double v;
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim()){
-				v=pixels[p];
+				v=pixels.get(p);
 				if (Tools.isValue(v) && v > val)
 					val = v;
 			}
@@ -203,15 +221,15 @@ public class DoubleUnit extends Unit implements Serializable {
 		int debut = this.checkForBandWork(band);
 		if(this.end==null){
 			double v;
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim()){
-				v=pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim()){
+				v=pixels.get(p);
 				if (Tools.isValue(v) && v < val )
 					val = v;
 			}
 		}else{
 			double v;
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim()){
-				v=pixels[p];
+				v=pixels.get(p);
 				if (Tools.isValue(v) && v < val)
 				val = v;
 			}
@@ -219,8 +237,21 @@ public class DoubleUnit extends Unit implements Serializable {
 		return val;
 	}
 	
+	@Override
+	protected ImageStatistics computeStatistics() {
+		int bdim = this.parentImage.getBDim();
+		ImageStatistics res = new ImageStatistics(bdim, false);
+		int size = this.size();
+		for (int p = 0, b = this.bOffset; p < size; p++) {
+			res.add(b, this.pixels.get(p));
+			if (++b == bdim)
+				b = 0;
+		}
+		return res;
+	}
+
 	public int defaultSize(){
-		return this.pixels.length;
+		return this.pixels.capacity();
 	}
 
 	/**
@@ -232,8 +263,9 @@ public class DoubleUnit extends Unit implements Serializable {
 	 */
 	public void fill(int band, double b) {
 		int debut = this.checkForBandWork(band);
-		for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim()){
-			pixels[p]=b;
+		this.setModified();
+		for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim()){
+			pixels.put(p, b);
 		}
 	}
 
@@ -271,4 +303,19 @@ public class DoubleUnit extends Unit implements Serializable {
 		}
 		return true;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		double[] array = new double[this.pixels.capacity()];
+		this.pixels.duplicate().get(array);
+		out.writeObject(array);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		double[] array = (double[]) in.readObject();
+		this.pixels = Unit.allocate(array.length, LargeImageUtil.DOUBLE_DATALENGTH).asDoubleBuffer();
+		this.pixels.duplicate().put(array);
+	}
 }
@@ -1,9 +1,14 @@
 package fr.unistra.pelican.util.largeImages;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.ImageStatistics;
 
 /**
  * Units used in LargeIntegerImage.
@@ -15,9 +20,9 @@ public class IntegerUnit extends Unit implements Serializable {
 	 */
 	private static final long serialVersionUID = 8774080508572023405L;
 	/**
-	 * Array of pixels
+	 * Off-heap buffer of pixels
 	 */
-	public int[] pixels;
+	private transient IntBuffer pixels;
 
 	/**
 	 * Constructs a new integer unit with the given size.
@@ -27,7 +32,7 @@ public class IntegerUnit extends Unit implements Serializable {
 	 */
 	public IntegerUnit(int unitSize) {
 		super();
-		this.pixels = new int[unitSize];
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.INTEGER_DATALENGTH).asIntBuffer();
 	}
 
 	/**
@@ -41,8 +46,10 @@ public class IntegerUnit extends Unit implements Serializable {
 	 */
 	public IntegerUnit(int unitSize, int value) {
 		super();
-		this.pixels = new int[unitSize];
-		Arrays.fill(this.pixels, value);
+		this.pixels = Unit.allocate(unitSize, LargeImageUtil.INTEGER_DATALENGTH).asIntBuffer();
+		for (int i = 0; i < unitSize; i++) {
+			this.pixels.put(i, value);
+		}
 	}
 
 	/**
@@ -53,7 +60,7 @@ public class IntegerUnit extends Unit implements Serializable {
 	 * @return
 	 */
 	public int getPixel(int loc) {
-		return this.pixels[loc];
+		return this.pixels.get(loc);
 	}
 
 	/**
@@ -66,7 +73,7 @@ public class IntegerUnit extends Unit implements Serializable {
 	 */
 	public void setPixel(int loc, int value) {
 		this.setModified();
-		this.pixels[loc] = value;
+		this.pixels.put(loc, value);
 	}
 
 	/**
@@ -76,20 +83,31 @@ public class IntegerUnit extends Unit implements Serializable {
 	 *            Array with the new values for the pixels
 	 */
 	public void setPixels(int[] newPixels) {
-		if (newPixels.length != this.pixels.length) {
+		if (newPixels.length != this.pixels.capacity()) {
 			throw new PelicanException(
 					"IntegerArray does not fit with the unit");
 		} else {
-			this.pixels = newPixels;
+			this.pixels.duplicate().put(newPixels);
 			this.setModified();
 		}
 	}
 
+	@Override
+	public void writePixels(ByteBuffer buffer) {
+		buffer.asIntBuffer().put(this.pixels.duplicate());
+	}
+
+	@Override
+	public void readPixels(ByteBuffer buffer) {
+		this.pixels.duplicate().put(buffer.asIntBuffer());
+	}
+
 	@Override
 	public IntegerUnit clone() {
 		//LargeImageMemoryManager.getInstance().checkMemory();
-		IntegerUnit result = new IntegerUnit(this.pixels.length);
-		result.setPixels(this.pixels.clone());
+		IntegerUnit result = new IntegerUnit(this.pixels.capacity());
+		result.pixels.duplicate().put(this.pixels.duplicate());
+		result.setModified();
 		return result;
 	}
 	
@@ -102,13 +120,13 @@ public class IntegerUnit extends Unit implements Serializable {
 	public int maximum(){
 		int val = Integer.MIN_VALUE;
 		if(this.end == null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (pixels[p] > val)
-					val = pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (pixels[p] > val)
-					val = pixels[p];
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
@@ -122,13 +140,13 @@ public class IntegerUnit extends Unit implements Serializable {
 	public int minimum(){
 		int val = Integer.MAX_VALUE;
 		if(this.end==null){
-			for (int p = 0; p < this.pixels.length; p++)
-				if (pixels[p] < val)
-					val = pixels[p];
+			for (int p = 0; p < this.pixels.capacity(); p++)
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}else{
 			for (int p = 0; p < this.end; p++)
-				if (pixels[p] < val)
-					val = pixels[p];
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
@@ -144,13 +162,13 @@ public class IntegerUnit extends Unit implements Serializable {
 		int val = Integer.MIN_VALUE;
 		int debut = this.checkForBandWork(band);
 		if(this.end == null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (pixels[p] > val)
-					val = pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (pixels[p] > val)
-					val = pixels[p];
+				if (pixels.get(p) > val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
@@ -166,20 +184,33 @@ public class IntegerUnit extends Unit implements Serializable {
 		int val = Integer.MAX_VALUE;
 		int debut= this.checkForBandWork(band);
 		if(this.end==null){
-			for (int p = debut; p < this.pixels.length; p+=this.parentImage.getBDim())
-				if (pixels[p] < val)
-					val = pixels[p];
+			for (int p = debut; p < this.pixels.capacity(); p+=this.parentImage.getBDim())
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}else{
 			for (int p = debut; p < this.end; p+=this.parentImage.getBDim())
-				if (pixels[p] < val)
-					val = pixels[p];
+				if (pixels.get(p) < val)
+					val = pixels.get(p);
 		}
 		return val;
 	}
 	
+	@Override
+	protected ImageStatistics computeStatistics() {
+		int bdim = this.parentImage.getBDim();
+		ImageStatistics res = new ImageStatistics(bdim, false);
+		int size = this.size();
+		for (int p = 0, b = this.bOffset; p < size; p++) {
+			res.add(b, this.pixels.get(p));
+			if (++b == bdim)
+				b = 0;
+		}
+		return res;
+	}
+
 	@Override
 	public int defaultSize(){
-		return this.pixels.length;
+		return this.pixels.capacity();
 	}
 	
 	@Override
@@ -197,4 +228,19 @@ public class IntegerUnit extends Unit implements Serializable {
 		}
 		return true;
 	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		int[] array = new int[this.pixels.capacity()];
+		this.pixels.duplicate().get(array);
+		out.writeObject(array);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		int[] array = (int[]) in.readObject();
+		this.pixels = Unit.allocate(array.length, LargeImageUtil.INTEGER_DATALENGTH).asIntBuffer();
+		this.pixels.duplicate().put(array);
+	}
 }
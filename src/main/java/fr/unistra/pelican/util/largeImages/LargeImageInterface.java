@@ -1,7 +1,8 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.io.File;
-import java.util.HashMap;
+import java.nio.channels.FileChannel;
+import java.util.Map;
 
 import fr.unistra.pelican.LargeBooleanImage;
 import fr.unistra.pelican.LargeByteImage;
@@ -81,7 +82,7 @@ public interface LargeImageInterface {
 
 	/**
 	 * Sets the Unit Length to the given value</br> Unit length indicates how
-	 * many bytes an unit takes once serialized
+	 * many bytes an unit takes in the working file
 	 * 
 	 * @param newUnitLength
 	 *            new unit length value
@@ -121,7 +122,7 @@ public interface LargeImageInterface {
 	/**
 	 * Gets the unit length.
 	 * 
-	 * @return the number of bytes needed to serialize an unit
+	 * @return the number of bytes needed to store an unit in the working file
 	 */
 	public long getUnitLength();
 
@@ -148,6 +149,38 @@ public interface LargeImageInterface {
 	 */
 	public void setFile(File fichier);
 
+	/**
+	 * Gets the channel opened on the working file of the LargeImage.
+	 * 
+	 * @return the channel through which units are mapped, null if the working
+	 *         file has not been created yet
+	 */
+	public FileChannel getChannel();
+
+	/**
+	 * Sets the channel opened on the working file of the LargeImage.
+	 * 
+	 * @param channel
+	 *            channel through which units must be mapped
+	 */
+	public void setChannel(FileChannel channel);
+
+	/**
+	 * Gets the file from which the units are read until they are modified.
+	 * 
+	 * @return the file opened by LargeImageUtil.openFile, null if the units
+	 *         are only stored in the working file
+	 */
+	public SourceFile getSourceFile();
+
+	/**
+	 * Sets the file from which the units are read until they are modified.
+	 * 
+	 * @param source
+	 *            file opened read only
+	 */
+	public void setSourceFile(SourceFile source);
+
 	/**
 	 * Calculates and sets the unitLength and unitDim and size of the
 	 * LargeImage.</br> It needs unitSize and the five xdim, ydim, zdim, tdim
@@ -214,8 +247,8 @@ public interface LargeImageInterface {
 	public Unit getAnUnit(int id);
 
 	/**
-	 * Fills the file with empty units so the loadAnUnit method will not
-	 * fail.</br> For usual LargeImage, use the LargeImageUtil implementation :
+	 * Fills the file with zeros so the loadAnUnit method returns new
+	 * units.</br> For usual LargeImage, use the LargeImageUtil implementation :
 	 * LargeImageUtil.fillFile(this);
 	 */
 	public void fillFile();
@@ -223,15 +256,15 @@ public interface LargeImageInterface {
 	/**
 	 * Closes the ressources used by the LargeImage.</br> For usual LargeImage,
 	 * use the LargeImageUtil implementation :LargeImageUtil.close(this);</br>
-	 * LargeImageUtil implementation deletes the file used by the
-	 * LargeImage.</br>
+	 * LargeImageUtil implementation closes the channel and deletes the file
+	 * used by the LargeImage.</br>
 	 */
 	public void close();
 
 	/**
 	 * Calculates and sets the unit length according to the type of units and
 	 * the unit size.</br> For usual LargeImage, use the LargeImageUtil
-	 * implementation :LargeImageUtil.computeUnitLength(this);
+	 * implementation :LargeImageUtil.computeUnitLength(this,pixelLength);
 	 */
 	public void computeUnitLength();
 
@@ -267,11 +300,12 @@ public interface LargeImageInterface {
 	public void putUnitIntoMap(int currentId, Unit currentUnit);
 
 	/**
-	 * Gets the HashMap of the large Image
+	 * Gets the map of the units of the large Image which are in memory. It
+	 * must allow lookups concurrent with modifications.
 	 * 
-	 * @return the HashMap of the largeImage
+	 * @return the map of the largeImage
 	 */
-	public HashMap<Integer, Unit> getMap();
+	public Map<Integer, Unit> getMap();
 
 	/**
 	 * Creates an new empty unit with the type of pixel and size according to
@@ -364,6 +398,13 @@ public interface LargeImageInterface {
 	 */
 	public int size();
 
+	/**
+	 * Gets the size of the Image, which may not fit in an int
+	 * 
+	 * @return the total number of pixels in the image
+	 */
+	public long sizeL();
+
 	/**
 	 * Saves all units contained in the HashMap
 	 */
@@ -1,73 +1,90 @@
 package fr.unistra.pelican.util.largeImages;
 
 import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryNotificationInfo;
 import java.lang.management.MemoryPoolMXBean;
 import java.lang.management.MemoryType;
 import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
-import javax.management.Notification;
-import javax.management.NotificationEmitter;
-
-import fr.unistra.pelican.PelicanException;
-
 /**
  * The LargeImageMemoryManager follows the design pattern Singleton. It is used
  * to manage the available memory of the JVM. It records all LargeImages that
- * are created and choose which unit has to be discarded when memory goes low.
+ * are created and choose which unit has to be discarded when the units in
+ * memory exceed the memory budget.</br>
  * 
+ * Units in memory are stored off-heap, so the memory budget is a number of
+ * bytes of direct memory. By default it is a part of the maximal direct
+ * memory of the JVM, given by -XX:MaxDirectMemorySize or else as large as the
+ * maximal heap. A budget can also be given to a single image, its units are
+ * then discarded as soon as they exceed it.</br>
+ * 
+ * Resident units are kept in a clock (second chance) ring. Touching an unit
+ * only raises its reference flag, so it costs O(1) and takes no lock. When the
+ * budget is exceeded the hand of the clock goes through the ring, gives a
+ * second chance to referenced units and discards the others. Units pinned by
+ * a running task are skipped.
  */
-public class LargeImageMemoryManager implements
-		javax.management.NotificationListener {
+public class LargeImageMemoryManager {
 
 	private static final LargeImageMemoryManager INSTANCE = new LargeImageMemoryManager();
 
 	/**
-	 * Eviction List used to choose the next unit to be discarded
+	 * Clock ring used to choose the next unit to be discarded
 	 */
-	private LinkedList<UnitRef> evictionList;
+	private ConcurrentLinkedQueue<UnitRef> clock;
 
 	/**
-	 * Memory Threshold use to launch a cleanup
+	 * Number of references in the clock ring
 	 */
-	private long memoryThreshold;
+	private AtomicInteger clockSize;
 
 	/**
-	 * Second memory Threshold used to stop new units from being created
+	 * Number of bytes used by the units recorded in the clock ring
 	 */
-	private long memoryThreshold2;
+	private AtomicLong residentBytes;
 
 	/**
-	 * HashMap which associates an integer to each LargeImage that are created
+	 * Number of bytes the units in memory should not exceed
 	 */
-	private HashMap<Integer, WeakReference<LargeImageInterface>> imageIndex;
+	private volatile long memoryBudget;
 
 	/**
-	 * MemoryPoolMXBean used to listen the memory
+	 * Number of bytes of direct memory the JVM may allocate
 	 */
-	private MemoryPoolMXBean tenured = null;
+	private long maxDirectMemory;
 
 	/**
-	 * Lock used to make sure that two thread don't work in the evictionList at
-	 * the same time
+	 * Counter used to give an index to each LargeImage that is created
 	 */
-	public ReentrantLock lock;
-	
+	private AtomicInteger imageCounter;
+
+	/**
+	 * HashMap which associates an integer to each LargeImage that are created
+	 */
+	private ConcurrentHashMap<Integer, ImageRef> imageIndex;
+
+	/**
+	 * MemoryPoolMXBean of the tenured generation, null if the JVM has none
+	 */
+	private MemoryPoolMXBean tenured = null;
 
 	/**
 	 * Constructor
 	 */
 	private LargeImageMemoryManager() {
 
-		evictionList = new LinkedList<UnitRef>();
-		lock = new ReentrantLock();
-
-		imageIndex = new HashMap<Integer, WeakReference<LargeImageInterface>>();
+		clock = new ConcurrentLinkedQueue<UnitRef>();
+		clockSize = new AtomicInteger();
+		residentBytes = new AtomicLong();
+		imageCounter = new AtomicInteger();
+		imageIndex = new ConcurrentHashMap<Integer, ImageRef>();
 
 		List<MemoryPoolMXBean> bean = ManagementFactory.getMemoryPoolMXBeans();
 
@@ -77,23 +94,46 @@ public class LargeImageMemoryManager implements
 				tenured = t;
 			}
 		}
-		if (tenured == null) {
-			throw new PelicanException("Damn where is the tenured generation ?");
-		}
-
-		this.memoryThreshold = (long) (((double) tenured.getUsage().getMax()) * (1.0-LargeImageUtil.DEFAULT_MEMORY_FREE_RATIO));
 
-		this.memoryThreshold2 = (long) (((double) tenured.getUsage().getMax()) * (1.0-(LargeImageUtil.DEFAULT_MEMORY_FREE_RATIO/2)));
+		this.maxDirectMemory = LargeImageMemoryManager.readMaxDirectMemory();
+		this.memoryBudget = (long) (this.maxDirectMemory * LargeImageUtil.DEFAULT_MEMORY_BUDGET_RATIO);
+	}
 
-		if(tenured.getUsage().getUsed()>this.memoryThreshold){
-			System.err.println("The MemoryManager was created in a low memory environment");
+	/**
+	 * Reads the limit of direct memory given to the JVM. Without
+	 * -XX:MaxDirectMemorySize the JVM allows as much direct memory as heap.
+	 *
+	 * @return the maximal number of bytes of direct memory
+	 */
+	private static long readMaxDirectMemory() {
+		String option = "-XX:MaxDirectMemorySize=";
+		for (String arg : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+			if (arg.startsWith(option)) {
+				String value = arg.substring(option.length()).toLowerCase();
+				if (value.isEmpty()) {
+					continue;
+				}
+				long factor = 1;
+				switch (value.charAt(value.length() - 1)) {
+				case 'g':
+					factor <<= 10;
+				case 'm':
+					factor <<= 10;
+				case 'k':
+					factor <<= 10;
+					value = value.substring(0, value.length() - 1);
+				}
+				try {
+					long max = Long.parseLong(value) * factor;
+					if (max > 0) {
+						return max;
+					}
+				} catch (NumberFormatException e) {
+					// falls back to the default limit
+				}
+			}
 		}
-		
-		tenured.setUsageThreshold(this.memoryThreshold);
-
-		MemoryMXBean mbean = ManagementFactory.getMemoryMXBean();
-		NotificationEmitter emitter = (NotificationEmitter) mbean;
-		emitter.addNotificationListener(this, null, null);
+		return Runtime.getRuntime().maxMemory();
 	}
 
 	/**
@@ -106,117 +146,229 @@ public class LargeImageMemoryManager implements
 	}
 
 	/**
-	 * Method called when the memory goes low.
+	 * Discards units until the units in memory fit into the memory budget. It
+	 * never waits: units of images which are locked by another thread are
+	 * skipped.
 	 */
-	public void handleNotification(Notification notification, Object arg1) {
-		String notifType = notification.getType();
-		if (notifType.equals(MemoryNotificationInfo.MEMORY_THRESHOLD_EXCEEDED)) {
-			this.discard();
-		}
+	public void checkMemory() {
+		this.discard(null, this.residentBytes, this.memoryBudget);
 	}
 
 	/**
-	 * Checks if memory used has reach the second threshold and wait up to 20s if the free memory is too low.
+	 * Moves the hand of the clock until the resident units take at most the
+	 * given number of bytes or every unit in the ring has been visited twice.
+	 *
+	 * @param only
+	 *            image whose units must be discarded, null for all images
+	 * @param resident
+	 *            counter of the bytes which must go under the target
+	 * @param target
+	 *            number of bytes the resident units must not exceed
 	 */
-	public void checkMemory() {
-		lock.lock();
-		try{
-			int lockCount = ((ReentrantLock)lock).getHoldCount();
-			if (tenured.getUsage().getUsed() > this.memoryThreshold2) {
-				for( int i = 0;i<20;i++){
-					if (tenured.getUsage().getUsed() < this.memoryThreshold){					
-						break;
-					}else{
-						for (int j = 0; j<lockCount;j++){
-							lock.unlock();
-						}
-						try {
-							Thread.sleep(1000);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}
-						for (int j = 0; j<lockCount;j++){
-							lock.lock();
-						}
-					}
-					if(i==20){
-						System.err.println("Someone waited 20s for the memory to lower");
-					}
+	private void discard(ImageRef only, AtomicLong resident, long target) {
+		int visits = 2 * this.clockSize.get();
+		UnitRef ref;
+		while (resident.get() > target && visits-- > 0
+				&& (ref = this.clock.poll()) != null) {
+			ImageRef imageRef = this.imageIndex.get(ref.imageId);
+			LargeImageInterface currentImage = imageRef == null ? null : imageRef.get();
+			if (currentImage == null) {
+				this.release(ref, imageRef);
+				if (imageRef != null) {
+					// the image has been collected
+					this.imageIndex.remove(ref.imageId, imageRef);
 				}
+				continue;
+			}
+			if ((only != null && imageRef != only) || !imageRef.lock.tryLock()) {
+				this.clock.offer(ref);
+				continue;
+			}
+			try {
+				Unit currentUnit = currentImage.getMap().get(ref.unitId);
+				if (currentUnit == null || currentUnit.ref != ref) {
+					// the unit has already been discarded or replaced
+					this.release(ref, imageRef);
+				} else if (currentUnit.isPinned()) {
+					this.clock.offer(ref);
+				} else if (ref.referenced) {
+					ref.referenced = false;
+					this.clock.offer(ref);
+				} else {
+					currentImage.discardUnit(ref.unitId);
+					this.release(ref, imageRef);
+				}
+			} finally {
+				imageRef.lock.unlock();
 			}
-		}finally{
-			lock.unlock();
 		}
 	}
 
 	/**
-	 * Discards the next 10 units in the evictionList to free memory until used
-	 * memory goes under the first threshold.
+	 * Forgets a reference which has left the clock ring. A reference taken
+	 * both by the hand of the clock and by removeImage is only forgotten once.
+	 *
+	 * @param ref
+	 *            the reference to forget
+	 * @param imageRef
+	 *            the image of the unit, null if it is not recorded anymore
 	 */
-	private void discard() {
-		lock.lock();
-		try{		
-			UnitRef ref = null;
-			while (tenured.getUsage().getUsed() > this.memoryThreshold) {				
-				for (int i = 0; i < LargeImageUtil.DEFAULT_DISCARD_NUMBER; i++) {
-					if ((ref = this.evictionList.pollFirst()) == null) {
-						System.err.println("Low memory and nothing to poll, we hope this is because the GC is on strike");
-						try {
-							Thread.sleep(1000);
-						} catch (InterruptedException e) {
-							e.printStackTrace();
-						}						
-						break;
-					} else {
-						LargeImageInterface currentImage = LargeImageMemoryManager.getInstance().imageIndex.get(ref.getImageId()).get();
-						if (currentImage != null) {
-							currentImage.discardUnit(ref.getUnitId());
-						}
-					}
-				}
-				System.gc();
+	private void release(UnitRef ref, ImageRef imageRef) {
+		if (!UnitRef.RELEASED.compareAndSet(ref, 0, 1)) {
+			return;
+		}
+		this.clockSize.decrementAndGet();
+		this.residentBytes.addAndGet(-ref.length);
+		if (imageRef != null) {
+			imageRef.residentBytes.addAndGet(-ref.length);
+		}
+	}
+
+	/**
+	 * Records an unit which has just been put in the unitMap of its image and
+	 * discards other units if the memory budget is exceeded. The recorded unit
+	 * is pinned meanwhile, so it is still in memory when its caller uses it,
+	 * even if it does not fit into the budget on its own.
+	 *
+	 * @param currentUnit
+	 *            unit put in memory, its parentImage and id must be set
+	 */
+	public void notifyUsage(Unit currentUnit) {
+		LargeImageInterface largeIm = currentUnit.parentImage;
+		UnitRef ref = new UnitRef(largeIm.getMemoryId(), currentUnit.id,
+				largeIm.getUnitLength());
+		ref.referenced = true;
+		ImageRef imageRef = this.imageIndex.get(ref.imageId);
+		if (imageRef == null) {
+			// the image has been closed, its units are not managed anymore
+			return;
+		}
+		imageRef.lock.lock();
+		try {
+			currentUnit.ref = ref;
+			currentUnit.pins++;
+		} finally {
+			imageRef.lock.unlock();
+		}
+		try {
+			this.clockSize.incrementAndGet();
+			this.residentBytes.addAndGet(ref.length);
+			imageRef.residentBytes.addAndGet(ref.length);
+			this.clock.offer(ref);
+			this.checkMemory();
+			if (imageRef.residentBytes.get() > imageRef.memoryBudget) {
+				this.discard(imageRef, imageRef.residentBytes, imageRef.memoryBudget);
+			}
+		} finally {
+			imageRef.lock.lock();
+			try {
+				currentUnit.pins--;
+			} finally {
+				imageRef.lock.unlock();
 			}
-		}finally{
-			lock.unlock();			
 		}
 	}
 
 	/**
-	 * Indicates to the MemoryManager that an unit has been modified
+	 * Marks an unit as recently used. This is done on each access to the unit
+	 * so it only writes the flag when it is not already raised.
 	 * 
-	 * @param memoryId
-	 *            Index of the Image
-	 * @param unitId
-	 *            Index of the Unit
+	 * @param currentUnit
+	 *            unit which is being accessed
 	 */
-	public void notifyUsage(int memoryId, int unitId) {
-		lock.lock();
-		try{
-			UnitRef currentUnit = new UnitRef(memoryId, unitId);
-			this.evictionList.remove(currentUnit);
-			this.evictionList.add(currentUnit);
-		}finally{
-			lock.unlock();
+	public static void touch(Unit currentUnit) {
+		UnitRef ref = currentUnit.ref;
+		if (ref != null && !ref.referenced) {
+			ref.referenced = true;
 		}
 	}
 
 	/**
-	 * Allows to modify the MemoryFreeRatio
+	 * Allows to modify the MemoryFreeRatio, the memory budget is then the part
+	 * of the maximal direct memory which is not kept free.
 	 * 
 	 * @param newMemoryFreeRatio
 	 */
 	public void setMemoryFreeRatio(double newMemoryFreeRatio) {
-		this.memoryThreshold = (long) (Runtime.getRuntime().maxMemory() * newMemoryFreeRatio);
-		this.tenured.setUsageThreshold(this.memoryThreshold);
+		this.setMemoryBudget((long) (this.maxDirectMemory * (1.0 - newMemoryFreeRatio)));
+	}
+
+	/**
+	 * Gets the number of bytes of direct memory the JVM may allocate, which
+	 * bounds the memory available to the units.
+	 *
+	 * @return the maximal number of bytes of direct memory
+	 */
+	public long getMaxDirectMemory() {
+		return this.maxDirectMemory;
 	}
 
 	/**
-	 * Gets the value of the first memory threshold.
+	 * Sets the number of bytes the units in memory should not exceed. Units are
+	 * discarded at once if the new budget is already exceeded.
 	 * 
-	 * @return the first memory threshold.
+	 * @param newMemoryBudget
+	 *            the new memory budget in bytes
 	 */
-	public long getMemoryThreshold() {
-		return this.memoryThreshold;
+	public void setMemoryBudget(long newMemoryBudget) {
+		this.memoryBudget = newMemoryBudget;
+		this.checkMemory();
+	}
+
+	/**
+	 * Gets the memory budget.
+	 *
+	 * @return the number of bytes the units in memory should not exceed
+	 */
+	public long getMemoryBudget() {
+		return this.memoryBudget;
+	}
+
+	/**
+	 * Sets the number of bytes the units of the given image should not exceed
+	 * in memory. The budget of the whole process still applies.
+	 *
+	 * @param largeIm
+	 *            the image to restrict
+	 * @param newMemoryBudget
+	 *            the new memory budget of the image in bytes
+	 */
+	public void setMemoryBudget(LargeImageInterface largeIm, long newMemoryBudget) {
+		ImageRef imageRef = this.imageIndex.get(largeIm.getMemoryId());
+		imageRef.memoryBudget = newMemoryBudget;
+		this.discard(imageRef, imageRef.residentBytes, newMemoryBudget);
+	}
+
+	/**
+	 * Gets the memory budget of the given image.
+	 *
+	 * @param largeIm
+	 *            the image
+	 * @return the number of bytes the units of this image should not exceed,
+	 *         Long.MAX_VALUE if only the budget of the process applies
+	 */
+	public long getMemoryBudget(LargeImageInterface largeIm) {
+		return this.imageIndex.get(largeIm.getMemoryId()).memoryBudget;
+	}
+
+	/**
+	 * Gets the number of bytes used by the units in memory.
+	 *
+	 * @return the number of bytes used by the units in memory
+	 */
+	public long getResidentBytes() {
+		return this.residentBytes.get();
+	}
+
+	/**
+	 * Gets the number of bytes used by the units of the given image in memory.
+	 *
+	 * @param largeIm
+	 *            the image
+	 * @return the number of bytes used by its units in memory
+	 */
+	public long getResidentBytes(LargeImageInterface largeIm) {
+		return this.imageIndex.get(largeIm.getMemoryId()).residentBytes.get();
 	}
 
 	/**
@@ -227,11 +379,47 @@ public class LargeImageMemoryManager implements
 	 * @return the index where the Image has been recorded
 	 */
 	public int addImage(LargeImageInterface img) {
-		synchronized(this.imageIndex){
-			int result = this.imageIndex.size();
-			this.imageIndex.put(result, new WeakReference<LargeImageInterface>(img));
-			return result;
+		int result = this.imageCounter.getAndIncrement();
+		this.imageIndex.put(result, new ImageRef(img));
+		return result;
+	}
+
+	/**
+	 * Stops managing a Large Image. Its units left in the clock ring are
+	 * forgotten at once.
+	 *
+	 * @param largeIm
+	 *            the image which is closed
+	 * @return false if the image was not managed anymore
+	 */
+	public boolean removeImage(LargeImageInterface largeIm) {
+		ImageRef imageRef = this.imageIndex.remove(largeIm.getMemoryId());
+		if (imageRef == null) {
+			return false;
+		}
+		for (Iterator<UnitRef> it = this.clock.iterator(); it.hasNext();) {
+			UnitRef ref = it.next();
+			if (ref.imageId == largeIm.getMemoryId()) {
+				// the hand of the clock may have taken the reference meanwhile,
+				// release forgets it only once
+				it.remove();
+				this.release(ref, imageRef);
+			}
 		}
+		return true;
+	}
+
+	/**
+	 * Gets the lock which protects the unitMap of a Large Image. Units are
+	 * loaded, modified and discarded under this lock.
+	 *
+	 * @param memoryId
+	 *            index of the image given by addImage
+	 * @return the lock of the image, null if the image has been closed
+	 */
+	public ReentrantLock getLock(int memoryId) {
+		ImageRef imageRef = this.imageIndex.get(memoryId);
+		return imageRef == null ? null : imageRef.lock;
 	}
 
 	/**
@@ -239,12 +427,10 @@ public class LargeImageMemoryManager implements
 	 * method should be called
 	 */
 	public void closeAll() {
-		synchronized(this.imageIndex){
-			for (WeakReference<LargeImageInterface> weak : this.imageIndex.values()) {
-				LargeImageInterface largeIm = weak.get();
-				if (largeIm != null) {
-					largeIm.close();
-				}
+		for (ImageRef weak : this.imageIndex.values()) {
+			LargeImageInterface largeIm = weak.get();
+			if (largeIm != null) {
+				largeIm.close();
 			}
 		}
 	}
@@ -252,20 +438,48 @@ public class LargeImageMemoryManager implements
 	/**
 	 * Gets the max size of the Tenured generation. 
 	 * @return
-	 * 			the max size of the Tenured generation
+	 * 			the max size of the Tenured generation, the maximal direct
+	 * 			memory if the JVM has no tenured generation
 	 */
 	public long getMaxTenuredMemory() {
+		if (this.tenured == null) {
+			return this.maxDirectMemory;
+		}
 		return this.tenured.getUsage().getMax();
 	}
 
+	/**
+	 * Weak reference to a managed image, with the lock of its unitMap and the
+	 * accounting of its units in memory.
+	 */
+	private static class ImageRef extends WeakReference<LargeImageInterface> {
+
+		final ReentrantLock lock = new ReentrantLock();
+
+		final AtomicLong residentBytes = new AtomicLong();
+
+		volatile long memoryBudget = Long.MAX_VALUE;
+
+		ImageRef(LargeImageInterface img) {
+			super(img);
+		}
+	}
+
 	/**
 	 * Class used to identify an unit in the MemoryManager. It stores the index
-	 * of the Image from the imageIndex and the index of the unit in its image.
+	 * of the Image from the imageIndex, the index of the unit in its image, the
+	 * memory it takes and its reference flag for the clock.
 	 */
-	public class UnitRef {
+	public static class UnitRef {
+
+		final int imageId;
+		final int unitId;
+		final long length;
+		volatile boolean referenced;
+		volatile int released;
 
-		int imageId;
-		int unitId;
+		static final AtomicIntegerFieldUpdater<UnitRef> RELEASED = AtomicIntegerFieldUpdater
+				.newUpdater(UnitRef.class, "released");
 
 		/**
 		 * Constructor
@@ -274,24 +488,13 @@ public class LargeImageMemoryManager implements
 		 *            Image index
 		 * @param unitId
 		 *            Unit index
+		 * @param length
+		 *            number of bytes of the unit
 		 */
-		public UnitRef(int imageId, int unitId) {
+		public UnitRef(int imageId, int unitId, long length) {
 			this.imageId = imageId;
 			this.unitId = unitId;
-		}
-
-		@Override
-		public boolean equals(Object o) {
-			if (!(o instanceof UnitRef)) {
-				return false;
-			}
-			return (this.imageId == ((UnitRef) o).imageId)
-					&& (this.unitId == ((UnitRef) o).unitId);
-		}
-
-		@Override
-		public int hashCode() {
-			return ((Integer) this.imageId).hashCode();
+			this.length = length;
 		}
 
 		/**
@@ -317,4 +520,4 @@ public class LargeImageMemoryManager implements
 			return ("(" + this.imageId + "," + this.unitId + ")");
 		}
 	}
-}
\ No newline at end of file
+}
@@ -1,13 +1,13 @@
 package fr.unistra.pelican.util.largeImages;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.ReentrantLock;
 
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.LargeBooleanImage;
@@ -25,10 +25,11 @@ import fr.unistra.pelican.PelicanException;
 public class LargeImageUtil {
 
 	/**
-	 * DEFAULT_MEMORY_FREE_RATIO is used to set the threshold of the low memory
-	 * event.
+	 * DEFAULT_MEMORY_BUDGET_RATIO is the part of the maximal direct memory
+	 * (by default as large as the maximal heap) which units in memory may use
+	 * before the oldest unused ones are discarded.
 	 */
-	public static final double DEFAULT_MEMORY_FREE_RATIO = 0.1;
+	public static final double DEFAULT_MEMORY_BUDGET_RATIO = 0.5;
 
 	/**
 	 * DEFAULT_DIRECTORY is where all files used by Pelican will be created (set
@@ -36,12 +37,6 @@ public class LargeImageUtil {
 	 */
 	private static final File DEFAULT_DIRECTORY = null;
 
-	/**
-	 * DEFAULT_DISCARD_NUMBER is the number of unit which will be discarded when
-	 * low memory event occurs
-	 */
-	public static final int DEFAULT_DISCARD_NUMBER = 10;
-
 	/**
 	 * DEFAULT_NUMBER_OF_UNITS is used to set the size of units. Size of units
 	 * is maximized under the constraint that DEFAULT_NUMBER_OF_UNITS units can
@@ -80,27 +75,9 @@ public class LargeImageUtil {
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#computeUnitLength()
 	 */
-	public static final void computeUnitLength(LargeImageInterface largeIm) {
-		ByteArrayOutputStream byteArray = null;
-		ObjectOutputStream objOut = null;
-		try {
-			try {
-				byteArray = new ByteArrayOutputStream();
-				objOut = new ObjectOutputStream(byteArray);
-				Unit currentUnit = largeIm.newUnit();
-				objOut.writeObject(currentUnit);
-				largeIm.setUnitLength(byteArray.size());
-			} finally {
-				if (byteArray != null) {
-					byteArray.close();
-				}
-				if (objOut != null) {
-					objOut.close();
-				}
-			}
-		} catch (IOException e) {
-			throw new PelicanException("Unable to determine unitlenght");
-		}
+	public static final void computeUnitLength(LargeImageInterface largeIm,
+			int dataLength) {
+		largeIm.setUnitLength((long) largeIm.getUnitSize() * dataLength);
 	}
 
 	/**
@@ -124,15 +101,8 @@ public class LargeImageUtil {
 			largeIm.getFile().deleteOnExit();
 
 			RandomAccessFile raAccess = new RandomAccessFile(largeIm.getFile(),"rw");
-
-			try {
-				raAccess.setLength((long) largeIm.getUnitLength()
-						* (long) largeIm.getUnitDim());
-			} finally {
-				if (raAccess != null) {
-					raAccess.close();
-				}
-			}
+			raAccess.setLength(largeIm.getUnitLength() * largeIm.getUnitDim());
+			largeIm.setChannel(raAccess.getChannel());
 		} catch (FileNotFoundException e1) {
 			e1.printStackTrace();
 			throw new PelicanException("Unable to work in file "
@@ -144,6 +114,56 @@ public class LargeImageUtil {
 		}
 	}
 
+	/**
+	 * Opens an existing file as the source of the units of the LargeImage, so
+	 * that they are mapped read only from the pixels stored in this file
+	 * without any copy. The pixels must be stored as in the units, in native
+	 * order, from the given position. Modified units are written to a new
+	 * working file instead, so that the opened file is never modified.</br>
+	 * It needs unitDim and unitLength to be set.
+	 * 
+	 * @param largeIm
+	 *      Image whose units are stored in the file
+	 * @param file
+	 *      file which holds the pixels
+	 * @param offset
+	 *      position of the first pixel in the file
+	 */
+	public static final void openFile(LargeImageInterface largeIm, File file,
+			long offset) {
+		if (offset < 0) {
+			throw new PelicanException("The pixels of an opened file can not start before it");
+		}
+		SourceFile source = new SourceFile(file, offset);
+		largeIm.createFile();
+		largeIm.setSourceFile(source);
+	}
+
+	/**
+	 * Maps the slice of the working file which stores the unit at the given
+	 * index. The mapping is released as soon as the returned buffer is no
+	 * longer referenced.
+	 * 
+	 * @param largeIm
+	 *      Image which owns the unit
+	 * @param id
+	 *      index of the unit in the image
+	 * @param mode
+	 *      READ_ONLY to page the unit in, READ_WRITE to page it out
+	 * @return a buffer in native order over the raw pixels of the unit
+	 */
+	public static final ByteBuffer mapUnit(LargeImageInterface largeIm, int id,
+			FileChannel.MapMode mode) {
+		try {
+			ByteBuffer buffer = largeIm.getChannel().map(mode,
+					id * largeIm.getUnitLength(), largeIm.getUnitLength());
+			return buffer.order(ByteOrder.nativeOrder());
+		} catch (IOException e) {
+			throw new PelicanException("Unable to work in the file "
+					+ largeIm.getFile().getAbsolutePath());
+		}
+	}
+
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#setUnit(Unit,
 	 *   int, boolean)
@@ -156,20 +176,22 @@ public class LargeImageUtil {
 			currentUnit.setParentImage(largeIm);
 			currentUnit.computeOffsets();
 			
-		LargeImageMemoryManager.getInstance().lock.lock();
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		lock.lock();
 		try{
 			largeIm.putUnitIntoMap(currentId, currentUnit);
-			LargeImageMemoryManager.getInstance().notifyUsage(largeIm.getMemoryId(), currentId);
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			lock.unlock();
 		}
+		LargeImageMemoryManager.getInstance().notifyUsage(currentUnit);
 	}
 
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#discardUnit(int)
 	 */
 	public static final void discardUnit(LargeImageInterface largeIm, int currentId) {
-		LargeImageMemoryManager.getInstance().lock.lock();
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		lock.lock();
 		try{
 			Unit currentUnit = largeIm.getMap().remove(currentId);
 			if (currentUnit == null) {
@@ -177,7 +199,7 @@ public class LargeImageUtil {
 			}
 			currentUnit.discard();
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			lock.unlock();
 		}
 	}
 
@@ -185,35 +207,32 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#loadAnUnit(int)
 	 */
 	public static final Unit loadAnUnit(LargeImageInterface largeIm, int id) {
-		Unit inputUnit;
+		Unit inputUnit = LargeImageUtil.readAnUnit(largeIm, id);
+		largeIm.setUnit(inputUnit, id, false);
+		return inputUnit;
+	}
+
+	/**
+	 * Reads an unit from the file without putting it into the unitMap.
+	 * 
+	 * @param largeIm
+	 *            image of the unit
+	 * @param id
+	 *            index of the unit
+	 * @return the unit
+	 */
+	private static final Unit readAnUnit(LargeImageInterface largeIm, int id) {
 		if (id >= largeIm.getUnitDim()) {
 			throw new PelicanException("there is no " + id
 					+ "th unit in this image");
 		}
-		try {
-			FileInputStream fileInput = new FileInputStream(largeIm.getFile()
-					.getAbsolutePath());
-			try {
-				fileInput.skip((long) id * (long) largeIm.getUnitLength());
-				ObjectInputStream objectInput = new ObjectInputStream(fileInput);
-				inputUnit = (Unit) objectInput.readObject();
-				if (inputUnit instanceof EmptyUnit) {
-					inputUnit = largeIm.newUnit();
-				}
-				largeIm.setUnit(inputUnit, id, false);
-
-			} finally {
-				if (fileInput != null) {
-					fileInput.close();
-				}
-			}
-		} catch (IOException e) {			
-			e.printStackTrace();
-			throw new PelicanException("Unable to work in the file "
-					+ largeIm.getFile().getAbsolutePath());
-		} catch (ClassNotFoundException e) {
-			throw new PelicanException("Unit not found in "
-					+ largeIm.getFile().getAbsolutePath());
+		Unit inputUnit = largeIm.newUnit();
+		SourceFile source = largeIm.getSourceFile();
+		if (source != null && !source.isCopied(id)) {
+			inputUnit.readPixels(source.mapUnit(largeIm, id));
+		} else {
+			inputUnit.readPixels(LargeImageUtil.mapUnit(largeIm, id,
+					FileChannel.MapMode.READ_ONLY));
 		}
 		return inputUnit;
 	}
@@ -222,30 +241,86 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#getAnUnit(int)
 	 */
 	public static final Unit getAnUnit(LargeImageInterface largeIm, int id) {
-		LargeImageMemoryManager.getInstance().lock.lock();
-		Unit res = null;
+		Unit res = largeIm.getMap().get(id);
+		if (res == null) {
+			ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+			lock.lock();
+			try{
+				res = largeIm.getMap().get(id);
+				if (res == null) {
+					res = largeIm.loadAnUnit(id);
+				}
+			}finally{
+				lock.unlock();
+			}
+		}
+		LargeImageMemoryManager.touch(res);
+		return res;
+	}
+
+	/**
+	 * Loads an unit if needed and pins it in memory until unpinUnit is called.
+	 * Writes to a pinned unit do not need to take the lock of its image.
+	 * 
+	 * @param largeIm
+	 *            image of the unit
+	 * @param id
+	 *            index of the unit
+	 * @return the pinned unit
+	 */
+	public static final Unit pinUnit(LargeImageInterface largeIm, int id) {
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		lock.lock();
 		try{
-			res = largeIm.getMap().get(id);			
+			Unit res = largeIm.getMap().get(id);
 			if (res == null) {
-				res = largeIm.loadAnUnit(id);
+				// the unit is pinned before it is recorded, so that the memory
+				// manager cannot discard it at once
+				res = LargeImageUtil.readAnUnit(largeIm, id);
+				res.pins++;
+				largeIm.setUnit(res, id, false);
+			} else {
+				res.pins++;
+				LargeImageMemoryManager.touch(res);
 			}
+			return res;
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Releases an unit pinned by pinUnit. The unit can be discarded again once
+	 * every task which pinned it has released it.
+	 * 
+	 * @param largeIm
+	 *            image of the unit
+	 * @param currentUnit
+	 *            the unit returned by pinUnit
+	 */
+	public static final void unpinUnit(LargeImageInterface largeIm, Unit currentUnit) {
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		lock.lock();
+		try{
+			currentUnit.pins--;
+		}finally{
+			lock.unlock();
 		}
-		return res;
 	}
 
 	/**
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#fillFile()
 	 */
 	public static final void fillFile(LargeImageInterface largeIm) {
-		Unit emptyUnit = new EmptyUnit();
-		emptyUnit.setModified();
-		emptyUnit.setParentImage(largeIm);
-		for (int i = 0; i < largeIm.getUnitDim(); i++) {
-			emptyUnit.setId(i);
-			emptyUnit.setModified();			
-			emptyUnit.discard();
+		// A file filled with zeros holds units which are equal to new ones
+		long length = largeIm.getUnitLength() * largeIm.getUnitDim();
+		try {
+			FileChannel channel = largeIm.getChannel();
+			channel.truncate(0);
+			channel.write(ByteBuffer.allocate(1), length - 1);
+		} catch (IOException e) {
+			throw new PelicanException("Unable to work in the file "
+					+ largeIm.getFile().getAbsolutePath());
 		}
 	}
 
@@ -253,6 +328,29 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#close()
 	 */
 	public static final void close(LargeImageInterface largeIm) {
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		if (lock == null) {
+			// the image has already been closed
+			return;
+		}
+		lock.lock();
+		try{
+			largeIm.getMap().clear();
+		}finally{
+			lock.unlock();
+		}
+		LargeImageMemoryManager.getInstance().removeImage(largeIm);
+		try {
+			if (largeIm.getChannel() != null) {
+				largeIm.getChannel().close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		// an opened file is left as it is, only the working file is removed
+		if (largeIm.getSourceFile() != null) {
+			largeIm.getSourceFile().close();
+		}
 		largeIm.getFile().delete();
 	}
 
@@ -264,9 +362,7 @@ public class LargeImageUtil {
 			int maxSize, int dataLength) {
 		if (maxSize <= 0) {
 			// if no argument is specified we use default settings
-			long maxMem = LargeImageMemoryManager.getInstance().getMaxTenuredMemory();
-			//Runtime run = Runtime.getRuntime();
-			//long maxMem = run.maxMemory();
+			long maxMem = LargeImageMemoryManager.getInstance().getMaxDirectMemory();
 			long size = maxMem / LargeImageUtil.DEFAULT_NUMBER_OF_UNITS;
 			int j = LargeImageUtil.computePowerOfTwo(size / dataLength);
 			largeIm.initializeUnitPowerSize(j);
@@ -281,13 +377,14 @@ public class LargeImageUtil {
 	 * @see fr.unistra.pelican.util.largeImages.LargeImageInterface#saveData()
 	 */
 	public static final void saveData(LargeImageInterface largeIm) {
-		LargeImageMemoryManager.getInstance().lock.lock();
+		ReentrantLock lock = LargeImageMemoryManager.getInstance().getLock(largeIm.getMemoryId());
+		lock.lock();
 		try{
 			for (Unit currentUnit : largeIm.getMap().values()) {
 				currentUnit.discard();
 			}
 		}finally{
-			LargeImageMemoryManager.getInstance().lock.unlock();
+			lock.unlock();
 		}
 	}
 
@@ -0,0 +1,128 @@
+package fr.unistra.pelican.util.largeImages;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * Existing file from which a LargeImage reads its units, copy on write: an unit
+ * is mapped read only from this file until it is modified, it is then written
+ * to the working file of the image and read from there. The file itself is
+ * never modified nor resized.
+ *
+ * @see LargeImageUtil#openFile(LargeImageInterface, File, long)
+ * @author PELICAN team.
+ */
+public class SourceFile {
+
+	/**
+	 * The file
+	 */
+	private final File file;
+
+	/**
+	 * Read only channel opened on the file
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * Position of the first unit in the file
+	 */
+	private final long offset;
+
+	/**
+	 * Units which have been written to the working file
+	 */
+	private final BitSet copied = new BitSet();
+
+	/**
+	 * Opens a file read only.
+	 *
+	 * @param file
+	 *            file which holds the pixels
+	 * @param offset
+	 *            position of the first pixel in the file
+	 */
+	public SourceFile(File file, long offset) {
+		this.file = file;
+		this.offset = offset;
+		try {
+			this.channel = new RandomAccessFile(file, "r").getChannel();
+		} catch (IOException e) {
+			throw new PelicanException("Unable to read the file "
+					+ file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Tells whether an unit has been written to the working file, so that it
+	 * must not be read from this file anymore.
+	 *
+	 * @param id
+	 *            index of the unit
+	 * @return true if the unit has been copied
+	 */
+	public synchronized boolean isCopied(int id) {
+		return copied.get(id);
+	}
+
+	/**
+	 * Records that an unit has been written to the working file.
+	 *
+	 * @param id
+	 *            index of the unit
+	 */
+	public synchronized void setCopied(int id) {
+		copied.set(id);
+	}
+
+	/**
+	 * Maps read only the slice of the file which stores the unit at the given
+	 * index. The buffer is shorter than the unit when the file ends before.
+	 *
+	 * @param largeIm
+	 *            Image which owns the unit
+	 * @param id
+	 *            index of the unit in the image
+	 * @return a buffer in native order over the raw pixels of the unit
+	 */
+	public ByteBuffer mapUnit(LargeImageInterface largeIm, int id) {
+		try {
+			long position = offset + id * largeIm.getUnitLength();
+			long length = Math.max(0, Math.min(largeIm.getUnitLength(), channel
+					.size()
+					- position));
+			ByteBuffer buffer = length == 0 ? ByteBuffer.allocate(0) : channel
+					.map(FileChannel.MapMode.READ_ONLY, position, length);
+			return buffer.order(ByteOrder.nativeOrder());
+		} catch (IOException e) {
+			throw new PelicanException("Unable to read the file "
+					+ file.getAbsolutePath());
+		}
+	}
+
+	/**
+	 * Closes the channel opened on the file.
+	 */
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+}
@@ -0,0 +1,404 @@
+package fr.unistra.pelican.util.largeImages;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * Runs a computation tile by tile on a ForkJoinPool.</br>
+ *
+ * The linear indexes of the images are cut into tiles. When some of the
+ * images are LargeImageInterface, the tiles follow their units so that each
+ * task pages in its own units, in order, instead of walking the whole image
+ * pixel by pixel. The units covering a tile and its halo are pinned while the
+ * task runs, so they are not discarded while it reads and writes them.</br>
+ *
+ * Tasks must only write the pixels of their own tile. Pixels of the halo can
+ * be read, for instance by a neighbourhood operation. Images of more than
+ * Integer.MAX_VALUE pixels are processed by a LongTileTask given to runLong.
+ */
+public class TileExecutor {
+
+	/**
+	 * Number of pixels of a tile when no image is a LargeImageInterface
+	 */
+	public static final int DEFAULT_TILE_SIZE = 1 << 16;
+
+	/**
+	 * Pool on which the tiles are processed, created at the first use
+	 */
+	private static ForkJoinPool pool = null;
+
+	/**
+	 * Number of threads of the pool, 0 for one per available processor
+	 */
+	private static int parallelism = 0;
+
+	/**
+	 * Computation done on a tile.
+	 */
+	public interface TileTask {
+
+		/**
+		 * Processes the pixels whose linear index is in [start,end[.
+		 *
+		 * @param start
+		 *            first index of the tile
+		 * @param end
+		 *            index following the last one of the tile
+		 */
+		public void process(int start, int end);
+	}
+
+	/**
+	 * Computation done on a tile of images which may hold more than
+	 * Integer.MAX_VALUE pixels.
+	 */
+	public interface LongTileTask {
+
+		/**
+		 * Processes the pixels whose linear index is in [start,end[.
+		 *
+		 * @param start
+		 *            first index of the tile
+		 * @param end
+		 *            index following the last one of the tile
+		 */
+		public void process(long start, long end);
+	}
+
+	/**
+	 * Processes the whole images tile by tile.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param images
+	 *            images read or written by the task, they must all have the
+	 *            same size
+	 */
+	public static void run(TileTask task, Image... images) {
+		TileExecutor.run(task, 0, 0, images);
+	}
+
+	/**
+	 * Processes the whole images tile by tile, the units which are at most
+	 * halo pixels away from a tile are pinned with it.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param halo
+	 *            greatest distance, as a linear index, between a pixel of the
+	 *            tile and a pixel read by the task
+	 * @param images
+	 *            images read or written by the task, they must all have the
+	 *            same size
+	 */
+	public static void run(TileTask task, int halo, Image... images) {
+		TileExecutor.run(task, halo, 0, images);
+	}
+
+	/**
+	 * Processes the whole images tile by tile with at most the given number of
+	 * threads, the units which are at most halo pixels away from a tile are
+	 * pinned with it.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param halo
+	 *            greatest distance, as a linear index, between a pixel of the
+	 *            tile and a pixel read by the task
+	 * @param parallelism
+	 *            number of threads, 0 for the parallelism of the pool
+	 * @param images
+	 *            images read or written by the task, they must all have the
+	 *            same size
+	 */
+	public static void run(TileTask task, int halo, int parallelism, Image... images) {
+		if (images.length == 0) {
+			throw new PelicanException("TileExecutor needs at least one image");
+		}
+		long size = TileExecutor.getSize(images[0]);
+		if (size > Integer.MAX_VALUE) {
+			throw new PelicanException("The images have too many pixels for a TileTask, use runLong");
+		}
+		TileExecutor.execute(TileExecutor.toLongTask(task), halo, parallelism,
+				images, size, TileExecutor.getTileSize(images));
+	}
+
+	/**
+	 * Processes the whole images tile by tile, whatever their number of pixels.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param images
+	 *            images read or written by the task, they must all have the
+	 *            same size
+	 */
+	public static void runLong(LongTileTask task, Image... images) {
+		TileExecutor.runLong(task, 0, 0, images);
+	}
+
+	/**
+	 * Processes the whole images tile by tile with at most the given number of
+	 * threads, whatever their number of pixels. The units which are at most
+	 * halo pixels away from a tile are pinned with it.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param halo
+	 *            greatest distance, as a linear index, between a pixel of the
+	 *            tile and a pixel read by the task
+	 * @param parallelism
+	 *            number of threads, 0 for the parallelism of the pool
+	 * @param images
+	 *            images read or written by the task, they must all have the
+	 *            same size
+	 */
+	public static void runLong(LongTileTask task, int halo, int parallelism, Image... images) {
+		if (images.length == 0) {
+			throw new PelicanException("TileExecutor needs at least one image");
+		}
+		TileExecutor.execute(task, halo, parallelism, images,
+				TileExecutor.getSize(images[0]), TileExecutor.getTileSize(images));
+	}
+
+	/**
+	 * Processes the indexes of [0,count[ by strips with at most the given
+	 * number of threads. It is meant for independent lines, planes or bands
+	 * of an image: no unit is pinned.
+	 *
+	 * @param task
+	 *            computation done on each strip of indexes
+	 * @param count
+	 *            number of indexes
+	 * @param parallelism
+	 *            number of threads, 0 for the parallelism of the pool
+	 */
+	public static void runStrips(TileTask task, int count, int parallelism) {
+		int threads = Math.max(1, Math.min(TileExecutor.getParallelism(parallelism), count));
+		TileExecutor.execute(TileExecutor.toLongTask(task), 0, threads, new Image[0],
+				count, (count + threads - 1) / threads);
+	}
+
+	/**
+	 * Gets the number of pixels of an image, a LargeImageInterface possibly
+	 * holding more than Integer.MAX_VALUE pixels.
+	 */
+	private static long getSize(Image image) {
+		if (image instanceof LargeImageInterface) {
+			return ((LargeImageInterface) image).sizeL();
+		}
+		return image.size();
+	}
+
+	/**
+	 * Wraps a task on int indexes, which are known to fit in an int.
+	 */
+	private static LongTileTask toLongTask(final TileTask task) {
+		return new LongTileTask() {
+			public void process(long start, long end) {
+				task.process((int) start, (int) end);
+			}
+		};
+	}
+
+	/**
+	 * Cuts [0,size[ in tiles and processes them.
+	 *
+	 * @param task
+	 *            computation done on each tile
+	 * @param halo
+	 *            greatest distance between a pixel of a tile and a pixel read
+	 *            by the task
+	 * @param parallelism
+	 *            number of threads, 0 for the parallelism of the pool
+	 * @param images
+	 *            images whose units are pinned with the tiles
+	 * @param size
+	 *            number of indexes to process
+	 * @param tileSize
+	 *            number of indexes of a tile
+	 */
+	private static void execute(LongTileTask task, int halo, int parallelism,
+			Image[] images, long size, long tileSize) {
+		if (parallelism < 0) {
+			throw new PelicanException("Parallelism must be positive");
+		}
+		long nbTiles = (size + tileSize - 1) / tileSize;
+		if (nbTiles == 0) {
+			return;
+		}
+		// with the default parallelism every tile can be stolen by any thread
+		long threads = (parallelism == 0) ? nbTiles : Math.min(parallelism, nbTiles);
+		if (threads == 1 || TileExecutor.getParallelism() == 1) {
+			for (long tile = 0; tile < nbTiles; tile++) {
+				TileExecutor.processTile(task, halo, images, size, tileSize, tile);
+			}
+		} else {
+			TileExecutor.getPool().invoke(
+					new TileAction(task, halo, images, size, tileSize, 0, nbTiles, threads));
+		}
+	}
+
+	/**
+	 * Gets the number of pixels of a tile: the largest unit of the given
+	 * images, or DEFAULT_TILE_SIZE if none of them is a LargeImageInterface.
+	 * Since units hold a power of two pixels, a tile always covers whole units.
+	 *
+	 * @param images
+	 *            images processed together
+	 * @return the number of pixels of a tile
+	 */
+	public static int getTileSize(Image... images) {
+		int tileSize = 0;
+		for (Image im : images) {
+			if (im instanceof LargeImageInterface) {
+				tileSize = Math.max(tileSize, ((LargeImageInterface) im).getUnitSize());
+			}
+		}
+		return tileSize == 0 ? DEFAULT_TILE_SIZE : tileSize;
+	}
+
+	/**
+	 * Sets the number of threads used to process the tiles.
+	 *
+	 * @param newParallelism
+	 *            number of threads, 0 for one per available processor
+	 */
+	public static synchronized void setParallelism(int newParallelism) {
+		if (newParallelism < 0) {
+			throw new PelicanException("Parallelism must be positive");
+		}
+		if (newParallelism != parallelism && pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+		parallelism = newParallelism;
+	}
+
+	/**
+	 * Gets the number of threads used to process the tiles.
+	 *
+	 * @return the number of threads
+	 */
+	public static synchronized int getParallelism() {
+		if (parallelism == 0) {
+			return Runtime.getRuntime().availableProcessors();
+		}
+		return parallelism;
+	}
+
+	/**
+	 * Gets the number of threads which a computation with the given
+	 * parallelism uses.
+	 *
+	 * @param parallelism
+	 *            requested number of threads, 0 for the parallelism of the pool
+	 * @return the number of threads
+	 */
+	public static int getParallelism(int parallelism) {
+		return (parallelism == 0) ? TileExecutor.getParallelism() : parallelism;
+	}
+
+	/**
+	 * Gets the pool, it is created if needed.
+	 *
+	 * @return the pool which processes the tiles
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null) {
+			pool = new ForkJoinPool(TileExecutor.getParallelism());
+		}
+		return pool;
+	}
+
+	/**
+	 * Processes a tile with the units it needs pinned in memory.
+	 *
+	 * @param task
+	 *            computation done on the tile
+	 * @param halo
+	 *            greatest distance between a pixel of the tile and a pixel
+	 *            read by the task
+	 * @param images
+	 *            images read or written by the task
+	 * @param size
+	 *            number of pixels of the images
+	 * @param tileSize
+	 *            number of pixels of a tile
+	 * @param tile
+	 *            index of the tile
+	 */
+	private static void processTile(LongTileTask task, int halo, Image[] images,
+			long size, long tileSize, long tile) {
+		long start = tile * tileSize;
+		long end = Math.min(start + tileSize, size);
+		ArrayList<Unit> pinned = new ArrayList<Unit>();
+		try {
+			for (Image im : images) {
+				if (im instanceof LargeImageInterface) {
+					LargeImageInterface largeIm = (LargeImageInterface) im;
+					int firstUnit = (int) (Math.max(0, start - halo) >> largeIm.getUnitPowerSize());
+					int lastUnit = (int) ((Math.min(end + halo, size) - 1) >> largeIm.getUnitPowerSize());
+					for (int id = firstUnit; id <= lastUnit; id++) {
+						pinned.add(LargeImageUtil.pinUnit(largeIm, id));
+					}
+				}
+			}
+			task.process(start, end);
+		} finally {
+			for (Unit currentUnit : pinned) {
+				LargeImageUtil.unpinUnit(currentUnit.parentImage, currentUnit);
+			}
+		}
+	}
+
+	/**
+	 * Processes a range of tiles. The range is cut by halves, and so is the
+	 * number of threads, until a single thread is left for a range which is
+	 * then processed in order.
+	 */
+	private static class TileAction extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final LongTileTask task;
+		private final int halo;
+		private final Image[] images;
+		private final long size;
+		private final long tileSize;
+		private final long first;
+		private final long last;
+		private final long threads;
+
+		TileAction(LongTileTask task, int halo, Image[] images, long size,
+				long tileSize, long first, long last, long threads) {
+			this.task = task;
+			this.halo = halo;
+			this.images = images;
+			this.size = size;
+			this.tileSize = tileSize;
+			this.first = first;
+			this.last = last;
+			this.threads = threads;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.threads > 1 && this.last - this.first > 1) {
+				long half = this.threads / 2;
+				long middle = this.first + (this.last - this.first) * half / this.threads;
+				RecursiveAction.invokeAll(
+						new TileAction(this.task, this.halo, this.images, this.size, this.tileSize, this.first, middle, half),
+						new TileAction(this.task, this.halo, this.images, this.size, this.tileSize, middle, this.last, this.threads - half));
+				return;
+			}
+			for (long tile = this.first; tile < this.last; tile++) {
+				TileExecutor.processTile(this.task, this.halo, this.images, this.size, this.tileSize, tile);
+			}
+		}
+	}
+}
@@ -1,16 +1,19 @@
 package fr.unistra.pelican.util.largeImages;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.util.ImageStatistics;
 
 /**
  * Concrete Units must have getPixel(int loc),setPixel(int loc, ? value) and
- * setPixels(?[] newPixels) methods
+ * setPixels(?[] newPixels) methods</br>
+ * In the working file of its image, an unit is stored as a fixed-size slice of
+ * raw primitives which is memory-mapped when the unit is paged in or out.</br>
+ * In memory, the pixels of an unit are kept off-heap in a direct buffer, so
+ * resident units neither grow the heap nor lengthen garbage collections.
  */
 public abstract class Unit {
 
@@ -39,6 +42,24 @@ public abstract class Unit {
 	 */
 	public transient Integer end = null;
 
+	/**
+	 * Reference used by the LargeImageMemoryManager to track this unit while
+	 * it is in memory.
+	 */
+	transient LargeImageMemoryManager.UnitRef ref;
+
+	/**
+	 * Number of tasks which currently pin this unit in memory. It is only
+	 * modified under the lock of the parent image.
+	 */
+	transient volatile int pins;
+
+	/**
+	 * Statistics of the pixels of the unit, null when they have to be computed
+	 * again.
+	 */
+	protected transient ImageStatistics statistics;
+
 	/**
 	 * Constructor
 	 */
@@ -47,11 +68,26 @@ public abstract class Unit {
 		this.modified = false;
 	}
 
+	/**
+	 * Allocates the off-heap memory of an unit, in native order.
+	 * 
+	 * @param unitSize
+	 *            number of pixel in the unit
+	 * @param dataLength
+	 *            number of bytes of a pixel
+	 * @return a direct buffer filled with zeros
+	 */
+	protected static ByteBuffer allocate(int unitSize, int dataLength) {
+		return ByteBuffer.allocateDirect(unitSize * dataLength).order(
+				ByteOrder.nativeOrder());
+	}
+
 	/**
 	 * Sets the modification flag to true.
 	 */
 	public void setModified() {
 		this.modified = true;
+		this.statistics = null;
 	}
 
 	/**
@@ -73,6 +109,16 @@ public abstract class Unit {
 		return this.modified;
 	}
 
+	/**
+	 * Indicates whether the unit is pinned. A pinned unit is never discarded by
+	 * the LargeImageMemoryManager.
+	 * 
+	 * @return true if at least one task pins this unit
+	 */
+	public boolean isPinned() {
+		return this.pins > 0;
+	}
+
 	/**
 	 * Set the index of the unit.
 	 * 
@@ -99,37 +145,62 @@ public abstract class Unit {
 	public void discard() {
 
 		if (this.isModified() && (this.parentImage != null)) {
-
-			File currentFile = this.parentImage.getFile();
-			long unitLength = this.parentImage.getUnitLength();
-
-			try {
-				RandomAccessFile randomAccess = new RandomAccessFile(
-						currentFile, "rw");
-				try {
-					randomAccess.seek((long) this.id * unitLength);
-					FileOutputStream fileOutput = new FileOutputStream(
-							randomAccess.getFD());
-					try {
-						ObjectOutputStream objectOutput = new ObjectOutputStream(
-								fileOutput);
-						objectOutput.writeUnshared(this);
-					} finally {
-						fileOutput.close();
-					}
-				} finally {
-					randomAccess.close();
-				}
-			} catch (IOException e) {
-				throw new PelicanException("Unable to work in the file "
-						+ currentFile.getAbsolutePath());
+			this.writePixels(LargeImageUtil.mapUnit(this.parentImage, this.id,
+					FileChannel.MapMode.READ_WRITE));
+			// the unit is not read from the opened file anymore
+			SourceFile source = this.parentImage.getSourceFile();
+			if (source != null) {
+				source.setCopied(this.id);
 			}
 			this.setModified(false);
 		}
 	}
 
+	/**
+	 * Writes all the pixels of the unit as raw primitives in the given buffer.
+	 * 
+	 * @param buffer
+	 *            buffer mapped on the slice of the working file reserved for
+	 *            this unit
+	 */
+	public abstract void writePixels(ByteBuffer buffer);
+
+	/**
+	 * Reads all the pixels of the unit as raw primitives from the given buffer.
+	 * 
+	 * @param buffer
+	 *            buffer mapped on the slice of the working file reserved for
+	 *            this unit
+	 */
+	public abstract void readPixels(ByteBuffer buffer);
+
 	@Override
 	public abstract Unit clone();
+
+	/**
+	 * Gets the statistics of the pixels of the unit. They are kept until the
+	 * unit is modified, so only the units written since the last call are
+	 * scanned again.
+	 * 
+	 * @return the statistics of the unit, by band of the parent image
+	 */
+	public ImageStatistics getStatistics() {
+		ImageStatistics res = this.statistics;
+		if (res == null) {
+			if (this.bOffset == null)
+				this.computeOffsets();
+			res = this.computeStatistics();
+			this.statistics = res;
+		}
+		return res;
+	}
+
+	/**
+	 * Computes the statistics of the pixels of the unit.
+	 * 
+	 * @return the statistics of the unit, by band of the parent image
+	 */
+	protected abstract ImageStatistics computeStatistics();
 	
 	/**
 	 * Computes the bOffset to be able to work easily by band.</br>
@@ -0,0 +1,135 @@
+package fr.unistra.pelican.util.lut;
+
+import java.io.Serializable;
+
+import fr.unistra.pelican.PelicanException;
+
+/**
+ * Coarse three band LUT for byte inputs: the converted values are only stored
+ * for a regular grid of input triplets and the others are interpolated
+ * trilinearly between the eight nodes of their cell. With a step of 5 the
+ * grid has 52 nodes per band, which holds in a few megabytes of doubles where
+ * a ThreeBandByteConversionLUT takes 48 megabytes of bytes, and the values
+ * keep their double precision. The interpolation error depends on the
+ * curvature of the conversion: for RGB to LAB with a step of 5 it stays under
+ * 3 units, the largest errors being near black where the cube root is steep.
+ *
+ * @see ThreeBandByteConversionLUT
+ * @author PELICAN team.
+ */
+public class ThreeBandInterpolatedLUT implements Serializable {
+
+	private static final long serialVersionUID = 201610171200L;
+
+	/**
+	 * Distance between two nodes of the grid
+	 */
+	public final int step;
+
+	/**
+	 * Number of nodes of the grid along each band
+	 */
+	public final int nodes;
+
+	/**
+	 * LUT for band 0, indexed by (i0 * nodes + i1) * nodes + i2
+	 */
+	public final double[] lut0;
+
+	/**
+	 * LUT for band 1
+	 */
+	public final double[] lut1;
+
+	/**
+	 * LUT for band 2
+	 */
+	public final double[] lut2;
+
+	/**
+	 * Cell of each byte value along a band
+	 */
+	private final int[] cell = new int[256];
+
+	/**
+	 * Position of each byte value in its cell, in [0,1]
+	 */
+	private final double[] weight = new double[256];
+
+	/**
+	 * Constructor of an empty LUT.
+	 *
+	 * @param step
+	 *            distance between two nodes, it must divide 255 so that 0 and
+	 *            255 are both nodes
+	 */
+	public ThreeBandInterpolatedLUT(int step) {
+		if (step <= 0 || 255 % step != 0)
+			throw new PelicanException("The step of the LUT must divide 255");
+		this.step = step;
+		this.nodes = 255 / step + 1;
+		this.lut0 = new double[nodes * nodes * nodes];
+		this.lut1 = new double[lut0.length];
+		this.lut2 = new double[lut0.length];
+		for (int v = 0; v < 256; v++) {
+			// the last value is the end of the last cell
+			cell[v] = Math.min(v / step, nodes - 2);
+			weight[v] = (v - cell[v] * step) / (double) step;
+		}
+	}
+
+	/**
+	 * Gets the byte value of a node along a band.
+	 *
+	 * @param i
+	 *            index of the node
+	 * @return its value in [0,255]
+	 */
+	public int getNodeValue(int i) {
+		return i * step;
+	}
+
+	/**
+	 * Interpolates the converted values of a chunk of byte triplets.
+	 *
+	 * @param v0
+	 *            first band of the inputs, in [0,255]
+	 * @param v1
+	 *            second band of the inputs
+	 * @param v2
+	 *            third band of the inputs
+	 * @param c0
+	 *            receives the first band of the outputs
+	 * @param c1
+	 *            receives the second band of the outputs
+	 * @param c2
+	 *            receives the third band of the outputs
+	 * @param n
+	 *            number of triplets
+	 */
+	public void interpolate(int[] v0, int[] v1, int[] v2, double[] c0,
+			double[] c1, double[] c2, int n) {
+		int d1 = nodes, d0 = nodes * nodes;
+		for (int k = 0; k < n; k++) {
+			int a = v0[k], b = v1[k], c = v2[k];
+			int base = (cell[a] * nodes + cell[b]) * nodes + cell[c];
+			double w0 = weight[a], w1 = weight[b], w2 = weight[c];
+			c0[k] = interpolate(lut0, base, d0, d1, w0, w1, w2);
+			c1[k] = interpolate(lut1, base, d0, d1, w0, w1, w2);
+			c2[k] = interpolate(lut2, base, d0, d1, w0, w1, w2);
+		}
+	}
+
+	private static double interpolate(double[] lut, int base, int d0, int d1,
+			double w0, double w1, double w2) {
+		double c00 = lut[base] + w2 * (lut[base + 1] - lut[base]);
+		double c01 = lut[base + d1] + w2 * (lut[base + d1 + 1] - lut[base + d1]);
+		double c10 = lut[base + d0] + w2 * (lut[base + d0 + 1] - lut[base + d0]);
+		double c11 = lut[base + d0 + d1]
+				+ w2 * (lut[base + d0 + d1 + 1] - lut[base + d0 + d1]);
+		double c0 = c00 + w1 * (c01 - c00);
+		double c1 = c10 + w1 * (c11 - c10);
+		return c0 + w0 * (c1 - c0);
+	}
+
+}
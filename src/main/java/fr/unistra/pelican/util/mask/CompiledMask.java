@@ -0,0 +1,468 @@
+package fr.unistra.pelican.util.mask;
+
+import java.util.Arrays;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.Image;
+
+/**
+ * Flat representation of a MaskStack for the dimensions of an image: the presence of each pixel is a bit, read in constant time instead of
+ * walking the stack. When every pixel has the same presence no bit is stored
+ * at all, so that the pixels of an image whose mask covers everything are
+ * known to be present without any lookup.
+ *
+ * Only stacks of BooleanMask and BooleanImage of the dimensions of the image
+ * and of RectangleMask can be compiled. A compiled mask is valid as long as no
+ * mask has been pushed or removed, the policy and the options of the
+ * BooleanMask are unchanged and the pixels of the BooleanImage masks have not
+ * been modified, which isCompiledFrom tells. The BooleanImage masks are only
+ * checked once the number of modifications of all the images has changed.
+ * When only a few pixels of the BooleanImage masks have been set, update
+ * recomputes their bits alone. A BooleanImage whose pixel array has been
+ * given out may change without notice, and is thus never compiled.
+ *
+ * @see MaskStack#compile(int, int, int, int, int)
+ * @author PELICAN team.
+ */
+public final class CompiledMask {
+
+	/** Stack of masks which has been compiled. */
+	private final MaskStack stack;
+
+	/** Modification count of the stack when it has been compiled. */
+	private final int modifications;
+
+	/** Policy of the stack when it has been compiled. */
+	private final int policy;
+
+	/** BooleanImage masks of the stack. */
+	private final BooleanImage[] images;
+
+	/** Modification counts of the BooleanImage masks when they have been compiled. */
+	private final long[] imageModifications;
+
+	/** BooleanMask masks of the stack. */
+	@SuppressWarnings("deprecation")
+	private final BooleanMask[] booleanMasks;
+
+	/** Options of the BooleanMask masks when they have been compiled. */
+	private final boolean[] options;
+
+	/**
+	 * Number of modifications of all the images when the BooleanImage masks
+	 * have been checked, it is set once the bits are up to date.
+	 */
+	private volatile long checkedModifications;
+
+	/** Dimensions of the image. */
+	private final int xdim, ydim, zdim, tdim, bdim;
+
+	/** Number of pixels of the image. */
+	private final long size;
+
+	/** Presence of the pixels by linear index, null if they are all alike. */
+	private volatile long[] bits;
+
+	/** Presence of every pixel when bits is null. */
+	private volatile boolean present;
+
+	/** Number of present pixels, when the masks can be compiled. */
+	private long count;
+
+	/** False if the stack holds masks which cannot be compiled. */
+	private final boolean compiled;
+
+	/**
+	 * True if the masks answer the same for a linear index and for the
+	 * coordinates of this index, which a RectangleMask does not.
+	 */
+	private final boolean linear;
+
+	/**
+	 * Compiles a stack of masks for the given dimensions.
+	 *
+	 * @param stack
+	 *            stack of masks
+	 * @param xdim
+	 *            the width
+	 * @param ydim
+	 *            the height
+	 * @param zdim
+	 *            the depth
+	 * @param tdim
+	 *            the frame number
+	 * @param bdim
+	 *            the channel number
+	 */
+	@SuppressWarnings("deprecation")
+	CompiledMask(MaskStack stack, int xdim, int ydim, int zdim, int tdim,
+			int bdim) {
+		this.stack = stack;
+		this.modifications = stack.getModificationCount();
+		this.policy = stack.getPolicy();
+		this.xdim = xdim;
+		this.ydim = ydim;
+		this.zdim = zdim;
+		this.tdim = tdim;
+		this.bdim = bdim;
+
+		this.size = (long) xdim * ydim * zdim * tdim * bdim;
+
+		long allModifications = Image.getAllModificationCount();
+		boolean compilable = true, consistent = true;
+		int nbImages = 0;
+		BooleanImage[] images = new BooleanImage[0];
+		long[] imageModifications = new long[0];
+		int nbMasks = 0;
+		BooleanMask[] booleanMasks = new BooleanMask[0];
+		boolean[] options = new boolean[0];
+		if ((policy == MaskStack.AND || policy == MaskStack.OR)
+				&& !stack.isEmpty()) {
+			images = new BooleanImage[stack.size()];
+			imageModifications = new long[stack.size()];
+			booleanMasks = new BooleanMask[stack.size()];
+			options = new boolean[stack.size()];
+			for (Mask m : stack) {
+				if (m instanceof RectangleMask)
+					consistent = false;
+				else if (m instanceof BooleanMask) {
+					BooleanMask b = (BooleanMask) m;
+					booleanMasks[nbMasks] = b;
+					options[nbMasks++] = b.option;
+					if (!hasDimensions(b.getXDim(), b.getYDim(), b.getZDim(),
+							b.getTDim(), b.getBDim()))
+						compilable = false;
+				} else if (m.getClass() == BooleanImage.class) {
+					// large images do not count the modifications of their units
+					BooleanImage b = (BooleanImage) m;
+					b.keepModifiedPixels();
+					images[nbImages] = b;
+					imageModifications[nbImages++] = b.getModificationCount();
+					if (b.getModificationCount() < 0
+							|| !hasDimensions(b.getXDim(), b.getYDim(), b
+									.getZDim(), b.getTDim(), b.getBDim()))
+						compilable = false;
+				} else
+					compilable = false;
+			}
+			if (size > Integer.MAX_VALUE)
+				compilable = false;
+		}
+		this.images = Arrays.copyOf(images, nbImages);
+		this.imageModifications = Arrays.copyOf(imageModifications,
+				nbImages);
+		this.booleanMasks = Arrays.copyOf(booleanMasks, nbMasks);
+		this.options = Arrays.copyOf(options, nbMasks);
+		this.compiled = compilable;
+		this.linear = consistent;
+
+		if (!compilable || policy == MaskStack.TRUE || policy == MaskStack.FALSE
+				|| stack.isEmpty()) {
+			// without masks, the policy alone tells whether pixels are present
+			this.bits = null;
+			this.present = stack.isInMask(0, 0, 0, 0, 0);
+			this.count = present ? size : 0;
+			this.checkedModifications = allModifications;
+			return;
+		}
+		long[] words = new long[(int) ((size + 63) >>> 6)];
+		int index = 0, count = 0;
+		for (int t = 0; t < tdim; t++)
+			for (int z = 0; z < zdim; z++)
+				for (int y = 0; y < ydim; y++)
+					for (int x = 0; x < xdim; x++)
+						for (int b = 0; b < bdim; b++, index++)
+							if (stack.isInMask(x, y, z, t, b)) {
+								words[index >>> 6] |= 1L << index;
+								count++;
+							}
+		this.count = count;
+		if (count == 0 || count == size) {
+			this.bits = null;
+			this.present = count > 0;
+		} else {
+			this.bits = words;
+			this.present = false;
+		}
+		this.checkedModifications = allModifications;
+	}
+
+	private boolean hasDimensions(int xdim, int ydim, int zdim, int tdim,
+			int bdim) {
+		return this.xdim == xdim && this.ydim == ydim && this.zdim == zdim
+				&& this.tdim == tdim && this.bdim == bdim;
+	}
+
+	/**
+	 * Tells whether this compiled mask still represents the given stack for the
+	 * given dimensions.
+	 *
+	 * @param stack
+	 *            stack of masks
+	 * @param xdim
+	 *            the width
+	 * @param ydim
+	 *            the height
+	 * @param zdim
+	 *            the depth
+	 * @param tdim
+	 *            the frame number
+	 * @param bdim
+	 *            the channel number
+	 * @return true if it can be used instead of the stack
+	 */
+	public boolean isCompiledFrom(MaskStack stack, int xdim, int ydim, int zdim,
+			int tdim, int bdim) {
+		if (!hasSameMasks(stack, xdim, ydim, zdim, tdim, bdim))
+			return false;
+		return checkedModifications == Image.getAllModificationCount()
+				|| checkImages();
+	}
+
+	/**
+	 * Tells whether the pixels of the BooleanImage masks are unchanged, and
+	 * records that they have been checked.
+	 */
+	private synchronized boolean checkImages() {
+		long allModifications = Image.getAllModificationCount();
+		for (int i = 0; i < images.length; i++)
+			if (images[i].getModificationCount() != imageModifications[i])
+				return false;
+		checkedModifications = allModifications;
+		return true;
+	}
+
+	/**
+	 * Tells whether the stack holds the same masks with the same options as
+	 * when it has been compiled, whatever the pixels of its BooleanImage masks.
+	 */
+	private boolean hasSameMasks(MaskStack stack, int xdim, int ydim, int zdim,
+			int tdim, int bdim) {
+		if (this.stack != stack
+				|| this.modifications != stack.getModificationCount()
+				|| this.policy != stack.getPolicy() || !hasDimensions(xdim, ydim,
+					zdim, tdim, bdim))
+			return false;
+		for (int i = 0; i < booleanMasks.length; i++)
+			if (booleanMasks[i].option != options[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Brings this compiled mask up to date with the given stack when only
+	 * single pixels of its BooleanImage masks have been set since, by
+	 * recomputing the bits of these pixels alone.
+	 *
+	 * @param stack
+	 *            stack of masks
+	 * @param xdim
+	 *            the width
+	 * @param ydim
+	 *            the height
+	 * @param zdim
+	 *            the depth
+	 * @param tdim
+	 *            the frame number
+	 * @param bdim
+	 *            the channel number
+	 * @return true if this compiled mask represents the stack again, false if
+	 *         it must be compiled anew
+	 */
+	synchronized boolean update(MaskStack stack, int xdim, int ydim, int zdim,
+			int tdim, int bdim) {
+		if (!compiled || !hasSameMasks(stack, xdim, ydim, zdim, tdim, bdim))
+			return false;
+		long allModifications = Image.getAllModificationCount();
+		long[] counts = new long[images.length];
+		int[][] locs = new int[images.length][];
+		for (int i = 0; i < images.length; i++) {
+			counts[i] = images[i].getModificationCount();
+			if (counts[i] != imageModifications[i]) {
+				locs[i] = images[i].getModifiedPixels(imageModifications[i]);
+				if (locs[i] == null)
+					return false;
+			}
+		}
+		for (int i = 0; i < images.length; i++) {
+			if (locs[i] == null)
+				continue;
+			for (int loc : locs[i])
+				setBit(loc, isInStack(loc));
+			imageModifications[i] = counts[i];
+		}
+		// the readers see the bits once they see this stamp
+		checkedModifications = allModifications;
+		return true;
+	}
+
+	/**
+	 * Asks the stack whether a pixel is present, from the coordinates of its
+	 * linear index.
+	 */
+	private boolean isInStack(int loc) {
+		int b = loc % bdim;
+		int rest = loc / bdim;
+		int x = rest % xdim;
+		rest /= xdim;
+		int y = rest % ydim;
+		rest /= ydim;
+		int z = rest % zdim;
+		int t = rest / zdim;
+		return stack.isInMask(x, y, z, t, b);
+	}
+
+	/**
+	 * Sets the presence of a pixel, storing the bits only while the pixels are
+	 * not all alike.
+	 */
+	private void setBit(int loc, boolean value) {
+		long[] words = bits;
+		if ((words == null ? present : (words[loc >>> 6] & 1L << loc) != 0) == value)
+			return;
+		count += value ? 1 : -1;
+		if (count == 0 || count == size) {
+			present = count > 0;
+			bits = null;
+			return;
+		}
+		if (words == null) {
+			words = new long[(int) ((size + 63) >>> 6)];
+			if (present) {
+				Arrays.fill(words, -1L);
+				if ((size & 63) != 0)
+					words[words.length - 1] = -1L >>> -size;
+			}
+		}
+		if (value)
+			words[loc >>> 6] |= 1L << loc;
+		else
+			words[loc >>> 6] &= ~(1L << loc);
+		bits = words;
+	}
+
+	/**
+	 * @return false if the stack holds masks which cannot be compiled, and must
+	 *         then be queried directly
+	 */
+	public boolean isCompiled() {
+		return compiled;
+	}
+
+	/**
+	 * @return true if the presence of a pixel is the same when asked by its
+	 *         linear index and by its coordinates
+	 */
+	public boolean isLinear() {
+		return linear;
+	}
+
+	/**
+	 * @return true if every pixel is known to be present, whatever the way it
+	 *         is asked, so that the mask can be ignored
+	 */
+	public boolean isFull() {
+		return compiled && linear && bits == null && present;
+	}
+
+	/**
+	 * Tests whether a pixel is present. It must only be used when the mask is
+	 * compiled and linear.
+	 *
+	 * @param loc
+	 *            linear index of the pixel
+	 * @return true if the pixel is present
+	 */
+	public boolean isPresent(int loc) {
+		long[] words = bits;
+		if (words == null)
+			return present;
+		if (loc < 0 || loc >>> 6 >= words.length)
+			return stack.isInMask(loc);
+		return (words[loc >>> 6] & 1L << loc) != 0;
+	}
+
+	/**
+	 * Tests whether a pixel is present. It must only be used when the mask is
+	 * compiled.
+	 *
+	 * @param x
+	 *            horizontal position of the pixel
+	 * @param y
+	 *            vertical position of the pixel
+	 * @param z
+	 *            depth position of the pixel
+	 * @param t
+	 *            time position of the pixel
+	 * @param b
+	 *            channel number of the pixel
+	 * @return true if the pixel is present
+	 */
+	public boolean isPresent(int x, int y, int z, int t, int b) {
+		long[] words = bits;
+		if (words == null)
+			return present;
+		if (x < 0 || y < 0 || z < 0 || t < 0 || b < 0 || x >= xdim
+				|| y >= ydim || z >= zdim || t >= tdim || b >= bdim)
+			return stack.isInMask(x, y, z, t, b);
+		int loc = b + bdim * (x + xdim * (y + ydim * (z + zdim * t)));
+		return (words[loc >>> 6] & 1L << loc) != 0;
+	}
+
+	/**
+	 * Finds the first present pixel from a given linear index, skipping the
+	 * masked pixels 64 at a time. It must only be used when the mask is
+	 * compiled and linear.
+	 *
+	 * @param loc
+	 *            linear index where the search starts
+	 * @return the linear index of the first present pixel at or after loc, -1
+	 *         if there is none
+	 */
+	public int nextPresent(int loc) {
+		if (loc < 0)
+			loc = 0;
+		if (loc >= size)
+			return -1;
+		long[] words = bits;
+		if (words == null)
+			return present ? loc : -1;
+		int w = loc >>> 6;
+		long word = words[w] & -1L << loc;
+		while (word == 0) {
+			if (++w == words.length)
+				return -1;
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+
+	/**
+	 * Finds the first masked pixel from a given linear index, skipping the
+	 * present pixels 64 at a time. It must only be used when the mask is
+	 * compiled and linear.
+	 *
+	 * @param loc
+	 *            linear index where the search starts
+	 * @return the linear index of the first masked pixel at or after loc, the
+	 *         number of pixels if there is none
+	 */
+	public int nextAbsent(int loc) {
+		if (loc < 0)
+			loc = 0;
+		if (loc >= size)
+			return (int) size;
+		long[] words = bits;
+		if (words == null)
+			return present ? (int) size : loc;
+		int w = loc >>> 6;
+		long word = ~words[w] & -1L << loc;
+		while (word == 0) {
+			if (++w == words.length)
+				return (int) size;
+			word = ~words[w];
+		}
+		return (int) Math.min(size, (w << 6) + Long.numberOfTrailingZeros(word));
+	}
+
+}
@@ -41,6 +41,9 @@ public class MaskStack extends Stack<Mask> implements Mask {
 	/** Comparison policy. */
 	private int policy = AND;
 
+	/** Last compiled representation of this stack. */
+	private transient volatile CompiledMask compiled;
+
 	// ////////////////
 	// CONSTRUCTORS //
 	// ////////////////
@@ -394,6 +397,59 @@ public class MaskStack extends Stack<Mask> implements Mask {
 		this.policy = policy;
 	}
 
+	/**
+	 * Get this MaskStack's comparison policy.
+	 * 
+	 * @return one of FALSE, TRUE, AND or OR
+	 */
+	public int getPolicy() {
+		return this.policy;
+	}
+
+	/**
+	 * Gets the number of structural modifications of the stack (masks pushed
+	 * or removed), which tells whether a compiled mask is out of date.
+	 * 
+	 * @return the modification count
+	 */
+	public int getModificationCount() {
+		return this.modCount;
+	}
+
+	/**
+	 * Compiles this stack into a flat representation for an image of the
+	 * given dimensions. The last compiled mask is kept and given back as long
+	 * as the stack and its policy are unchanged, and is updated in place when
+	 * only a few pixels of its BooleanImage masks have been set.
+	 * 
+	 * @param xdim
+	 *            the width
+	 * @param ydim
+	 *            the height
+	 * @param zdim
+	 *            the depth
+	 * @param tdim
+	 *            the frame number
+	 * @param bdim
+	 *            the channel number
+	 * @return the compiled mask
+	 */
+	public CompiledMask compile(int xdim, int ydim, int zdim, int tdim, int bdim) {
+		CompiledMask res = this.compiled;
+		if (res != null && res.isCompiledFrom(this, xdim, ydim, zdim, tdim, bdim))
+			return res;
+		synchronized (this) {
+			res = this.compiled;
+			if (res == null
+					|| !res.isCompiledFrom(this, xdim, ydim, zdim, tdim, bdim)
+					&& !res.update(this, xdim, ydim, zdim, tdim, bdim)) {
+				res = new CompiledMask(this, xdim, ydim, zdim, tdim, bdim);
+				this.compiled = res;
+			}
+			return res;
+		}
+	}
+
 	/**
 	 * Attempts to merge BooleanMasks contained in {@link #mask} if they are all
 	 * equal to each other. A time consumer, but room-saver.
@@ -0,0 +1,299 @@
+package fr.unistra.pelican.util.morphology;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+
+/**
+ * Erosion and dilation kernels with a flat structuring element, working
+ * directly on the pixel arrays of ByteImage, IntegerImage and DoubleImage.</br>
+ *
+ * The points of the structuring element are turned once into linear offsets,
+ * so that a pixel far enough from the borders is computed with a plain loop
+ * over the array. Pixels near the borders only use the points which fall into
+ * the image. The pixel values are compared in their own type, which keeps the
+ * order of the values, so the result is the same as through getPixelDouble
+ * and setPixelDouble.</br>
+ *
+ * These kernels ignore masks: they must only be used when isApplicable holds.
+ *
+ * @author PELICAN team.
+ */
+public class FlatGrayKernels {
+
+	/** Dimensions of the image. */
+	private final int xdim, ydim, zdim, tdim, bdim;
+
+	/** Linear offsets of the points of the structuring element. */
+	private final int[] offsets;
+
+	/** Shifts of the points of the structuring element from its center. */
+	private final int[] dx, dy, dz, dt;
+
+	/** Bounds of the shifts, used to know whether a pixel is near a border. */
+	private int minDx, maxDx, minDy, maxDy, minDz, maxDz, minDt, maxDt;
+
+	/**
+	 * Prepares the kernels of a structuring element for the dimensions of an
+	 * image.
+	 *
+	 * @param image
+	 *            image which will be processed
+	 * @param se
+	 *            flat structuring element
+	 */
+	public FlatGrayKernels(Image image, BooleanImage se) {
+		this.xdim = image.getXDim();
+		this.ydim = image.getYDim();
+		this.zdim = image.getZDim();
+		this.tdim = image.getTDim();
+		this.bdim = image.getBDim();
+		Point4D[] points = se.foreground();
+		Point4D center = se.getCenter();
+		this.offsets = new int[points.length];
+		this.dx = new int[points.length];
+		this.dy = new int[points.length];
+		this.dz = new int[points.length];
+		this.dt = new int[points.length];
+		for (int i = 0; i < points.length; i++) {
+			this.dx[i] = points[i].x - center.x;
+			this.dy[i] = points[i].y - center.y;
+			this.dz[i] = points[i].z - center.z;
+			this.dt[i] = points[i].t - center.t;
+			this.offsets[i] = this.bdim * (this.dx[i] + this.xdim * (this.dy[i]
+					+ this.ydim * (this.dz[i] + this.zdim * this.dt[i])));
+			this.minDx = Math.min(this.minDx, this.dx[i]);
+			this.maxDx = Math.max(this.maxDx, this.dx[i]);
+			this.minDy = Math.min(this.minDy, this.dy[i]);
+			this.maxDy = Math.max(this.maxDy, this.dy[i]);
+			this.minDz = Math.min(this.minDz, this.dz[i]);
+			this.maxDz = Math.max(this.maxDz, this.dz[i]);
+			this.minDt = Math.min(this.minDt, this.dt[i]);
+			this.maxDt = Math.max(this.maxDt, this.dt[i]);
+		}
+	}
+
+	/**
+	 * Indicates whether the kernels can process an image: its pixels must be
+	 * in an array in memory and no mask must restrict the operation.
+	 *
+	 * @param image
+	 *            input image of the operation
+	 * @param mask
+	 *            mask given to the operation, may be null
+	 * @return true if the kernels can be used
+	 */
+	public static boolean isApplicable(Image image, BooleanImage mask) {
+		if (mask != null || image instanceof LargeImageInterface)
+			return false;
+		if (!image.isUnmasked())
+			return false;
+		return image.getClass() == ByteImage.class
+				|| image.getClass() == IntegerImage.class
+				|| image.getClass() == DoubleImage.class;
+	}
+
+	/**
+	 * Computes the erosion or the dilation of the pixels whose linear index is
+	 * in [start,end[. The output must be of the same type as the input. The
+	 * input is only read, and the output is marked as modified once per call.
+	 *
+	 * @param input
+	 *            input image
+	 * @param output
+	 *            output image
+	 * @param dilation
+	 *            true for a dilation, false for an erosion
+	 * @param start
+	 *            first index to compute
+	 * @param end
+	 *            index following the last one to compute
+	 */
+	public void process(Image input, Image output, boolean dilation, int start, int end) {
+		if (input instanceof ByteImage)
+			this.process(((ByteImage) input).getReadOnlyPixelArray(),
+					((ByteImage) output).getPixelArray(), dilation, start, end);
+		else if (input instanceof IntegerImage)
+			this.process(((IntegerImage) input).getReadOnlyPixelArray(),
+					((IntegerImage) output).getPixelArray(), dilation, start, end);
+		else
+			this.process(((DoubleImage) input).getReadOnlyPixelArray(),
+					((DoubleImage) output).getPixelArray(), dilation, start, end);
+		output.setModified();
+	}
+
+	/**
+	 * Indicates whether all the points of the structuring element fall into
+	 * the image when it is centered on the given pixel.
+	 */
+	private boolean isInside(int x, int y, int z, int t) {
+		return x + this.minDx >= 0 && x + this.maxDx < this.xdim
+				&& y + this.minDy >= 0 && y + this.maxDy < this.ydim
+				&& z + this.minDz >= 0 && z + this.maxDz < this.zdim
+				&& t + this.minDt >= 0 && t + this.maxDt < this.tdim;
+	}
+
+	/**
+	 * Indicates whether the k-th point of the structuring element falls into
+	 * the image when it is centered on the given pixel.
+	 */
+	private boolean isInside(int k, int x, int y, int z, int t) {
+		int vx = x + this.dx[k];
+		int vy = y + this.dy[k];
+		int vz = z + this.dz[k];
+		int vt = t + this.dt[k];
+		return vx >= 0 && vx < this.xdim && vy >= 0 && vy < this.ydim
+				&& vz >= 0 && vz < this.zdim && vt >= 0 && vt < this.tdim;
+	}
+
+	private void process(byte[] in, byte[] out, boolean dilation, int start, int end) {
+		int[] off = this.offsets;
+		int n = off.length;
+		int x = (start / this.bdim) % this.xdim;
+		int y = (start / this.bdim / this.xdim) % this.ydim;
+		int z = (start / this.bdim / this.xdim / this.ydim) % this.zdim;
+		int t = start / this.bdim / this.xdim / this.ydim / this.zdim;
+		int b = start % this.bdim;
+		for (int p = start; p < end; p++) {
+			byte v = in[p];
+			if (n > 0 && this.isInside(x, y, z, t)) {
+				v = in[p + off[0]];
+				if (dilation) {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] > v)
+							v = in[p + off[k]];
+				} else {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] < v)
+							v = in[p + off[k]];
+				}
+			} else {
+				boolean flag = false;
+				for (int k = 0; k < n; k++) {
+					if (!this.isInside(k, x, y, z, t))
+						continue;
+					byte w = in[p + off[k]];
+					if (!flag || (dilation ? w > v : w < v))
+						v = w;
+					flag = true;
+				}
+			}
+			out[p] = v;
+			if (++b == this.bdim) {
+				b = 0;
+				if (++x == this.xdim) {
+					x = 0;
+					if (++y == this.ydim) {
+						y = 0;
+						if (++z == this.zdim) {
+							z = 0;
+							t++;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void process(int[] in, int[] out, boolean dilation, int start, int end) {
+		int[] off = this.offsets;
+		int n = off.length;
+		int x = (start / this.bdim) % this.xdim;
+		int y = (start / this.bdim / this.xdim) % this.ydim;
+		int z = (start / this.bdim / this.xdim / this.ydim) % this.zdim;
+		int t = start / this.bdim / this.xdim / this.ydim / this.zdim;
+		int b = start % this.bdim;
+		for (int p = start; p < end; p++) {
+			int v = in[p];
+			if (n > 0 && this.isInside(x, y, z, t)) {
+				v = in[p + off[0]];
+				if (dilation) {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] > v)
+							v = in[p + off[k]];
+				} else {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] < v)
+							v = in[p + off[k]];
+				}
+			} else {
+				boolean flag = false;
+				for (int k = 0; k < n; k++) {
+					if (!this.isInside(k, x, y, z, t))
+						continue;
+					int w = in[p + off[k]];
+					if (!flag || (dilation ? w > v : w < v))
+						v = w;
+					flag = true;
+				}
+			}
+			out[p] = v;
+			if (++b == this.bdim) {
+				b = 0;
+				if (++x == this.xdim) {
+					x = 0;
+					if (++y == this.ydim) {
+						y = 0;
+						if (++z == this.zdim) {
+							z = 0;
+							t++;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private void process(double[] in, double[] out, boolean dilation, int start, int end) {
+		int[] off = this.offsets;
+		int n = off.length;
+		int x = (start / this.bdim) % this.xdim;
+		int y = (start / this.bdim / this.xdim) % this.ydim;
+		int z = (start / this.bdim / this.xdim / this.ydim) % this.zdim;
+		int t = start / this.bdim / this.xdim / this.ydim / this.zdim;
+		int b = start % this.bdim;
+		for (int p = start; p < end; p++) {
+			double v = in[p];
+			if (n > 0 && this.isInside(x, y, z, t)) {
+				v = in[p + off[0]];
+				if (dilation) {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] > v)
+							v = in[p + off[k]];
+				} else {
+					for (int k = 1; k < n; k++)
+						if (in[p + off[k]] < v)
+							v = in[p + off[k]];
+				}
+			} else {
+				boolean flag = false;
+				for (int k = 0; k < n; k++) {
+					if (!this.isInside(k, x, y, z, t))
+						continue;
+					double w = in[p + off[k]];
+					if (!flag || (dilation ? w > v : w < v))
+						v = w;
+					flag = true;
+				}
+			}
+			out[p] = v;
+			if (++b == this.bdim) {
+				b = 0;
+				if (++x == this.xdim) {
+					x = 0;
+					if (++y == this.ydim) {
+						y = 0;
+						if (++z == this.zdim) {
+							z = 0;
+							t++;
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -1,45 +1,377 @@
 package fr.unistra.pelican.util.remotesensing;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
 
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.LargeByteImage;
+import fr.unistra.pelican.LargeDoubleImage;
+import fr.unistra.pelican.LargeIntegerImage;
+import fr.unistra.pelican.util.largeImages.ByteUnit;
+import fr.unistra.pelican.util.largeImages.DoubleUnit;
+import fr.unistra.pelican.util.largeImages.IntegerUnit;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
 
 
 /**
  * You have to extend this abstract class in order to read binary files.
  * For example, BSQReader extends BinReader and overrides getPelicanImage().
  * If you have nothing to do, you should write BIPReader.
- * 
+ *
+ * The samples are read through a FileChannel by blocks, in the byte order of
+ * the header, and converted at once into the arrays of the image. A subclass
+ * only tells where the samples of a band are stored in the binary file, with
+ * getSamplePosition and getRunLength.
+ *
  * @author Clément Hengy
  */
 public abstract class BinReader {
-	
+
+	/** Number of bytes read from the binary file at once. */
+	private static final int BUFFER_SIZE = 1 << 20;
+
 	public HdrReader hr;
 	public File path;
 	public Image img;
-	
+
+	/**
+	 * Whether the samples of data type 12 are 16 bits integers with only 11
+	 * bits coded, read as doubles in [-16,16[. Otherwise they are read as
+	 * unsigned 16 bits integers.
+	 */
+	protected boolean elevenBits = false;
+
 	/**
 	 * This function reads the binary file according to its construction.
 	 * After that, it call setProperties to set up all the properties.
 	 * To finish, it returns the fr.unistra.pelican.Image.
-	 * 
+	 *
 	 * @return the fr.unistra.pelican.Image, built according to the binary file or null if an error occured during the building.
 	 */
 	public abstract Image getPelicanImage()  throws Throwable;
-	
+
 	/**
 	 * This function reads a portion of the binary file according to its construction.
 	 * After that, it call setProperties to set up all the properties.
 	 * To finish, it returns the fr.unistra.pelican.Image.
-	 * 
+	 *
 	 * @return the fr.unistra.pelican.Image, built according to the binary file or null if an error occured during the building.
-	 * @throws Throwable 
+	 * @throws Throwable
 	 */
 	public abstract Image getPelicanImage(int sx, int sy, int ex, int ey) throws Throwable;
-	
+
+	/**
+	 * This function reads the binary file into a large image, unit by unit, so
+	 * that cubes larger than the heap can be loaded.
+	 * After that, it call setProperties to set up all the properties.
+	 *
+	 * @return the fr.unistra.pelican.Image, built according to the binary file or null if an error occured during the building.
+	 * @throws Throwable
+	 */
+	public abstract Image getLargePelicanImage() throws Throwable;
+
+	/**
+	 * Gives the position of a sample in the binary file.
+	 *
+	 * @param pixel	index of the pixel, y*cols+x
+	 * @param band	band of the sample
+	 * @return the position of the sample, counted in samples
+	 */
+	protected abstract long getSamplePosition(long pixel, int band);
+
+	/**
+	 * Gives the number of samples of a band stored one after the other in the
+	 * binary file, from the sample of the given pixel.
+	 *
+	 * @param pixel	index of the pixel, y*cols+x
+	 * @param band	band of the sample
+	 * @return the number of following pixels whose samples are contiguous
+	 */
+	protected abstract long getRunLength(long pixel, int band);
+
+	/**
+	 * Looks for the binary file associated with the header, next to it.
+	 *
+	 * @param extension	extension of the binary files of the format, in lower case
+	 * @return the binary file or null if it is not found
+	 */
+	protected File findBinaryFile(String extension){
+		File binaryFile = null;
+		String hdrPathRadical = this.path.getName().substring(0, this.path.getName().length()-4);
+		File[] subFiles = this.path.getParentFile().listFiles();
+
+		for(int i = 0; i < subFiles.length && (null == binaryFile); ++i){
+			String fileName = subFiles[i].getName();
+			if(fileName.equals(hdrPathRadical) || fileName.equals(hdrPathRadical+".img") || fileName.endsWith(hdrPathRadical+".IMG") || fileName.endsWith(hdrPathRadical+"."+extension) || fileName.endsWith(hdrPathRadical+"."+extension.toUpperCase()))
+				binaryFile = subFiles[i];
+		}
+
+		if(null == binaryFile)
+			System.err.println("getPelicanImage() : Unable to find the associated binary file");
+		return binaryFile;
+	}
+
+	/**
+	 * Reads the whole binary file into an image in memory.
+	 *
+	 * @param binaryFile	the binary file
+	 * @return the image or null if the data type is not supported
+	 */
+	protected Image read(File binaryFile) throws IOException{
+		img = this.newImage(hr.getCols(), hr.getLines(), hr.getBands());
+		if(null == img)
+			return null;
+		FileChannel channel = new RandomAccessFile(binaryFile, "r").getChannel();
+		try{
+			this.readValues(channel, this.newBuffer(), this.getPixels(img), 0, img.size());
+		}finally{
+			channel.close();
+		}
+		img.setModified();
+		this.setProperties();
+		return img;
+	}
+
+	/**
+	 * Reads the rectangle [sx,ex]x[sy,ey] of the binary file into an image in
+	 * memory. Only the samples of the rectangle are read.
+	 *
+	 * @param binaryFile	the binary file
+	 * @return the image or null if the data type is not supported
+	 */
+	protected Image read(File binaryFile, int sx, int sy, int ex, int ey) throws IOException{
+		int xi = hr.getCols();
+		int bi = hr.getBands();
+		int w = ex-sx+1;
+		img = this.newImage(w, ey-sy+1, bi);
+		if(null == img)
+			return null;
+		Object pixels = this.getPixels(img);
+		ByteBuffer buffer = this.newBuffer();
+		FileChannel channel = new RandomAccessFile(binaryFile, "r").getChannel();
+		try{
+			for(int b = 0; b < bi; ++b)
+				for(int y = sy; y <= ey; ++y)
+					this.readRun(channel, buffer, (long) y*xi + sx, b, w, pixels, (y-sy)*w*bi + b, bi);
+		}finally{
+			channel.close();
+		}
+		img.setModified();
+		this.setProperties();
+		return img;
+	}
+
+	/**
+	 * Reads the whole binary file into a large image. Each unit is filled at
+	 * once from the binary file, then handed to the image, which pages it out
+	 * when the memory is needed.
+	 *
+	 * @param binaryFile	the binary file
+	 * @return the image or null if the data type is not supported
+	 */
+	protected Image readLarge(File binaryFile) throws IOException{
+		int xi = hr.getCols();
+		int yi = hr.getLines();
+		int bi = hr.getBands();
+		switch(hr.getDataType()){
+			case 1:
+				img = new LargeByteImage(xi, yi, 1, 1, bi);
+				break;
+			case 2:
+			case 3:
+				img = new LargeIntegerImage(xi, yi, 1, 1, bi);
+				break;
+			case 4:
+			case 5:
+				img = new LargeDoubleImage(xi, yi, 1, 1, bi);
+				break;
+			case 12:
+				img = elevenBits ? new LargeDoubleImage(xi, yi, 1, 1, bi) : new LargeIntegerImage(xi, yi, 1, 1, bi);
+				break;
+			default:
+				System.err.println("getPelicanImage() : Unsupported data type "+hr.getDataType());
+				return null;
+		}
+		LargeImageInterface largeIm = (LargeImageInterface) img;
+		long size = (long) xi*yi*bi;
+		int unitSize = largeIm.getUnitSize();
+		ByteBuffer buffer = this.newBuffer();
+		FileChannel channel = new RandomAccessFile(binaryFile, "r").getChannel();
+		try{
+			for(int id = 0; id < largeIm.getUnitDim(); ++id){
+				long start = (long) id*unitSize;
+				int length = (int) Math.min(unitSize, size-start);
+				if(img instanceof ByteImage){
+					byte[] pixels = new byte[unitSize];
+					this.readValues(channel, buffer, pixels, start, length);
+					ByteUnit unit = (ByteUnit) largeIm.newUnit();
+					unit.setPixels(pixels);
+					largeIm.setUnit(unit, id, true);
+				}else if(img instanceof IntegerImage){
+					int[] pixels = new int[unitSize];
+					this.readValues(channel, buffer, pixels, start, length);
+					IntegerUnit unit = (IntegerUnit) largeIm.newUnit();
+					unit.setPixels(pixels);
+					largeIm.setUnit(unit, id, true);
+				}else{
+					double[] pixels = new double[unitSize];
+					this.readValues(channel, buffer, pixels, start, length);
+					DoubleUnit unit = (DoubleUnit) largeIm.newUnit();
+					unit.setPixels(pixels);
+					largeIm.setUnit(unit, id, true);
+				}
+			}
+		}finally{
+			channel.close();
+		}
+		this.setProperties();
+		return img;
+	}
+
+	/**
+	 * Creates an image in memory for the data type of the header.
+	 */
+	private Image newImage(int xdim, int ydim, int bdim){
+		switch(hr.getDataType()){
+			case 1:
+				return new ByteImage(xdim, ydim, 1, 1, bdim);
+			case 2:
+			case 3:
+				return new IntegerImage(xdim, ydim, 1, 1, bdim);
+			case 4:
+			case 5:
+				return new DoubleImage(xdim, ydim, 1, 1, bdim);
+			case 12:
+				return elevenBits ? new DoubleImage(xdim, ydim, 1, 1, bdim) : new IntegerImage(xdim, ydim, 1, 1, bdim);
+			default:
+				System.err.println("getPelicanImage() : Unsupported data type "+hr.getDataType());
+				return null;
+		}
+	}
+
+	private Object getPixels(Image image){
+		if(image instanceof ByteImage)
+			return ((ByteImage) image).getPixelArray();
+		if(image instanceof IntegerImage)
+			return ((IntegerImage) image).getPixelArray();
+		return ((DoubleImage) image).getPixelArray();
+	}
+
+	private ByteBuffer newBuffer(){
+		return ByteBuffer.allocateDirect(BUFFER_SIZE).order(hr.getByteOrder() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Reads the values [start,start+length[ of the image, as they are
+	 * ordered in the images, into the beginning of an array.
+	 */
+	private void readValues(FileChannel channel, ByteBuffer buffer, Object pixels, long start, int length) throws IOException{
+		int bi = hr.getBands();
+		long end = start + length;
+		for(int b = 0; b < bi; ++b){
+			// pixels whose sample of band b is in [start,end[
+			long first = (start - b + bi - 1) / bi;
+			long last = (end - b + bi - 1) / bi;
+			if(first < last)
+				this.readRun(channel, buffer, first, b, (int) (last-first), pixels, (int) (first*bi + b - start), bi);
+		}
+	}
+
+	/**
+	 * Reads the samples of a band for consecutive pixels into an array.
+	 *
+	 * @param pixel	first pixel, y*cols+x
+	 * @param band	band of the samples
+	 * @param count	number of pixels
+	 * @param pixels	array of the image
+	 * @param dest	index of the first sample in the array
+	 * @param stride	distance between two samples in the array
+	 */
+	private void readRun(FileChannel channel, ByteBuffer buffer, long pixel, int band, int count, Object pixels, int dest, int stride) throws IOException{
+		int bytesNumber = hr.getBytesNumber();
+		while(count > 0){
+			int n = (int) Math.min(Math.min(count, this.getRunLength(pixel, band)), buffer.capacity()/bytesNumber);
+			long position = this.getSamplePosition(pixel, band) * bytesNumber;
+			buffer.clear();
+			buffer.limit(n*bytesNumber);
+			while(buffer.hasRemaining())
+				if(channel.read(buffer, position + buffer.position()) < 0)
+					throw new IOException("Unexpected end of the binary file");
+			buffer.flip();
+			this.convert(buffer, n, pixels, dest, stride);
+			pixel += n;
+			dest += n*stride;
+			count -= n;
+		}
+	}
+
+	/**
+	 * Converts samples from the buffer into the array of the image.
+	 */
+	private void convert(ByteBuffer buffer, int n, Object pixels, int dest, int stride){
+		switch(hr.getDataType()){
+			case 1:
+				byte[] bytes = (byte[]) pixels;
+				for(int i = 0; i < n; ++i, dest += stride)
+					bytes[dest] = (byte) (buffer.get(i) + Byte.MIN_VALUE);
+				break;
+			case 2:
+				int[] shorts = (int[]) pixels;
+				ShortBuffer shortBuffer = buffer.asShortBuffer();
+				for(int i = 0; i < n; ++i, dest += stride)
+					shorts[dest] = shortBuffer.get(i);
+				break;
+			case 3:
+				if(stride == 1){
+					buffer.asIntBuffer().get((int[]) pixels, dest, n);
+				}else{
+					int[] ints = (int[]) pixels;
+					for(int i = 0; i < n; ++i, dest += stride)
+						ints[dest] = buffer.getInt(4*i);
+				}
+				break;
+			case 4:
+				double[] floats = (double[]) pixels;
+				for(int i = 0; i < n; ++i, dest += stride)
+					floats[dest] = buffer.getFloat(4*i);
+				break;
+			case 5:
+				if(stride == 1){
+					buffer.asDoubleBuffer().get((double[]) pixels, dest, n);
+				}else{
+					double[] doubles = (double[]) pixels;
+					for(int i = 0; i < n; ++i, dest += stride)
+						doubles[dest] = buffer.getDouble(8*i);
+				}
+				break;
+			case 12:
+				ShortBuffer samples = buffer.asShortBuffer();
+				if(elevenBits){
+					// pixel 16 bits mais seulement 11 bits de codé
+					double _2pow11 = 1./Math.pow(2, 11);
+					double[] values = (double[]) pixels;
+					for(int i = 0; i < n; ++i, dest += stride)
+						values[dest] = samples.get(i)*_2pow11;
+				}else{
+					int[] values = (int[]) pixels;
+					for(int i = 0; i < n; ++i, dest += stride)
+						values[dest] = samples.get(i) & 0xFFFF;
+				}
+				break;
+		}
+	}
+
 	public void setProperties(){
 		int i = 0;
-		
+
 		img.setProperty(HdrReader.DESCRIPION_ENVI, hr.getDescription());
 		img.setProperty(HdrReader.SAMPLE_ENVI, hr.getCols());
 		img.setProperty(HdrReader.LINES_ENVI, hr.getLines());
@@ -52,6 +384,6 @@ public abstract class BinReader {
 		if(0 != hr.getWavelength().length)
 			for(double wave : hr.getWavelength())
 				img.setProperty(HdrReader.WAVELENGTH_ENVI+(i++), wave);
-		
+
 	}
 }
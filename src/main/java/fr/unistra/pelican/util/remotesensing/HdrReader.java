@@ -255,6 +255,35 @@ public final class HdrReader {
 		}
 	}
 	
+	/**
+	 * Reads the binary file into a large image, unit by unit, for cubes which
+	 * do not fit in memory.
+	 * 
+	 * @param path	path of the header file
+	 * @return the fr.unistra.pelican Image generated  
+	 */
+	public Image getLargePelicanImage(String path){
+		this.readHeader(path);
+		switch(this.fileType){
+			case HdrReader.FORMAT_BSQ:
+				br = new BSQReader(this, path);
+				break;
+			case HdrReader.FORMAT_BIL:
+				br = new BILReader(this, path);
+				break;
+			default:
+				System.err.println("getLargePelicanImage(String) : the asked format is currently not supported");
+				return null;
+		}
+		
+		headerPath = path;
+		try{
+			return br.getLargePelicanImage();
+		}catch(Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+	
 	/**
 	 * Determines the tag corresponding with the line of a header file.
 	 * @param line	a line contained in the header file.
@@ -1,7 +1,6 @@
 package fr.unistra.pelican.util.vectorial.orders;
 
 import java.util.Arrays;
-import java.util.Comparator;
 
 import fr.unistra.pelican.util.Tools;
 import fr.unistra.pelican.util.vectorial.VectorPixel;
@@ -13,7 +12,7 @@ import fr.unistra.pelican.util.vectorial.VectorPixel;
  *
  */
 
-public class LexicographicalOrdering implements BinaryVectorialOrdering,Comparator
+public class LexicographicalOrdering implements BinaryVectorialOrdering,TotalVectorialOrdering
 {
 	/**
 	 * number of comparisons
@@ -1,7 +1,6 @@
 package fr.unistra.pelican.util.vectorial.orders;
 
 import java.util.Arrays;
-import java.util.Comparator;
 
 import fr.unistra.pelican.util.Tools;
 import fr.unistra.pelican.util.vectorial.VectorPixel;
@@ -14,7 +13,7 @@ import fr.unistra.pelican.util.vectorial.VectorPixel;
  *
  */
 
-public class NormBasedOrdering implements BinaryVectorialOrdering,Comparator
+public class NormBasedOrdering implements BinaryVectorialOrdering,TotalVectorialOrdering
 {
 	private double[] d = null;
 
@@ -0,0 +1,22 @@
+package fr.unistra.pelican.util.vectorial.orders;
+
+import java.util.Comparator;
+
+/**
+ * A VectorialOrdering whose extrema only depend on the comparison of the vectors two by two,
+ * the comparison being the same for every set of vectors (no adaptive or pixel dependent
+ * reference).
+ * 
+ * Such an ordering can be replaced by the ranks of the vectors of an image, computed once,
+ * so that vectorial operators run as their gray counterparts on the ranks.
+ * Vectors which compare equal while being different get different ranks, following
+ * the lexicographical order of their components.
+ * 
+ * @author PELICAN team.
+ *
+ */
+
+public interface TotalVectorialOrdering extends VectorialOrdering,Comparator<Object>
+{
+	public int compare(Object o1,Object o2);
+}
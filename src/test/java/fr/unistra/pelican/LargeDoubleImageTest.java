@@ -396,6 +396,12 @@ public class LargeDoubleImageTest {
 		for (long i=0;i<mandrillLarge.size() ;i++){
 			assertEquals(""+i,mandrillClassic.getPixelDouble(i),mandrillLarge.getPixelDouble(i),0.000001);
 		}		
+		
+		// the statistics cached before the fill must not be kept
+		assertEquals(0.32,mandrillLarge.maximum(0),0.000001);
+		mandrillLarge.fill(0,0.9);
+		assertEquals(0.9,mandrillLarge.maximum(0),0.000001);
+		assertEquals(0.9,mandrillLarge.minimum(0),0.000001);
 	}	
 	
 	@Test
@@ -1,6 +1,7 @@
 package fr.unistra.pelican;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 
 import org.junit.Test;
@@ -11,7 +12,13 @@ import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.IntegerImage;
 import fr.unistra.pelican.PelicanException;
+import fr.unistra.pelican.algorithms.arithmetic.Addition;
+import fr.unistra.pelican.algorithms.morphology.gray.GrayErosion;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+import fr.unistra.pelican.util.largeImages.LargeImageMemoryManager;
 import fr.unistra.pelican.util.largeImages.LargeImageUtil;
+import fr.unistra.pelican.util.largeImages.Unit;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
 
 import fr.unistra.pelican.LargeBooleanImage;
 import fr.unistra.pelican.LargeByteImage;
@@ -49,7 +56,7 @@ public class LargeImageUtilTest {
 	public void calculateTest(){
 		//Base Time 93
 		LargeBooleanImage largeIm = new LargeBooleanImage(1024,1024,1024,1,3);
-		assertEquals("This test depends on the size of the Tenured generation",384,largeIm.getUnitDim());
+		assertEquals("This test depends on the maximal direct memory",384,largeIm.getUnitDim());
 		assertEquals(3221225472L,largeIm.sizeL());
 	}
 	
@@ -113,6 +120,132 @@ public class LargeImageUtilTest {
 		
 	}
 	
+	@Test
+	public void discardAndLoadTest(){
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,Math.random());
+		}
+		
+		LargeDoubleImage largeIm = new LargeDoubleImage(doubleImage,true,1);
+		assertEquals((long)largeIm.getUnitSize()*LargeImageUtil.DOUBLE_DATALENGTH,largeIm.getUnitLength());
+		
+		for (int u=0;u<largeIm.getUnitDim();u++){
+			largeIm.discardUnit(u);
+		}
+		for (int i =0;i<doubleImage.size();i++){
+			assertEquals(doubleImage.getPixelDouble(i),largeIm.getPixelDouble(i),0.0);
+		}
+		
+		LargeBooleanImage booleanIm = new LargeBooleanImage(512,512,1,1,3,1);
+		booleanIm.setPixelBoolean(12345L,true);
+		for (int u=0;u<booleanIm.getUnitDim();u++){
+			booleanIm.discardUnit(u);
+		}
+		assertEquals(true,booleanIm.getPixelBoolean(12345L));
+		assertEquals(false,booleanIm.getPixelBoolean(12346L));
+	}
+	
+	@Test
+	public void memoryBudgetTest(){
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		long budget = manager.getMemoryBudget();
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,i);
+		}
+		LargeDoubleImage largeIm = new LargeDoubleImage(doubleImage,true,1);
+		try{
+			manager.setMemoryBudget(2*largeIm.getUnitLength());
+			assertTrue(manager.getResidentBytes()<=2*largeIm.getUnitLength());
+			for (int i =0;i<doubleImage.size();i++){
+				assertEquals(i,largeIm.getPixelDouble(i),0.0);
+			}
+			assertTrue(largeIm.getMap().size()<=2);
+		}finally{
+			manager.setMemoryBudget(budget);
+		}
+	}
+	
+	@Test
+	public void imageMemoryBudgetTest(){
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		LargeIntegerImage largeIm = new LargeIntegerImage(512,512,1,1,3,1);
+		manager.setMemoryBudget(largeIm,largeIm.getUnitLength());
+		for (int i =0;i<largeIm.size();i++){
+			largeIm.setPixelInt(i,i);
+		}
+		assertTrue(manager.getResidentBytes(largeIm)<=largeIm.getUnitLength());
+		for (int i =0;i<largeIm.size();i++){
+			assertEquals(i,largeIm.getPixelInt(i));
+		}
+	}
+	
+	@Test
+	public void budgetBelowAnUnitTest(){
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		LargeIntegerImage largeIm = new LargeIntegerImage(512,512,1,1,3,1);
+		manager.setMemoryBudget(largeIm,largeIm.getUnitLength()/2);
+		for (int i =0;i<largeIm.size();i++){
+			largeIm.setPixelInt(i,i);
+			assertEquals(i,largeIm.getPixelInt(i));
+		}
+		for (int u=0;u<largeIm.getUnitDim();u++){
+			if (largeIm.getMap().containsKey(u)){
+				largeIm.discardUnit(u);
+			}
+		}
+		for (int i =0;i<largeIm.size();i++){
+			assertEquals(i,largeIm.getPixelInt(i));
+		}
+	}
+
+	@Test
+	public void closeTest(){
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		LargeIntegerImage largeIm = new LargeIntegerImage(512,512,1,1,3,1);
+		largeIm.setPixelInt(0,1);
+		long resident = manager.getResidentBytes();
+		long own = manager.getResidentBytes(largeIm);
+		assertTrue(own>0);
+		Unit unit = largeIm.getMap().get(0);
+		largeIm.close();
+		assertEquals(null,manager.getLock(largeIm.getMemoryId()));
+		assertTrue(manager.getResidentBytes()<=resident-own);
+		long closed = manager.getResidentBytes();
+		// an unit loaded while its image is closed is not managed anymore
+		manager.notifyUsage(unit);
+		assertEquals(closed,manager.getResidentBytes());
+		largeIm.close();
+	}
+
+	@Test
+	public void tileExecutorTest(){
+		LargeImageMemoryManager manager = LargeImageMemoryManager.getInstance();
+		long budget = manager.getMemoryBudget();
+		DoubleImage doubleImage = new DoubleImage(512,512,1,1,3);
+		for (int i =0;i<doubleImage.size();i++){
+			doubleImage.setPixelDouble(i,i);
+		}
+		LargeDoubleImage largeIm = new LargeDoubleImage(doubleImage,true,1);
+		try{
+			manager.setMemoryBudget(largeIm.getUnitLength());
+			Image sum = Addition.exec(largeIm,largeIm);
+			assertTrue(sum instanceof LargeImageInterface);
+			for (int i =0;i<doubleImage.size();i++){
+				assertEquals(2*i,sum.getPixelDouble(i),0.0);
+			}
+			Image erosion = GrayErosion.exec(largeIm,FlatStructuringElement2D.createCrossFlatStructuringElement(1));
+			Image expected = GrayErosion.exec(doubleImage,FlatStructuringElement2D.createCrossFlatStructuringElement(1));
+			for (int i =0;i<doubleImage.size();i++){
+				assertEquals(expected.getPixelDouble(i),erosion.getPixelDouble(i),0.0);
+			}
+		}finally{
+			manager.setMemoryBudget(budget);
+		}
+	}
+	
 	/*
 	@Test
 	public void fillTest(){
@@ -0,0 +1,86 @@
+package fr.unistra.pelican.algorithms.frequential;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+
+public class FFT2Test {
+
+	@Test
+	public void testSameAsDFT() {
+		Random random = new Random(4);
+		int[][] dims = { { 6, 5, 1, 2 }, { 7, 4, 3, 1 }, { 1, 9, 2, 2 } };
+		for (int[] d : dims)
+			for (int real = 0; real < 2; real++) {
+				DoubleImage re = new DoubleImage(d[0], d[1], d[2], 1, d[3]);
+				DoubleImage im = new DoubleImage(re, false);
+				for (int p = 0; p < re.size(); p++) {
+					re.setPixelDouble(p, random.nextDouble());
+					if (real == 0)
+						im.setPixelDouble(p, random.nextDouble());
+				}
+				DoubleImage[] actual = FFT2.exec(re.copyImage(true),
+					real == 0 ? im.copyImage(true) : null, false, 2, true);
+				for (int b = 0; b < d[3]; b++)
+					for (int x = 0; x < d[0]; x++)
+						for (int y = 0; y < d[1]; y++)
+							for (int z = 0; z < d[2]; z++) {
+								double sr = 0, si = 0;
+								for (int u = 0; u < d[0]; u++)
+									for (int v = 0; v < d[1]; v++)
+										for (int w = 0; w < d[2]; w++) {
+											double a = -2 * Math.PI
+												* ((double) x * u / d[0] + (double) y * v / d[1] + (double) z
+													* w / d[2]);
+											double r = re.getPixelXYZBDouble(u, v, w, b);
+											double i = im.getPixelXYZBDouble(u, v, w, b);
+											sr += r * Math.cos(a) - i * Math.sin(a);
+											si += r * Math.sin(a) + i * Math.cos(a);
+										}
+								assertEquals(sr, actual[0].getPixelXYZBDouble(x, y, z, b), 1e-10);
+								assertEquals(si, actual[1].getPixelXYZBDouble(x, y, z, b), 1e-10);
+							}
+
+				DoubleImage[] back = FFT2.exec(actual[0], actual[1], true, 0, true);
+				for (int p = 0; p < re.size(); p++) {
+					assertEquals(re.getPixelDouble(p), back[0].getPixelDouble(p), 1e-10);
+					assertEquals(im.getPixelDouble(p), back[1].getPixelDouble(p), 1e-10);
+				}
+			}
+	}
+
+	@Test
+	public void testSlicesByDefault() {
+		Random random = new Random(5);
+		for (int real = 0; real < 2; real++) {
+			DoubleImage re = new DoubleImage(6, 5, 2, 1, 2);
+			DoubleImage im = new DoubleImage(re, false);
+			for (int p = 0; p < re.size(); p++) {
+				re.setPixelDouble(p, random.nextDouble());
+				if (real == 0)
+					im.setPixelDouble(p, random.nextDouble());
+			}
+			DoubleImage[] actual = FFT2.exec(re.copyImage(true),
+				real == 0 ? im.copyImage(true) : null, false);
+			// each depth slice is transformed as a 2D image of its own
+			for (int z = 0; z < re.getZDim(); z++) {
+				DoubleImage[] slice = FFT2.exec((DoubleImage) re.getImage4D(z, Image.Z),
+					real == 0 ? (DoubleImage) im.getImage4D(z, Image.Z) : null, false);
+				for (int y = 0; y < re.getYDim(); y++)
+					for (int x = 0; x < re.getXDim(); x++)
+						for (int b = 0; b < re.getBDim(); b++) {
+							assertEquals(slice[0].getPixelXYBDouble(x, y, b), actual[0]
+								.getPixelXYZBDouble(x, y, z, b), 1e-10);
+							assertEquals(slice[1].getPixelXYBDouble(x, y, b), actual[1]
+								.getPixelXYZBDouble(x, y, z, b), 1e-10);
+						}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+package fr.unistra.pelican.algorithms.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.LargeDoubleImage;
+import fr.unistra.pelican.util.largeImages.LargeImageInterface;
+
+public class PelicanRawImageTest {
+
+	private static DoubleImage randomImage() {
+		Random random = new Random(3);
+		DoubleImage image = new DoubleImage(37, 21, 3, 2, 2);
+		for (int i = 0; i < image.size(); i++)
+			image.setPixelDouble(i, random.nextDouble());
+		image.setName("random");
+		image.setProperty("seed", 3);
+		BooleanImage mask = new BooleanImage(37, 21, 3, 2, 2);
+		mask.fill(true);
+		mask.setPixelBoolean(7, false);
+		image.pushMask(mask);
+		return image;
+	}
+
+	private static void assertSameAttributes(Image expected, Image actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getProperty("seed"), actual.getProperty("seed"));
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.isPresent(i), actual.isPresent((long) i));
+	}
+
+	private static void assertSamePixels(Image expected, Image actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int i = 0; i < expected.size(); i++)
+			assertEquals(expected.getPixelDouble(i), actual.getPixelDouble((long) i), 0);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File file = File.createTempFile("raw", ".pelr");
+		try {
+			DoubleImage image = randomImage();
+			PelicanRawImageSave.exec(image, file.getPath());
+			Image loaded = PelicanRawImageLoad.exec(file.getPath());
+			assertTrue(loaded instanceof DoubleImage);
+			assertEquals("random", loaded.getName());
+			assertSamePixels(image, loaded);
+			assertSameAttributes(image, loaded);
+			assertFalse(loaded.isPresent(7));
+
+			ByteImage bytes = new ByteImage(5, 4, 1, 1, 3);
+			for (int i = 0; i < bytes.size(); i++)
+				bytes.setPixelByte(i, (i * 37) % 256);
+			PelicanRawImageSave.exec(bytes, file.getPath(), true);
+			assertSamePixels(bytes, ImageLoader.exec(file.getPath()));
+
+			BooleanImage booleans = new BooleanImage(6, 7, 1, 1, 1);
+			booleans.setPixelBoolean(5, true);
+			PelicanRawImageSave.exec(booleans, file.getPath());
+			assertSamePixels(booleans, PelicanRawImageLoad.exec(file.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSlice() throws IOException {
+		File file = File.createTempFile("raw", ".pelr");
+		try {
+			DoubleImage image = randomImage();
+			for (boolean compression : new boolean[] { false, true }) {
+				PelicanRawImageSave.exec(image, file.getPath(), compression);
+				Image slice = PelicanRawImageLoad.exec(file.getPath(), 2, 1);
+				assertEquals(1, slice.getZDim());
+				assertEquals(1, slice.getTDim());
+				for (int y = 0; y < image.getYDim(); y++)
+					for (int x = 0; x < image.getXDim(); x++)
+						for (int b = 0; b < image.getBDim(); b++)
+							assertEquals(image.getPixelXYZTBDouble(x, y, 2, 1, b),
+								slice.getPixelXYBDouble(x, y, b), 0);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testLargeImage() throws IOException {
+		File file = File.createTempFile("raw", ".pelr");
+		try {
+			DoubleImage image = randomImage();
+			LargeDoubleImage largeIm = new LargeDoubleImage(image, true, 10);
+			PelicanRawImageSave.exec(largeIm, file.getPath());
+			largeIm.close();
+			assertSamePixels(image, PelicanRawImageLoad.exec(file.getPath()));
+			byte[] bytes = Files.readAllBytes(file.toPath());
+
+			// the pixels set on the mapped image are not written to the file
+			Image mapped = PelicanRawImageLoad.exec(file.getPath(), true);
+			assertTrue(mapped instanceof LargeImageInterface);
+			assertSamePixels(image, mapped);
+			assertSameAttributes(image, mapped);
+			mapped.setPixelDouble(100L, -1.0);
+			mapped.setPixelDouble((long) image.size() - 1, -1.0);
+			// the modified units are read back from the working file
+			LargeImageInterface largeMapped = (LargeImageInterface) mapped;
+			for (Integer id : new ArrayList<Integer>(largeMapped.getMap().keySet()))
+				largeMapped.discardUnit(id);
+			assertEquals(-1.0, mapped.getPixelDouble(100L), 0);
+			assertEquals(-1.0, mapped.getPixelDouble((long) image.size() - 1), 0);
+			largeMapped.close();
+			assertTrue(file.exists());
+			assertEquals(bytes.length, file.length());
+			assertArrayEquals(bytes, Files.readAllBytes(file.toPath()));
+			assertSamePixels(image, PelicanRawImageLoad.exec(file.getPath()));
+		} finally {
+			file.delete();
+		}
+	}
+}
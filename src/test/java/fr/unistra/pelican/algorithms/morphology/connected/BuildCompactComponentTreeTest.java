@@ -0,0 +1,164 @@
+package fr.unistra.pelican.algorithms.morphology.connected;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.morphology.connected.FilterComponentTree.FilterStrategy;
+import fr.unistra.pelican.algorithms.morphology.connected.ReconstructImageFromTree.Data;
+import fr.unistra.pelican.util.connectivityTrees.CompactComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.ComponentNode;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTree;
+import fr.unistra.pelican.util.connectivityTrees.ComponentTreeUtil.TreeType;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AreaAttributFilter;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AreaAttributFilter.LimiteIs;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeCompactness;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeFilter;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributePerimetre;
+import fr.unistra.pelican.util.connectivityTrees.attributes.AttributeVolume;
+import fr.unistra.pelican.util.connectivityTrees.attributes.CompactAttributeCompactness;
+import fr.unistra.pelican.util.connectivityTrees.attributes.CompactAttributeThresholdFilter;
+import fr.unistra.pelican.util.connectivityTrees.attributes.CompactAttributeVolume;
+import fr.unistra.pelican.util.connectivityTrees.attributes.ComponentAttributeThresholdFilter;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.Connectivity3D;
+import fr.unistra.pelican.util.connectivityTrees.connectivity.TrivialConnectivity;
+
+public class BuildCompactComponentTreeTest {
+
+	@Test
+	public void testSmallTree() {
+		DoubleImage im = new DoubleImage(3,5,1,1,1);
+		im.setPixels(new double[]{110,90,100,50,50,50,40,20,50,50,50,50,120,70,80});
+		CompactComponentTree tree = BuildCompactComponentTree.exec(im, TrivialConnectivity.getFourNeighbourhood());
+
+		assertEquals(9, tree.countNodes());
+		assertEquals(4, tree.countLeaf());
+		assertEquals(7, tree.getRootIndex());
+		assertEquals(15, tree.getArea(tree.getRootIndex()));
+		assertEquals(13, tree.getArea(tree.findIndexAt(0, 1, 0)));
+	}
+
+	@Test
+	public void testSameAsComponentTree() {
+		Random random = new Random(1);
+		Connectivity3D [] connectivities = {TrivialConnectivity.getFourNeighbourhood(), TrivialConnectivity.getHeightNeighbourhood()};
+		for (int i = 0; i < 40; i++) {
+			Image im = (i % 2 == 0) ? new ByteImage(9, 7, 1, 1, 1) : new DoubleImage(9, 7, 1, 1, 1);
+			for (int p = 0; p < im.size(); p++)
+				im.setPixelDouble(p, random.nextInt(5) / 4.0);
+			Connectivity3D con = connectivities[i % 4 / 2];
+			TreeType treeType = (i % 8 < 4) ? TreeType.Max : TreeType.Min;
+			FilterStrategy strategy = FilterStrategy.values()[i % 3];
+			AreaAttributFilter filter = new AreaAttributFilter(1 + random.nextInt(8));
+
+			ComponentTree<Double> expected = BuildComponentTree.exec(im, con, treeType);
+			ComponentTree<Double> actual = BuildCompactComponentTree.exec(im, con, treeType);
+			assertEquals(expected.countNodes(), actual.countNodes());
+			assertEquals(expected.countLeaf(), actual.countLeaf());
+			assertSame(ReconstructImageFromTree.exec(expected, Data.Area), ReconstructImageFromTree.exec(actual, Data.Area));
+
+			expected = FilterComponentTree.exec(expected, filter, strategy);
+			actual = FilterComponentTree.exec(actual, filter, strategy);
+			assertSame(ReconstructImageFromTree.exec(expected), ReconstructImageFromTree.exec(actual));
+			assertSame(ReconstructImageFromTree.exec(expected, true), ReconstructImageFromTree.exec(actual, true));
+		}
+	}
+
+	@Test
+	public void testParallelSameAsSequential() {
+		Random random = new Random(2);
+		ByteImage im = new ByteImage(600, 300, 1, 1, 1);
+		for (int p = 0; p < im.size(); p++)
+			im.setPixelByte(p, random.nextInt(8) * 32);
+		Connectivity3D con = TrivialConnectivity.getHeightNeighbourhood();
+		for (TreeType treeType : TreeType.values()) {
+			CompactComponentTree expected = BuildCompactComponentTree.exec(im, con, treeType, 1);
+			CompactComponentTree actual = BuildCompactComponentTree.exec(im, con, treeType, 4);
+			assertEquals(expected.countNodes(), actual.countNodes());
+			assertEquals(expected.countLeaf(), actual.countLeaf());
+			assertSame(ReconstructImageFromTree.exec(expected, Data.Area), ReconstructImageFromTree.exec(actual, Data.Area));
+
+			// parents are sorted before their children
+			int [] rank = new int[actual.size()];
+			for (int i = 0; i < actual.size(); i++)
+				rank[actual.getSortedPixel(i)] = i;
+			for (int p = 0; p < actual.size(); p++)
+				if (p != actual.getRootIndex())
+					assertEquals(true, rank[actual.getParent(p)] < rank[p]);
+
+			AreaAttributFilter filter = new AreaAttributFilter(20);
+			FilterComponentTree.exec((ComponentTree<Double>) expected, filter, FilterStrategy.Min);
+			FilterComponentTree.exec((ComponentTree<Double>) actual, filter, FilterStrategy.Min);
+			assertSame(ReconstructImageFromTree.exec(expected), ReconstructImageFromTree.exec(actual));
+		}
+	}
+
+	@Test
+	public void testAttributes() {
+		Random random = new Random(4);
+		for (int i = 0; i < 10; i++) {
+			DoubleImage im = new DoubleImage(12, 9, 1, 1, 1);
+			for (int p = 0; p < im.size(); p++)
+				im.setPixelDouble(p, random.nextInt(4) / 4.0);
+			Connectivity3D con = TrivialConnectivity.getFourNeighbourhood();
+			TreeType treeType = (i % 2 == 0) ? TreeType.Max : TreeType.Min;
+
+			ComponentTree<Double> expected = BuildComponentTree.exec(im, con, treeType);
+			expected.addAttribute(new AttributeVolume());
+			expected.addAttribute(new AttributePerimetre());
+			expected.addAttribute(new AttributeCompactness());
+			CompactComponentTree actual = BuildCompactComponentTree.exec(im, con, treeType,
+					new CompactAttributeVolume(), new CompactAttributeCompactness());
+			for (int y = 0; y < im.ydim; y++)
+				for (int x = 0; x < im.xdim; x++) {
+					ComponentNode<Double> n = expected.findNodeAt(x, y, 0);
+					int node = actual.findIndexAt(x, y, 0);
+					assertEquals(n.getAttributeValue(AttributeVolume.class),
+							actual.getAttribute(CompactAttributeVolume.class).getValue(node), 1e-9);
+					assertEquals(n.getAttributeValue(AttributeCompactness.class),
+							actual.getAttribute(CompactAttributeCompactness.class).getValue(node), 1e-12);
+				}
+
+			AttributeFilter [] filters = {new AreaAttributFilter(3), new ComponentAttributeThresholdFilter(AttributeCompactness.class, 0.04)};
+			AttributeFilter [] compactFilters = {new AreaAttributFilter(3), new CompactAttributeThresholdFilter(CompactAttributeCompactness.class, 0.04)};
+			expected = FilterComponentTree.exec(expected, filters, FilterStrategy.Min);
+			actual = (CompactComponentTree) FilterComponentTree.exec((ComponentTree<Double>) actual, compactFilters, FilterStrategy.Min);
+			assertSame(ReconstructImageFromTree.exec(expected), ReconstructImageFromTree.exec(actual));
+		}
+	}
+
+	@Test
+	public void testThresholdBoundary() {
+		DoubleImage im = new DoubleImage(3,5,1,1,1);
+		im.setPixels(new double[]{110,90,100,50,50,50,40,20,50,50,50,50,120,70,80});
+		CompactComponentTree tree = BuildCompactComponentTree.exec(im, TrivialConnectivity.getFourNeighbourhood(),
+				TreeType.Max, new CompactAttributeVolume());
+		CompactAttributeVolume volume = tree.getAttribute(CompactAttributeVolume.class);
+		for (int p = 0; p < im.size(); p++) {
+			int node = tree.findIndexAt(p % 3, p / 3, 0);
+			double v = volume.getValue(node);
+			// a node whose attribute equals the threshold is removed, as with AreaAttributFilter
+			for (LimiteIs limiteIs : LimiteIs.values())
+				assertFalse(new CompactAttributeThresholdFilter(CompactAttributeVolume.class, v, limiteIs).filter(tree, node));
+			assertTrue(new CompactAttributeThresholdFilter(CompactAttributeVolume.class, v - 1, LimiteIs.MIN).filter(tree, node));
+			assertTrue(new CompactAttributeThresholdFilter(CompactAttributeVolume.class, v + 1, LimiteIs.MAX).filter(tree, node));
+			int area = tree.getArea(node);
+			assertFalse(new AreaAttributFilter(area, LimiteIs.MIN).filter(tree, node));
+			assertFalse(new AreaAttributFilter(area, LimiteIs.MAX).filter(tree, node));
+		}
+	}
+
+	private static void assertSame(Image expected, Image actual) {
+		assertEquals(expected.size(), actual.size());
+		for (int p = 0; p < expected.size(); p++)
+			assertEquals(expected.getPixelDouble(p), actual.getPixelDouble(p), 0.0);
+	}
+
+}
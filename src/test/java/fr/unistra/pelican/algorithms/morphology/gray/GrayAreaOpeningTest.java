@@ -0,0 +1,62 @@
+package fr.unistra.pelican.algorithms.morphology.gray;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.morphology.binary.BinaryAreaOpening;
+import fr.unistra.pelican.algorithms.segmentation.ManualThresholding;
+
+public class GrayAreaOpeningTest {
+
+	/**
+	 * The stack decomposition, which the max-tree path must reproduce
+	 */
+	private static Image stackOpening(Image image, int thresh) {
+		Image result = image.copyImage(false);
+		for (int t = 0; t < 256; t++) {
+			BooleanImage stack = ManualThresholding.exec(image, t / 255.);
+			stack = BinaryAreaOpening.exec(stack, thresh);
+			for (int p = 0; p < stack.size(); p++)
+				if (stack.isPresent(p) && stack.getPixelBoolean(p))
+					result.setPixelByte(p, t);
+		}
+		return result;
+	}
+
+	private static ByteImage randomImage(Random random) {
+		ByteImage image = new ByteImage(40, 30, 1, 1, 1);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(8) * 32);
+		return image;
+	}
+
+	@Test
+	public void testUnmasked() {
+		ByteImage image = randomImage(new Random(12));
+		for (int thresh : new int[] { 1, 5, 20 }) {
+			Image expected = stackOpening(image, thresh);
+			Image result = GrayAreaOpening.exec(image, thresh, 2);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelByte(p), result.getPixelByte(p));
+		}
+	}
+
+	@Test
+	public void testMasked() {
+		ByteImage image = randomImage(new Random(13));
+		BooleanImage mask = new BooleanImage(40, 30, 1, 1, 1);
+		for (int p = 0; p < mask.size(); p++)
+			mask.setPixelBoolean(p, p % 7 != 0);
+		image.pushMask(mask);
+		Image expected = stackOpening(image, 5);
+		Image result = GrayAreaOpening.exec(image, 5);
+		for (int p = 0; p < image.size(); p++)
+			assertEquals(expected.getPixelByte(p), result.getPixelByte(p));
+	}
+}
@@ -1,8 +1,10 @@
 package fr.unistra.pelican.algorithms.morphology.gray;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import org.junit.Test;
 import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.DoubleImage;
 import fr.unistra.pelican.Image;
 import fr.unistra.pelican.algorithms.conversion.RGBToGray;
 import fr.unistra.pelican.algorithms.io.ImageLoader;
@@ -33,6 +35,57 @@ public class GrayErosionTest {
 
 	} // endfunc
 
+	@Test
+	public void testParallelGrayErosion() { 
+
+		Image image = ImageLoader.exec("src/test/resources/watershed.png");
+		if ( image.getBDim() != 1 ) image = RGBToGray.exec( image );
+		BooleanImage[] ses = { FlatStructuringElement2D.createSquareFlatStructuringElement(5),
+							   FlatStructuringElement2D.createCrossFlatStructuringElement(2) };
+		for ( BooleanImage se : ses ) { 
+
+			Image sequential = GrayErosion.exec( image,se,null,GrayErosion.NO_OPTIMIZATION,1 );
+			Image parallel = GrayErosion.exec( image,se,null,GrayErosion.NO_OPTIMIZATION,4 );
+			for ( int i = 0 ; i < image.size() ; i++ ) 
+				assertEquals( sequential.getPixelByte(i), parallel.getPixelByte(i) );
+		}
+
+	} // endfunc
+
+	@Test
+	public void testArrayGrayErosion() { 
+
+		Image image = ImageLoader.exec("src/test/resources/watershed.png");
+		if ( image.getBDim() != 1 ) image = RGBToGray.exec( image );
+		BooleanImage se = FlatStructuringElement2D.createCircleFlatStructuringElement(3);
+		// a full mask forces the erosion through the generic path
+		BooleanImage mask = new BooleanImage( image,false );
+		mask.fill( true );
+		Image[] images = { image, new DoubleImage( image,true ) };
+		for ( Image input : images ) { 
+
+			Image fast = GrayErosion.exec( input,se );
+			Image generic = GrayErosion.exec( input,se,mask );
+			for ( int i = 0 ; i < input.size() ; i++ ) 
+				assertEquals( generic.getPixelDouble(i), fast.getPixelDouble(i), 0.0 );
+		}
+
+	} // endfunc
+
+	@Test
+	public void testArrayGrayErosionStatistics() { 
+
+		Image image = ImageLoader.exec("src/test/resources/watershed.png");
+		if ( image.getBDim() != 1 ) image = RGBToGray.exec( image );
+		BooleanImage se = FlatStructuringElement2D.createSquareFlatStructuringElement(3);
+		Image result = GrayErosion.exec( image,se );
+		// neither the input nor the output give out their pixel array
+		assertTrue( image.getModificationCount() >= 0 );
+		assertTrue( result.getModificationCount() > 0 );
+		assertEquals( result.minimumDouble(), image.minimumDouble(), 0.0 );
+
+	} // endfunc
+
 
 
 	public static void main(String[] args) { 
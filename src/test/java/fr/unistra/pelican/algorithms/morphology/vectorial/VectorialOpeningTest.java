@@ -0,0 +1,101 @@
+package fr.unistra.pelican.algorithms.morphology.vectorial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.morphology.FlatStructuringElement2D;
+import fr.unistra.pelican.util.vectorial.orders.LexicographicalOrdering;
+import fr.unistra.pelican.util.vectorial.orders.NormBasedOrdering;
+import fr.unistra.pelican.util.vectorial.orders.VectorialOrdering;
+
+public class VectorialOpeningTest {
+
+	/**
+	 * Hides the total ordering, so that the vectors are compared pixel by pixel.
+	 */
+	private static VectorialOrdering pointwise(final VectorialOrdering vo) {
+		return new VectorialOrdering() {
+			public double[] max(double[][] p) {
+				return vo.max(p);
+			}
+
+			public double[] min(double[][] p) {
+				return vo.min(p);
+			}
+
+			public double[] rank(double[][] p, int r) {
+				return vo.rank(p, r);
+			}
+		};
+	}
+
+	@Test
+	public void testSameAsPointwise() {
+		Random random = new Random(6);
+		BooleanImage[] ses = {
+			FlatStructuringElement2D.createSquareFlatStructuringElement(3),
+			FlatStructuringElement2D.createCircleFlatStructuringElement(2) };
+		for (int i = 0; i < 4; i++) {
+			Image image;
+			VectorialOrdering vo;
+			if (i % 2 == 0) {
+				// few colours, so that the extrema are often shared
+				image = new ByteImage(30, 20, 1, 1, 3);
+				for (int p = 0; p < image.size(); p++)
+					image.setPixelByte(p, 50 * random.nextInt(6));
+				vo = new LexicographicalOrdering();
+			} else {
+				image = new DoubleImage(30, 20, 1, 1, 3);
+				for (int p = 0; p < image.size(); p++)
+					image.setPixelDouble(p, random.nextDouble());
+				vo = new NormBasedOrdering();
+			}
+			BooleanImage se = ses[i / 2];
+			Image expected = VectorialOpening.exec(image, se, pointwise(vo));
+			Image actual = VectorialOpening.exec(image, se, vo);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelDouble(p), actual.getPixelDouble(p), 0);
+			expected = VectorialClosing.exec(image, se, pointwise(vo));
+			actual = VectorialClosing.exec(image, se, vo);
+			for (int p = 0; p < image.size(); p++)
+				assertEquals(expected.getPixelDouble(p), actual.getPixelDouble(p), 0);
+		}
+	}
+
+	@Test
+	public void testByteTies() {
+		// vectors of equal norms, with components on both sides of 128
+		int[][] colours = { { 0, 100, 200 }, { 200, 100, 0 }, { 100, 0, 200 },
+			{ 100, 200, 0 }, { 0, 200, 100 }, { 200, 0, 100 }, { 127, 128, 0 },
+			{ 128, 127, 0 } };
+		Random random = new Random(7);
+		ByteImage image = new ByteImage(30, 20, 1, 1, 3);
+		for (int p = 0, i = 0; p < image.size() / 3; p++) {
+			int[] c = colours[random.nextInt(colours.length)];
+			for (int b = 0; b < 3; b++, i++)
+				image.setPixelByte(i, c[b]);
+		}
+		NormBasedOrdering vo = new NormBasedOrdering();
+		// equal vectors for the ordering are ranked lexicographically
+		DoubleImage keys = new VectorialOrderKeys(image, vo).getKeys();
+		for (int p = 0; p < keys.size(); p++)
+			for (int q = 0; q < keys.size(); q++) {
+				double[] v1 = image.getVectorPixelXYZTDouble(p % 30, p / 30, 0, 0);
+				double[] v2 = image.getVectorPixelXYZTDouble(q % 30, q / 30, 0, 0);
+				int expected = vo.compare(v1, v2);
+				for (int b = 0; expected == 0 && b < 3; b++)
+					expected = Double.compare(v1[b], v2[b]);
+				assertEquals(Integer.signum(expected), (int) Math.signum(keys
+					.getPixelDouble(p)
+					- keys.getPixelDouble(q)));
+			}
+	}
+
+}
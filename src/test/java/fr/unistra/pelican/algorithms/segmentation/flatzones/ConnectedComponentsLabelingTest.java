@@ -0,0 +1,105 @@
+package fr.unistra.pelican.algorithms.segmentation.flatzones;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+
+public class ConnectedComponentsLabelingTest {
+
+	/**
+	 * Labels a single band image by flood filling from the pixels in the scan order.
+	 */
+	private static int[] floodFill(Image image, int[][] neighbours,
+		boolean background) {
+		int xdim = image.getXDim(), ydim = image.getYDim(), zdim = image.getZDim();
+		int[] labels = new int[image.size()];
+		int[] stack = new int[image.size()];
+		int count = 0;
+		for (int z = 0; z < zdim; z++)
+			for (int y = 0; y < ydim; y++)
+				for (int x = 0; x < xdim; x++) {
+					int p = x + xdim * (y + ydim * z);
+					if (labels[p] != 0 || !background && !image.getPixelBoolean(p))
+						continue;
+					labels[p] = ++count;
+					int size = 0;
+					stack[size++] = p;
+					while (size > 0) {
+						int q = stack[--size];
+						int qx = q % xdim, qy = q / xdim % ydim, qz = q / xdim / ydim;
+						for (int[] d : neighbours)
+							for (int sign = -1; sign <= 1; sign += 2) {
+								int nx = qx + sign * d[0], ny = qy + sign * d[1], nz = qz + sign
+									* d[2];
+								if (nx < 0 || ny < 0 || nz < 0 || nx >= xdim || ny >= ydim
+									|| nz >= zdim)
+									continue;
+								int n = nx + xdim * (ny + ydim * nz);
+								if (labels[n] == 0
+									&& image.getPixelBoolean(n) == image.getPixelBoolean(q)) {
+									labels[n] = count;
+									stack[size++] = n;
+								}
+							}
+					}
+				}
+		return labels;
+	}
+
+	@Test
+	public void testSameAsFloodFill() {
+		Random random = new Random(4);
+		int[] connexities = { BooleanConnectedComponentsLabeling.CONNEXITY4,
+			BooleanConnectedComponentsLabeling.CONNEXITY8,
+			BooleanConnectedComponentsLabeling.CONNEXITY6,
+			BooleanConnectedComponentsLabeling.CONNEXITY26 };
+		for (int i = 0; i < 8; i++) {
+			BooleanImage image = new BooleanImage(17 + i, 13, 1 + i % 4, 1, 1);
+			for (int p = 0; p < image.size(); p++)
+				image.setPixelBoolean(p, random.nextInt(3) == 0);
+			for (int c = 0; c < connexities.length; c++) {
+				boolean full = c % 2 == 1;
+				int[][] neighbours = UnionFindLabeling.causalNeighbours(3, c < 2 ? 2
+					: 3, full);
+				int[] expected = floodFill(image, neighbours, i % 2 == 0);
+				for (int parallelism = 1; parallelism <= 3; parallelism++) {
+					BooleanConnectedComponentsLabeling labeling = new BooleanConnectedComponentsLabeling();
+					labeling.parallelism = parallelism;
+					IntegerImage output = (IntegerImage) labeling.process(image,
+						connexities[c], i % 2 == 0);
+					int max = 0;
+					for (int p = 0; p < image.size(); p++) {
+						assertEquals(expected[p], output.getPixelInt(p));
+						max = Math.max(max, expected[p]);
+					}
+					assertEquals(max + 1, labeling.countLabels);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testGrayTemporal() {
+		// two frames, the pixels of value 1 touch only from one frame to the next
+		ByteImage image = new ByteImage(3, 1, 1, 2, 1);
+		image.setPixelXYZTByte(0, 0, 0, 0, 1);
+		image.setPixelXYZTByte(0, 0, 0, 1, 1);
+		image.setPixelXYZTByte(2, 0, 0, 1, 1);
+		IntegerImage labels = GrayConnectedComponentsLabeling.exec(image,
+			GrayConnectedComponentsLabeling.CONNEXITY4);
+		assertEquals(6, labels.getProperty("nbRegions"));
+		labels = GrayConnectedComponentsLabeling.exec(image,
+			GrayConnectedComponentsLabeling.CONNEXITY6TEMPORAL);
+		assertEquals(4, labels.getProperty("nbRegions"));
+		assertEquals(1, labels.getPixelXYZTInt(0, 0, 0, 1));
+		assertEquals(2, labels.getPixelXYZTInt(1, 0, 0, 1));
+		assertEquals(3, labels.getPixelXYZTInt(2, 0, 0, 1));
+	}
+}
@@ -0,0 +1,78 @@
+package fr.unistra.pelican.algorithms.segmentation.superpixel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.algorithms.segmentation.flatzones.GrayConnectedComponentsLabeling;
+
+public class SLICTest {
+
+	/**
+	 * Image of noisy vertical stripes of random colours.
+	 */
+	private static ByteImage stripes(int bdim) {
+		Random random = new Random(4);
+		ByteImage image = new ByteImage(120, 90, 1, 1, bdim);
+		int[][] colours = new int[8][bdim];
+		for (int[] colour : colours)
+			for (int b = 0; b < bdim; b++)
+				colour[b] = random.nextInt(256);
+		for (int y = 0; y < 90; y++)
+			for (int x = 0; x < 120; x++)
+				for (int b = 0; b < bdim; b++)
+					image.setPixelXYBByte(x, y, b, Math.max(0, Math.min(255,
+						colours[x / 15][b] + random.nextInt(11) - 5)));
+		return image;
+	}
+
+	/**
+	 * Checks that the labels go from 0 to n-1 and that each superpixel is
+	 * connected.
+	 */
+	private static int checkLabels(IntegerImage labels) {
+		int n = labels.maximumInt() + 1;
+		assertEquals(0, labels.minimumInt());
+		int[] sizes = new int[n];
+		for (int p = 0; p < labels.size(); p++)
+			sizes[labels.getPixelInt(p)]++;
+		for (int size : sizes)
+			assertTrue(size > 0);
+		// same number of 4-connected flat zones as of labels
+		IntegerImage zones = GrayConnectedComponentsLabeling.exec(labels,
+			GrayConnectedComponentsLabeling.CONNEXITY4);
+		assertEquals(n, zones.maximumInt());
+		return n;
+	}
+
+	@Test
+	public void testColour() {
+		ByteImage image = stripes(3);
+		SLIC slic = new SLIC();
+		IntegerImage sequential = (IntegerImage) slic.process(image, 48, 10.0, 10,
+			0.1, true, 1);
+		IntegerImage parallel = (IntegerImage) new SLIC().process(image, 48, 10.0,
+			10, 0.1, true, 4);
+		assertTrue(sequential.equals(parallel));
+		int n = checkLabels(sequential);
+		assertTrue(n >= 30 && n <= 70);
+		// superpixels do not cross the borders of the stripes
+		int crossing = 0;
+		for (int y = 0; y < 90; y++)
+			for (int x = 15; x < 120; x += 15)
+				if (sequential.getPixelXYInt(x - 1, y) == sequential.getPixelXYInt(x, y))
+					crossing++;
+		assertTrue(crossing < 30);
+	}
+
+	@Test
+	public void testMultispectral() {
+		int n = checkLabels(SLIC.exec(stripes(5), 24));
+		assertTrue(n >= 15 && n <= 35);
+	}
+}
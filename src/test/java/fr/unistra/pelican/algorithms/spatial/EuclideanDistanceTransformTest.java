@@ -0,0 +1,63 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.IntegerImage;
+
+public class EuclideanDistanceTransformTest {
+
+	@Test
+	public void testSameAsBruteForce() {
+		Random random = new Random(3);
+		for (int i = 0; i < 30; i++) {
+			int xdim = 1 + random.nextInt(10);
+			int ydim = 1 + random.nextInt(10);
+			int zdim = 1 + random.nextInt(4);
+			BooleanImage im = new BooleanImage(xdim, ydim, zdim, 2, 1);
+			for (int p = 0; p < im.size(); p++)
+				im.setPixelBoolean(p, random.nextInt(10) == 0);
+
+			boolean squared = i % 4 < 2;
+			boolean background = i % 2 == 1;
+
+			ArrayList<Object> res = new EuclideanDistanceTransform().processAll(im,
+				squared, background, true, 2);
+			DoubleImage dist = (DoubleImage) res.get(0);
+			IntegerImage nearest = (IntegerImage) res.get(1);
+			for (int t = 0; t < 2; t++)
+				for (int z = 0; z < zdim; z++)
+					for (int y = 0; y < ydim; y++)
+						for (int x = 0; x < xdim; x++) {
+							double expected = Double.POSITIVE_INFINITY;
+							for (int z2 = 0; z2 < zdim; z2++)
+								for (int y2 = 0; y2 < ydim; y2++)
+									for (int x2 = 0; x2 < xdim; x2++)
+										if (im.getPixelBoolean(x2, y2, z2, t, 0) != background)
+											expected = Math.min(expected, (x - x2) * (x - x2)
+												+ (y - y2) * (y - y2) + (z - z2) * (z - z2));
+							double actual = dist.getPixelXYZTDouble(x, y, z, t);
+							assertEquals(squared ? expected : Math.sqrt(expected), actual, 0.0);
+							int q = nearest.getPixelXYZTInt(x, y, z, t);
+							if (expected == Double.POSITIVE_INFINITY) {
+								assertEquals(-1, q);
+								continue;
+							}
+							// the nearest feature is in the same frame, at the given distance
+							assertTrue(im.getPixelBoolean(q) != background);
+							int x2 = q % xdim, y2 = q / xdim % ydim, z2 = q / (xdim * ydim) % zdim;
+							assertEquals(t, q / (xdim * ydim * zdim));
+							assertEquals(expected, (x - x2) * (x - x2) + (y - y2) * (y - y2)
+								+ (z - z2) * (z - z2), 0.0);
+						}
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.Point4D;
+import fr.unistra.pelican.util.morphology.GrayStructuringElement;
+
+public class FastConvolutionTest {
+
+	@Test
+	public void testMethods() {
+		Random random = new Random(3);
+		FastConvolution.Method[] methods = { FastConvolution.Method.SEPARABLE,
+			FastConvolution.Method.FFT, FastConvolution.Method.AUTO };
+		for (int i = 0; i < 10; i++) {
+			DoubleImage im = new DoubleImage(1 + random.nextInt(70),
+				1 + random.nextInt(70), 1, 1, 2);
+			for (int p = 0; p < im.size(); p++)
+				im.setPixelDouble(p, random.nextDouble());
+			int kx = 1 + random.nextInt(12);
+			int ky = 1 + random.nextInt(12);
+			GrayStructuringElement kernel = new GrayStructuringElement(kx, ky, 1);
+			for (int x = 0; x < kx; x++)
+				for (int y = 0; y < ky; y++)
+					kernel.setPixelXYDouble(x, y, 0.1 + random.nextDouble());
+			kernel.setCenter(new Point4D(random.nextInt(kx), random.nextInt(ky),
+				0, 0));
+			boolean normalize = i % 2 == 0;
+
+			Image expected = FastConvolution.exec(im, kernel,
+				FastConvolution.Method.DIRECT, normalize);
+			for (FastConvolution.Method method : methods) {
+				Image actual = FastConvolution.exec(im, kernel, method, normalize);
+				for (int p = 0; p < im.size(); p++)
+					assertEquals(expected.getPixelDouble(p), actual.getPixelDouble(p),
+						1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testDirect() {
+		DoubleImage im = new DoubleImage(5, 4, 1, 1, 1);
+		im.setPixelXYDouble(2, 1, 1);
+		GrayStructuringElement kernel = new GrayStructuringElement(3, 2, 1);
+		for (int x = 0; x < 3; x++)
+			for (int y = 0; y < 2; y++)
+				kernel.setPixelXYDouble(x, y, 1 + x + 3 * y);
+		kernel.setCenter(new Point4D(0, 0, 0, 0));
+
+		// the impulse response is the kernel placed at its center
+		Image actual = FastConvolution.exec(im, kernel,
+			FastConvolution.Method.DIRECT, false);
+		for (int x = 0; x < 5; x++)
+			for (int y = 0; y < 4; y++) {
+				int i = x - 2, j = y - 1;
+				double expected = (i >= 0 && i < 3 && j >= 0 && j < 2) ? 1 + i + 3 * j
+					: 0;
+				assertEquals(expected, actual.getPixelXYDouble(x, y), 0);
+			}
+	}
+
+}
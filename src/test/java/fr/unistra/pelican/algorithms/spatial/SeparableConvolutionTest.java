@@ -0,0 +1,72 @@
+package fr.unistra.pelican.algorithms.spatial;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.morphology.GrayStructuringElement;
+
+public class SeparableConvolutionTest {
+
+	@Test
+	public void testSameAsConvolution() {
+		Random random = new Random(1);
+		for (int i = 0; i < 10; i++) {
+			DoubleImage im = new DoubleImage(4 + random.nextInt(20),
+				4 + random.nextInt(20), 1, 1, 2);
+			for (int p = 0; p < im.size(); p++)
+				im.setPixelDouble(p, random.nextDouble());
+			int size = 1 + 2 * random.nextInt(5);
+			double[] kx = new double[size];
+			double[] ky = new double[size];
+			for (int k = 0; k < size; k++) {
+				kx[k] = 0.1 + random.nextDouble();
+				ky[k] = 0.1 + random.nextDouble();
+			}
+			GrayStructuringElement kernel = GrayStructuringElement
+				.createSquareFlatStructuringElement(size);
+			for (int x = 0; x < size; x++)
+				for (int y = 0; y < size; y++)
+					kernel.setPixelXYDouble(x, y, kx[x] * ky[y]);
+
+			Image expected = Convolution.exec(im, kernel);
+			Image actual = SeparableConvolution.exec(im, kx, ky);
+			for (int p = 0; p < im.size(); p++)
+				assertEquals(expected.getPixelDouble(p), actual.getPixelDouble(p), 1e-12);
+		}
+	}
+
+	@Test
+	public void testRecursiveGaussian() {
+		Random random = new Random(2);
+		DoubleImage im = new DoubleImage(100, 80, 1, 1, 1);
+		for (int p = 0; p < im.size(); p++)
+			im.setPixelDouble(p, random.nextDouble());
+		double sigma = 4;
+		int radius = 20;
+		double[] kernel = SeparableConvolution.gaussianKernel(sigma, 2 * radius + 1);
+		Image expected = SeparableConvolution.exec(im, kernel, kernel);
+		Image actual = RecursiveGaussianFilter.exec(im, sigma, 2);
+		for (int y = radius; y < im.getYDim() - radius; y++)
+			for (int x = radius; x < im.getXDim() - radius; x++)
+				assertEquals(expected.getPixelXYDouble(x, y), actual
+					.getPixelXYDouble(x, y), 0.01);
+	}
+
+	@Test
+	public void testLinesOfOnePixel() {
+		DoubleImage im = new DoubleImage(5, 1, 1, 1, 1);
+		for (int p = 0; p < im.size(); p++)
+			im.setPixelDouble(p, 0.1 * p);
+		// the replicated border gives the sum of the weights on a single pixel
+		double[] kernel = { 1, 2, 1 };
+		Image actual = SeparableConvolution.exec(im, null, kernel, null, false);
+		for (int p = 0; p < im.size(); p++)
+			assertEquals(0.4 * p, actual.getPixelDouble(p), 1e-12);
+	}
+
+}
@@ -0,0 +1,154 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.DoubleImage;
+import fr.unistra.pelican.IntegerImage;
+import fr.unistra.pelican.LargeByteImage;
+
+public class ImageStatisticsTest {
+
+	@Test
+	public void testByteImage() {
+		Random random = new Random(3);
+		ByteImage image = new ByteImage(300, 250, 1, 1, 3);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, 20 + random.nextInt(200));
+		for (int b = 0; b < 3; b++) {
+			int min = 255, max = 0;
+			long sum = 0;
+			for (int p = b; p < image.size(); p += 3) {
+				min = Math.min(min, image.getPixelByte(p));
+				max = Math.max(max, image.getPixelByte(p));
+				sum += image.getPixelByte(p);
+			}
+			ImageStatistics statistics = image.getStatistics();
+			assertEquals(min, image.minimum(b) - Byte.MIN_VALUE);
+			assertEquals(max, image.maximum(b) - Byte.MIN_VALUE);
+			assertEquals(sum, (long) statistics.getSum(b));
+			assertEquals(image.size() / 3, statistics.getCount(b));
+			assertTrue(statistics.getHistogram(b)[min] > 0);
+		}
+		// the cached statistics follow the modifications of the pixels
+		image.setPixelByte(7, 255);
+		assertEquals(255, image.maximum() - Byte.MIN_VALUE);
+		image.fill(0.5);
+		assertEquals(image.maximum(), image.minimum());
+		assertEquals((image.maximum() - Byte.MIN_VALUE) * image.size(), image
+			.getSum());
+	}
+
+	@Test
+	public void testNonRealValues() {
+		DoubleImage image = new DoubleImage(5, 4, 1, 1, 2);
+		image.fill(0.25);
+		image.setPixelDouble(0, Double.NaN);
+		image.setPixelDouble(2, Double.POSITIVE_INFINITY);
+		image.setPixelDouble(3, -3.0);
+		assertEquals(Double.POSITIVE_INFINITY, image.maximum(0), 0);
+		assertEquals(0.25, image.getStatistics().getFiniteMaximum(0), 0);
+		assertEquals(-3.0, image.minimum(1), 0);
+		assertTrue(Double.isNaN(image.volume()));
+		IntegerImage integers = new IntegerImage(image.getXDim(), 4, 1, 1, 2);
+		integers.setPixelInt(5, -7);
+		assertEquals(-7, integers.minimum());
+		assertEquals(0, integers.maximum(0));
+	}
+
+	@Test
+	public void testDefaultStatistics() {
+		DoubleImage image = new DoubleImage(5, 4, 1, 1, 2);
+		image.fill(-0.5);
+		// a view without statistics of its own, on the second band
+		ImageWrapperBandSelector view = new ImageWrapperBandSelector(image, 1);
+		// as before, the maximum is never below Double.MIN_VALUE
+		assertEquals(Double.MIN_VALUE, view.maximumDouble(), 0);
+		assertEquals(-0.5, view.minimumDouble(0), 0);
+		image.setPixelDouble(3, 0.75);
+		image.setPixelDouble(5, Double.NEGATIVE_INFINITY);
+		assertEquals(0.75, view.maximumDouble(0), 0);
+		assertEquals(Double.NEGATIVE_INFINITY, view.minimumDouble(), 0);
+		assertEquals(-0.5, view.minimumDoubleIgnoreNonRealValues(0), 0);
+		// without values, the previous sentinels are kept
+		image.fill(Double.NaN);
+		assertEquals(Double.MIN_VALUE, view.maximumDouble(), 0);
+		assertEquals(Double.MAX_VALUE, view.minimumDouble(0), 0);
+		assertEquals(Double.MIN_VALUE, view.maximumDoubleIgnoreNonRealValues(0), 0);
+	}
+
+	@Test
+	public void testPixelArray() {
+		DoubleImage image = new DoubleImage(5, 4, 1, 1, 1);
+		image.fill(0.25);
+		assertEquals(0.25, image.maximum(), 0);
+		// reading the array keeps the statistics
+		long count = image.getModificationCount();
+		assertEquals(0.25, image.getReadOnlyPixelArray()[3], 0);
+		assertEquals(count, image.getModificationCount());
+		// the array given to be written drops them
+		double[] pixels = image.getPixelArray();
+		pixels[3] = 0.5;
+		assertTrue(image.getModificationCount() > count);
+		assertEquals(0.5, image.maximum(), 0);
+		ByteImage bytes = new ByteImage(5, 4, 1, 1, 1);
+		assertTrue(bytes.maximumByte() < 255);
+		bytes.getPixelArray()[3] = Byte.MAX_VALUE;
+		assertEquals(255, bytes.maximumByte());
+		IntegerImage ints = new IntegerImage(5, 4, 1, 1, 1);
+		assertEquals(0, ints.maximumInt());
+		ints.getPixelArray()[3] = 7;
+		assertEquals(7, ints.maximumInt());
+		image.getPixelsUnsafe();
+		assertEquals(-1, image.getModificationCount());
+	}
+
+	@Test
+	public void testConcurrentModifications() throws InterruptedException {
+		final IntegerImage image = new IntegerImage(100, 100, 1, 1, 1);
+		final long before = image.getModificationCount();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				public void run() {
+					for (int p = first; p < image.size(); p += 4)
+						image.setPixelInt(p, p);
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		// the single pixel writes are counted at once when the count is read
+		long after = image.getModificationCount();
+		assertTrue(after > before);
+		assertEquals(after, image.getModificationCount());
+		assertEquals(image.size() - 1, image.maximum());
+		image.setPixelInt(0, image.size());
+		assertEquals(image.size(), image.maximum());
+	}
+
+	@Test
+	public void testLargeImageUnits() {
+		Random random = new Random(5);
+		ByteImage image = new ByteImage(700, 600, 1, 1, 3);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, 10 + random.nextInt(100));
+		LargeByteImage large = new LargeByteImage(image, true, 1);
+		assertTrue(large.getUnitDim() > 1);
+		for (int b = 0; b < 3; b++) {
+			assertEquals(image.minimum(b), large.minimum(b));
+			assertEquals(image.maximum(b), large.maximum(b));
+		}
+		assertEquals(image.getSum(), large.getSum());
+		large.setPixelByte(large.size() - 1, 200);
+		assertEquals(200, large.maximum(2) - Byte.MIN_VALUE);
+		assertEquals(image.maximum(1), large.maximum(1));
+	}
+}
@@ -0,0 +1,57 @@
+package fr.unistra.pelican.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntHierarchicalQueueTest {
+
+	@Test
+	public void testSameOrderAsHierarchicalQueue() {
+		Random random = new Random(7);
+		HierarchicalQueue reference = new HierarchicalQueue(70000);
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(70000);
+		int index = 0;
+		for (int i = 0; i < 100; i++) {
+			reference.add(new Point(index, 0), 0);
+			queue.add(index++, 0);
+		}
+		while (!reference.isEmpty()) {
+			assertEquals(reference.getCurrent(), queue.getCurrent());
+			assertEquals(reference.get().x, queue.get());
+			// sparse levels, some of them below the current one
+			int n = random.nextInt(3);
+			for (int i = 0; i < n && index < 20000; i++) {
+				int level = reference.getCurrent() + random.nextInt(3000) - 100;
+				level = Math.min(reference.size() - 1, Math.max(0, level));
+				reference.add(new Point(index, 0), level);
+				queue.add(index++, level);
+			}
+			assertEquals(reference.getNumber(), queue.getNumber());
+		}
+		assertTrue(queue.isEmpty());
+		assertEquals(-1, queue.get());
+	}
+
+	@Test
+	public void testInsertBelowCurrent() {
+		IntHierarchicalQueue queue = new IntHierarchicalQueue(1000);
+		queue.add(1, 500);
+		queue.add(2, 600);
+		assertEquals(1, queue.get());
+		queue.insert(3, 10);
+		queue.add(4, 5);
+		assertEquals(10, queue.getCurrent());
+		assertEquals(3, queue.get());
+		assertEquals(4, queue.get());
+		assertEquals(2, queue.get());
+		queue.reset();
+		queue.add(5, 999);
+		assertEquals(5, queue.get());
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -0,0 +1,68 @@
+package fr.unistra.pelican.util.colour;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.algorithms.conversion.RGBToLAB;
+import fr.unistra.pelican.algorithms.conversion.RGBToXYZ;
+import fr.unistra.pelican.algorithms.conversion.XYZToLAB;
+
+public class ColourConversionTest {
+
+	private static ByteImage randomImage(Random random) {
+		// more pixels than a tile, whose size is not a multiple of 3
+		ByteImage image = new ByteImage(190, 130, 1, 1, 3);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelByte(p, random.nextInt(256));
+		return image;
+	}
+
+	@Test
+	public void testSameAsConvert() {
+		ByteImage image = randomImage(new Random(8));
+		Image xyz = RGBToXYZ.exec(image);
+		Image lab = XYZToLAB.exec(xyz);
+		for (int p = 0; p < image.size(); p += 3) {
+			double[] expected = RGBToXYZ.convert(image.getPixelByte(p), image
+				.getPixelByte(p + 1), image.getPixelByte(p + 2));
+			for (int b = 0; b < 3; b++)
+				assertEquals(expected[b], xyz.getPixelDouble(p + b), 0);
+			expected = XYZToLAB.convert(expected[0], expected[1], expected[2]);
+			for (int b = 0; b < 3; b++)
+				assertEquals(expected[b], lab.getPixelDouble(p + b), 0);
+		}
+		// the fused chain gives the same values, whatever the parallelism
+		Image fused = ColourConversion.RGB_TO_LAB.convert(image, 0, 1);
+		assertTrue(lab.equals(fused));
+		assertTrue(lab.equals(RGBToLAB.exec(image)));
+	}
+
+	@Test
+	public void testInterpolatedLUT() {
+		ByteImage image = randomImage(new Random(9));
+		Image lab = RGBToLAB.exec(image);
+		Image approximate = RGBToLAB.exec(image, false, 5);
+		double error = 0;
+		for (int p = 0; p < image.size(); p++)
+			error = Math.max(error, Math.abs(lab.getPixelDouble(p)
+				- approximate.getPixelDouble(p)));
+		// the cube root of LAB is steep near black
+		assertTrue(error < 3.0);
+
+		// the nodes of the grid are exact
+		ByteImage nodes = new ByteImage(2, 1, 1, 1, 3);
+		int[] values = { 255, 5, 250, 0, 0, 130 };
+		for (int p = 0; p < nodes.size(); p++)
+			nodes.setPixelByte(p, values[p]);
+		lab = RGBToLAB.exec(nodes);
+		approximate = RGBToLAB.exec(nodes, false, 5);
+		for (int p = 0; p < nodes.size(); p++)
+			assertEquals(lab.getPixelDouble(p), approximate.getPixelDouble(p), 1e-9);
+	}
+}
@@ -0,0 +1,106 @@
+package fr.unistra.pelican.util.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.algorithms.descriptors.localinvariants.SURFIndexMatching;
+import fr.unistra.pelican.util.Keypoint;
+import fr.unistra.pelican.util.data.distances.KeypointArraySURFDistance;
+
+public class KeypointIndexTest {
+
+	/**
+	 * Keypoint with the values of a SURF keypoint: scale, laplacian,
+	 * orientation then a normalised descriptor.
+	 */
+	private static Keypoint keypoint(double[] descriptor, double laplacian) {
+		Double[] values = new Double[descriptor.length + 3];
+		values[0] = 1.0;
+		values[1] = laplacian;
+		values[2] = 0.0;
+		double norm = 0;
+		for (double v : descriptor)
+			norm += v * v;
+		for (int i = 0; i < descriptor.length; i++)
+			values[i + 3] = descriptor[i] / Math.sqrt(norm);
+		DoubleArrayData data = new DoubleArrayData();
+		data.setValues(values);
+		return new Keypoint(0, 0, data);
+	}
+
+	private static KeypointArrayData randomData(Random random, int size) {
+		ArrayList<Keypoint> keys = new ArrayList<Keypoint>();
+		for (int k = 0; k < size; k++) {
+			double[] descriptor = new double[64];
+			for (int i = 0; i < 64; i++)
+				descriptor[i] = random.nextGaussian();
+			keys.add(keypoint(descriptor, random.nextBoolean() ? 1 : -1));
+		}
+		KeypointArrayData data = new KeypointArrayData();
+		data.setValues(keys);
+		return data;
+	}
+
+	/**
+	 * Copy of the keypoints of a data with some noise on the descriptors.
+	 */
+	@SuppressWarnings("unchecked")
+	private static KeypointArrayData noisyCopy(Random random, KeypointArrayData data) {
+		ArrayList<Keypoint> keys = new ArrayList<Keypoint>();
+		for (Keypoint key : (ArrayList<Keypoint>) data.getValues()) {
+			Double[] values = (Double[]) key.data.getValues();
+			double[] descriptor = new double[64];
+			for (int i = 0; i < 64; i++)
+				descriptor[i] = values[i + 3] + 0.03 * random.nextGaussian();
+			keys.add(keypoint(descriptor, values[1]));
+		}
+		KeypointArrayData copy = new KeypointArrayData();
+		copy.setValues(keys);
+		return copy;
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExactSearch() {
+		Random random = new Random(12);
+		KeypointArrayData data = randomData(random, 500);
+		KeypointArrayData query = randomData(random, 100);
+		((ArrayList<Keypoint>) query.getValues()).addAll(((ArrayList<Keypoint>) noisyCopy(random, data).getValues()).subList(0, 100));
+		KeypointIndex index = new KeypointIndex();
+		index.add(data);
+		int[] matches = index.match(query, KeypointIndex.DEFAULT_RATIO, 0, 1);
+		ArrayList<Keypoint> keys = (ArrayList<Keypoint>) query.getValues();
+		int count = 0;
+		for (int i = 0; i < keys.size(); i++) {
+			int expected = KeypointArraySURFDistance.match(keys.get(i), (ArrayList<Keypoint>) data.getValues());
+			assertEquals(expected, matches[i] < 0 ? -1 : index.getPosition(matches[i]));
+			if (expected >= 0)
+				count++;
+		}
+		assertTrue(count >= 100);
+	}
+
+	@Test
+	public void testCatalogue() {
+		Random random = new Random(13);
+		KeypointIndex index = new KeypointIndex(4, 1);
+		KeypointArrayData[] catalogue = new KeypointArrayData[30];
+		for (int i = 0; i < catalogue.length; i++)
+			index.add(catalogue[i] = randomData(random, 200));
+		KeypointArrayData query = noisyCopy(random, catalogue[17]);
+		int[] votes = SURFIndexMatching.votes(query, index);
+		for (int i = 0; i < votes.length; i++)
+			if (i != 17)
+				assertTrue(votes[i] < votes[17] / 10);
+		assertTrue(votes[17] > 180);
+
+		// the matches do not depend on the number of threads
+		assertArrayEquals(index.match(query, 0.5, 64, 1), index.match(query, 0.5, 64, 3));
+	}
+}
@@ -0,0 +1,80 @@
+package fr.unistra.pelican.util.iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.util.Pixel;
+import fr.unistra.pelican.util.mask.BooleanMask;
+import fr.unistra.pelican.util.mask.RectangleMask;
+
+public class SpanCursorTest {
+
+	/**
+	 * Checks that the spans give the pixels of the Pixel iterator, in the same
+	 * order and with the same coordinates.
+	 */
+	private static void checkSameAsIterator(Image image) {
+		ArrayList<Integer> expected = new ArrayList<Integer>();
+		for (Pixel p : image)
+			if (image.isPresent(p))
+				expected.add(image.getLinearIndexXYZTB(p.x, p.y, p.z, p.t, p.b));
+		int i = 0, previous = -1;
+		SpanCursor cursor = image.spans();
+		while (cursor.next()) {
+			assertTrue(cursor.getStart() < cursor.getEnd());
+			// two spans of a line are separated by a masked pixel
+			assertTrue(cursor.getStart() > previous
+				|| cursor.getStart() == cursor.getLineStart());
+			for (int p = cursor.getStart(); p < cursor.getEnd(); p++) {
+				assertEquals((int) expected.get(i++), p);
+				assertEquals(p, image.getLinearIndexXYZTB(cursor.getX(p), cursor
+					.getY(), cursor.getZ(), cursor.getT(), cursor.getB(p)));
+			}
+			previous = cursor.getEnd();
+		}
+		assertFalse(cursor.next());
+		assertEquals(expected.size(), i);
+	}
+
+	@Test
+	public void testSameAsIterator() {
+		Random random = new Random(6);
+		ByteImage image = new ByteImage(37, 5, 2, 2, 3);
+		checkSameAsIterator(image);
+
+		BooleanImage mask = new BooleanImage(37, 5, 2, 2, 3);
+		for (int p = 0; p < mask.size(); p++)
+			mask.setPixelBoolean(p, random.nextInt(5) != 0);
+		image.pushMask(new BooleanMask(mask));
+		checkSameAsIterator(image);
+
+		image.pushMask(new RectangleMask(4, 1, 30, 3, 1, false));
+		checkSameAsIterator(image);
+	}
+
+	@Test
+	public void testBand() {
+		ByteImage image = new ByteImage(6, 4, 1, 1, 3);
+		image.pushMask(new RectangleMask(0, 1, 5, 2, 2, true));
+		int count = 0;
+		SpanCursor cursor = image.spans(2);
+		while (cursor.next()) {
+			assertEquals(3, cursor.getStep());
+			for (int p = cursor.getStart(); p < cursor.getEnd(); p += 3) {
+				assertEquals(2, cursor.getB(p));
+				assertTrue(cursor.getY() == 0 || cursor.getY() == 3);
+				count++;
+			}
+		}
+		assertEquals(12, count);
+	}
+}
@@ -0,0 +1,159 @@
+package fr.unistra.pelican.util.mask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.BooleanImage;
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+
+public class CompiledMaskTest {
+
+	@SuppressWarnings("deprecation")
+	private static BooleanMask randomMask(Random random, int xdim, int ydim,
+		int bdim) {
+		BooleanImage image = new BooleanImage(xdim, ydim, 1, 1, bdim);
+		for (int p = 0; p < image.size(); p++)
+			image.setPixelBoolean(p, random.nextInt(4) == 0);
+		return new BooleanMask(image, random.nextBoolean());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testSameAsStack() {
+		Random random = new Random(2);
+		int xdim = 23, ydim = 11, bdim = 2;
+		int[] policies = { MaskStack.AND, MaskStack.OR };
+		for (int policy : policies) {
+			ByteImage image = new ByteImage(xdim, ydim, 1, 1, bdim);
+			MaskStack stack = new MaskStack(policy);
+			stack.push(randomMask(random, xdim, ydim, bdim));
+			stack.push(randomMask(random, xdim, ydim, bdim));
+			stack.push(new RectangleMask(3, 2, 12, 7, 1, random.nextBoolean()));
+			image.setMask(stack);
+			for (int y = 0; y < ydim; y++)
+				for (int x = 0; x < xdim; x++)
+					for (int b = 0; b < bdim; b++) {
+						assertEquals(stack.isInMask(x, y, 0, 0, b), image.isPresent(x, y,
+							0, 0, b));
+						assertEquals(stack.isInMaskXYB(x, y, b), image.isPresentXYB(x, y,
+							b));
+					}
+
+			// without the rectangle, linear locations are compiled as well
+			stack.pop();
+			int next = -1;
+			for (int p = image.size() - 1; p >= 0; p--) {
+				assertEquals(stack.isInMask(p), image.isPresent(p));
+				if (stack.isInMask(p))
+					next = p;
+				assertEquals(next, image.nextPresent(p));
+			}
+			assertFalse(image.isUnmasked());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testFullMask() {
+		ByteImage image = new ByteImage(70, 3, 1, 1, 1);
+		assertTrue(image.isUnmasked());
+		assertEquals(5, image.nextPresent(5));
+		image.pushMask(new BooleanMask(70, 3, 1, 1, 1, true));
+		assertTrue(image.isUnmasked());
+		image.getMask().setPolicy(MaskStack.FALSE);
+		assertFalse(image.isUnmasked());
+		assertEquals(-1, image.nextPresent(0));
+		image.getMask().setPolicy(MaskStack.AND);
+		image.pushMask(new BooleanMask(70, 3, 1, 1, 1, false));
+		assertFalse(image.isUnmasked());
+		assertEquals(-1, image.nextPresent(0));
+		assertEquals(0, image.getNumberOfPresentPixel());
+	}
+
+	@Test
+	public void testBooleanImage() {
+		ByteImage image = new ByteImage(70, 3, 1, 1, 1);
+		BooleanImage mask = new BooleanImage(70, 3, 1, 1, 1);
+		mask.fill(true);
+		image.pushMask(mask);
+		assertTrue(image.isUnmasked());
+		assertTrue(image.getCompiledMask().isCompiled());
+		// the compiled mask follows the modifications of the image
+		mask.setPixelBoolean(100, false);
+		assertFalse(image.isUnmasked());
+		assertFalse(image.isPresent(100));
+		assertEquals(101, image.nextPresent(100));
+		mask.setPixelBoolean(100, true);
+		assertTrue(image.isUnmasked());
+		// a mask of other dimensions is queried directly
+		image.getMask().pop();
+		image.pushMask(new BooleanImage(7, 3, 1, 1, 1));
+		assertFalse(image.getCompiledMask().isCompiled());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testBooleanMaskOption() {
+		ByteImage image = new ByteImage(70, 3, 1, 1, 1);
+		BooleanImage pixels = new BooleanImage(70, 3, 1, 1, 1);
+		pixels.setPixelBoolean(100, true);
+		BooleanMask mask = new BooleanMask(pixels, BooleanMask.PRESENT);
+		image.pushMask(mask);
+		assertTrue(image.isPresent(100));
+		assertFalse(image.isPresent(101));
+		// the compiled mask follows the option of the mask
+		mask.option = BooleanMask.NOT_PRESENT;
+		assertFalse(image.isPresent(100));
+		assertTrue(image.isPresent(101));
+	}
+
+	@Test
+	public void testIncrementalUpdate() {
+		Random random = new Random(3);
+		ByteImage image = new ByteImage(23, 11, 1, 1, 2);
+		BooleanImage mask = new BooleanImage(23, 11, 1, 1, 2);
+		BooleanImage other = new BooleanImage(23, 11, 1, 1, 2);
+		other.fill(true);
+		image.pushMask(mask);
+		image.pushMask(other);
+		image.getMask().setPolicy(MaskStack.OR);
+		CompiledMask compiled = image.getCompiledMask();
+		for (int i = 0; i < 1000; i++) {
+			int p = random.nextInt(image.size());
+			(random.nextBoolean() ? mask : other).setPixelBoolean(p, random
+				.nextBoolean());
+			for (int q = 0; q < image.size(); q++)
+				assertEquals(mask.getPixelBoolean(q) || other.getPixelBoolean(q),
+					image.isPresent(q));
+			// single pixels are updated without compiling the stack again
+			assertSame(compiled, image.getCompiledMask());
+		}
+		mask.fill(true);
+		assertTrue(image.isUnmasked());
+	}
+	@Test
+	public void testModificationStamp() {
+		ByteImage image = new ByteImage(70, 3, 1, 1, 1);
+		BooleanImage mask = new BooleanImage(70, 3, 1, 1, 1);
+		long all = Image.getAllModificationCount();
+		mask.setPixelBoolean(5, true);
+		// the images which are not masks do not count their pixels at once
+		assertEquals(all, Image.getAllModificationCount());
+		image.pushMask(mask);
+		assertTrue(image.isPresent(5));
+		CompiledMask compiled = image.getCompiledMask();
+		assertTrue(compiled.isCompiledFrom(image.getMask(), 70, 3, 1, 1, 1));
+		mask.setPixelBoolean(5, false);
+		assertTrue(Image.getAllModificationCount() > all);
+		assertFalse(compiled.isCompiledFrom(image.getMask(), 70, 3, 1, 1, 1));
+		assertFalse(image.isPresent(5));
+		assertSame(compiled, image.getCompiledMask());
+	}
+}
@@ -0,0 +1,172 @@
+package fr.unistra.pelican.util.remotesensing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import fr.unistra.pelican.ByteImage;
+import fr.unistra.pelican.Image;
+import fr.unistra.pelican.IntegerImage;
+
+public class BinReaderTest {
+
+	private static final int COLS = 7, LINES = 5, BANDS = 3;
+
+	private static final int[] DATA_TYPES = { 1, 2, 3, 4, 5, 12 };
+
+	private static int bytesNumber(int dataType) {
+		switch (dataType) {
+		case 1:
+			return 1;
+		case 2:
+		case 12:
+			return 2;
+		case 3:
+		case 4:
+			return 4;
+		default:
+			return 8;
+		}
+	}
+
+	/**
+	 * Raw value of a sample, covering the whole range of the data type.
+	 */
+	private static double raw(int dataType, int x, int y, int b) {
+		int k = x * 31 + y * 17 + b * 53;
+		switch (dataType) {
+		case 1:
+			return k % 256;
+		case 2:
+			return (short) (k * 397);
+		case 3:
+			return k * 1000003 - 50000000;
+		case 4:
+			return (float) (k * 0.37 - 10);
+		case 5:
+			return k * 0.123456789 - 5;
+		default:
+			return (k * 397) % 65536;
+		}
+	}
+
+	/**
+	 * Value read by the reader, 16 bits samples being 11 bits fixed point
+	 * values in BSQ files.
+	 */
+	private static double expected(int dataType, boolean bsq, int x, int y,
+		int b) {
+		double v = raw(dataType, x, y, b);
+		if (dataType == 12 && bsq)
+			return (short) v / Math.pow(2, 11);
+		return v;
+	}
+
+	private static double value(Image image, int x, int y, int b) {
+		if (image instanceof ByteImage)
+			return image.getPixelXYBByte(x, y, b);
+		if (image instanceof IntegerImage)
+			return image.getPixelXYBInt(x, y, b);
+		return image.getPixelXYBDouble(x, y, b);
+	}
+
+	private static void put(ByteBuffer buffer, int dataType, double v) {
+		switch (dataType) {
+		case 1:
+			buffer.put((byte) v);
+			break;
+		case 2:
+		case 12:
+			buffer.putShort((short) (int) v);
+			break;
+		case 3:
+			buffer.putInt((int) v);
+			break;
+		case 4:
+			buffer.putFloat((float) v);
+			break;
+		default:
+			buffer.putDouble(v);
+		}
+	}
+
+	/**
+	 * Writes a cube and its header.
+	 *
+	 * @return the path of the header
+	 */
+	private static String write(File dir, boolean bsq, int dataType,
+		boolean bigEndian) throws IOException {
+		String extension = bsq ? "bsq" : "bil";
+		File header = new File(dir, "cube.hdr");
+		FileWriter writer = new FileWriter(header);
+		writer.write("ENVI\nsamples = " + COLS + "\nlines = " + LINES
+			+ "\nbands = " + BANDS + "\nheader offset = 0\ndata type = "
+			+ dataType + "\ninterleave = " + extension + "\nbyte order = "
+			+ (bigEndian ? 1 : 0) + "\n");
+		writer.close();
+
+		ByteBuffer buffer = ByteBuffer.allocate(
+			COLS * LINES * BANDS * bytesNumber(dataType)).order(
+			bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		if (bsq) {
+			for (int b = 0; b < BANDS; b++)
+				for (int y = 0; y < LINES; y++)
+					for (int x = 0; x < COLS; x++)
+						put(buffer, dataType, raw(dataType, x, y, b));
+		} else {
+			for (int y = 0; y < LINES; y++)
+				for (int b = 0; b < BANDS; b++)
+					for (int x = 0; x < COLS; x++)
+						put(buffer, dataType, raw(dataType, x, y, b));
+		}
+		FileOutputStream out = new FileOutputStream(new File(dir, "cube."
+			+ extension));
+		out.write(buffer.array());
+		out.close();
+		return header.getPath();
+	}
+
+	private static void assertCube(Image image, int dataType, boolean bsq,
+		int sx, int sy, int ex, int ey) {
+		assertEquals(ex - sx + 1, image.getXDim());
+		assertEquals(ey - sy + 1, image.getYDim());
+		assertEquals(BANDS, image.getBDim());
+		for (int y = sy; y <= ey; y++)
+			for (int x = sx; x <= ex; x++)
+				for (int b = 0; b < BANDS; b++)
+					assertEquals("type " + dataType, expected(dataType, bsq, x, y, b),
+						value(image, x - sx, y - sy, b), 0);
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		File dir = File.createTempFile("cube", "");
+		dir.delete();
+		dir.mkdir();
+		try {
+			for (boolean bsq : new boolean[] { true, false })
+				for (int dataType : DATA_TYPES)
+					for (boolean bigEndian : new boolean[] { true, false }) {
+						String path = write(dir, bsq, dataType, bigEndian);
+						assertCube(new HdrReader().getPelicanImage(path), dataType, bsq,
+							0, 0, COLS - 1, LINES - 1);
+						assertCube(new HdrReader().getPelicanImage(path, 2, 1, 5, 3),
+							dataType, bsq, 2, 1, 5, 3);
+						assertCube(new HdrReader().getLargePelicanImage(path),
+							dataType, bsq, 0, 0, COLS - 1, LINES - 1);
+					}
+		} finally {
+			for (File f : dir.listFiles())
+				f.delete();
+			dir.delete();
+		}
+	}
+}